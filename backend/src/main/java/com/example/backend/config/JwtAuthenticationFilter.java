@@ -0,0 +1,46 @@
+package com.example.backend.config;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.example.backend.service.JwtService;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Đọc "Authorization: Bearer ..." và đặt Authentication (principal = userId) vào SecurityContext.
+ * Chỉ kiểm tra chữ ký/hạn dùng, không truy vấn DB. Token thiếu hoặc sai thì request đi tiếp
+ * như anonymous để các rule trong SecurityConfig quyết định.
+ */
+@RequiredArgsConstructor
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private final JwtService jwtService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String token = JwtService.extractBearer(request.getHeader(HttpHeaders.AUTHORIZATION));
+        if (token != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            jwtService.verify(token).ifPresent(info -> {
+                List<SimpleGrantedAuthority> authorities = info.role() == null
+                        ? List.of()
+                        : List.of(new SimpleGrantedAuthority("ROLE_" + info.role().toUpperCase()));
+                UsernamePasswordAuthenticationToken authentication =
+                        new UsernamePasswordAuthenticationToken(info.userId(), token, authorities);
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            });
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -1,11 +1,14 @@
 package com.example.backend.config;
 
+import com.example.backend.service.PayOSGateway;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import vn.payos.PayOS;
 import vn.payos.core.ClientOptions;
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkRequest;
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkResponse;
 
 @Configuration
 @Data
@@ -45,4 +48,19 @@ public class PayOSConfig {
                 .build();
         return new PayOS(options);
     }
+
+    @Bean
+    public PayOSGateway payOSGateway(PayOS payOS) {
+        return new PayOSGateway() {
+            @Override
+            public CreatePaymentLinkResponse createPaymentLink(CreatePaymentLinkRequest request) throws Exception {
+                return payOS.paymentRequests().create(request);
+            }
+
+            @Override
+            public String getPaymentStatus(long orderCode) throws Exception {
+                return String.valueOf(payOS.paymentRequests().get(orderCode).getStatus());
+            }
+        };
+    }
 }
@@ -1,7 +1,9 @@
 package com.example.backend.controller;
 
+import java.time.LocalDate;
 import java.util.List;
 
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -67,6 +69,18 @@ public class AppointmentController {
         return ResponseEntity.ok(appointmentService.getAvailableSlotsByDoctor(doctorId));
     }
 
+    // Slot trống sớm nhất của các bác sĩ trong khoa/chuyên khoa, ví dụ
+    // /api/appointments/earliest-slots?specialty=Tim mạch&from=2025-01-06&to=2025-01-10&limit=5
+    @GetMapping("/earliest-slots")
+    public ResponseEntity<List<AppointmentDTO.Response>> getEarliestSlots(
+            @RequestParam(value = "departmentId", required = false) Long departmentId,
+            @RequestParam(value = "specialty", required = false) String specialty,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        return ResponseEntity.ok(appointmentService.findEarliestSlots(departmentId, specialty, from, to, limit));
+    }
+
     @GetMapping("/by-patient-and-doctor")
     public ResponseEntity<List<AppointmentDTO.Response>> getAppointmentsByPatientAndDoctor(
             @RequestParam("patientId") Long patientId,
@@ -5,21 +5,27 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.backend.dto.AuthDTO;
+import com.example.backend.exception.TooManyRequestsException;
 import com.example.backend.model.User;
 import com.example.backend.repository.UserRepository;
 import com.example.backend.service.AuthService;
 import com.example.backend.service.EmailOtpService;
+import com.example.backend.service.JwtService;
+import com.example.backend.service.LoginRateLimiter;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 
@@ -33,9 +39,17 @@ public class AuthController {
     private final AuthService authService;
     private final EmailOtpService emailOtpService;
     private final UserRepository userRepository;
+    private final LoginRateLimiter loginRateLimiter;
 
     @PostMapping("/login")
-    public ResponseEntity<AuthDTO.LoginResponse> login(@Valid @RequestBody AuthDTO.LoginRequest loginRequest) {
+    public ResponseEntity<AuthDTO.LoginResponse> login(@Valid @RequestBody AuthDTO.LoginRequest loginRequest,
+                                                       HttpServletRequest httpRequest) {
+        // Chặn dò mật khẩu theo tài khoản/IP trước khi tốn CPU cho BCrypt
+        if (!loginRateLimiter.tryAcquire(loginRequest.getEmail(), httpRequest.getRemoteAddr())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body(new AuthDTO.LoginResponse("Đăng nhập quá nhiều lần, vui lòng thử lại sau", false, null, null));
+        }
         AuthDTO.LoginResponse response = authService.login(loginRequest);
         
         if (response.isSuccess()) {
@@ -59,7 +73,13 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<AuthDTO.LogoutResponse> logout(@RequestBody(required = false) AuthDTO.LogoutRequest logoutRequest) {
+    public ResponseEntity<AuthDTO.LogoutResponse> logout(
+            @RequestBody(required = false) AuthDTO.LogoutRequest logoutRequest,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        // Không có token trong body thì lấy token từ header Authorization
+        if (logoutRequest == null || logoutRequest.getToken() == null) {
+            logoutRequest = new AuthDTO.LogoutRequest(JwtService.extractBearer(authHeader));
+        }
         AuthDTO.LogoutResponse response = authService.logout(logoutRequest);
         // Clear userId cookie on logout
         ResponseCookie cookieUserId = ResponseCookie.from("userId", "")
@@ -130,7 +150,8 @@ public class AuthController {
 
     // Email OTP Endpoints (no database storage)
     @PostMapping("/send-otp")
-    public ResponseEntity<AuthDTO.OtpResponse> sendOtp(@Valid @RequestBody AuthDTO.SendOtpRequest request) {
+    public ResponseEntity<AuthDTO.OtpResponse> sendOtp(@Valid @RequestBody AuthDTO.SendOtpRequest request,
+                                                       HttpServletRequest httpRequest) {
         try {
             // Kiểm tra email có tồn tại trong database không
             Optional<User> user = userRepository.findByEmail(request.getEmail());
@@ -152,7 +173,7 @@ public class AuthController {
             }
             
             // Gửi OTP nếu email tồn tại và tài khoản hoạt động
-            boolean success = emailOtpService.sendOtp(request.getEmail());
+            boolean success = emailOtpService.sendOtp(request.getEmail(), httpRequest.getRemoteAddr());
             
             AuthDTO.OtpResponse response = new AuthDTO.OtpResponse(
                 success ? "Mã OTP đã được gửi đến email của bạn" : "Không thể gửi OTP, vui lòng thử lại",
@@ -160,6 +181,9 @@ public class AuthController {
             );
             
             return success ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response);
+        } catch (TooManyRequestsException e) {
+            // Vượt giới hạn gửi OTP theo email/IP
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new AuthDTO.OtpResponse(e.getMessage(), false));
         } catch (Exception e) {
             AuthDTO.OtpResponse response = new AuthDTO.OtpResponse(
                 "Lỗi hệ thống khi gửi OTP: " + e.getMessage(),
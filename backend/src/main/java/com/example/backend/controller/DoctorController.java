@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -66,6 +67,21 @@ public class DoctorController {
         return ResponseEntity.ok(doctors);
     }
 
+    /**
+     * Bác sĩ được đánh giá cao nhất theo khoa/chuyên khoa, phân trang
+     * GET /api/doctors/top-rated?departmentId={departmentId}&specialty={specialty}&page=0&size=20
+     */
+    @GetMapping("/top-rated")
+    public ResponseEntity<Page<Doctor>> getTopRatedDoctors(
+            @RequestParam(required = false) Long departmentId,
+            @RequestParam(required = false) String specialty,
+            @RequestParam(defaultValue = "1") int minReviews,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        Page<Doctor> doctors = doctorService.getTopRatedDoctors(departmentId, specialty, minReviews, page, size);
+        return ResponseEntity.ok(doctors);
+    }
+
     /**
      * Tìm bác sĩ theo tên với thông tin User và Role
      * GET /api/doctors/search?keyword={keyword}
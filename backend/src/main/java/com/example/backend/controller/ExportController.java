@@ -0,0 +1,64 @@
+package com.example.backend.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.backend.dto.ExportDTO;
+import com.example.backend.service.BulkExportService;
+
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * REST Controller xuất dữ liệu hàng loạt (users, patients, appointments, payments, medical-records)
+ * Dữ liệu được ghi thẳng ra response theo từng dòng thay vì dựng cả danh sách JSON trong bộ nhớ
+ */
+@RestController
+@RequestMapping("/api/exports")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class ExportController {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final BulkExportService bulkExportService;
+
+    /**
+     * Xuất toàn bộ một bảng dạng CSV hoặc NDJSON, tùy chọn nén gzip
+     * GET /api/exports/{dataset}?format=csv|ndjson&gzip=true
+     */
+    @GetMapping("/{dataset}")
+    public void export(@PathVariable String dataset,
+                       @RequestParam(defaultValue = "csv") String format,
+                       @RequestParam(defaultValue = "false") boolean gzip,
+                       HttpServletResponse response) throws IOException {
+        ExportDTO.Dataset target = ExportDTO.Dataset.fromPath(dataset);
+        ExportDTO.Format outputFormat = ExportDTO.Format.from(format);
+
+        String fileName = target.getPath() + "-" + LocalDate.now() + "." + outputFormat.getExtension() + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : outputFormat.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString());
+
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            GZIPOutputStream compressed = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            bulkExportService.export(target, outputFormat, compressed);
+            compressed.finish();
+        } else {
+            bulkExportService.export(target, outputFormat, out);
+        }
+        out.flush();
+    }
+}
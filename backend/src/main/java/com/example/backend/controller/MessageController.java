@@ -55,6 +55,15 @@ public class MessageController {
         return ResponseEntity.ok(messageService.getMessagesByConversationPaginated(conversationId, pageable));
     }
 
+    @GetMapping("/by-conversation/cursor")
+    public ResponseEntity<MessageDTO.CursorPage> getMessagesPage(
+            @RequestParam("conversationId") Long conversationId,
+            @RequestParam(value = "before", required = false) String before,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(messageService.getMessagesPage(conversationId, before, after, limit));
+    }
+
     @GetMapping("/by-sender")
     public ResponseEntity<List<MessageDTO.Response>> getMessagesBySender(@RequestParam("senderId") Long senderId) {
         return ResponseEntity.ok(messageService.getMessagesBySender(senderId));
@@ -137,6 +146,11 @@ public class MessageController {
         return ResponseEntity.ok(messageService.getUnreadMessageCount(conversationId, userId));
     }
 
+    @GetMapping("/unread-count/total")
+    public ResponseEntity<Long> getTotalUnreadMessageCount(@RequestParam("userId") Long userId) {
+        return ResponseEntity.ok(messageService.getTotalUnreadMessageCount(userId));
+    }
+
     @GetMapping("/unread")
     public ResponseEntity<List<MessageDTO.Response>> getUnreadMessages(
             @RequestParam("conversationId") Long conversationId,
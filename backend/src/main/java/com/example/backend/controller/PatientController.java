@@ -16,9 +16,13 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.backend.dto.PatientDTO;
+import com.example.backend.exception.TooManyRequestsException;
 import com.example.backend.model.Patient;
+import com.example.backend.service.PatientOverviewService;
 import com.example.backend.service.PatientService;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 
 /**
@@ -33,6 +37,7 @@ public class PatientController {
 
     private final PatientService patientService;
     private final com.example.backend.service.EmailOtpService emailOtpService;
+    private final PatientOverviewService patientOverviewService;
 
 
     /**
@@ -55,6 +60,16 @@ public class PatientController {
         return ResponseEntity.ok(patient);
     }
 
+    /**
+     * Tổng quan bệnh nhân: lịch hẹn, hồ sơ khám, đơn thuốc, thanh toán và hội thoại trong một lần gọi.
+     * Nhánh chậm hoặc lỗi được liệt kê trong incomplete, các nhánh khác vẫn trả về.
+     * GET /api/patients/{patientId}/overview
+     */
+    @GetMapping("/{patientId}/overview")
+    public ResponseEntity<PatientDTO.Overview> getPatientOverview(@PathVariable Long patientId) {
+        return ResponseEntity.ok(patientOverviewService.getOverview(patientId));
+    }
+
     /**
      * Tìm bệnh nhân theo tên với thông tin User và Role
      * GET /api/patients/search?keyword={keyword}
@@ -152,7 +167,8 @@ public class PatientController {
      * POST /api/patients/register
      */
     @PostMapping("/register")
-    public ResponseEntity<Object> registerPatient(@RequestBody PatientService.PatientRegisterRequest request) {
+    public ResponseEntity<Object> registerPatient(@RequestBody PatientService.PatientRegisterRequest request,
+                                                  HttpServletRequest httpRequest) {
         // If email already exists in users DB, reject
         if (patientService.isEmailTaken(request.getEmail())) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body("Email đã tồn tại: " + request.getEmail());
@@ -160,7 +176,11 @@ public class PatientController {
 
         // Save pending registration and send OTP via EmailOtpService
         // We delegate to EmailOtpService to store pending registration
-    emailOtpService.savePendingRegistration(request);
+        try {
+            emailOtpService.savePendingRegistration(request, httpRequest.getRemoteAddr());
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(java.util.Map.of("message", e.getMessage()));
+        }
     return ResponseEntity.status(HttpStatus.ACCEPTED).body(java.util.Map.of("message", "Yêu cầu đăng ký đã được nhận. Vui lòng kiểm tra email để xác thực OTP."));
     }
 
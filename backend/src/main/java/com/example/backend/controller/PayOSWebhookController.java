@@ -1,7 +1,7 @@
 package com.example.backend.controller;
 
-import com.example.backend.service.PaymentService;
-import com.example.backend.service.WebhookService;
+import com.example.backend.service.PayOSWebhookQueue;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +9,8 @@ import org.springframework.web.bind.annotation.*;
 import vn.payos.PayOS;
 import vn.payos.model.webhooks.WebhookData;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/payments")
 @RequiredArgsConstructor
@@ -17,8 +19,13 @@ import vn.payos.model.webhooks.WebhookData;
 public class PayOSWebhookController {
 
     private final PayOS payOS;
-    private final WebhookService webhookService;
+    private final PayOSWebhookQueue webhookQueue;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * Nhận webhook PayOS: xác thực chữ ký, ghi vào hàng đợi rồi trả 200 ngay.
+     * Payment được cập nhật bất đồng bộ bởi PayOSWebhookQueue; webhook gửi lại bị bỏ qua.
+     */
     @PostMapping("/webhook")
     public ResponseEntity<String> handlePayOSWebhook(@RequestBody Object body) {
         try {
@@ -26,16 +33,34 @@ public class PayOSWebhookController {
 
             // Verify webhook signature using PayOS SDK
             WebhookData webhookData = payOS.webhooks().verify(body);
-            
-            // Process webhook using WebhookService
-            webhookService.processPayOSWebhook(webhookData);
 
-            log.info("Webhook processed successfully");
-            return ResponseEntity.ok("Webhook processed successfully");
+            if (!webhookQueue.ingest(webhookData, objectMapper.writeValueAsString(body))) {
+                return ResponseEntity.ok("Webhook already received");
+            }
+            return ResponseEntity.ok("Webhook received");
 
         } catch (Exception e) {
             log.error("Error processing PayOS webhook: ", e);
             return ResponseEntity.status(500).body("Error processing webhook");
         }
     }
+
+    /**
+     * Áp lại một webhook đã xử lý hoặc thất bại
+     * POST /api/payments/webhook/events/{eventId}/replay
+     */
+    @PostMapping("/webhook/events/{eventId}/replay")
+    public ResponseEntity<Map<String, Object>> replayWebhook(@PathVariable Long eventId) {
+        webhookQueue.replay(eventId);
+        return ResponseEntity.accepted().body(Map.of("eventId", eventId, "requeued", 1));
+    }
+
+    /**
+     * Áp lại toàn bộ webhook FAILED
+     * POST /api/payments/webhook/events/replay-failed
+     */
+    @PostMapping("/webhook/events/replay-failed")
+    public ResponseEntity<Map<String, Object>> replayFailedWebhooks() {
+        return ResponseEntity.accepted().body(Map.of("requeued", webhookQueue.replayFailed()));
+    }
 }
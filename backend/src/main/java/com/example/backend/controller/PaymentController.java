@@ -13,6 +13,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/payments")
@@ -30,6 +31,9 @@ public class PaymentController {
             PaymentDTO.Response payment = paymentService.createPayment(paymentCreateDTO);
             log.info("✅ Payment created successfully: {}", payment.getPaymentId());
             return ResponseEntity.status(HttpStatus.CREATED).body(payment);
+        } catch (RejectedExecutionException e) {
+            // PayOS quá tải hoặc circuit breaker mở: trả 503 qua GlobalExceptionHandler
+            throw e;
         } catch (Exception e) {
             log.error("❌ Error creating payment: ", e);
             PaymentDTO.Response errorResponse = new PaymentDTO.Response();
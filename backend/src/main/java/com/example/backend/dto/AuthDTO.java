@@ -32,7 +32,14 @@ public class AuthDTO {
         private String message;
         private boolean success;
         private UserDTO.Response user;
-        private String token; // JWT token - hiện tại để null
+        private String token; // JWT token, gửi lại qua header "Authorization: Bearer ..."
+        // ID bệnh nhân/bác sĩ của user (do BlockIdAllocator cấp, không còn bằng user.id); null nếu không có
+        private Long patientId;
+        private Long doctorId;
+
+        public LoginResponse(String message, boolean success, UserDTO.Response user, String token) {
+            this(message, success, user, token, null, null);
+        }
     }
 
     @Data
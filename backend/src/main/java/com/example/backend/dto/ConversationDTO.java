@@ -40,5 +40,9 @@ public class ConversationDTO {
         private List<MessageDTO.Response> messages;
         private Long messageCount;
         private LocalDateTime lastMessageTime;
+        private Long lastMessageId;
+        private String lastMessagePreview;
+        private Integer patientUnreadCount;
+        private Integer doctorUnreadCount;
     }
 }
@@ -0,0 +1,105 @@
+package com.example.backend.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+import com.example.backend.model.Payment;
+import com.example.backend.model.User;
+
+/**
+ * Dòng xuất dữ liệu hàng loạt (BulkExportService). Mỗi record là một projection JPQL, không phải entity,
+ * nên không nằm trong persistence context; tên thành phần record là tên cột CSV / khóa NDJSON.
+ */
+public class ExportDTO {
+
+    // Số dòng JDBC lấy mỗi lần từ con trỏ forward-only
+    public static final String FETCH_SIZE = "1000";
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format from(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Định dạng xuất không hợp lệ: " + value + " (csv | ndjson)");
+            }
+        }
+    }
+
+    public enum Dataset {
+        USERS("users", UserRow.class),
+        PATIENTS("patients", PatientRow.class),
+        APPOINTMENTS("appointments", AppointmentRow.class),
+        PAYMENTS("payments", PaymentRow.class),
+        MEDICAL_RECORDS("medical-records", MedicalRecordRow.class);
+
+        private final String path;
+        private final Class<? extends Record> rowType;
+
+        Dataset(String path, Class<? extends Record> rowType) {
+            this.path = path;
+            this.rowType = rowType;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Class<? extends Record> getRowType() {
+            return rowType;
+        }
+
+        public static Dataset fromPath(String path) {
+            for (Dataset dataset : values()) {
+                if (dataset.path.equalsIgnoreCase(path)) {
+                    return dataset;
+                }
+            }
+            throw new IllegalArgumentException("Không hỗ trợ xuất dữ liệu: " + path);
+        }
+    }
+
+    public record UserRow(Long userId, String email, String firstName, String lastName, String phone,
+                          User.Gender gender, LocalDate dateOfBirth, String address, LocalDateTime createdAt,
+                          User.UserStatus status, String role, Long patientId, String healthInsuranceNumber,
+                          String patientStatus) {
+    }
+
+    public record PatientRow(Long patientId, Long userId, String email, String firstName, String lastName,
+                             String phone, String healthInsuranceNumber, String medicalHistory, LocalDate createdAt,
+                             String status) {
+    }
+
+    public record AppointmentRow(Long appointmentId, Long patientId, Long doctorId, LocalDateTime startTime,
+                                 LocalDateTime endTime, String status, BigDecimal fee, String notes) {
+    }
+
+    public record PaymentRow(Long paymentId, Long appointmentId, String payOSCode, BigDecimal amount, String currency,
+                             Payment.PaymentStatus status, String paymentMethod, String description,
+                             LocalDateTime createdAt, LocalDateTime paidAt, String failureReason) {
+    }
+
+    public record MedicalRecordRow(Integer recordId, Long appointmentId, Long patientId, Long doctorId,
+                                   String diagnosis, String advice, LocalDateTime createdAt) {
+    }
+}
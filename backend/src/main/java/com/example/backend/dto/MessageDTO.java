@@ -1,6 +1,7 @@
 package com.example.backend.dto;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -57,4 +58,28 @@ public class MessageDTO {
         private String messageType; // TEXT, IMAGE, FILE, etc.
         private Boolean isRead;
     }
+
+    /**
+     * Một trang tin nhắn theo cursor, sắp xếp cũ -> mới.
+     * olderCursor / newerCursor dùng cho tham số before / after của lần gọi tiếp theo.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CursorPage {
+        private List<Response> messages;
+        private String olderCursor;
+        private String newerCursor;
+        private boolean hasMore;
+    }
+
+    // Payload đẩy lên /topic/users/{id}/unread
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UnreadCount {
+        private Long conversationId;
+        private Integer unreadCount;
+        private Long totalUnread;
+    }
 }
@@ -1,6 +1,8 @@
 package com.example.backend.dto;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
@@ -48,4 +50,18 @@ public class PatientDTO {
         private LocalDate createdAt;
         private String status;
     }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Overview {
+        private Long patientId;
+        private List<AppointmentDTO.Response> appointments;
+        private List<MedicalRecordDto> medicalRecords;
+        private List<PrescriptionDto> prescriptions;
+        private List<PaymentDTO.Response> payments;
+        private List<ConversationDTO.Response> conversations;
+        // Nhánh quá thời gian hoặc lỗi -> lý do; danh sách của nhánh đó để null
+        private Map<String, String> incomplete;
+    }
 }
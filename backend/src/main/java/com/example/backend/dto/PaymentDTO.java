@@ -44,6 +44,7 @@ public class PaymentDTO {
         private String paymentMethod;
         private String payOSCode;
         private String payOSLink;
+        private LocalDateTime linkExpiresAt;
         private String description;
         private LocalDateTime createdAt;
         private LocalDateTime updatedAt;
@@ -67,4 +68,8 @@ public class PaymentDTO {
         private String paymentMethod;
         private String failureReason;
     }
+
+    // ========== Payment PENDING cần đối soát với PayOS ==========
+    public record ReconcileCandidate(Long paymentId, String payOSCode, LocalDateTime createdAt) {
+    }
 }
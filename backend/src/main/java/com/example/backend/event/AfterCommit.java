@@ -0,0 +1,28 @@
+package com.example.backend.event;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Chạy một việc sau khi transaction hiện tại commit thành công (rollback thì bỏ qua);
+ * không có transaction thì chạy ngay.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+        // Utility class
+    }
+
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
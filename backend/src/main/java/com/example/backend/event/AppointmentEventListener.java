@@ -0,0 +1,62 @@
+package com.example.backend.event;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.Appointment;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.service.EmailService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gửi email cho bệnh nhân khi lịch khám được đặt / cập nhật / hủy.
+ * Chạy trên worker của DomainEventDispatcher, không nằm trên request thread.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AppointmentEventListener {
+    private final AppointmentRepository appointmentRepository;
+    private final EmailService emailService;
+
+    @EventListener
+    public void onBooked(DomainEvent.AppointmentBooked event) {
+        appointmentRepository.findById(event.appointmentId()).ifPresent(appointment -> {
+            String doctorName = appointment.getDoctor() != null && appointment.getDoctor().getUser() != null
+                    ? appointment.getDoctor().getUser().getFirstName() + " " + appointment.getDoctor().getUser().getLastName()
+                    : "";
+            String subject = "Đặt lịch khám thành công";
+            String body = "Bạn đã đặt lịch khám thành công vào " + appointment.getStartTime() +
+                         " với bác sĩ " + doctorName;
+            notifyPatient(appointment, subject, body);
+        });
+    }
+
+    @EventListener
+    public void onUpdated(DomainEvent.AppointmentUpdated event) {
+        appointmentRepository.findById(event.appointmentId()).ifPresent(appointment -> {
+            String subject = "Lịch khám đã được cập nhật";
+            String body = "Lịch khám của bạn đã được cập nhật. Vui lòng kiểm tra chi tiết trong ứng dụng.";
+            notifyPatient(appointment, subject, body);
+        });
+    }
+
+    @EventListener
+    public void onCancelled(DomainEvent.AppointmentCancelled event) {
+        appointmentRepository.findById(event.appointmentId()).ifPresent(appointment -> {
+            String subject = "Lịch khám đã bị hủy";
+            String body = "Lịch khám của bạn đã bị hủy. Vui lòng liên hệ nếu cần đặt lại.";
+            notifyPatient(appointment, subject, body);
+        });
+    }
+
+    private void notifyPatient(Appointment appointment, String subject, String body) {
+        if (appointment.getPatient() == null || appointment.getPatient().getUser() == null) {
+            log.debug("Appointment {} has no patient, skipping email: {}", appointment.getAppointmentId(), subject);
+            return;
+        }
+        emailService.sendSimpleEmail(appointment.getPatient().getUser().getEmail(), subject, body);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.backend.event;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.Doctor;
+import com.example.backend.service.DoctorAvailabilityIndex;
+
+import jakarta.persistence.PostUpdate;
+
+/**
+ * JPA entity listener cập nhật khoa/chuyên khoa/trạng thái của bác sĩ trong DoctorAvailabilityIndex,
+ * để tìm slot theo khoa không trả về bác sĩ đã chuyển khoa hoặc ngừng hoạt động.
+ * Dùng ObjectProvider vì cùng lý do với SearchIndexEntityListener.
+ */
+@Component
+public class AvailabilityEntityListener {
+
+    private final ObjectProvider<DoctorAvailabilityIndex> availabilityIndex;
+
+    public AvailabilityEntityListener(ObjectProvider<DoctorAvailabilityIndex> availabilityIndex) {
+        this.availabilityIndex = availabilityIndex;
+    }
+
+    @PostUpdate
+    public void onUpdated(Doctor doctor) {
+        Long departmentId = doctor.getDepartment() != null ? doctor.getDepartment().getId() : null;
+        availabilityIndex.ifAvailable(index -> index.updateDoctor(doctor.getDoctorId(), departmentId,
+                doctor.getSpecialty(), doctor.getStatus()));
+    }
+}
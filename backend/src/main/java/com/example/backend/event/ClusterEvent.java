@@ -0,0 +1,11 @@
+package com.example.backend.event;
+
+/**
+ * Thông báo nội bộ từ node khác, nhận qua SharedDbBrokerRelay (chat.broker.mode = shared-db),
+ * dùng để các cache/index trong bộ nhớ nạp lại phần dữ liệu vừa đổi ở node kia.
+ *
+ * @param topic chủ đề, ví dụ "search-index/users"
+ * @param payload nội dung do bên gửi quy ước (thường là ID)
+ */
+public record ClusterEvent(String topic, String payload) {
+}
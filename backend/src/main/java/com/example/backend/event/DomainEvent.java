@@ -0,0 +1,54 @@
+package com.example.backend.event;
+
+/**
+ * Sự kiện nghiệp vụ được ghi vào outbox (OutboxEvents) trong cùng transaction với thay đổi
+ * phát sinh ra nó, sau đó DomainEventDispatcher phát cho các listener (@EventListener).
+ *
+ * Payload chỉ mang ID; listener tự đọc lại dữ liệu mới nhất khi xử lý.
+ * Tên record được lưu ở cột EventType nên không đổi tên record khi còn event chưa xử lý.
+ */
+public sealed interface DomainEvent permits
+        DomainEvent.AppointmentBooked,
+        DomainEvent.AppointmentUpdated,
+        DomainEvent.AppointmentCancelled,
+        DomainEvent.PaymentPaid {
+
+    Long aggregateId();
+
+    record AppointmentBooked(Long appointmentId) implements DomainEvent {
+        @Override
+        public Long aggregateId() {
+            return appointmentId;
+        }
+    }
+
+    record AppointmentUpdated(Long appointmentId) implements DomainEvent {
+        @Override
+        public Long aggregateId() {
+            return appointmentId;
+        }
+    }
+
+    record AppointmentCancelled(Long appointmentId) implements DomainEvent {
+        @Override
+        public Long aggregateId() {
+            return appointmentId;
+        }
+    }
+
+    record PaymentPaid(Long paymentId, Long appointmentId) implements DomainEvent {
+        @Override
+        public Long aggregateId() {
+            return paymentId;
+        }
+    }
+
+    static Class<? extends DomainEvent> typeOf(String eventType) {
+        for (Class<?> type : DomainEvent.class.getPermittedSubclasses()) {
+            if (type.getSimpleName().equals(eventType)) {
+                return type.asSubclass(DomainEvent.class);
+            }
+        }
+        throw new IllegalArgumentException("Unknown domain event type: " + eventType);
+    }
+}
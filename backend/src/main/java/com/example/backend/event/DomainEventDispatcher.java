@@ -0,0 +1,163 @@
+package com.example.backend.event;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.backend.model.OutboxEvent;
+import com.example.backend.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Phát các domain event trong outbox (OutboxEvents) cho các @EventListener.
+ *
+ * Chạy trên một virtual thread riêng, xử lý event theo thứ tự EventID. Mỗi event được phát
+ * trong một transaction cùng với việc đánh dấu PROCESSED, nên side effect ghi DB của listener
+ * (EmailJobs, SystemNotifications) và trạng thái event commit cùng nhau. Listener lỗi làm rollback và event được
+ * phát lại với backoff (at-least-once) tới domain-events.max-attempts.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DomainEventDispatcher {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${domain-events.batch-size:100}")
+    private int batchSize;
+
+    @Value("${domain-events.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${domain-events.retry-base-delay-ms:5000}")
+    private long retryBaseDelayMs;
+
+    @Value("${domain-events.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${domain-events.retention-days:7}")
+    private int retentionDays;
+
+    // Một worker duy nhất để listener nhận event theo đúng thứ tự ghi
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("domain-events").factory());
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private Timer deliveryLatency;
+    private Counter processedCounter;
+    private Counter retryCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("domain.events.depth", queueDepth, AtomicLong::get)
+                .description("Số domain event PENDING trong outbox")
+                .register(meterRegistry);
+        deliveryLatency = Timer.builder("domain.events.latency")
+                .description("Thời gian từ lúc ghi event tới lúc listener xử lý xong")
+                .register(meterRegistry);
+        processedCounter = meterRegistry.counter("domain.events.processed");
+        retryCounter = meterRegistry.counter("domain.events.retried");
+        failedCounter = meterRegistry.counter("domain.events.failed");
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        worker.shutdown();
+        worker.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // Gọi sau khi transaction ghi event đã commit để không phải chờ tới lượt poll kế tiếp
+    public void requestDispatch() {
+        if (!worker.isShutdown()) {
+            worker.submit(this::dispatch);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${domain-events.poll-interval-ms:1000}")
+    public void poll() {
+        requestDispatch();
+    }
+
+    // Dọn các event đã xử lý để bảng outbox không phình ra
+    @Scheduled(cron = "0 30 3 * * *")
+    public void purgeProcessed() {
+        int deleted = outboxEventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            log.info("Purged {} processed domain events", deleted);
+        }
+    }
+
+    void dispatch() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxEvent> claimed;
+            do {
+                claimed = OutboxSupport.claimDue(outboxEventRepository, now, batchSize, leaseMs);
+                claimed.forEach(this::process);
+            } while (claimed.size() == batchSize);
+
+            queueDepth.set(outboxEventRepository.countByStatus(OutboxEvent.OutboxEventStatus.PENDING));
+        } catch (Exception ex) {
+            log.error("Domain event dispatch failed: {}", ex.getMessage());
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    void process(OutboxEvent outboxEvent) {
+        try {
+            DomainEvent event = objectMapper.readValue(outboxEvent.getPayload(), DomainEvent.typeOf(outboxEvent.getEventType()));
+            transactionTemplate.executeWithoutResult(status -> {
+                applicationEventPublisher.publishEvent(event);
+                outboxEventRepository.markProcessed(outboxEvent.getEventId(), LocalDateTime.now());
+            });
+            deliveryLatency.record(Duration.between(outboxEvent.getCreatedAt(), LocalDateTime.now()));
+            processedCounter.increment();
+        } catch (Exception ex) {
+            markFailed(outboxEvent, ex, LocalDateTime.now());
+            outboxEventRepository.save(outboxEvent);
+        }
+    }
+
+    private void markFailed(OutboxEvent outboxEvent, Exception error, LocalDateTime now) {
+        long delayMs = OutboxSupport.recordFailure(outboxEvent, error, now, maxAttempts, retryBaseDelayMs);
+        if (delayMs < 0) {
+            outboxEvent.setStatus(OutboxEvent.OutboxEventStatus.FAILED);
+            failedCounter.increment();
+            log.error("Domain event {} {} failed after {} attempts: {}",
+                    outboxEvent.getEventId(), outboxEvent.getEventType(), outboxEvent.getAttempts(), error.getMessage());
+        } else {
+            outboxEvent.setStatus(OutboxEvent.OutboxEventStatus.PENDING);
+            retryCounter.increment();
+            log.warn("Domain event {} {} failed (attempt {}), retrying in {} ms: {}",
+                    outboxEvent.getEventId(), outboxEvent.getEventType(), outboxEvent.getAttempts(), delayMs, error.getMessage());
+        }
+    }
+}
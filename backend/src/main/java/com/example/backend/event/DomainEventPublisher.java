@@ -0,0 +1,42 @@
+package com.example.backend.event;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.model.OutboxEvent;
+import com.example.backend.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ghi domain event vào outbox trong transaction hiện tại. Event chỉ được phát khi
+ * transaction nghiệp vụ commit; rollback thì event cũng biến mất.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DomainEventPublisher {
+    private final OutboxEventRepository outboxEventRepository;
+    private final DomainEventDispatcher domainEventDispatcher;
+    private final ObjectMapper objectMapper;
+
+    @Transactional
+    public void publish(DomainEvent event) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setEventType(event.getClass().getSimpleName());
+        outboxEvent.setAggregateId(event.aggregateId());
+        try {
+            outboxEvent.setPayload(objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Không thể serialize domain event " + outboxEvent.getEventType(), ex);
+        }
+        outboxEventRepository.save(outboxEvent);
+        log.debug("Queued domain event {} {} for aggregate {}",
+                outboxEvent.getEventId(), outboxEvent.getEventType(), outboxEvent.getAggregateId());
+
+        AfterCommit.run(domainEventDispatcher::requestDispatch);
+    }
+}
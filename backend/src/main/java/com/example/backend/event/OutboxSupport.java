@@ -0,0 +1,64 @@
+package com.example.backend.event;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.PageRequest;
+
+import com.example.backend.model.OutboxEntry;
+import com.example.backend.repository.OutboxRepository;
+
+/**
+ * Phần dùng chung của các worker đọc outbox (EmailDispatcher, DomainEventDispatcher, PayOSWebhookQueue):
+ * nhận một batch bằng claim token và ghi nhận lần xử lý lỗi với backoff lũy thừa.
+ */
+public final class OutboxSupport {
+
+    static final int MAX_ERROR_LENGTH = 500;
+
+    private OutboxSupport() {
+        // Utility class
+    }
+
+    /**
+     * Trả lại các lease đã quá hạn rồi nhận tối đa batchSize bản ghi tới hạn; trả về các bản ghi
+     * node này đã nhận được (có thể ít hơn số ID tới hạn nếu node khác nhận trước).
+     */
+    public static <T extends OutboxEntry> List<T> claimDue(OutboxRepository<T> repository,
+                                                           LocalDateTime now, int batchSize, long leaseMs) {
+        repository.releaseExpiredLeases(now);
+        List<Long> dueIds = repository.findDueIds(now, PageRequest.of(0, batchSize));
+        if (dueIds.isEmpty()) {
+            return List.of();
+        }
+        String claimToken = UUID.randomUUID().toString();
+        repository.claim(dueIds, claimToken, now.plus(Duration.ofMillis(leaseMs)));
+        return repository.findClaimed(claimToken);
+    }
+
+    /**
+     * Ghi nhận một lần xử lý lỗi: tăng Attempts, bỏ claim và lưu lỗi. Còn lượt thì hẹn lần thử kế tiếp
+     * và trả về độ trễ (ms); hết lượt thì trả về -1 để nơi gọi chuyển bản ghi sang FAILED.
+     */
+    public static long recordFailure(OutboxEntry entry, Exception error, LocalDateTime now,
+                                     int maxAttempts, long retryBaseDelayMs) {
+        entry.setAttempts(entry.getAttempts() + 1);
+        entry.setClaimToken(null);
+        entry.setLastError(truncate(error.getMessage(), MAX_ERROR_LENGTH));
+        if (entry.getAttempts() >= maxAttempts) {
+            return -1;
+        }
+        long delayMs = retryBaseDelayMs << Math.min(entry.getAttempts() - 1, 10);
+        entry.setNextAttemptAt(now.plus(Duration.ofMillis(delayMs)));
+        return delayMs;
+    }
+
+    public static String truncate(String message, int maxLength) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > maxLength ? message.substring(0, maxLength) : message;
+    }
+}
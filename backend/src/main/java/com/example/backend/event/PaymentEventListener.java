@@ -0,0 +1,53 @@
+package com.example.backend.event;
+
+import java.time.LocalDateTime;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.Appointment;
+import com.example.backend.model.SystemNotification;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.SystemNotificationRepository;
+import com.example.backend.service.EmailService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tạo SystemNotification và email xác nhận khi thanh toán thành công.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentEventListener {
+    private final AppointmentRepository appointmentRepository;
+    private final SystemNotificationRepository systemNotificationRepository;
+    private final EmailService emailService;
+
+    @EventListener
+    public void onPaid(DomainEvent.PaymentPaid event) {
+        if (event.appointmentId() == null) {
+            return;
+        }
+        Appointment appointment = appointmentRepository.findById(event.appointmentId()).orElse(null);
+        if (appointment == null) {
+            log.warn("Payment {} refers to missing appointment {}", event.paymentId(), event.appointmentId());
+            return;
+        }
+
+        String title = "Thanh toán thành công";
+        String message = "Lịch khám vào " + appointment.getStartTime() + " đã được thanh toán và xác nhận.";
+
+        SystemNotification notification = new SystemNotification();
+        notification.setTitle(title);
+        notification.setMessage(message);
+        notification.setAppointment(appointment);
+        notification.setCreatedAt(LocalDateTime.now());
+        systemNotificationRepository.save(notification);
+
+        if (appointment.getPatient() != null && appointment.getPatient().getUser() != null) {
+            emailService.sendSimpleEmail(appointment.getPatient().getUser().getEmail(), title, message);
+        }
+    }
+}
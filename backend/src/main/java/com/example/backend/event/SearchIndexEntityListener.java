@@ -0,0 +1,58 @@
+package com.example.backend.event;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.Doctor;
+import com.example.backend.model.Patient;
+import com.example.backend.model.User;
+import com.example.backend.service.PeopleSearchIndex;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * JPA entity listener giữ PeopleSearchIndex khớp với Users/Doctors/Patients.
+ * Chỉ ghi nhận userId; index nạp lại dòng của user đó sau khi transaction commit.
+ * Hibernate tạo listener qua Spring nên inject được bean; dùng ObjectProvider vì
+ * index phụ thuộc repository, tức là phụ thuộc ngược lại EntityManagerFactory.
+ */
+@Component
+public class SearchIndexEntityListener {
+
+    private final ObjectProvider<PeopleSearchIndex> searchIndex;
+
+    public SearchIndexEntityListener(ObjectProvider<PeopleSearchIndex> searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSaved(Object entity) {
+        searchIndex.ifAvailable(index -> index.reindexUser(userIdOf(entity)));
+    }
+
+    @PostRemove
+    public void onRemoved(Object entity) {
+        if (entity instanceof User user) {
+            searchIndex.ifAvailable(index -> index.removeUser(user.getId()));
+        } else {
+            // Xóa doctor/patient chỉ làm đổi dòng của user
+            onSaved(entity);
+        }
+    }
+
+    private static Long userIdOf(Object entity) {
+        if (entity instanceof User user) {
+            return user.getId();
+        }
+        if (entity instanceof Doctor doctor && doctor.getUser() != null) {
+            return doctor.getUser().getId();
+        }
+        if (entity instanceof Patient patient && patient.getUser() != null) {
+            return patient.getUser().getId();
+        }
+        return null;
+    }
+}
@@ -1,17 +1,20 @@
 package com.example.backend.mapper;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.example.backend.dto.ConversationDTO;
 import com.example.backend.dto.MessageDTO;
 import com.example.backend.model.Conversation;
+import com.example.backend.model.Doctor;
+import com.example.backend.model.Patient;
 import com.example.backend.model.User;
-import com.example.backend.repository.DoctorRepository;
-import com.example.backend.repository.PatientRepository;
+import com.example.backend.service.BatchLoader;
 
 @Component
 public class ConversationMapper {
@@ -20,10 +23,7 @@ public class ConversationMapper {
     private MessageMapper messageMapper;
 
     @Autowired
-    private PatientRepository patientRepository;
-
-    @Autowired
-    private DoctorRepository doctorRepository;
+    private BatchLoader batchLoader;
 
     public Conversation createDTOToEntity(ConversationDTO.Create dto, User patientUser, User doctorUser) {
         Conversation entity = new Conversation();
@@ -34,50 +34,76 @@ public class ConversationMapper {
     }
 
     public ConversationDTO.Response entityToResponseDTO(Conversation entity) {
+        return entitiesToResponseDTOs(List.of(entity)).get(0);
+    }
+
+    /**
+     * patientId / doctorId của cả danh sách được nạp bằng một truy vấn IN mỗi loại (BatchLoader),
+     * không tra cứu repository cho từng cuộc trò chuyện.
+     */
+    public List<ConversationDTO.Response> entitiesToResponseDTOs(List<Conversation> entities) {
+        Map<Long, Patient> patients = batchLoader.loadAll(BatchLoader.PATIENT_BY_USER,
+                BatchLoader.ids(entities, c -> c.getPatientUser() != null ? c.getPatientUser().getId() : null));
+        Map<Long, Doctor> doctors = batchLoader.loadAll(BatchLoader.DOCTOR_BY_USER,
+                BatchLoader.ids(entities, c -> c.getDoctorUser() != null ? c.getDoctorUser().getId() : null));
+
+        return entities.stream()
+                .map(entity -> {
+                    Patient patient = entity.getPatientUser() != null ? patients.get(entity.getPatientUser().getId()) : null;
+                    Doctor doctor = entity.getDoctorUser() != null ? doctors.get(entity.getDoctorUser().getId()) : null;
+                    return entityToResponseDTO(entity,
+                            patient != null ? patient.getPatientId() : null,
+                            doctor != null ? doctor.getDoctorId() : null);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Dùng cho danh sách hộp thư: patientId / doctorId đã được đọc cùng query,
+     * không tra cứu thêm repository cho từng cuộc trò chuyện.
+     */
+    public ConversationDTO.Response entityToResponseDTO(Conversation entity, Long patientId, Long doctorId) {
+        ConversationDTO.Response dto = toResponseDTO(entity);
+        dto.setPatientId(patientId);
+        dto.setDoctorId(doctorId);
+        return dto;
+    }
+
+    public ConversationDTO.Response entityToResponseDTOWithMessages(Conversation entity, List<MessageDTO.Response> messages) {
+        ConversationDTO.Response dto = entityToResponseDTO(entity);
+        dto.setMessages(messages);
+        return dto;
+    }
+
+    private ConversationDTO.Response toResponseDTO(Conversation entity) {
         ConversationDTO.Response dto = new ConversationDTO.Response();
         dto.setConversationId(entity.getConversationId());
 
         if (entity.getPatientUser() != null) {
             dto.setPatientUserId(entity.getPatientUser().getId());
             dto.setPatientName(buildFullName(entity.getPatientUser()));
-            patientRepository.findByUserIdWithUserAndRole(entity.getPatientUser().getId())
-                    .ifPresent(patient -> dto.setPatientId(patient.getPatientId()));
         }
 
         if (entity.getDoctorUser() != null) {
             dto.setDoctorUserId(entity.getDoctorUser().getId());
             dto.setDoctorName(buildFullName(entity.getDoctorUser()));
-            doctorRepository.findByUserId(entity.getDoctorUser().getId())
-                    .ifPresent(doctor -> dto.setDoctorId(doctor.getDoctorId()));
         }
 
         dto.setCreatedAt(entity.getCreatedAt());
 
-        if (entity.getMessages() != null && !entity.getMessages().isEmpty()) {
+        // Số liệu lấy từ cột tóm tắt, không duyệt collection messages
+        dto.setMessageCount(entity.getMessageCount());
+        dto.setLastMessageTime(entity.getLastMessageAt());
+        dto.setLastMessageId(entity.getLastMessageId());
+        dto.setLastMessagePreview(entity.getLastMessagePreview());
+        dto.setPatientUnreadCount(entity.getPatientUnreadCount());
+        dto.setDoctorUnreadCount(entity.getDoctorUnreadCount());
+
+        // Chỉ map messages khi đã được fetch (findByIdWithMessages), tránh lazy load
+        if (entity.getMessages() != null && Hibernate.isInitialized(entity.getMessages())) {
             dto.setMessages(entity.getMessages().stream()
                 .map(messageMapper::entityToResponseDTO)
                 .collect(Collectors.toList()));
-            dto.setMessageCount((long) entity.getMessages().size());
-
-            entity.getMessages().stream()
-                .max((m1, m2) -> m1.getSentAt().compareTo(m2.getSentAt()))
-                .ifPresent(lastMessage -> dto.setLastMessageTime(lastMessage.getSentAt()));
-        } else {
-            dto.setMessageCount(0L);
-        }
-
-        return dto;
-    }
-
-    public ConversationDTO.Response entityToResponseDTOWithMessages(Conversation entity, List<MessageDTO.Response> messages) {
-        ConversationDTO.Response dto = entityToResponseDTO(entity);
-        dto.setMessages(messages);
-        dto.setMessageCount((long) messages.size());
-
-        if (!messages.isEmpty()) {
-            messages.stream()
-                .max((m1, m2) -> m1.getSentAt().compareTo(m2.getSentAt()))
-                .ifPresent(lastMessage -> dto.setLastMessageTime(lastMessage.getSentAt()));
         }
 
         return dto;
@@ -19,7 +19,7 @@ public class DoctorMapper {
 
     public Doctor createDTOToEntity(DoctorDTO.Create createDTO, User user, Department department) {
         Doctor doctor = new Doctor();
-        doctor.setDoctorId(user.getId());
+        // DoctorID do BlockIdAllocator cấp ở service, không dùng lại UserID
         doctor.setUser(user);
         doctor.setDepartment(department);
         doctor.setSpecialty(createDTO.getSpecialty());
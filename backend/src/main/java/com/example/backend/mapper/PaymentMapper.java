@@ -2,10 +2,29 @@ package com.example.backend.mapper;
 
 import com.example.backend.dto.PaymentDTO;
 import com.example.backend.model.Payment;
+import com.example.backend.service.BatchLoader;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class PaymentMapper {
+
+    @Autowired
+    private BatchLoader batchLoader;
+
+    /**
+     * Nạp appointment (kèm patient, doctor và user của hai bên) của cả danh sách bằng một truy vấn IN,
+     * proxy appointment của từng payment sau đó được khởi tạo từ persistence context.
+     */
+    public List<PaymentDTO.Response> toResponseDTOs(List<Payment> payments) {
+        batchLoader.loadAll(BatchLoader.APPOINTMENT,
+                BatchLoader.ids(payments, payment -> payment.getAppointment() != null ? payment.getAppointment().getAppointmentId() : null));
+        return payments.stream()
+                .map(this::toResponseDTO)
+                .toList();
+    }
     
     public PaymentDTO.Response toResponseDTO(Payment payment) {
         if (payment == null) {
@@ -21,6 +40,7 @@ public class PaymentMapper {
         dto.setPaymentMethod(payment.getPaymentMethod());
         dto.setPayOSCode(payment.getPayOSCode());
         dto.setPayOSLink(payment.getPayOSLink());
+        dto.setLinkExpiresAt(payment.getLinkExpiresAt());
         dto.setDescription(payment.getDescription());
         dto.setCreatedAt(payment.getCreatedAt());
         dto.setUpdatedAt(payment.getUpdatedAt());
@@ -11,7 +11,10 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "Appointments")
+@Table(name = "Appointments", indexes = {
+    @Index(name = "IX_Appointments_Doctor_Start_End", columnList = "DoctorID, startTime, endTime"),
+    @Index(name = "IX_Appointments_Start_ReminderSentAt", columnList = "startTime, reminderSentAt")
+})
 public class Appointment {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -43,6 +46,15 @@ public class Appointment {
     @Column(name = "Fee")
     private BigDecimal fee;
 
+    // Thời điểm đã gửi email nhắc lịch; null = chưa nhắc. Chỉ được ghi bằng markReminderSent/releaseReminder
+    // của AppointmentRepository; không cho entity ghi đè để update/cancel với bản đọc cũ không xóa mất dấu
+    @Column(insertable = false, updatable = false)
+    private LocalDateTime reminderSentAt;
+
+    // Optimistic locking: update/cancel đồng thời trên cùng appointment sẽ bị phát hiện
+    @Version
+    private Long version;
+
     @OneToOne(mappedBy = "appointment")
     private MedicalRecord medicalRecord;
 
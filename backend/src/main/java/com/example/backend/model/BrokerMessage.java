@@ -0,0 +1,48 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Bản sao một STOMP message gửi tới /topic, dùng để chuyển tiếp giữa các node
+ * khi chat.broker.mode = shared-db (SharedDbBrokerRelay). Chỉ giữ trong thời gian ngắn.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "BrokerMessages", indexes = {
+    @Index(name = "IX_BrokerMessages_CreatedAt", columnList = "CreatedAt")
+})
+public class BrokerMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "BrokerMessageID")
+    private Long brokerMessageId;
+
+    // Node đã phát message, node đó không nhận lại
+    @Column(name = "OriginNode", nullable = false, length = 36)
+    private String originNode;
+
+    @Column(name = "Destination", nullable = false)
+    private String destination;
+
+    @Column(name = "ContentType", length = 100)
+    private String contentType;
+
+    @Lob
+    @Column(name = "Payload", nullable = false)
+    private byte[] payload;
+
+    @Column(name = "CreatedAt", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
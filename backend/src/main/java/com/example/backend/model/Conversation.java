@@ -14,7 +14,10 @@ import com.example.backend.model.User;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "Conversations")
+@Table(name = "Conversations", indexes = {
+    @Index(name = "IX_Conversations_Doctor_LastMessageAt", columnList = "UserIdOfDoctor, lastMessageAt"),
+    @Index(name = "IX_Conversations_Patient_LastMessageAt", columnList = "UserIdOfPatient, lastMessageAt")
+})
 public class Conversation {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -30,6 +33,24 @@ public class Conversation {
 
     private LocalDateTime createdAt;
 
+    // Tóm tắt cho danh sách hộp thư, được MessageService cập nhật mỗi khi có tin nhắn mới / đã đọc
+    private Long lastMessageId;
+
+    private LocalDateTime lastMessageAt;
+
+    @Column(columnDefinition = "NVARCHAR(200)")
+    private String lastMessagePreview;
+
+    @Column(nullable = false)
+    private long messageCount;
+
+    // Số tin chưa đọc của từng bên (tin do bên kia gửi)
+    @Column(nullable = false)
+    private int patientUnreadCount;
+
+    @Column(nullable = false)
+    private int doctorUnreadCount;
+
     @OneToMany(mappedBy = "conversation")
     private List<Message> messages;
 }
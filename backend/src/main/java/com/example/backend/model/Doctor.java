@@ -7,13 +7,20 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDate;
 import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.example.backend.event.AvailabilityEntityListener;
+import com.example.backend.event.SearchIndexEntityListener;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.ColumnDefault;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "Doctors")
+@EntityListeners({SearchIndexEntityListener.class, AvailabilityEntityListener.class})
+@Table(name = "Doctors", indexes = {
+    @Index(name = "IX_Doctors_Department_Rating", columnList = "DepartmentID, AverageRating DESC, RatingCount DESC"),
+    @Index(name = "IX_Doctors_Rating", columnList = "AverageRating DESC, RatingCount DESC")
+})
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Doctor {
     @Id
@@ -40,6 +47,40 @@ public class Doctor {
     @Column(name = "Status")
     private String status;
 
+    // Tổng hợp đánh giá ACTIVE, chỉ được ghi bằng DoctorRepository.adjustRating trong transaction của
+    // ReviewService; không cho entity ghi đè để lần lưu doctor khác không làm mất cập nhật
+    @ColumnDefault("0")
+    @Column(name = "RatingSum", nullable = false, insertable = false, updatable = false)
+    private long ratingSum;
+
+    @ColumnDefault("0")
+    @Column(name = "RatingCount", nullable = false, insertable = false, updatable = false)
+    private long ratingCount;
+
+    @ColumnDefault("0")
+    @Column(name = "Rating1Count", nullable = false, insertable = false, updatable = false)
+    private int rating1Count;
+
+    @ColumnDefault("0")
+    @Column(name = "Rating2Count", nullable = false, insertable = false, updatable = false)
+    private int rating2Count;
+
+    @ColumnDefault("0")
+    @Column(name = "Rating3Count", nullable = false, insertable = false, updatable = false)
+    private int rating3Count;
+
+    @ColumnDefault("0")
+    @Column(name = "Rating4Count", nullable = false, insertable = false, updatable = false)
+    private int rating4Count;
+
+    @ColumnDefault("0")
+    @Column(name = "Rating5Count", nullable = false, insertable = false, updatable = false)
+    private int rating5Count;
+
+    @ColumnDefault("0")
+    @Column(name = "AverageRating", nullable = false, insertable = false, updatable = false)
+    private double averageRating;
+
     @OneToMany(mappedBy = "doctor", fetch = FetchType.LAZY)
     @JsonIgnore
     private List<DoctorSchedule> schedules;
@@ -11,7 +11,9 @@ import java.time.LocalTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "DoctorSchedules")
+@Table(name = "DoctorSchedules", indexes = {
+    @Index(name = "IX_DoctorSchedules_Doctor_WorkDate", columnList = "DoctorID, workDate")
+})
 public class DoctorSchedule {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -34,4 +36,7 @@ public class DoctorSchedule {
     private String status = "Available";
 
     private String notes;
+
+    @Version
+    private Long version;
 }
\ No newline at end of file
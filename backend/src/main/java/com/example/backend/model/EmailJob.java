@@ -0,0 +1,74 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Email chờ gửi (outbox). Được ghi trong cùng transaction với nghiệp vụ phát sinh email,
+ * sau đó EmailDispatcher gửi bất đồng bộ.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "EmailJobs", indexes = {
+    @Index(name = "IX_EmailJobs_Status_NextAttempt", columnList = "Status, NextAttemptAt"),
+    @Index(name = "IX_EmailJobs_ClaimToken", columnList = "ClaimToken")
+})
+public class EmailJob implements OutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "EmailJobID")
+    private Long emailJobId;
+
+    @Column(name = "Recipient", nullable = false)
+    private String recipient;
+
+    @Column(name = "Subject", columnDefinition = "NVARCHAR(255)")
+    private String subject;
+
+    @Column(name = "Body", columnDefinition = "NVARCHAR(MAX)")
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "Status", nullable = false, length = 20)
+    private EmailJobStatus status = EmailJobStatus.PENDING;
+
+    @Column(name = "Attempts", nullable = false)
+    private int attempts;
+
+    // Với PENDING: thời điểm được gửi (lại); với SENDING: hạn lease của node đang gửi
+    @Column(name = "NextAttemptAt", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "ClaimToken", length = 36)
+    private String claimToken;
+
+    @Column(name = "LastError", columnDefinition = "NVARCHAR(500)")
+    private String lastError;
+
+    @Column(name = "CreatedAt", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "SentAt")
+    private LocalDateTime sentAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = this.createdAt;
+        }
+    }
+
+    public enum EmailJobStatus {
+        PENDING,    // Chờ gửi
+        SENDING,    // Đang được một worker gửi
+        SENT,       // Đã gửi
+        FAILED      // Hết số lần thử
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Giá trị cao nhất đã cấp của một dãy ID (Doctors, Patients...). BlockIdAllocator tăng NextValue
+ * theo từng khối rồi tự cấp các ID trong khối trong bộ nhớ.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "IdSequences")
+public class IdSequence {
+
+    @Id
+    @Column(name = "SequenceName", length = 50)
+    private String sequenceName;
+
+    // ID đầu tiên chưa được node nào giữ
+    @Column(name = "NextValue", nullable = false)
+    private long nextValue;
+}
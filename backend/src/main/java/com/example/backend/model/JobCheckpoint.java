@@ -0,0 +1,48 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Tiến độ của một job nền chạy theo trang (keyset cursor) và lease để chỉ một node chạy job tại một thời điểm.
+ * Job dừng giữa chừng (khởi động lại, mất lease) sẽ chạy tiếp từ cursor đã lưu.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "JobCheckpoints")
+public class JobCheckpoint {
+
+    @Id
+    @Column(name = "JobName", length = 100)
+    private String jobName;
+
+    // Vị trí đã xử lý xong; null khi lượt kế tiếp bắt đầu từ đầu
+    @Column(name = "CursorCreatedAt")
+    private LocalDateTime cursorCreatedAt;
+
+    @Column(name = "CursorID")
+    private Long cursorId;
+
+    @Column(name = "LeaseOwner", length = 36)
+    private String leaseOwner;
+
+    @Column(name = "LeaseUntil")
+    private LocalDateTime leaseUntil;
+
+    // Lần gần nhất job đi hết toàn bộ dữ liệu
+    @Column(name = "LastCompletedAt")
+    private LocalDateTime lastCompletedAt;
+
+    @Column(name = "UpdatedAt")
+    private LocalDateTime updatedAt;
+
+    public JobCheckpoint(String jobName) {
+        this.jobName = jobName;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
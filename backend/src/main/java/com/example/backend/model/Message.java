@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "Messages")
+@Table(name = "Messages", indexes = {
+    @Index(name = "IX_Messages_Conversation_SentAt_Id", columnList = "ConversationID, sentAt, messageId")
+})
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,36 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Giá trị tạm có hạn dùng của EmailOtpService (OTP đã băm, đăng ký đang chờ xác thực)
+ * khi otp.store = db, để mọi node cùng xác thực được OTP do node khác gửi.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "OtpEntries", indexes = {
+    @Index(name = "IX_OtpEntries_ExpiresAt", columnList = "ExpiresAt")
+})
+public class OtpEntry {
+
+    // namespace + ":" + key (email)
+    @Id
+    @Column(name = "EntryKey", length = 200)
+    private String entryKey;
+
+    @Column(name = "Payload", nullable = false, columnDefinition = "NVARCHAR(MAX)")
+    private String payload;
+
+    @Column(name = "ExpiresAt", nullable = false)
+    private LocalDateTime expiresAt;
+
+    // Số lần đã thử xác thực với giá trị hiện tại, về 0 khi giá trị được ghi lại
+    @Column(name = "Attempts", nullable = false)
+    private int attempts;
+}
@@ -0,0 +1,19 @@
+package com.example.backend.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Các cột chung của một bản ghi outbox (EmailJobs, OutboxEvents, PayOSWebhookEvents): số lần thử, lease và lỗi gần nhất.
+ */
+public interface OutboxEntry {
+
+    int getAttempts();
+
+    void setAttempts(int attempts);
+
+    void setNextAttemptAt(LocalDateTime nextAttemptAt);
+
+    void setClaimToken(String claimToken);
+
+    void setLastError(String lastError);
+}
@@ -0,0 +1,74 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Domain event chờ phát (transactional outbox). Được ghi cùng transaction với nghiệp vụ,
+ * DomainEventDispatcher đọc theo thứ tự EventID và phát cho các listener sau khi commit.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "OutboxEvents", indexes = {
+    @Index(name = "IX_OutboxEvents_Status_NextAttempt", columnList = "Status, NextAttemptAt"),
+    @Index(name = "IX_OutboxEvents_ClaimToken", columnList = "ClaimToken")
+})
+public class OutboxEvent implements OutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "EventID")
+    private Long eventId;
+
+    @Column(name = "EventType", nullable = false, length = 100)
+    private String eventType;
+
+    @Column(name = "AggregateID")
+    private Long aggregateId;
+
+    @Column(name = "Payload", columnDefinition = "NVARCHAR(MAX)", nullable = false)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "Status", nullable = false, length = 20)
+    private OutboxEventStatus status = OutboxEventStatus.PENDING;
+
+    @Column(name = "Attempts", nullable = false)
+    private int attempts;
+
+    // Với PENDING: thời điểm được phát (lại); với PROCESSING: hạn lease của node đang xử lý
+    @Column(name = "NextAttemptAt", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "ClaimToken", length = 36)
+    private String claimToken;
+
+    @Column(name = "LastError", columnDefinition = "NVARCHAR(500)")
+    private String lastError;
+
+    @Column(name = "CreatedAt", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "ProcessedAt")
+    private LocalDateTime processedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = this.createdAt;
+        }
+    }
+
+    public enum OutboxEventStatus {
+        PENDING,     // Chờ phát
+        PROCESSING,  // Đang được một worker xử lý
+        PROCESSED,   // Tất cả listener đã xử lý xong
+        FAILED       // Hết số lần thử
+    }
+}
@@ -5,12 +5,14 @@ import lombok.*;
 import java.time.LocalDate;
 import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.example.backend.event.SearchIndexEntityListener;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(SearchIndexEntityListener.class)
 @Table(name = "Patients")
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Patient {
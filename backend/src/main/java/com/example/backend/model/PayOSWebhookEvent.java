@@ -0,0 +1,82 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Webhook PayOS đã xác thực chữ ký, chờ áp vào payment. Mỗi cặp (OrderCode, Code) chỉ được ghi một lần
+ * nên PayOS gửi lại cùng webhook không bị xử lý hai lần. PayOSWebhookQueue đọc và áp theo thứ tự EventID
+ * trong từng OrderCode.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "PayOSWebhookEvents", uniqueConstraints = {
+    @UniqueConstraint(name = "UX_PayOSWebhookEvents_OrderCode_Code", columnNames = {"OrderCode", "Code"})
+}, indexes = {
+    @Index(name = "IX_PayOSWebhookEvents_Status_NextAttempt", columnList = "Status, NextAttemptAt"),
+    @Index(name = "IX_PayOSWebhookEvents_ClaimToken", columnList = "ClaimToken")
+})
+public class PayOSWebhookEvent implements OutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "EventID")
+    private Long eventId;
+
+    @Column(name = "OrderCode", nullable = false)
+    private Long orderCode;
+
+    // Mã kết quả PayOS: "00" là thanh toán thành công
+    @Column(name = "Code", nullable = false, length = 10)
+    private String code;
+
+    @Column(name = "Description", columnDefinition = "NVARCHAR(255)")
+    private String description;
+
+    // Body webhook gốc như PayOS gửi
+    @Column(name = "Payload", columnDefinition = "NVARCHAR(MAX)", nullable = false)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "Status", nullable = false, length = 20)
+    private WebhookEventStatus status = WebhookEventStatus.PENDING;
+
+    @Column(name = "Attempts", nullable = false)
+    private int attempts;
+
+    // Với PENDING: thời điểm được áp (lại); với PROCESSING: hạn lease của node đang xử lý
+    @Column(name = "NextAttemptAt", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "ClaimToken", length = 36)
+    private String claimToken;
+
+    @Column(name = "LastError", columnDefinition = "NVARCHAR(500)")
+    private String lastError;
+
+    @Column(name = "ReceivedAt", nullable = false)
+    private LocalDateTime receivedAt;
+
+    @Column(name = "ProcessedAt")
+    private LocalDateTime processedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.receivedAt = LocalDateTime.now();
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = this.receivedAt;
+        }
+    }
+
+    public enum WebhookEventStatus {
+        PENDING,     // Chờ áp vào payment
+        PROCESSING,  // Đang được một worker xử lý
+        PROCESSED,   // Đã áp xong
+        FAILED       // Hết số lần thử, chờ replay
+    }
+}
@@ -47,6 +47,10 @@ public class Payment {
     @Column(name = "PayOSLink")
     private String payOSLink;
     
+    // Hạn của PayOSLink (expiredAt gửi cho PayOS); link còn hạn được dùng lại thay vì tạo link mới
+    @Column(name = "LinkExpiresAt")
+    private LocalDateTime linkExpiresAt;
+    
     @Column(name = "Description")
     private String description;
     
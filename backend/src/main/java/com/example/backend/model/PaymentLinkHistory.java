@@ -0,0 +1,43 @@
+package com.example.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Link PayOS cũ của một payment đã được thay bằng link mới (PayOSCode đổi) trong khi PayOS có thể vẫn
+ * nhận thanh toán trên nó. Giữ orderCode cũ trỏ về payment để webhook "00" và đối soát của link cũ
+ * vẫn áp được vào payment; ClosedAt được ghi khi PayOS báo trạng thái cuối của link.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "PaymentLinkHistory", indexes = {
+    @Index(name = "IX_PaymentLinkHistory_PaymentID", columnList = "PaymentID"),
+    @Index(name = "IX_PaymentLinkHistory_ClosedAt_ReplacedAt", columnList = "ClosedAt, ReplacedAt, OrderCode")
+})
+public class PaymentLinkHistory {
+
+    @Id
+    @Column(name = "OrderCode", length = 20)
+    private String orderCode;
+
+    @Column(name = "PaymentID", nullable = false)
+    private Long paymentId;
+
+    @Column(name = "PayOSPaymentId")
+    private String payOSPaymentId;
+
+    @Column(name = "ReplacedAt", nullable = false)
+    private LocalDateTime replacedAt;
+
+    // Trạng thái cuối PayOS báo cho link cũ (PAID, CANCELLED, EXPIRED, LOOKUP_FAILED)
+    @Column(name = "FinalStatus", length = 20)
+    private String finalStatus;
+
+    @Column(name = "ClosedAt")
+    private LocalDateTime closedAt;
+}
@@ -1,13 +1,24 @@
 package com.example.backend.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.backend.dto.ExportDTO;
 import com.example.backend.model.Appointment;
+import com.example.backend.model.Patient;
+
+import jakarta.persistence.QueryHint;
 
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
     @Query("SELECT a FROM Appointment a " +
@@ -32,8 +43,51 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
                                                     @Param("start") LocalDateTime start,
                                                     @Param("end") LocalDateTime end);
 
+    @Query("SELECT COUNT(a) > 0 FROM Appointment a WHERE a.doctor.doctorId = :doctorId AND a.startTime < :endTime AND a.endTime > :startTime")
+    boolean existsOverlap(@Param("doctorId") Long doctorId,
+                          @Param("startTime") LocalDateTime startTime,
+                          @Param("endTime") LocalDateTime endTime);
+
+    // Đặt slot nguyên tử: chỉ thành công khi slot vẫn còn trống tại thời điểm ghi
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Appointment a SET a.patient = :patient, a.status = 'Scheduled', " +
+           "a.notes = COALESCE(:notes, a.notes), a.version = a.version + 1 " +
+           "WHERE a.appointmentId = :appointmentId AND a.patient IS NULL AND a.status = 'Available'")
+    int claimAvailableSlot(@Param("appointmentId") Long appointmentId,
+                           @Param("patient") Patient patient,
+                           @Param("notes") String notes);
+
     List<Appointment> findBySchedule_ScheduleId(Long scheduleId);
 
+    // Appointment sắp diễn ra chưa được nhắc, phân trang theo appointmentId (keyset) và chia shard theo ID
+    @Query("SELECT a FROM Appointment a " +
+           "JOIN FETCH a.patient p " +
+           "LEFT JOIN FETCH p.user " +
+           "LEFT JOIN FETCH a.doctor d " +
+           "LEFT JOIN FETCH d.user " +
+           "WHERE a.startTime > :from AND a.startTime < :until " +
+           "AND a.reminderSentAt IS NULL " +
+           "AND a.appointmentId > :afterId " +
+           "AND MOD(a.appointmentId, :shardCount) = :shardIndex " +
+           "ORDER BY a.appointmentId")
+    List<Appointment> findDueReminders(@Param("from") LocalDateTime from,
+                                       @Param("until") LocalDateTime until,
+                                       @Param("afterId") Long afterId,
+                                       @Param("shardCount") int shardCount,
+                                       @Param("shardIndex") int shardIndex,
+                                       Pageable pageable);
+
+    // Đánh dấu đã nhắc; trả về 0 nếu node/lượt chạy khác đã nhận appointment này
+    @Transactional
+    @Modifying
+    @Query("UPDATE Appointment a SET a.reminderSentAt = :sentAt WHERE a.appointmentId = :appointmentId AND a.reminderSentAt IS NULL")
+    int markReminderSent(@Param("appointmentId") Long appointmentId, @Param("sentAt") LocalDateTime sentAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Appointment a SET a.reminderSentAt = NULL WHERE a.appointmentId = :appointmentId AND a.reminderSentAt = :sentAt")
+    int releaseReminder(@Param("appointmentId") Long appointmentId, @Param("sentAt") LocalDateTime sentAt);
+
     @Query("SELECT a FROM Appointment a " +
            "LEFT JOIN FETCH a.patient p " +
            "LEFT JOIN FETCH p.user " +
@@ -42,6 +96,66 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
            "LEFT JOIN FETCH a.schedule " +
            "WHERE p.patientId = :patientId AND d.doctorId = :doctorId")
     List<Appointment> findByPatientIdAndDoctorId(@Param("patientId") Long patientId, @Param("doctorId") Long doctorId);
-}
 
+    @Query("SELECT a FROM Appointment a " +
+           "LEFT JOIN FETCH a.patient p " +
+           "LEFT JOIN FETCH p.user " +
+           "LEFT JOIN FETCH a.doctor d " +
+           "LEFT JOIN FETCH d.user " +
+           "LEFT JOIN FETCH a.schedule " +
+           "WHERE a.appointmentId IN :ids")
+    List<Appointment> findByAppointmentIdInWithDetails(@Param("ids") Collection<Long> ids);
+
+    // Slot còn trống của một bác sĩ (không nạp toàn bộ lịch sử rồi lọc trong Java)
+    @Query("SELECT a FROM Appointment a " +
+           "LEFT JOIN FETCH a.doctor d " +
+           "LEFT JOIN FETCH d.user " +
+           "LEFT JOIN FETCH a.schedule " +
+           "WHERE d.doctorId = :doctorId AND a.patient IS NULL AND a.status = 'Available' " +
+           "ORDER BY a.startTime")
+    List<Appointment> findOpenSlotsByDoctor(@Param("doctorId") Long doctorId);
+
+    // Dòng slot trống cho DoctorAvailabilityIndex: appointmentId, doctorId, startTime, endTime,
+    // departmentId, specialty, trạng thái bác sĩ; phân trang theo appointmentId (keyset)
+    @Query("SELECT a.appointmentId, d.doctorId, a.startTime, a.endTime, dep.id, d.specialty, d.status " +
+           "FROM Appointment a JOIN a.doctor d LEFT JOIN d.department dep LEFT JOIN a.schedule s " +
+           "WHERE a.patient IS NULL AND a.status = 'Available' AND (s IS NULL OR s.status = 'Available') " +
+           "AND a.startTime >= :start AND a.startTime < :end AND a.appointmentId > :afterId " +
+           "ORDER BY a.appointmentId")
+    List<Object[]> findOpenSlotRows(@Param("start") LocalDateTime start,
+                                    @Param("end") LocalDateTime end,
+                                    @Param("afterId") Long afterId,
+                                    Pageable pageable);
 
+    @Query("SELECT a.appointmentId, d.doctorId, a.startTime, a.endTime, dep.id, d.specialty, d.status " +
+           "FROM Appointment a JOIN a.doctor d LEFT JOIN d.department dep LEFT JOIN a.schedule s " +
+           "WHERE d.doctorId = :doctorId AND a.patient IS NULL AND a.status = 'Available' " +
+           "AND (s IS NULL OR s.status = 'Available') AND a.startTime >= :start AND a.startTime < :end")
+    List<Object[]> findOpenSlotRowsByDoctor(@Param("doctorId") Long doctorId,
+                                            @Param("start") LocalDateTime start,
+                                            @Param("end") LocalDateTime end);
+
+    // Slot trống sớm nhất theo khoa/chuyên khoa khi DoctorAvailabilityIndex không dùng được
+    @Query("SELECT a FROM Appointment a " +
+           "JOIN FETCH a.doctor d " +
+           "LEFT JOIN FETCH d.user " +
+           "LEFT JOIN d.department dep " +
+           "LEFT JOIN a.schedule s " +
+           "WHERE a.patient IS NULL AND a.status = 'Available' AND (s IS NULL OR s.status = 'Available') " +
+           "AND d.status = 'ACTIVE' AND a.startTime >= :start AND a.startTime < :end " +
+           "AND (:departmentId IS NULL OR dep.id = :departmentId) " +
+           "AND (:specialty IS NULL OR LOWER(d.specialty) = :specialty) " +
+           "ORDER BY a.startTime, d.doctorId, a.appointmentId")
+    List<Appointment> findEarliestOpenSlots(@Param("departmentId") Long departmentId,
+                                            @Param("specialty") String specialty,
+                                            @Param("start") LocalDateTime start,
+                                            @Param("end") LocalDateTime end,
+                                            Pageable pageable);
+
+    // Xuất hàng loạt: đọc tuần tự qua con trỏ, không nạp cả bảng vào bộ nhớ
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ExportDTO.FETCH_SIZE))
+    @Query("SELECT new com.example.backend.dto.ExportDTO$AppointmentRow(a.appointmentId, p.patientId, d.doctorId, " +
+           "a.startTime, a.endTime, a.status, a.fee, a.notes) " +
+           "FROM Appointment a JOIN a.doctor d LEFT JOIN a.patient p ORDER BY a.appointmentId")
+    Stream<ExportDTO.AppointmentRow> streamExportRows();
+}
@@ -0,0 +1,33 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.model.BrokerMessage;
+
+public interface BrokerMessageRepository extends JpaRepository<BrokerMessage, Long> {
+
+    @Query("SELECT COALESCE(MAX(b.brokerMessageId), 0) FROM BrokerMessage b")
+    Long findMaxId();
+
+    // Đọc tiếp theo khóa chính (clustered). pendingIds là các ID bị "nhảy cóc" ở lần đọc trước
+    // (transaction insert chưa commit lúc đọc) nên cần đọc lại thêm một thời gian ngắn.
+    @Query("SELECT b FROM BrokerMessage b WHERE b.brokerMessageId > :afterId OR b.brokerMessageId IN :pendingIds " +
+           "ORDER BY b.brokerMessageId")
+    List<BrokerMessage> findNew(@Param("afterId") Long afterId,
+                                @Param("pendingIds") Collection<Long> pendingIds,
+                                Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM BrokerMessage b WHERE b.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
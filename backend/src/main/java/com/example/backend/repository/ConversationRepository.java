@@ -1,9 +1,11 @@
 package com.example.backend.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -31,4 +33,62 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
     @Query("SELECT c FROM Conversation c LEFT JOIN FETCH c.messages WHERE c.patientUser.id = :patientUserId AND c.doctorUser.id = :doctorUserId")
     Optional<Conversation> findByParticipantUserIdsWithMessages(@Param("patientUserId") Long patientUserId,
                                                                 @Param("doctorUserId") Long doctorUserId);
+
+    // Hộp thư: một lần đọc theo index (participant, lastMessageAt), kèm patientId/doctorId
+    // để mapper không phải tra cứu từng cuộc trò chuyện
+    @Query("SELECT c, p.patientId, d.doctorId FROM Conversation c " +
+           "JOIN FETCH c.patientUser pu JOIN FETCH c.doctorUser du " +
+           "LEFT JOIN Patient p ON p.user = pu LEFT JOIN Doctor d ON d.user = du " +
+           "WHERE du.id = :doctorUserId ORDER BY c.lastMessageAt DESC, c.createdAt DESC")
+    List<Object[]> findInboxByDoctorUserId(@Param("doctorUserId") Long doctorUserId);
+
+    @Query("SELECT c, p.patientId, d.doctorId FROM Conversation c " +
+           "JOIN FETCH c.patientUser pu JOIN FETCH c.doctorUser du " +
+           "LEFT JOIN Patient p ON p.user = pu LEFT JOIN Doctor d ON d.user = du " +
+           "WHERE pu.id = :patientUserId ORDER BY c.lastMessageAt DESC, c.createdAt DESC")
+    List<Object[]> findInboxByPatientUserId(@Param("patientUserId") Long patientUserId);
+
+    // Cập nhật tóm tắt khi có tin nhắn mới; tăng số chưa đọc cho bên nhận
+    @Modifying
+    @Query("UPDATE Conversation c SET c.lastMessageId = :messageId, c.lastMessageAt = :sentAt, " +
+           "c.lastMessagePreview = :preview, c.messageCount = c.messageCount + 1, " +
+           "c.patientUnreadCount = c.patientUnreadCount + CASE WHEN c.patientUser.id = :senderId THEN 0 ELSE 1 END, " +
+           "c.doctorUnreadCount = c.doctorUnreadCount + CASE WHEN c.doctorUser.id = :senderId THEN 0 ELSE 1 END " +
+           "WHERE c.conversationId = :conversationId")
+    int recordMessage(@Param("conversationId") Long conversationId,
+                      @Param("messageId") Long messageId,
+                      @Param("sentAt") LocalDateTime sentAt,
+                      @Param("preview") String preview,
+                      @Param("senderId") Long senderId);
+
+    // Tin nhắn cuối bị sửa nội dung
+    @Modifying
+    @Query("UPDATE Conversation c SET c.lastMessagePreview = :preview " +
+           "WHERE c.conversationId = :conversationId AND c.lastMessageId = :messageId")
+    int updateLastMessagePreview(@Param("conversationId") Long conversationId,
+                                 @Param("messageId") Long messageId,
+                                 @Param("preview") String preview);
+
+    // userId đã đọc hết tin của bên kia
+    @Modifying
+    @Query("UPDATE Conversation c SET " +
+           "c.patientUnreadCount = CASE WHEN c.patientUser.id = :userId THEN 0 ELSE c.patientUnreadCount END, " +
+           "c.doctorUnreadCount = CASE WHEN c.doctorUser.id = :userId THEN 0 ELSE c.doctorUnreadCount END " +
+           "WHERE c.conversationId = :conversationId")
+    int resetUnread(@Param("conversationId") Long conversationId, @Param("userId") Long userId);
+
+    // Một tin nhắn của senderId vừa được đọc: giảm số chưa đọc của bên nhận
+    @Modifying
+    @Query("UPDATE Conversation c SET " +
+           "c.patientUnreadCount = CASE WHEN c.patientUser.id <> :senderId AND c.patientUnreadCount > 0 " +
+           "THEN c.patientUnreadCount - 1 ELSE c.patientUnreadCount END, " +
+           "c.doctorUnreadCount = CASE WHEN c.doctorUser.id <> :senderId AND c.doctorUnreadCount > 0 " +
+           "THEN c.doctorUnreadCount - 1 ELSE c.doctorUnreadCount END " +
+           "WHERE c.conversationId = :conversationId")
+    int decrementUnread(@Param("conversationId") Long conversationId, @Param("senderId") Long senderId);
+
+    // Số tin chưa đọc của userId trong từng cuộc trò chuyện mà userId tham gia
+    @Query("SELECT c.conversationId, CASE WHEN c.patientUser.id = :userId THEN c.patientUnreadCount ELSE c.doctorUnreadCount END " +
+           "FROM Conversation c WHERE c.patientUser.id = :userId OR c.doctorUser.id = :userId")
+    List<Object[]> findUnreadCountsByUserId(@Param("userId") Long userId);
 }
@@ -1,9 +1,13 @@
 package com.example.backend.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -66,22 +70,81 @@ public interface DoctorRepository extends JpaRepository<Doctor, Long> {
            "AND d.status = 'ACTIVE' " +
            "ORDER BY u.firstName, u.lastName")
     List<Doctor> findByNameContainingWithUserAndRole(@Param("keyword") String keyword);
-    
+
     /**
-     * Kiểm tra xem user đã có thông tin doctor chưa
+     * Nạp doctors theo danh sách ID (kết quả của PeopleSearchIndex) trong một truy vấn
      */
-    boolean existsByUserId(Long userId);
+    @Query("SELECT d FROM Doctor d " +
+           "LEFT JOIN FETCH d.user u " +
+           "LEFT JOIN FETCH u.role r " +
+           "WHERE d.doctorId IN :ids")
+    List<Doctor> findByDoctorIdInWithUserAndRole(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Nạp doctors (kèm khoa) theo danh sách UserID (BatchLoader) trong một truy vấn
+     */
+    @Query("SELECT d FROM Doctor d LEFT JOIN FETCH d.department WHERE d.user.id IN :userIds")
+    List<Doctor> findByUserIdInWithDepartment(@Param("userIds") Collection<Long> userIds);
     
     /**
-     * Tìm Doctor ID lớn nhất
+     * Kiểm tra xem user đã có thông tin doctor chưa
      */
-    @Query("SELECT MAX(d.doctorId) FROM Doctor d")
-    Optional<Long> findMaxDoctorId();
+    boolean existsByUserId(Long userId);
     
     /**
      * Tìm doctor theo userId
      */
     Optional<Doctor> findByUserId(Long userId);
+
+    /**
+     * DoctorID của user (do BlockIdAllocator cấp, khác UserID)
+     */
+    @Query("SELECT d.doctorId FROM Doctor d WHERE d.user.id = :userId")
+    Optional<Long> findDoctorIdByUserId(@Param("userId") Long userId);
+
+    /**
+     * Cộng dồn thay đổi vào tổng hợp đánh giá của doctor (mọi vế phải đọc giá trị cũ của dòng,
+     * nên hai transaction cùng cập nhật một doctor được DB xếp hàng, không mất cập nhật)
+     */
+    @Modifying
+    @Query("UPDATE Doctor d SET d.ratingSum = d.ratingSum + :sumDelta, " +
+           "d.ratingCount = d.ratingCount + :countDelta, " +
+           "d.rating1Count = d.rating1Count + :delta1, " +
+           "d.rating2Count = d.rating2Count + :delta2, " +
+           "d.rating3Count = d.rating3Count + :delta3, " +
+           "d.rating4Count = d.rating4Count + :delta4, " +
+           "d.rating5Count = d.rating5Count + :delta5, " +
+           "d.averageRating = CASE WHEN d.ratingCount + :countDelta > 0 " +
+           "THEN (d.ratingSum + :sumDelta) * 1.0 / (d.ratingCount + :countDelta) ELSE 0 END " +
+           "WHERE d.doctorId = :doctorId")
+    int adjustRating(@Param("doctorId") Long doctorId,
+                     @Param("sumDelta") long sumDelta,
+                     @Param("countDelta") long countDelta,
+                     @Param("delta1") int delta1,
+                     @Param("delta2") int delta2,
+                     @Param("delta3") int delta3,
+                     @Param("delta4") int delta4,
+                     @Param("delta5") int delta5);
+
+    /**
+     * Bác sĩ đang hoạt động xếp theo điểm trung bình rồi số đánh giá, lọc theo khoa/chuyên khoa (null = tất cả).
+     * Đọc theo IX_Doctors_Department_Rating / IX_Doctors_Rating thay vì AVG trên Reviews
+     */
+    @Query(value = "SELECT d FROM Doctor d " +
+                   "LEFT JOIN FETCH d.user u " +
+                   "LEFT JOIN FETCH u.role r " +
+                   "WHERE d.status = 'ACTIVE' AND d.ratingCount >= :minReviews " +
+                   "AND (:departmentId IS NULL OR d.department.id = :departmentId) " +
+                   "AND (:specialty IS NULL OR d.specialty = :specialty) " +
+                   "ORDER BY d.averageRating DESC, d.ratingCount DESC, d.doctorId",
+           countQuery = "SELECT COUNT(d) FROM Doctor d " +
+                        "WHERE d.status = 'ACTIVE' AND d.ratingCount >= :minReviews " +
+                        "AND (:departmentId IS NULL OR d.department.id = :departmentId) " +
+                        "AND (:specialty IS NULL OR d.specialty = :specialty)")
+    Page<Doctor> findTopRated(@Param("departmentId") Long departmentId,
+                              @Param("specialty") String specialty,
+                              @Param("minReviews") long minReviews,
+                              Pageable pageable);
 }
 
 
@@ -26,4 +26,11 @@ public interface DoctorScheduleRepository extends JpaRepository<DoctorSchedule,
                           @Param("workDate") LocalDate workDate,
                           @Param("startTime") java.time.LocalTime startTime,
                           @Param("endTime") java.time.LocalTime endTime);
+
+    @Query("SELECT COUNT(ds) > 0 FROM DoctorSchedule ds WHERE ds.doctor.doctorId = :doctorId AND ds.workDate = :workDate AND ds.scheduleId <> :excludeScheduleId AND ((:startTime < ds.endTime) AND (:endTime > ds.startTime))")
+    boolean existsOverlapExcluding(@Param("doctorId") Long doctorId,
+                                   @Param("workDate") LocalDate workDate,
+                                   @Param("startTime") java.time.LocalTime startTime,
+                                   @Param("endTime") java.time.LocalTime endTime,
+                                   @Param("excludeScheduleId") Long excludeScheduleId);
 }
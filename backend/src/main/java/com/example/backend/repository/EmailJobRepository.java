@@ -0,0 +1,45 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.model.EmailJob;
+
+public interface EmailJobRepository extends OutboxRepository<EmailJob> {
+
+    @Override
+    @Query("SELECT e.emailJobId FROM EmailJob e WHERE e.status = com.example.backend.model.EmailJob.EmailJobStatus.PENDING " +
+           "AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận job để gửi; job đã bị node khác nhận sẽ không khớp điều kiện PENDING
+    @Override
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailJob e SET e.status = com.example.backend.model.EmailJob.EmailJobStatus.SENDING, " +
+           "e.claimToken = :claimToken, e.nextAttemptAt = :leaseUntil " +
+           "WHERE e.emailJobId IN :ids AND e.status = com.example.backend.model.EmailJob.EmailJobStatus.PENDING")
+    int claim(@Param("ids") List<Long> ids,
+              @Param("claimToken") String claimToken,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Override
+    @Query("SELECT e FROM EmailJob e WHERE e.claimToken = :claimToken ORDER BY e.emailJobId")
+    List<EmailJob> findClaimed(@Param("claimToken") String claimToken);
+
+    // Trả lại các job SENDING đã quá hạn lease (node gửi bị dừng giữa chừng)
+    @Override
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailJob e SET e.status = com.example.backend.model.EmailJob.EmailJobStatus.PENDING, e.claimToken = NULL " +
+           "WHERE e.status = com.example.backend.model.EmailJob.EmailJobStatus.SENDING AND e.nextAttemptAt < :now")
+    int releaseExpiredLeases(@Param("now") LocalDateTime now);
+
+    long countByStatus(EmailJob.EmailJobStatus status);
+}
@@ -0,0 +1,21 @@
+package com.example.backend.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.backend.model.IdSequence;
+
+public interface IdSequenceRepository extends JpaRepository<IdSequence, String> {
+
+    // Giữ dòng bị khóa tới hết transaction, nên hai node không nhận cùng một khối
+    @Modifying
+    @Query("UPDATE IdSequence s SET s.nextValue = s.nextValue + :blockSize WHERE s.sequenceName = :sequenceName")
+    int advance(@Param("sequenceName") String sequenceName, @Param("blockSize") long blockSize);
+
+    @Query("SELECT s.nextValue FROM IdSequence s WHERE s.sequenceName = :sequenceName")
+    Optional<Long> findNextValue(@Param("sequenceName") String sequenceName);
+}
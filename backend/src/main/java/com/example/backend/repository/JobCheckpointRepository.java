@@ -0,0 +1,60 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.model.JobCheckpoint;
+
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+
+    // Nhận lease khi chưa ai giữ hoặc lease cũ đã hết hạn
+    @Transactional
+    @Modifying
+    @Query("UPDATE JobCheckpoint c SET c.leaseOwner = :owner, c.leaseUntil = :leaseUntil, c.updatedAt = :now " +
+           "WHERE c.jobName = :jobName AND (c.leaseUntil IS NULL OR c.leaseUntil < :now)")
+    int acquireLease(@Param("jobName") String jobName,
+                     @Param("owner") String owner,
+                     @Param("now") LocalDateTime now,
+                     @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Lưu cursor và gia hạn lease; trả 0 nếu lease đã thuộc node khác
+    @Transactional
+    @Modifying
+    @Query("UPDATE JobCheckpoint c SET c.cursorCreatedAt = :cursorCreatedAt, c.cursorId = :cursorId, " +
+           "c.leaseUntil = :leaseUntil, c.updatedAt = :now WHERE c.jobName = :jobName AND c.leaseOwner = :owner")
+    int saveProgress(@Param("jobName") String jobName,
+                     @Param("owner") String owner,
+                     @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                     @Param("cursorId") Long cursorId,
+                     @Param("now") LocalDateTime now,
+                     @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Gia hạn lease mà không đổi cursor; trả 0 nếu lease đã thuộc node khác
+    @Transactional
+    @Modifying
+    @Query("UPDATE JobCheckpoint c SET c.leaseUntil = :leaseUntil, c.updatedAt = :now " +
+           "WHERE c.jobName = :jobName AND c.leaseOwner = :owner")
+    int renewLease(@Param("jobName") String jobName,
+                   @Param("owner") String owner,
+                   @Param("now") LocalDateTime now,
+                   @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Đi hết dữ liệu: xóa cursor để lượt sau bắt đầu lại từ đầu
+    @Transactional
+    @Modifying
+    @Query("UPDATE JobCheckpoint c SET c.cursorCreatedAt = NULL, c.cursorId = NULL, c.lastCompletedAt = :now, " +
+           "c.updatedAt = :now WHERE c.jobName = :jobName AND c.leaseOwner = :owner")
+    int markCompleted(@Param("jobName") String jobName,
+                      @Param("owner") String owner,
+                      @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE JobCheckpoint c SET c.leaseOwner = NULL, c.leaseUntil = NULL WHERE c.jobName = :jobName AND c.leaseOwner = :owner")
+    int releaseLease(@Param("jobName") String jobName, @Param("owner") String owner);
+}
@@ -1,14 +1,32 @@
 package com.example.backend.repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.example.backend.dto.ExportDTO;
 import com.example.backend.model.MedicalRecord;
 
+import jakarta.persistence.QueryHint;
+
 @Repository
 public interface MedicalRecordRepository extends JpaRepository<MedicalRecord, Integer> {
     List<MedicalRecord> findByAppointmentAppointmentId(Long appointmentId);
     boolean existsByAppointmentAppointmentId(Long appointmentId);
+
+    @Query("SELECT mr FROM MedicalRecord mr JOIN mr.appointment a WHERE a.patient.patientId = :patientId ORDER BY mr.createdAt DESC")
+    List<MedicalRecord> findByPatientId(@Param("patientId") Long patientId);
+
+    // Xuất hàng loạt: đọc tuần tự qua con trỏ, không nạp cả bảng vào bộ nhớ
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ExportDTO.FETCH_SIZE))
+    @Query("SELECT new com.example.backend.dto.ExportDTO$MedicalRecordRow(mr.recordId, a.appointmentId, p.patientId, " +
+           "d.doctorId, mr.diagnosis, mr.advice, mr.createdAt) " +
+           "FROM MedicalRecord mr JOIN mr.appointment a JOIN a.doctor d LEFT JOIN a.patient p ORDER BY mr.recordId")
+    Stream<ExportDTO.MedicalRecordRow> streamExportRows();
 }
@@ -17,9 +17,6 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT m FROM Message m WHERE m.conversation.conversationId = :conversationId ORDER BY m.sentAt ASC")
     List<Message> findByConversationIdOrderBySentAtAsc(@Param("conversationId") Long conversationId);
     
-    @Query("SELECT m FROM Message m WHERE m.conversation.conversationId = :conversationId ORDER BY m.sentAt DESC")
-    List<Message> findByConversationIdOrderBySentAtDesc(@Param("conversationId") Long conversationId);
-    
     @Query("SELECT m FROM Message m WHERE m.conversation.conversationId = :conversationId ORDER BY m.sentAt ASC")
     Page<Message> findByConversationIdOrderBySentAtAsc(@Param("conversationId") Long conversationId, Pageable pageable);
     
@@ -42,8 +39,9 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("UPDATE Message m SET m.isRead = true WHERE m.conversation.conversationId = :conversationId AND m.sender.id != :userId")
     int markMessagesAsReadByConversationAndUser(@Param("conversationId") Long conversationId, @Param("userId") Long userId);
     
+    // Chỉ trả về 1 khi tin nhắn chuyển từ chưa đọc sang đã đọc
     @Modifying
-    @Query("UPDATE Message m SET m.isRead = true WHERE m.messageId = :messageId")
+    @Query("UPDATE Message m SET m.isRead = true WHERE m.messageId = :messageId AND m.isRead = false")
     int markMessageAsRead(@Param("messageId") Long messageId);
     
     @Query("SELECT COUNT(m) FROM Message m WHERE m.conversation.conversationId = :conversationId")
@@ -52,8 +50,27 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT COUNT(m) FROM Message m WHERE m.sender.id = :senderId")
     Long countBySenderId(@Param("senderId") Long senderId);
     
-    @Query("SELECT m FROM Message m WHERE m.conversation.conversationId = :conversationId ORDER BY m.sentAt DESC")
-    List<Message> findLatestMessageByConversationId(@Param("conversationId") Long conversationId);
+    // Keyset pagination theo (sentAt, messageId), dùng index IX_Messages_Conversation_SentAt_Id.
+    // Chỉ đọc đúng số dòng được trả về thay vì OFFSET / load cả cuộc trò chuyện.
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender WHERE m.conversation.conversationId = :conversationId " +
+           "ORDER BY m.sentAt DESC, m.messageId DESC")
+    List<Message> findLatestByConversationId(@Param("conversationId") Long conversationId, Pageable pageable);
+    
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender WHERE m.conversation.conversationId = :conversationId " +
+           "AND (m.sentAt < :sentAt OR (m.sentAt = :sentAt AND m.messageId < :messageId)) " +
+           "ORDER BY m.sentAt DESC, m.messageId DESC")
+    List<Message> findByConversationIdBefore(@Param("conversationId") Long conversationId,
+                                             @Param("sentAt") LocalDateTime sentAt,
+                                             @Param("messageId") Long messageId,
+                                             Pageable pageable);
+    
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender WHERE m.conversation.conversationId = :conversationId " +
+           "AND (m.sentAt > :sentAt OR (m.sentAt = :sentAt AND m.messageId > :messageId)) " +
+           "ORDER BY m.sentAt ASC, m.messageId ASC")
+    List<Message> findByConversationIdAfter(@Param("conversationId") Long conversationId,
+                                            @Param("sentAt") LocalDateTime sentAt,
+                                            @Param("messageId") Long messageId,
+                                            Pageable pageable);
     
     @Query("SELECT m FROM Message m WHERE m.conversation.conversationId = :conversationId AND m.sentAt BETWEEN :start AND :end ORDER BY m.sentAt ASC")
     List<Message> findByConversationIdAndSentAtBetween(@Param("conversationId") Long conversationId, 
@@ -0,0 +1,42 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.model.OtpEntry;
+
+public interface OtpEntryRepository extends JpaRepository<OtpEntry, String> {
+
+    @Query("SELECT o FROM OtpEntry o WHERE o.entryKey = :entryKey AND o.expiresAt > :now")
+    Optional<OtpEntry> findLive(@Param("entryKey") String entryKey, @Param("now") LocalDateTime now);
+
+    // Trả về 1 cho đúng một request khi nhiều node cùng xóa một entry
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OtpEntry o WHERE o.entryKey = :entryKey")
+    int deleteByKey(@Param("entryKey") String entryKey);
+
+    // Trả về 1 nếu còn lượt thử; các node cùng thử thì UPDATE có điều kiện không cấp quá maxAttempts lượt
+    @Transactional
+    @Modifying
+    @Query("UPDATE OtpEntry o SET o.attempts = o.attempts + 1 " +
+           "WHERE o.entryKey = :entryKey AND o.expiresAt > :now AND o.attempts < :maxAttempts")
+    int incrementAttempts(@Param("entryKey") String entryKey, @Param("now") LocalDateTime now,
+                          @Param("maxAttempts") int maxAttempts);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE OtpEntry o SET o.attempts = 0 WHERE o.entryKey = :entryKey")
+    int resetAttempts(@Param("entryKey") String entryKey);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OtpEntry o WHERE o.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
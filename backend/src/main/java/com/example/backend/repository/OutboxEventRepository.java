@@ -0,0 +1,57 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.model.OutboxEvent;
+
+public interface OutboxEventRepository extends OutboxRepository<OutboxEvent> {
+
+    @Override
+    @Query("SELECT e.eventId FROM OutboxEvent e WHERE e.status = com.example.backend.model.OutboxEvent.OutboxEventStatus.PENDING " +
+           "AND e.nextAttemptAt <= :now ORDER BY e.eventId")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận event để xử lý; event đã bị node khác nhận sẽ không khớp điều kiện PENDING
+    @Override
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = com.example.backend.model.OutboxEvent.OutboxEventStatus.PROCESSING, " +
+           "e.claimToken = :claimToken, e.nextAttemptAt = :leaseUntil " +
+           "WHERE e.eventId IN :ids AND e.status = com.example.backend.model.OutboxEvent.OutboxEventStatus.PENDING")
+    int claim(@Param("ids") List<Long> ids,
+              @Param("claimToken") String claimToken,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Override
+    @Query("SELECT e FROM OutboxEvent e WHERE e.claimToken = :claimToken ORDER BY e.eventId")
+    List<OutboxEvent> findClaimed(@Param("claimToken") String claimToken);
+
+    // Chạy trong transaction của listener để việc đánh dấu và side effect DB commit cùng nhau
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = com.example.backend.model.OutboxEvent.OutboxEventStatus.PROCESSED, " +
+           "e.processedAt = :processedAt, e.claimToken = NULL, e.lastError = NULL WHERE e.eventId = :id")
+    int markProcessed(@Param("id") Long id, @Param("processedAt") LocalDateTime processedAt);
+
+    // Trả lại các event PROCESSING đã quá hạn lease (node xử lý bị dừng giữa chừng)
+    @Override
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = com.example.backend.model.OutboxEvent.OutboxEventStatus.PENDING, e.claimToken = NULL " +
+           "WHERE e.status = com.example.backend.model.OutboxEvent.OutboxEventStatus.PROCESSING AND e.nextAttemptAt < :now")
+    int releaseExpiredLeases(@Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.status = com.example.backend.model.OutboxEvent.OutboxEventStatus.PROCESSED " +
+           "AND e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+
+    long countByStatus(OutboxEvent.OutboxEventStatus status);
+}
@@ -0,0 +1,28 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.NoRepositoryBean;
+
+import com.example.backend.model.OutboxEntry;
+
+/**
+ * Các truy vấn nhận việc chung của một bảng outbox; mỗi repository khai báo lại với @Query của bảng mình.
+ */
+@NoRepositoryBean
+public interface OutboxRepository<T extends OutboxEntry> extends JpaRepository<T, Long> {
+
+    // ID các bản ghi PENDING đã tới hạn, theo thứ tự xử lý
+    List<Long> findDueIds(LocalDateTime now, Pageable pageable);
+
+    // Nhận bản ghi để xử lý; bản ghi đã bị node khác nhận sẽ không khớp điều kiện PENDING
+    int claim(List<Long> ids, String claimToken, LocalDateTime leaseUntil);
+
+    List<T> findClaimed(String claimToken);
+
+    // Trả lại các bản ghi đang xử lý đã quá hạn lease (node xử lý bị dừng giữa chừng)
+    int releaseExpiredLeases(LocalDateTime now);
+}
@@ -1,15 +1,22 @@
 package com.example.backend.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.example.backend.dto.ExportDTO;
 import com.example.backend.model.Patient;
 
+import jakarta.persistence.QueryHint;
+
 /**
  * Repository interface cho Patient entity
  * Chứa các query methods để truy vấn dữ liệu bệnh nhân
@@ -45,6 +52,21 @@ public interface PatientRepository extends JpaRepository<Patient, Long> {
            "AND u.status = 'ACTIVE' " +
            "ORDER BY u.firstName, u.lastName")
     List<Patient> findByNameContainingWithUserAndRole(@Param("keyword") String keyword);
+
+    /**
+     * Nạp patients theo danh sách ID (kết quả của PeopleSearchIndex) trong một truy vấn
+     */
+    @Query("SELECT p FROM Patient p " +
+           "JOIN FETCH p.user u " +
+           "JOIN FETCH u.role r " +
+           "WHERE p.patientId IN :ids")
+    List<Patient> findByPatientIdInWithUserAndRole(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Nạp patients theo danh sách UserID (BatchLoader) trong một truy vấn
+     */
+    @Query("SELECT p FROM Patient p WHERE p.user.id IN :userIds")
+    List<Patient> findByUserIdIn(@Param("userIds") Collection<Long> userIds);
     
     /**
      * Tìm patient theo số bảo hiểm y tế
@@ -70,12 +92,17 @@ public interface PatientRepository extends JpaRepository<Patient, Long> {
      * Kiểm tra xem user đã có thông tin patient chưa
      */
     boolean existsByPatientId(Long patientId);
-    
+
     /**
-     * Tìm Patient ID lớn nhất
+     * Kiểm tra user đã có bản ghi patient chưa (PatientID không còn trùng với UserID)
      */
-    @Query("SELECT MAX(p.patientId) FROM Patient p")
-    Optional<Long> findMaxPatientId();
+    boolean existsByUserId(Long userId);
+
+    /**
+     * PatientID của user (do BlockIdAllocator cấp, khác UserID)
+     */
+    @Query("SELECT p.patientId FROM Patient p WHERE p.user.id = :userId")
+    Optional<Long> findPatientIdByUserId(@Param("userId") Long userId);
     
     /**
      * Tìm patient theo userId với thông tin User và Role
@@ -85,6 +112,11 @@ public interface PatientRepository extends JpaRepository<Patient, Long> {
            "JOIN FETCH u.role r " +
            "WHERE p.user.id = :userId")
     Optional<Patient> findByUserIdWithUserAndRole(@Param("userId") Long userId);
-}
-
 
+    // Xuất hàng loạt: đọc tuần tự qua con trỏ, không nạp cả bảng vào bộ nhớ
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ExportDTO.FETCH_SIZE))
+    @Query("SELECT new com.example.backend.dto.ExportDTO$PatientRow(p.patientId, u.id, u.email, u.firstName, u.lastName, " +
+           "u.phone, p.healthInsuranceNumber, p.medicalHistory, p.createdAt, p.status) " +
+           "FROM Patient p LEFT JOIN p.user u ORDER BY p.patientId")
+    Stream<ExportDTO.PatientRow> streamExportRows();
+}
@@ -0,0 +1,94 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.model.PayOSWebhookEvent;
+
+public interface PayOSWebhookEventRepository extends OutboxRepository<PayOSWebhookEvent> {
+
+    // Chỉ lấy event đứng đầu của mỗi OrderCode: event sau chờ tới khi mọi event trước đã xử lý xong;
+    // event trước FAILED cũng chặn để không áp trạng thái mới rồi replay đè trạng thái cũ lên
+    @Override
+    @Query("SELECT e.eventId FROM PayOSWebhookEvent e WHERE e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PENDING " +
+           "AND e.nextAttemptAt <= :now AND NOT EXISTS (SELECT p.eventId FROM PayOSWebhookEvent p " +
+           "WHERE p.orderCode = e.orderCode AND p.eventId < e.eventId " +
+           "AND p.status <> com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PROCESSED) ORDER BY e.eventId")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận event để xử lý; event đã bị node khác nhận sẽ không khớp điều kiện PENDING
+    @Override
+    @Transactional
+    @Modifying
+    @Query("UPDATE PayOSWebhookEvent e SET e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PROCESSING, " +
+           "e.claimToken = :claimToken, e.nextAttemptAt = :leaseUntil " +
+           "WHERE e.eventId IN :ids AND e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PENDING")
+    int claim(@Param("ids") List<Long> ids,
+              @Param("claimToken") String claimToken,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Override
+    @Query("SELECT e FROM PayOSWebhookEvent e WHERE e.claimToken = :claimToken ORDER BY e.eventId")
+    List<PayOSWebhookEvent> findClaimed(@Param("claimToken") String claimToken);
+
+    // Chạy trong transaction áp webhook để việc đánh dấu và cập nhật payment commit cùng nhau
+    @Modifying
+    @Query("UPDATE PayOSWebhookEvent e SET e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PROCESSED, " +
+           "e.processedAt = :processedAt, e.claimToken = NULL, e.lastError = NULL WHERE e.eventId = :id")
+    int markProcessed(@Param("id") Long id, @Param("processedAt") LocalDateTime processedAt);
+
+    // Ghi lần áp lỗi chỉ khi node này còn giữ event (cùng ClaimToken); lease đã bị trả lại và node khác
+    // nhận thì không khớp, tránh ghi đè trạng thái node kia vừa ghi
+    @Transactional
+    @Modifying
+    @Query("UPDATE PayOSWebhookEvent e SET e.status = :status, e.attempts = :attempts, e.nextAttemptAt = :nextAttemptAt, " +
+           "e.claimToken = NULL, e.lastError = :lastError WHERE e.eventId = :id AND e.claimToken = :claimToken")
+    int recordFailure(@Param("id") Long id,
+                      @Param("claimToken") String claimToken,
+                      @Param("status") PayOSWebhookEvent.WebhookEventStatus status,
+                      @Param("attempts") int attempts,
+                      @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                      @Param("lastError") String lastError);
+
+    // Trả lại các event PROCESSING đã quá hạn lease (node xử lý bị dừng giữa chừng)
+    @Override
+    @Transactional
+    @Modifying
+    @Query("UPDATE PayOSWebhookEvent e SET e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PENDING, e.claimToken = NULL " +
+           "WHERE e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PROCESSING AND e.nextAttemptAt < :now")
+    int releaseExpiredLeases(@Param("now") LocalDateTime now);
+
+    // Đưa event đã xử lý hoặc FAILED về hàng đợi để áp lại
+    @Transactional
+    @Modifying
+    @Query("UPDATE PayOSWebhookEvent e SET e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PENDING, " +
+           "e.attempts = 0, e.nextAttemptAt = :now, e.claimToken = NULL, e.lastError = NULL, e.processedAt = NULL " +
+           "WHERE e.eventId = :id AND e.status IN (com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PROCESSED, " +
+           "com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.FAILED)")
+    int requeue(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PayOSWebhookEvent e SET e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PENDING, " +
+           "e.attempts = 0, e.nextAttemptAt = :now, e.claimToken = NULL, e.lastError = NULL " +
+           "WHERE e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.FAILED")
+    int requeueFailed(@Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PayOSWebhookEvent e WHERE e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PROCESSED " +
+           "AND e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+
+    long countByStatus(PayOSWebhookEvent.WebhookEventStatus status);
+
+    @Query("SELECT MIN(e.receivedAt) FROM PayOSWebhookEvent e " +
+           "WHERE e.status = com.example.backend.model.PayOSWebhookEvent.WebhookEventStatus.PENDING")
+    LocalDateTime findOldestPendingReceivedAt();
+}
@@ -0,0 +1,34 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.dto.PaymentDTO;
+import com.example.backend.model.PaymentLinkHistory;
+
+public interface PaymentLinkHistoryRepository extends JpaRepository<PaymentLinkHistory, String> {
+
+    // Link cũ chưa có trạng thái cuối, theo keyset (ReplacedAt, OrderCode) cho PaymentReconciliationJob
+    @Query("SELECT new com.example.backend.dto.PaymentDTO$ReconcileCandidate(h.paymentId, h.orderCode, h.replacedAt) " +
+           "FROM PaymentLinkHistory h WHERE h.closedAt IS NULL AND h.replacedAt < :olderThan " +
+           "AND (h.replacedAt > :afterReplacedAt OR (h.replacedAt = :afterReplacedAt AND h.orderCode > :afterOrderCode)) " +
+           "ORDER BY h.replacedAt, h.orderCode")
+    List<PaymentDTO.ReconcileCandidate> findOpenSuperseded(@Param("olderThan") LocalDateTime olderThan,
+                                                           @Param("afterReplacedAt") LocalDateTime afterReplacedAt,
+                                                           @Param("afterOrderCode") String afterOrderCode,
+                                                           Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PaymentLinkHistory h SET h.finalStatus = :finalStatus, h.closedAt = :now " +
+           "WHERE h.orderCode = :orderCode AND h.closedAt IS NULL")
+    int close(@Param("orderCode") String orderCode, @Param("finalStatus") String finalStatus,
+              @Param("now") LocalDateTime now);
+}
@@ -1,18 +1,27 @@
 package com.example.backend.repository;
 
+import com.example.backend.dto.ExportDTO;
+import com.example.backend.dto.PaymentDTO;
 import com.example.backend.model.Payment;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
     
     Optional<Payment> findByPayOSPaymentId(String payOSPaymentId);
     
+    // Seek trên UX_Payments_PayOSCode (V8)
     Optional<Payment> findByPayOSCode(String payOSCode);
     
     List<Payment> findByAppointment_AppointmentId(Long appointmentId);
@@ -31,4 +40,22 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
         @Param("startDate") java.time.LocalDateTime startDate,
         @Param("endDate") java.time.LocalDateTime endDate
     );
+
+    // Xuất hàng loạt: đọc tuần tự qua con trỏ, không nạp cả bảng vào bộ nhớ
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ExportDTO.FETCH_SIZE))
+    @Query("SELECT new com.example.backend.dto.ExportDTO$PaymentRow(p.paymentId, a.appointmentId, p.payOSCode, p.amount, " +
+           "p.currency, p.status, p.paymentMethod, p.description, p.createdAt, p.paidAt, p.failureReason) " +
+           "FROM Payment p LEFT JOIN p.appointment a ORDER BY p.paymentId")
+    Stream<ExportDTO.PaymentRow> streamExportRows();
+
+    // Đối soát: payment PENDING đã có link và đủ cũ, keyset sau (afterCreatedAt, afterId) theo IX_Payments_Status_CreatedAt
+    @Query("SELECT new com.example.backend.dto.PaymentDTO$ReconcileCandidate(p.paymentId, p.payOSCode, p.createdAt) " +
+           "FROM Payment p WHERE p.status = com.example.backend.model.Payment.PaymentStatus.PENDING " +
+           "AND p.payOSCode IS NOT NULL AND p.createdAt < :olderThan " +
+           "AND (p.createdAt > :afterCreatedAt OR (p.createdAt = :afterCreatedAt AND p.paymentId > :afterId)) " +
+           "ORDER BY p.createdAt, p.paymentId")
+    List<PaymentDTO.ReconcileCandidate> findReconcileCandidates(@Param("olderThan") LocalDateTime olderThan,
+                                                                @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                                                @Param("afterId") Long afterId,
+                                                                Pageable pageable);
 }
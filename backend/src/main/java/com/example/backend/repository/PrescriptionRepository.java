@@ -3,6 +3,8 @@ package com.example.backend.repository;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.backend.model.Prescription;
@@ -10,4 +12,9 @@ import com.example.backend.model.Prescription;
 @Repository
 public interface PrescriptionRepository extends JpaRepository<Prescription, Integer> {
     List<Prescription> findByMedicalRecordRecordId(Integer recordId);
+
+    // Nạp luôn items để mapper không truy vấn từng đơn thuốc
+    @Query("SELECT p FROM Prescription p LEFT JOIN FETCH p.items JOIN p.medicalRecord mr JOIN mr.appointment a " +
+           "WHERE a.patient.patientId = :patientId ORDER BY p.createdAt DESC")
+    List<Prescription> findByPatientId(@Param("patientId") Long patientId);
 }
@@ -1,11 +1,15 @@
 package com.example.backend.repository;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import jakarta.persistence.LockModeType;
+
 import com.example.backend.model.Review;
 
 public interface ReviewRepository extends JpaRepository<Review, Long> {
@@ -26,4 +30,9 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     Long getReviewCountByDoctor(@Param("doctorId") Long doctorId);
     
     List<Review> findByPatient_PatientIdAndDoctor_DoctorId(Long patientId, Long doctorId);
+
+    // Khóa dòng review khi sửa/ẩn/xóa để hai request không cùng trừ điểm cũ khỏi tổng hợp của bác sĩ
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Review r WHERE r.reviewId = :reviewId")
+    Optional<Review> findByIdForUpdate(@Param("reviewId") Long reviewId);
 }
@@ -1,17 +1,24 @@
 package com.example.backend.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.example.backend.dto.ExportDTO;
 import com.example.backend.model.User;
 
+import jakarta.persistence.QueryHint;
+
 /**
  * Repository interface cho User entity
  * Chứa các query methods để truy vấn dữ liệu người dùng
@@ -104,6 +111,26 @@ public interface UserRepository extends JpaRepository<User, Long> {
            "ORDER BY u.firstName, u.lastName")
     List<User> findByNameContainingWithRoleInfo(@Param("keyword") String keyword);
 
+    /**
+     * Nạp users theo danh sách ID (kết quả của PeopleSearchIndex) trong một truy vấn
+     */
+    @Query("SELECT u FROM User u LEFT JOIN FETCH u.role r WHERE u.id IN :ids")
+    List<User> findByIdInWithRoleInfo(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Dữ liệu dựng PeopleSearchIndex, đọc theo khóa chính từng batch:
+     * [userId, firstName, lastName, email, phone, status, doctorId, doctorStatus, specialty, patientId]
+     */
+    @Query("SELECT u.id, u.firstName, u.lastName, u.email, u.phone, u.status, d.doctorId, d.status, d.specialty, p.patientId " +
+           "FROM User u LEFT JOIN Doctor d ON d.user = u LEFT JOIN Patient p ON p.user = u " +
+           "WHERE u.id > :afterId ORDER BY u.id")
+    List<Object[]> findSearchRows(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT u.id, u.firstName, u.lastName, u.email, u.phone, u.status, d.doctorId, d.status, d.specialty, p.patientId " +
+           "FROM User u LEFT JOIN Doctor d ON d.user = u LEFT JOIN Patient p ON p.user = u " +
+           "WHERE u.id = :userId")
+    List<Object[]> findSearchRowsByUserId(@Param("userId") Long userId);
+
     /**
      * Lấy users có role Doctor
      */
@@ -124,6 +151,11 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * Tìm user theo password hash
      */
     List<User> findByPasswordHash(String passwordHash);
-}
-
 
+    // Xuất hàng loạt: đọc tuần tự qua con trỏ, không nạp cả bảng vào bộ nhớ
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ExportDTO.FETCH_SIZE))
+    @Query("SELECT new com.example.backend.dto.ExportDTO$UserRow(u.id, u.email, u.firstName, u.lastName, u.phone, " +
+           "u.gender, u.dateOfBirth, u.address, u.createdAt, u.status, r.name, p.patientId, p.healthInsuranceNumber, p.status) " +
+           "FROM User u JOIN u.role r LEFT JOIN Patient p ON p.user = u ORDER BY u.id")
+    Stream<ExportDTO.UserRow> streamExportRows();
+}
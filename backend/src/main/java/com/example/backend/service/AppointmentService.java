@@ -1,12 +1,25 @@
 package com.example.backend.service;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.backend.dto.AppointmentDTO;
+import com.example.backend.event.DomainEvent;
+import com.example.backend.event.DomainEventPublisher;
+import com.example.backend.exception.ConflictException;
 import com.example.backend.exception.NotFoundException;
 import com.example.backend.mapper.AppointmentMapper;
 import com.example.backend.model.Appointment;
@@ -17,7 +30,6 @@ import com.example.backend.repository.AppointmentRepository;
 import com.example.backend.repository.DoctorRepository;
 import com.example.backend.repository.DoctorScheduleRepository;
 import com.example.backend.repository.PatientRepository;
-import com.example.backend.service.EmailService;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -33,7 +45,14 @@ public class AppointmentService {
     private final DoctorRepository doctorRepository;
     private final DoctorScheduleRepository doctorScheduleRepository;
     private final AppointmentMapper appointmentMapper;
-    private final EmailService emailService;
+    private final DomainEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final DoctorAvailabilityIndex availabilityIndex;
+
+    private static final int MAX_BOOKING_ATTEMPTS = 3;
+    private static final int DEFAULT_SEARCH_DAYS = 14;
+    private static final int DEFAULT_SLOT_LIMIT = 10;
+    private static final int MAX_SLOT_LIMIT = 100;
 
     public AppointmentDTO.Response create(AppointmentDTO.Create dto) {
         // Cho phép patient null khi bác sĩ tạo slot trống
@@ -91,37 +110,20 @@ public class AppointmentService {
         
         // =====================================================================
         // Validate: Không cho phép tạo khung giờ trùng lặp
-        // Kiểm tra xem đã có appointment nào của bác sĩ này trong khoảng thời gian này chưa
+        // Kiểm tra trên DB (seek theo IX_Appointments_Doctor_Start_End) thay vì nạp toàn bộ
+        // lịch sử appointment của bác sĩ; thấy cả slot qua nửa đêm và slot do node khác vừa tạo
         // =====================================================================
-        List<Appointment> existingAppointments = appointmentRepository.findByDoctor_DoctorId(dto.getDoctorId());
-        for (Appointment existing : existingAppointments) {
-            // Kiểm tra overlap: 
-            // Appointment mới overlap nếu startTime < existing.endTime VÀ endTime > existing.startTime
-            if (dto.getStartTime().isBefore(existing.getEndTime()) && 
-                dto.getEndTime().isAfter(existing.getStartTime())) {
-                throw new IllegalStateException(
-                    String.format("Khung giờ bị trùng với appointment đã tồn tại (ID: %d) từ %s đến %s",
-                        existing.getAppointmentId(),
-                        existing.getStartTime(),
-                        existing.getEndTime()
-                    )
-                );
-            }
+        if (appointmentRepository.existsOverlap(dto.getDoctorId(), dto.getStartTime(), dto.getEndTime())) {
+            throw new IllegalStateException("Khung giờ bị trùng với appointment đã tồn tại");
         }
 
         Appointment entity = appointmentMapper.createDTOToEntity(dto, patient, doctor, schedule);
         Appointment saved = appointmentRepository.save(entity);
+        availabilityIndex.reloadDay(doctor.getDoctorId(), saved.getStartTime().toLocalDate());
 
         return appointmentMapper.entityToResponseDTO(saved);
     }
 
-    // Helper to send notification emails for appointment events
-    private void notifyPatient(Appointment appointment, String subject, String body) {
-        if (appointment == null || appointment.getPatient() == null || appointment.getPatient().getUser() == null) return;
-        String email = appointment.getPatient().getUser().getEmail();
-        emailService.sendSimpleEmail(email, subject, body);
-    }
-
     @Transactional(readOnly = true)
     public List<AppointmentDTO.Response> getAll() {
         List<Appointment> entities = appointmentRepository.findAll();
@@ -151,19 +153,104 @@ public class AppointmentService {
 
     @Transactional(readOnly = true)
     public List<AppointmentDTO.Response> getAvailableSlotsByDoctor(Long doctorId) {
-        List<Appointment> list = appointmentRepository.findByDoctor_DoctorId(doctorId);
-        // Lọc các appointment có patient = null và status = "Available"
-        return list.stream()
-                .filter(apt -> apt.getPatient() == null && "Available".equals(apt.getStatus()))
-                .map(appointmentMapper::entityToResponseDTO)
-                .toList();
+        // Lọc patient = null và status = "Available" ngay trên DB
+        List<Appointment> list = appointmentRepository.findOpenSlotsByDoctor(doctorId);
+        return list.stream().map(appointmentMapper::entityToResponseDTO).toList();
+    }
+
+    /**
+     * Các slot trống sớm nhất của bác sĩ thuộc khoa và/hoặc chuyên khoa trong khoảng ngày [fromDate, toDate].
+     * Mặc định từ hôm nay, trong DEFAULT_SEARCH_DAYS ngày, tối đa DEFAULT_SLOT_LIMIT slot.
+     */
+    @Transactional(readOnly = true)
+    public List<AppointmentDTO.Response> findEarliestSlots(Long departmentId, String specialty,
+                                                           LocalDate fromDate, LocalDate toDate, Integer limit) {
+        String wantedSpecialty = (specialty != null && !specialty.isBlank()) ? specialty.trim() : null;
+        if (departmentId == null && wantedSpecialty == null) {
+            throw new IllegalArgumentException("Vui lòng chọn khoa hoặc chuyên khoa");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate start = (fromDate == null || fromDate.isBefore(now.toLocalDate())) ? now.toLocalDate() : fromDate;
+        LocalDate end = toDate != null ? toDate : start.plusDays(DEFAULT_SEARCH_DAYS - 1L);
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("Ngày kết thúc phải sau ngày bắt đầu");
+        }
+        LocalDateTime from = start.equals(now.toLocalDate()) ? now : start.atStartOfDay();
+        int size = limit == null ? DEFAULT_SLOT_LIMIT : Math.max(1, Math.min(limit, MAX_SLOT_LIMIT));
+
+        Optional<List<Long>> ranked = availabilityIndex.findEarliest(departmentId, wantedSpecialty, from, end, size);
+        List<Appointment> slots = ranked.isPresent()
+                ? openSlotsInRankOrder(ranked.get(), departmentId, wantedSpecialty)
+                : null;
+        if (slots == null) {
+            slots = appointmentRepository.findEarliestOpenSlots(departmentId,
+                    wantedSpecialty != null ? wantedSpecialty.toLowerCase(Locale.ROOT) : null,
+                    from, end.plusDays(1).atStartOfDay(), PageRequest.of(0, size));
+        }
+        return slots.stream().map(appointmentMapper::entityToResponseDTO).toList();
+    }
+
+    /**
+     * Nạp các slot index tìm được và kiểm tra lại với DB: index của node này có thể chưa biết slot vừa
+     * được đặt hoặc đổi ở node khác. Có slot không còn trống thì gỡ khỏi index và trả về null để
+     * service dùng truy vấn DB cho lần tìm này.
+     */
+    private List<Appointment> openSlotsInRankOrder(List<Long> ids, Long departmentId, String specialty) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Appointment> slots = RankedIds.inRankOrder(ids,
+                appointmentRepository.findByAppointmentIdInWithDetails(ids), Appointment::getAppointmentId);
+        Set<Long> open = slots.stream()
+                .filter(slot -> isOpenSlot(slot, departmentId, specialty))
+                .map(Appointment::getAppointmentId)
+                .collect(Collectors.toSet());
+        if (open.size() == ids.size()) {
+            return slots;
+        }
+        ids.stream().filter(id -> !open.contains(id)).forEach(availabilityIndex::remove);
+        log.debug("Availability index returned {} stale slots, falling back to DB", ids.size() - open.size());
+        return null;
+    }
+
+    // Cùng điều kiện với AppointmentRepository.findEarliestOpenSlots
+    private static boolean isOpenSlot(Appointment slot, Long departmentId, String specialty) {
+        Doctor doctor = slot.getDoctor();
+        DoctorSchedule schedule = slot.getSchedule();
+        return slot.getPatient() == null
+                && "Available".equals(slot.getStatus())
+                && (schedule == null || "Available".equals(schedule.getStatus()))
+                && doctor != null && "ACTIVE".equals(doctor.getStatus())
+                && (departmentId == null || (doctor.getDepartment() != null && departmentId.equals(doctor.getDepartment().getId())))
+                && (specialty == null || specialty.equalsIgnoreCase(doctor.getSpecialty()));
     }
 
+    /**
+     * Đặt slot bằng một câu UPDATE có điều kiện (patient IS NULL AND status = 'Available'),
+     * nên khi nhiều bệnh nhân cùng đặt một slot chỉ đúng một người thắng. Mỗi lần thử chạy
+     * trong transaction riêng và được thử lại có giới hạn khi DB báo lỗi lock/deadlock.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public AppointmentDTO.Response bookAppointment(Long appointmentId, Long patientId, String notes) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> doBookAppointment(appointmentId, patientId, notes));
+            } catch (ConcurrencyFailureException ex) {
+                if (attempt >= MAX_BOOKING_ATTEMPTS) {
+                    log.warn("Booking appointment {} failed after {} attempts: {}", appointmentId, attempt, ex.getMessage());
+                    throw new ConflictException("Khung giờ đang được nhiều người đặt, vui lòng thử lại");
+                }
+                log.debug("Retrying booking of appointment {} (attempt {}): {}", appointmentId, attempt, ex.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    private AppointmentDTO.Response doBookAppointment(Long appointmentId, Long patientId, String notes) {
         Appointment entity = appointmentRepository.findById(appointmentId)
                 .orElseThrow(() -> new NotFoundException("Không tìm thấy cuộc hẹn với ID: " + appointmentId));
         
-        // Kiểm tra appointment còn available không
+        // Kiểm tra nhanh trước khi ghi; quyết định cuối cùng nằm ở câu UPDATE có điều kiện
         if (entity.getPatient() != null) {
             throw new IllegalStateException("Khung giờ này đã được đặt");
         }
@@ -171,58 +258,44 @@ public class AppointmentService {
             throw new IllegalStateException("Khung giờ này không còn khả dụng");
         }
         
-        // Tìm patient
-        log.info("🔍 Searching for patient with ID: {}", patientId);
-        Optional<Patient> patientOpt = patientRepository.findById(patientId);
-        if (patientOpt.isPresent()) {
-            log.info("✅ Found patient: {}", patientOpt.get().getPatientId());
-        } else {
-            log.error("❌ No patient found with ID: {}", patientId);
-            // Debug: List all patients
-            List<Patient> allPatients = patientRepository.findAll();
-            log.info("📊 Total patients in database: {}", allPatients.size());
-            for (Patient p : allPatients) {
-                log.info("👤 Patient ID: {}", p.getPatientId());
-            }
-        }
-        Patient patient = patientOpt
+        Patient patient = patientRepository.findById(patientId)
                 .orElseThrow(() -> new NotFoundException("Không tìm thấy bệnh nhân với ID: " + patientId));
         
-        // Cập nhật appointment
-        entity.setPatient(patient);
-        entity.setStatus("Scheduled");
-        if (notes != null && !notes.trim().isEmpty()) {
-            entity.setNotes(notes);
+        String bookingNotes = (notes != null && !notes.trim().isEmpty()) ? notes : null;
+        int claimed = appointmentRepository.claimAvailableSlot(appointmentId, patient, bookingNotes);
+        if (claimed == 0) {
+            // Một request khác đã đặt slot này giữa lúc đọc và lúc ghi
+            throw new IllegalStateException("Khung giờ này đã được đặt");
         }
         
-        Appointment saved = appointmentRepository.save(entity);
+        Appointment saved = appointmentRepository.findById(appointmentId)
+                .orElseThrow(() -> new NotFoundException("Không tìm thấy cuộc hẹn với ID: " + appointmentId));
         
-        // Gửi email thông báo
-        try {
-            String subject = "Đặt lịch khám thành công";
-            String body = "Bạn đã đặt lịch khám thành công vào " + saved.getStartTime() + 
-                         " với bác sĩ " + saved.getDoctor().getUser().getFirstName() + " " + 
-                         saved.getDoctor().getUser().getLastName();
-            notifyPatient(saved, subject, body);
-        } catch (Exception ex) {
-            // ignore email failures
-        }
+        // Email thông báo được gửi bởi AppointmentEventListener sau khi commit
+        eventPublisher.publish(new DomainEvent.AppointmentBooked(appointmentId));
+        availabilityIndex.remove(appointmentId);
         
         return appointmentMapper.entityToResponseDTO(saved);
     }
 
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * attempt);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("Khung giờ đang được nhiều người đặt, vui lòng thử lại");
+        }
+    }
+
     public AppointmentDTO.Response update(Long appointmentId, AppointmentDTO.Update dto) {
         Appointment entity = appointmentRepository.findById(appointmentId)
                 .orElseThrow(() -> new NotFoundException("Không tìm thấy cuộc hẹn với ID: " + appointmentId));
         appointmentMapper.applyUpdateToEntity(entity, dto);
         Appointment saved = appointmentRepository.save(entity);
-        try {
-            String subject = "Lịch khám đã được cập nhật";
-            String body = "Lịch khám của bạn đã được cập nhật. Vui lòng kiểm tra chi tiết trong ứng dụng.";
-            notifyPatient(saved, subject, body);
-        } catch (Exception ex) {
-            // swallow - email failures shouldn't prevent update
-        }
+        // Giờ có thể đã đổi sang ngày khác: gỡ slot cũ rồi nạp lại ngày mới
+        availabilityIndex.remove(appointmentId);
+        availabilityIndex.reloadDay(saved.getDoctor().getDoctorId(), saved.getStartTime().toLocalDate());
+        eventPublisher.publish(new DomainEvent.AppointmentUpdated(appointmentId));
         return appointmentMapper.entityToResponseDTO(saved);
     }
 
@@ -231,6 +304,7 @@ public class AppointmentService {
             throw new NotFoundException("Không tìm thấy cuộc hẹn với ID: " + appointmentId);
         }
         appointmentRepository.deleteById(appointmentId);
+        availabilityIndex.remove(appointmentId);
     }
 
     public AppointmentDTO.Response cancelAppointment(Long appointmentId) {
@@ -247,13 +321,9 @@ public class AppointmentService {
         }
         
         Appointment saved = appointmentRepository.save(entity);
-        try {
-            String subject = "Lịch khám đã bị hủy";
-            String body = "Lịch khám của bạn đã bị hủy. Vui lòng liên hệ nếu cần đặt lại.";
-            notifyPatient(saved, subject, body);
-        } catch (Exception ex) {
-            // ignore
-        }
+        // Schedule được mở lại nên các slot khác trong ngày có thể trống trở lại
+        availabilityIndex.reloadDay(saved.getDoctor().getDoctorId(), saved.getStartTime().toLocalDate());
+        eventPublisher.publish(new DomainEvent.AppointmentCancelled(appointmentId));
         return appointmentMapper.entityToResponseDTO(saved);
     }
 
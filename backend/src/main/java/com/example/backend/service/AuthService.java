@@ -1,6 +1,7 @@
 package com.example.backend.service;
 
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -41,6 +42,8 @@ public class AuthService {
     private final EmailOtpService emailOtpService;
     private final EmailService emailService;
     private final PatientService patientService;
+    private final JwtService jwtService;
+    private final BlockIdAllocator idAllocator;
 
     public AuthDTO.LoginResponse login(AuthDTO.LoginRequest loginRequest) {
         try {
@@ -57,18 +60,32 @@ public class AuthService {
                 return new AuthDTO.LoginResponse("Mật khẩu không chính xác", false, null, null);
             }
 
-            // Chuyển đổi sang DTO
-            UserDTO.Response userResponse = userMapper.entityToResponseDTO(user);
+            // Cost BCrypt trong cấu hình đã đổi: băm lại bằng mật khẩu vừa xác thực
+            if (passwordEncoder.upgradeEncoding(user.getPasswordHash())) {
+                user.setPasswordHash(passwordEncoder.encode(loginRequest.getPassword()));
+                userRepository.save(user);
+            }
 
-            return new AuthDTO.LoginResponse("Đăng nhập thành công", true, userResponse, null);
+            return loginSuccess("Đăng nhập thành công", user);
 
         } catch (NotFoundException e) {
             return new AuthDTO.LoginResponse("Email hoặc mật khẩu không chính xác", false, null, null);
+        } catch (RejectedExecutionException e) {
+            // Để GlobalExceptionHandler trả 503
+            throw e;
         } catch (Exception e) {
             return new AuthDTO.LoginResponse("Có lỗi xảy ra trong quá trình đăng nhập", false, null, null);
         }
     }
 
+    // Kèm patientId/doctorId vì client không còn suy ra được từ user.id (ID do BlockIdAllocator cấp)
+    private AuthDTO.LoginResponse loginSuccess(String message, User user) {
+        UserDTO.Response userResponse = userMapper.entityToResponseDTO(user);
+        Long patientId = patientRepository.findPatientIdByUserId(user.getId()).orElse(null);
+        Long doctorId = doctorRepository.findDoctorIdByUserId(user.getId()).orElse(null);
+        return new AuthDTO.LoginResponse(message, true, userResponse, jwtService.issueToken(user), patientId, doctorId);
+    }
+
     public AuthDTO.RegisterResponse register(AuthDTO.RegisterRequest registerRequest) {
         try {
             // Kiểm tra email đã tồn tại
@@ -144,7 +161,7 @@ public class AuthService {
     private void createDoctor(User user, AuthDTO.RegisterRequest request) {
         try {
             Doctor doctor = new Doctor();
-            doctor.setDoctorId(user.getId()); // Set doctorId = userId
+            doctor.setDoctorId(idAllocator.next(BlockIdAllocator.Sequence.DOCTOR));
             doctor.setUser(user);
             doctor.setSpecialty(request.getSpecialty() != null ? request.getSpecialty() : "Chưa xác định");
             doctor.setBio(request.getBio() != null ? request.getBio() : "Chưa có thông tin");
@@ -166,7 +183,7 @@ public class AuthService {
             
             doctor.setDepartment(department);
             doctorRepository.save(doctor);
-            System.out.println("✅ Created Doctor for user: " + user.getEmail() + " with ID: " + user.getId());
+            System.out.println("✅ Created Doctor for user: " + user.getEmail() + " with ID: " + doctor.getDoctorId());
         } catch (Exception e) {
             System.err.println("❌ Error creating Doctor: " + e.getMessage());
             e.printStackTrace();
@@ -177,12 +194,12 @@ public class AuthService {
     private void createPatient(User user, AuthDTO.RegisterRequest request) {
         try {
             Patient patient = new Patient();
-            patient.setPatientId(user.getId()); // Set patientId = userId
+            patient.setPatientId(idAllocator.next(BlockIdAllocator.Sequence.PATIENT));
             patient.setUser(user);
             patient.setMedicalHistory(request.getMedicalHistory() != null ? request.getMedicalHistory() : "Chưa có thông tin");
             
             patientRepository.save(patient);
-            System.out.println("✅ Created Patient for user: " + user.getEmail() + " with ID: " + user.getId());
+            System.out.println("✅ Created Patient for user: " + user.getEmail() + " with ID: " + patient.getPatientId());
         } catch (Exception e) {
             System.err.println("❌ Error creating Patient: " + e.getMessage());
             e.printStackTrace();
@@ -192,17 +209,11 @@ public class AuthService {
 
     public AuthDTO.LogoutResponse logout(AuthDTO.LogoutRequest logoutRequest) {
         try {
-            // Hiện tại chỉ trả về success
-            // Sau này sẽ implement:
-            // 1. Validate JWT token
-            // 2. Add token to blacklist
-            // 3. Clear session if any
-            
+            // Thu hồi token tới khi hết hạn để filter từ chối các request sau
             if (logoutRequest != null && logoutRequest.getToken() != null) {
-                // TODO: Implement token invalidation
-                System.out.println("DEBUG: Invalidating token: " + logoutRequest.getToken());
+                jwtService.revoke(logoutRequest.getToken());
             }
-            
+
             return new AuthDTO.LogoutResponse("Đăng xuất thành công", true);
             
         } catch (Exception e) {
@@ -405,10 +416,10 @@ public class AuthService {
                 }
             }
 
-            UserDTO.Response userResponse = userMapper.entityToResponseDTO(user);
+            AuthDTO.LoginResponse response = loginSuccess("Đăng nhập thành công (Google)", user);
             System.out.println("DEBUG OAuth: Login successful for user = " + user.getEmail());
-            System.out.println("DEBUG OAuth: UserResponse avatarUrl = '" + userResponse.getAvatarUrl() + "'");
-            return new AuthDTO.LoginResponse("Đăng nhập thành công (Google)", true, userResponse, null);
+            System.out.println("DEBUG OAuth: UserResponse avatarUrl = '" + response.getUser().getAvatarUrl() + "'");
+            return response;
         } catch (Exception e) {
             System.err.println("ERROR OAuth: " + e.getMessage());
             e.printStackTrace();
@@ -0,0 +1,165 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.example.backend.model.Appointment;
+import com.example.backend.model.Doctor;
+import com.example.backend.model.Patient;
+import com.example.backend.model.User;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.DoctorRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.UserRepository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Nạp liên kết theo lô kiểu DataLoader để mapper không truy vấn từng phần tử trong danh sách.
+ *
+ * Mapper gom các khóa cần dùng của cả danh sách rồi gọi loadAll: các khóa chưa có được nạp bằng một
+ * truy vấn IN cho mỗi loại (chia lô IN_CHUNK_SIZE khóa vì SQL Server giới hạn 2100 tham số), kết quả
+ * (kể cả khóa không tồn tại) được nhớ trong request hiện tại. Ngoài request HTTP (scheduler, thread nền)
+ * mỗi lần gọi dùng bộ nhớ riêng. Entity nạp ở đây nằm trong persistence context, nên proxy lazy cùng ID
+ * (vd. patient.getUser()) được khởi tạo từ context mà không phát sinh truy vấn.
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchLoader {
+
+    /**
+     * Loại liên kết được nạp theo lô; khóa luôn là ID kiểu Long.
+     */
+    public static final class Key<V> {
+        private final String name;
+
+        private Key(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // User (kèm role) theo UserID
+    public static final Key<User> USER = new Key<>("user");
+    // Patient theo UserID
+    public static final Key<Patient> PATIENT_BY_USER = new Key<>("patientByUser");
+    // Doctor (kèm khoa) theo UserID
+    public static final Key<Doctor> DOCTOR_BY_USER = new Key<>("doctorByUser");
+    // Appointment (kèm patient, doctor, user của hai bên, schedule) theo AppointmentID
+    public static final Key<Appointment> APPOINTMENT = new Key<>("appointment");
+
+    static final int IN_CHUNK_SIZE = 1000;
+    private static final String CONTEXT_ATTRIBUTE = BatchLoader.class.getName() + ".context";
+    private static final Object MISSING = new Object();
+
+    private final UserRepository userRepository;
+    private final PatientRepository patientRepository;
+    private final DoctorRepository doctorRepository;
+    private final AppointmentRepository appointmentRepository;
+
+    /**
+     * Nạp các khóa chưa có trong bộ nhớ request; trả về map khóa -> giá trị, bỏ qua khóa không tồn tại.
+     */
+    public <V> Map<Long, V> loadAll(Key<V> key, Collection<Long> ids) {
+        Map<Long, Object> memo = memo(key);
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id != null && !memo.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<Long> pending = new ArrayList<>(missing);
+            for (int from = 0; from < pending.size(); from += IN_CHUNK_SIZE) {
+                List<Long> chunk = pending.subList(from, Math.min(from + IN_CHUNK_SIZE, pending.size()));
+                fetch(key, chunk).forEach(memo::put);
+            }
+            missing.forEach(id -> memo.putIfAbsent(id, MISSING));
+        }
+
+        Map<Long, V> result = new HashMap<>();
+        for (Long id : ids) {
+            Object value = id != null ? memo.get(id) : null;
+            if (value != null && value != MISSING) {
+                @SuppressWarnings("unchecked")
+                V typed = (V) value;
+                result.put(id, typed);
+            }
+        }
+        return result;
+    }
+
+    public <V> V load(Key<V> key, Long id) {
+        return id != null ? loadAll(key, List.of(id)).get(id) : null;
+    }
+
+    /**
+     * Lấy khóa từ từng phần tử, bỏ null và trùng lặp.
+     */
+    public static <T> Set<Long> ids(Collection<T> items, Function<T, Long> idOf) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (T item : items) {
+            Long id = item != null ? idOf.apply(item) : null;
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private Map<Long, ?> fetch(Key<?> key, List<Long> ids) {
+        if (key == USER) {
+            return index(userRepository.findByIdInWithRoleInfo(ids), User::getId);
+        }
+        if (key == PATIENT_BY_USER) {
+            return index(patientRepository.findByUserIdIn(ids), patient -> patient.getUser().getId());
+        }
+        if (key == DOCTOR_BY_USER) {
+            return index(doctorRepository.findByUserIdInWithDepartment(ids), doctor -> doctor.getUser().getId());
+        }
+        if (key == APPOINTMENT) {
+            return index(appointmentRepository.findByAppointmentIdInWithDetails(ids), Appointment::getAppointmentId);
+        }
+        throw new IllegalArgumentException("Không hỗ trợ nạp theo lô: " + key);
+    }
+
+    private static <T> Map<Long, T> index(List<T> rows, Function<T, Long> idOf) {
+        Map<Long, T> byId = new HashMap<>();
+        for (T row : rows) {
+            byId.putIfAbsent(idOf.apply(row), row);
+        }
+        return byId;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Object> memo(Key<?> key) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return new HashMap<>();
+        }
+        // Thuộc tính request chỉ gắn với thread đang xử lý request
+        Map<Key<?>, Map<Long, Object>> context =
+                (Map<Key<?>, Map<Long, Object>>) attributes.getAttribute(CONTEXT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (context == null) {
+            context = new ConcurrentHashMap<>();
+            attributes.setAttribute(CONTEXT_ATTRIBUTE, context, RequestAttributes.SCOPE_REQUEST);
+        }
+        return context.computeIfAbsent(Objects.requireNonNull(key), k -> new ConcurrentHashMap<>());
+    }
+}
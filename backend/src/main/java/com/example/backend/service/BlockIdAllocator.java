@@ -0,0 +1,145 @@
+package com.example.backend.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.backend.model.IdSequence;
+import com.example.backend.repository.IdSequenceRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cấp ID cho các bảng tự gán khóa (Doctors, Patients) theo kiểu pooled block thay cho MAX(id) + 1.
+ *
+ * Mỗi node giữ một khối id-allocator.block-size ID bằng cách tăng NextValue trong bảng IdSequences
+ * (transaction riêng, chỉ khóa dòng trong lúc tăng) rồi cấp các ID trong khối bằng AtomicLong,
+ * không khóa và không truy vấn DB. Chỉ thread lấy hết khối mới vào khóa để giữ khối kế tiếp.
+ * Lần đầu dùng một dãy, NextValue được khởi tạo từ MAX(id) hiện có. ID trong khối chưa dùng
+ * hết khi node dừng sẽ bị bỏ qua (có khoảng trống), không bao giờ bị cấp trùng.
+ */
+@Component
+@Slf4j
+public class BlockIdAllocator {
+
+    public enum Sequence {
+        DOCTOR("SELECT MAX(d.doctorId) FROM Doctor d"),
+        PATIENT("SELECT MAX(p.patientId) FROM Patient p");
+
+        private final String maxIdQuery;
+
+        Sequence(String maxIdQuery) {
+            this.maxIdQuery = maxIdQuery;
+        }
+    }
+
+    private static final int MAX_INIT_ATTEMPTS = 3;
+
+    private final IdSequenceRepository idSequenceRepository;
+    private final TransactionTemplate requiresNew;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${id-allocator.block-size:50}")
+    private int blockSize;
+
+    private final Map<Sequence, Block> blocks = new ConcurrentHashMap<>();
+    private final Map<Sequence, ReentrantLock> refillLocks = new ConcurrentHashMap<>();
+
+    public BlockIdAllocator(IdSequenceRepository idSequenceRepository, PlatformTransactionManager transactionManager) {
+        this.idSequenceRepository = idSequenceRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Khối [next, limit) mà node này đang giữ.
+     */
+    private static final class Block {
+        private final AtomicLong next;
+        private final long limit;
+
+        Block(long start, long limit) {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+
+        // -1 khi khối đã hết
+        long take() {
+            long id = next.getAndIncrement();
+            return id < limit ? id : -1;
+        }
+    }
+
+    public Long next(Sequence sequence) {
+        Block block = blocks.get(sequence);
+        if (block != null) {
+            long id = block.take();
+            if (id >= 0) {
+                return id;
+            }
+        }
+        return refill(sequence);
+    }
+
+    private long refill(Sequence sequence) {
+        ReentrantLock lock = refillLocks.computeIfAbsent(sequence, s -> new ReentrantLock());
+        lock.lock();
+        try {
+            // Thread khác có thể vừa giữ khối mới trong lúc chờ khóa
+            Block current = blocks.get(sequence);
+            if (current != null) {
+                long id = current.take();
+                if (id >= 0) {
+                    return id;
+                }
+            }
+            Block fresh = reserve(sequence);
+            long id = fresh.take();
+            blocks.put(sequence, fresh);
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Block reserve(Sequence sequence) {
+        String name = sequence.name();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Long limit = requiresNew.execute(status -> {
+                    if (idSequenceRepository.advance(name, blockSize) == 0) {
+                        // Dãy chưa có: bắt đầu sau ID lớn nhất đang có để không trùng dữ liệu cũ
+                        Long maxId = entityManager.createQuery(sequence.maxIdQuery, Long.class).getSingleResult();
+                        long first = (maxId != null ? maxId : 0L) + 1;
+                        // persist luôn INSERT (save() sẽ merge và ghi đè dòng node khác vừa tạo);
+                        // trùng khóa khi commit nếu node khác đã khởi tạo dãy
+                        entityManager.persist(new IdSequence(name, first + blockSize));
+                        log.info("Initialized ID sequence {} at {}", name, first);
+                        return first + blockSize;
+                    }
+                    return idSequenceRepository.findNextValue(name)
+                            .orElseThrow(() -> new IllegalStateException("Không tìm thấy dãy ID " + name));
+                });
+                log.debug("Reserved {} IDs [{}, {}) for sequence {}", blockSize, limit - blockSize, limit, name);
+                return new Block(limit - blockSize, limit);
+            } catch (DataIntegrityViolationException ex) {
+                // Node khác vừa khởi tạo cùng dãy, thử lại bằng UPDATE
+                if (attempt >= MAX_INIT_ATTEMPTS) {
+                    throw ex;
+                }
+            }
+        }
+    }
+}
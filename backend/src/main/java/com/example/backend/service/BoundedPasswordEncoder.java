@@ -0,0 +1,150 @@
+package com.example.backend.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * PasswordEncoder BCrypt chạy trên pool riêng có giới hạn.
+ *
+ * Mỗi lần băm/so khớp chiếm trọn một core, nên số phép BCrypt đồng thời bị giới hạn bởi
+ * password-hashing.pool-size (mặc định = số core - 1) với hàng đợi password-hashing.queue-capacity.
+ * Hàng đợi đầy hoặc chờ quá password-hashing.timeout-ms thì ném RejectedExecutionException
+ * (HTTP 503) thay vì để đợt đăng nhập dồn dập chiếm hết CPU của các request khác.
+ * upgradeEncoding trả về true khi cost của hash khác password-hashing.strength để băm lại lúc đăng nhập.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abyx]?\\$(\\d\\d)\\$");
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${password-hashing.strength:10}")
+    private int strength;
+
+    // 0 = số core - 1 (tối thiểu 1)
+    @Value("${password-hashing.pool-size:0}")
+    private int poolSize;
+
+    @Value("${password-hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${password-hashing.timeout-ms:5000}")
+    private long timeoutMs;
+
+    private BCryptPasswordEncoder delegate;
+    private ThreadPoolExecutor executor;
+    private Timer encodeTimer;
+    private Timer matchesTimer;
+    private Timer queueWaitTimer;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    void init() {
+        delegate = new BCryptPasswordEncoder(strength);
+        int threads = poolSize > 0 ? poolSize : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hash-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        encodeTimer = Timer.builder("password.hash.latency")
+                .tag("operation", "encode")
+                .description("Thời gian tính BCrypt (không gồm thời gian chờ)")
+                .register(meterRegistry);
+        matchesTimer = Timer.builder("password.hash.latency")
+                .tag("operation", "matches")
+                .description("Thời gian tính BCrypt (không gồm thời gian chờ)")
+                .register(meterRegistry);
+        queueWaitTimer = Timer.builder("password.hash.queue.wait")
+                .description("Thời gian chờ trong hàng đợi băm mật khẩu")
+                .register(meterRegistry);
+        rejectedCounter = meterRegistry.counter("password.hash.rejected");
+        Gauge.builder("password.hash.queue.depth", executor, e -> e.getQueue().size())
+                .description("Số phép băm đang chờ")
+                .register(meterRegistry);
+        log.info("Password hashing pool: {} threads, queue {}, BCrypt cost {}", threads, queueCapacity, strength);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword), encodeTimer);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword), matchesTimer);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    private <T> T run(Callable<T> task, Timer timer) {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                queueWaitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(task);
+            });
+        } catch (RejectedExecutionException ex) {
+            throw rejected("queue full");
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw rejected("timed out after " + timeoutMs + " ms");
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw rejected("interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private RejectedExecutionException rejected(String reason) {
+        rejectedCounter.increment();
+        log.warn("Password hashing rejected: {}", reason);
+        return new RejectedExecutionException("Hệ thống đang bận, vui lòng thử lại sau");
+    }
+}
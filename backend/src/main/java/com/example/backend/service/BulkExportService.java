@@ -0,0 +1,209 @@
+package com.example.backend.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.dto.ExportDTO;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.MedicalRecordRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.PaymentRepository;
+import com.example.backend.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Xuất toàn bộ một bảng ra CSV hoặc NDJSON với bộ nhớ không đổi theo số dòng.
+ *
+ * Dữ liệu được đọc bằng Stream của repository (con trỏ forward-only, fetch size ExportDTO.FETCH_SIZE)
+ * dưới dạng projection, ghi từng dòng thẳng ra OutputStream và flush sau mỗi export.flush-every-rows dòng,
+ * đồng thời làm rỗng persistence context. Không có danh sách entity/DTO hay mảng JSON nào được dựng
+ * trong bộ nhớ. OutputStream do người gọi sở hữu (có thể là GZIPOutputStream) và không bị đóng ở đây.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkExportService {
+
+    private final UserRepository userRepository;
+    private final PatientRepository patientRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final PaymentRepository paymentRepository;
+    private final MedicalRecordRepository medicalRecordRepository;
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${export.flush-every-rows:1000}")
+    private int flushEveryRows;
+
+    /**
+     * Ghi dataset ra out theo format, trả về số dòng đã ghi.
+     */
+    @Transactional(readOnly = true)
+    public long export(ExportDTO.Dataset dataset, ExportDTO.Format format, OutputStream out) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        RowWriter writer = format == ExportDTO.Format.CSV
+                ? new CsvRowWriter(out, dataset.getRowType())
+                : new NdjsonRowWriter(out, objectMapper);
+        long count = 0;
+        try (Stream<? extends Record> rows = open(dataset)) {
+            Iterator<? extends Record> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+                if (++count % flushEveryRows == 0) {
+                    writer.flush();
+                    entityManager.clear();
+                }
+            }
+        }
+        writer.finish();
+        log.info("Exported {} {} rows as {} in {} ms", count, dataset.getPath(), format,
+                System.currentTimeMillis() - startedAt);
+        return count;
+    }
+
+    private Stream<? extends Record> open(ExportDTO.Dataset dataset) {
+        return switch (dataset) {
+            case USERS -> userRepository.streamExportRows();
+            case PATIENTS -> patientRepository.streamExportRows();
+            case APPOINTMENTS -> appointmentRepository.streamExportRows();
+            case PAYMENTS -> paymentRepository.streamExportRows();
+            case MEDICAL_RECORDS -> medicalRecordRepository.streamExportRows();
+        };
+    }
+
+    private interface RowWriter {
+        void write(Record row) throws IOException;
+
+        void flush() throws IOException;
+
+        // Ghi phần còn lại trong buffer, không đóng stream bên dưới
+        void finish() throws IOException;
+    }
+
+    /**
+     * CSV RFC 4180, UTF-8 có BOM để Excel hiển thị đúng tiếng Việt. Dòng tiêu đề là tên thành phần record.
+     */
+    static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+        private final Method[] accessors;
+
+        CsvRowWriter(OutputStream out, Class<? extends Record> rowType) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            RecordComponent[] components = rowType.getRecordComponents();
+            this.accessors = new Method[components.length];
+            writer.write('\uFEFF');
+            for (int i = 0; i < components.length; i++) {
+                accessors[i] = components[i].getAccessor();
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(components[i].getName());
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(Record row) throws IOException {
+            for (int i = 0; i < accessors.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(field(read(accessors[i], row)));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private static Object read(Method accessor, Record row) {
+            try {
+                return accessor.invoke(row);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Không đọc được cột " + accessor.getName(), e);
+            }
+        }
+
+        static String field(Object value) {
+            if (value == null) {
+                return "";
+            }
+            String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+            // Chặn công thức khi mở bằng Excel (=, +, -, @ ở đầu ô chữ)
+            if (!(value instanceof Number) && !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+                text = "'" + text;
+            }
+            if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                return '"' + text.replace("\"", "\"\"") + '"';
+            }
+            return text;
+        }
+    }
+
+    /**
+     * Mỗi dòng một đối tượng JSON, dùng ObjectMapper của ứng dụng (ngày giờ dạng ISO-8601).
+     */
+    static final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+        private final ObjectWriter rowWriter;
+        private boolean empty = true;
+
+        NdjsonRowWriter(OutputStream out, ObjectMapper objectMapper) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(out);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.setRootValueSeparator(new SerializedString("\n"));
+            this.rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        }
+
+        @Override
+        public void write(Record row) throws IOException {
+            rowWriter.writeValue(generator, row);
+            empty = false;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!empty) {
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        }
+    }
+}
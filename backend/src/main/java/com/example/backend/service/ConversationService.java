@@ -3,6 +3,7 @@ package com.example.backend.service;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -76,21 +77,13 @@ public class ConversationService {
     @Transactional(readOnly = true)
     public List<ConversationDTO.Response> getConversationsByPatient(Long patientUserId, Long patientId) {
         Long resolvedUserId = resolvePatientUserId(patientUserId, patientId);
-        List<Conversation> conversations = conversationRepository
-                .findByPatientUser_IdOrderByCreatedAtDesc(resolvedUserId);
-        return conversations.stream()
-                .map(conversationMapper::entityToResponseDTO)
-                .toList();
+        return toInbox(conversationRepository.findInboxByPatientUserId(resolvedUserId));
     }
 
     @Transactional(readOnly = true)
     public List<ConversationDTO.Response> getConversationsByDoctor(Long doctorUserId, Long doctorId) {
         Long resolvedUserId = resolveDoctorUserId(doctorUserId, doctorId);
-        List<Conversation> conversations = conversationRepository
-                .findByDoctorUser_IdOrderByCreatedAtDesc(resolvedUserId);
-        return conversations.stream()
-                .map(conversationMapper::entityToResponseDTO)
-                .toList();
+        return toInbox(conversationRepository.findInboxByDoctorUserId(resolvedUserId));
     }
 
     @Transactional(readOnly = true)
@@ -137,14 +130,14 @@ public class ConversationService {
 
     @Transactional(readOnly = true)
     public ConversationDTO.Response getConversationWithLatestMessages(Long conversationId, int limit) {
+        int size = MessageService.checkLimit(limit);
         Conversation conversation = conversationRepository.findById(conversationId)
                 .orElseThrow(() -> new NotFoundException(
                         "Không tìm thấy cuộc trò chuyện với ID: " + conversationId));
 
         List<MessageDTO.Response> latestMessages = messageRepository
-                .findByConversationIdOrderBySentAtDesc(conversationId)
+                .findLatestByConversationId(conversationId, PageRequest.of(0, size))
                 .stream()
-                .limit(limit)
                 .map(msg -> {
                     MessageDTO.Response response = new MessageDTO.Response();
                     response.setMessageId(msg.getMessageId());
@@ -160,6 +153,13 @@ public class ConversationService {
         return conversationMapper.entityToResponseDTOWithMessages(conversation, latestMessages);
     }
 
+    // Mỗi dòng: [Conversation, patientId, doctorId]
+    private List<ConversationDTO.Response> toInbox(List<Object[]> rows) {
+        return rows.stream()
+                .map(row -> conversationMapper.entityToResponseDTO((Conversation) row[0], (Long) row[1], (Long) row[2]))
+                .toList();
+    }
+
     private Patient resolvePatient(Long patientUserId, Long patientId) {
         if (patientUserId != null) {
             return patientRepository.findByUserIdWithUserAndRole(patientUserId)
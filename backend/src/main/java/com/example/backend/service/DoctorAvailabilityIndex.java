@@ -0,0 +1,498 @@
+package com.example.backend.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.event.AfterCommit;
+import com.example.backend.event.ClusterEvent;
+import com.example.backend.repository.AppointmentRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chỉ mục slot trống của bác sĩ để tìm N slot sớm nhất theo khoa hoặc chuyên khoa.
+ *
+ * Slot trống là appointment Available chưa có bệnh nhân, thuộc DoctorSchedule còn Available.
+ * Mỗi (bác sĩ, ngày) giữ một bitmap 288 ô 5 phút (5 long) đánh dấu các ô có slot trống bắt đầu,
+ * cùng tập slot sắp theo giờ; tìm kiếm quét bitmap từng ngày và trộn các bác sĩ bằng heap, không
+ * chạm DB. Đặt lịch gỡ slot ngay trong bộ nhớ; tạo/sửa/hủy appointment hay đổi lịch làm việc nạp
+ * lại đúng (bác sĩ, ngày) đó sau khi commit. Index chỉ là gợi ý: đặt lịch vẫn dùng UPDATE có điều kiện,
+ * và AppointmentService kiểm tra lại các slot tìm được với DB trước khi trả về.
+ *
+ * Index nằm trong bộ nhớ của từng node. Khi chat.broker.mode = shared-db, các thay đổi trên (trừ đổi
+ * khoa/chuyên khoa/trạng thái bác sĩ) được báo cho node khác qua SharedDbBrokerRelay để gỡ slot hoặc nạp
+ * lại (bác sĩ, ngày) tương ứng; với các chế độ khác, node khác chỉ biết qua bước kiểm tra lại ở service.
+ *
+ * Index chỉ giữ availability-index.horizon-days ngày tới và được dựng lại mỗi đêm; khi chưa sẵn sàng
+ * hoặc khoảng ngày vượt ra ngoài, findEarliest trả về rỗng để service truy vấn DB.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DoctorAvailabilityIndex {
+
+    static final int QUANTUM_MINUTES = 5;
+    private static final int QUANTA_PER_DAY = 24 * 60 / QUANTUM_MINUTES;
+    private static final int WORDS = (QUANTA_PER_DAY + 63) / 64;
+    private static final String ACTIVE = "ACTIVE";
+    // Chủ đề ClusterEvent: slot đã đặt/xóa (payload appointmentId) và (bác sĩ, ngày) cần nạp lại (payload "doctorId/ngày")
+    static final String SLOT_TOPIC = "availability-index/slots";
+    static final String DAY_TOPIC = "availability-index/days";
+
+    private static final Comparator<Slot> EARLIEST_FIRST = Comparator
+            .comparing(Slot::startTime)
+            .thenComparing(Slot::doctorId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Slot::appointmentId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final AppointmentRepository appointmentRepository;
+    private final ObjectProvider<SharedDbBrokerRelay> brokerRelay;
+
+    @Value("${availability-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${availability-index.horizon-days:60}")
+    private int horizonDays;
+
+    @Value("${availability-index.load-batch-size:5000}")
+    private int loadBatchSize;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService updater = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private State state = new State(LocalDate.now(), LocalDate.now());
+    private volatile boolean ready;
+    // (bác sĩ, ngày) thay đổi trong lúc đang dựng lại index, nạp lại sau khi đổi sang index mới
+    private Set<DayKey> changedDuringRebuild;
+
+    public record Slot(Long appointmentId, Long doctorId, LocalDateTime startTime, LocalDateTime endTime) {
+        int startMinute() {
+            return startTime.getHour() * 60 + startTime.getMinute();
+        }
+    }
+
+    /**
+     * Một dòng của AppointmentRepository.findOpenSlotRows.
+     */
+    record Row(Long appointmentId, Long doctorId, LocalDateTime startTime, LocalDateTime endTime,
+               Long departmentId, String specialty, String doctorStatus) {
+        static Row of(Object[] columns) {
+            return new Row((Long) columns[0], (Long) columns[1], (LocalDateTime) columns[2],
+                    (LocalDateTime) columns[3], (Long) columns[4], (String) columns[5], (String) columns[6]);
+        }
+    }
+
+    private record DayKey(Long doctorId, LocalDate workDate) {
+    }
+
+    private record DoctorInfo(Long departmentId, String specialty, boolean active) {
+        static DoctorInfo of(Long departmentId, String specialty, String status) {
+            return new DoctorInfo(departmentId, normalize(specialty), status == null || ACTIVE.equals(status));
+        }
+
+        boolean matches(Long wantedDepartment, String wantedSpecialty) {
+            return active
+                    && (wantedDepartment == null || wantedDepartment.equals(departmentId))
+                    && (wantedSpecialty == null || wantedSpecialty.equals(specialty));
+        }
+    }
+
+    /**
+     * Slot trống của một bác sĩ trong một ngày: bit q bật khi có slot bắt đầu trong ô [5q, 5q + 5) phút.
+     */
+    private static final class Day {
+        private final LocalDate date;
+        private final long[] starts = new long[WORDS];
+        private final NavigableSet<Slot> slots = new TreeSet<>(EARLIEST_FIRST);
+
+        Day(LocalDate date) {
+            this.date = date;
+        }
+
+        void add(Slot slot) {
+            slots.add(slot);
+            int quantum = slot.startMinute() / QUANTUM_MINUTES;
+            starts[quantum >>> 6] |= 1L << quantum;
+        }
+
+        void remove(Slot slot) {
+            slots.remove(slot);
+            int quantum = slot.startMinute() / QUANTUM_MINUTES;
+            if (inQuantum(quantum).isEmpty()) {
+                starts[quantum >>> 6] &= ~(1L << quantum);
+            }
+        }
+
+        boolean isEmpty() {
+            return slots.isEmpty();
+        }
+
+        // Slot trống đầu tiên bắt đầu từ phút fromMinute trở đi
+        Slot next(int fromMinute) {
+            for (int quantum = nextQuantum(fromMinute / QUANTUM_MINUTES); quantum >= 0; quantum = nextQuantum(quantum + 1)) {
+                for (Slot slot : inQuantum(quantum)) {
+                    if (slot.startMinute() >= fromMinute) {
+                        return slot;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private int nextQuantum(int from) {
+            if (from >= QUANTA_PER_DAY) {
+                return -1;
+            }
+            int word = from >>> 6;
+            long bits = starts[word] & (-1L << from);
+            while (bits == 0) {
+                if (++word == WORDS) {
+                    return -1;
+                }
+                bits = starts[word];
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+
+        private NavigableSet<Slot> inQuantum(int quantum) {
+            LocalDateTime from = date.atStartOfDay().plusMinutes((long) quantum * QUANTUM_MINUTES);
+            return slots.subSet(new Slot(null, null, from, from), true,
+                    new Slot(null, null, from.plusMinutes(QUANTUM_MINUTES), from), false);
+        }
+    }
+
+    private static final class State {
+        private final LocalDate firstDay;
+        private final LocalDate lastDay;
+        private final Map<LocalDate, Map<Long, Day>> days = new HashMap<>();
+        private final Map<Long, DoctorInfo> doctors = new HashMap<>();
+        private final Map<Long, Slot> slotsById = new HashMap<>();
+
+        State(LocalDate firstDay, LocalDate lastDay) {
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+        }
+
+        boolean covers(LocalDate date) {
+            return !date.isBefore(firstDay) && !date.isAfter(lastDay);
+        }
+
+        void put(Row row) {
+            LocalDate date = row.startTime().toLocalDate();
+            if (!covers(date)) {
+                return;
+            }
+            remove(row.appointmentId());
+            doctors.put(row.doctorId(), DoctorInfo.of(row.departmentId(), row.specialty(), row.doctorStatus()));
+            Slot slot = new Slot(row.appointmentId(), row.doctorId(), row.startTime(), row.endTime());
+            days.computeIfAbsent(date, d -> new HashMap<>())
+                    .computeIfAbsent(row.doctorId(), id -> new Day(date))
+                    .add(slot);
+            slotsById.put(slot.appointmentId(), slot);
+        }
+
+        void remove(Long appointmentId) {
+            Slot slot = slotsById.remove(appointmentId);
+            if (slot == null) {
+                return;
+            }
+            LocalDate date = slot.startTime().toLocalDate();
+            Map<Long, Day> onDay = days.get(date);
+            Day day = onDay.get(slot.doctorId());
+            day.remove(slot);
+            if (day.isEmpty()) {
+                onDay.remove(slot.doctorId());
+                if (onDay.isEmpty()) {
+                    days.remove(date);
+                }
+            }
+        }
+
+        void replaceDay(DayKey key, List<Row> rows) {
+            Map<Long, Day> onDay = days.get(key.workDate());
+            Day old = onDay != null ? onDay.get(key.doctorId()) : null;
+            if (old != null) {
+                List.copyOf(old.slots).forEach(slot -> remove(slot.appointmentId()));
+            }
+            rows.forEach(this::put);
+        }
+
+        int size() {
+            return slotsById.size();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        updater.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            updater.submit(this::rebuild);
+        }
+    }
+
+    // Dựng lại sau nửa đêm để trượt cửa sổ ngày và bắt các thay đổi không đi qua service
+    @Scheduled(cron = "${availability-index.rebuild-cron:0 5 0 * * *}")
+    public void scheduledRebuild() {
+        if (enabled) {
+            updater.submit(this::rebuild);
+        }
+    }
+
+    /**
+     * Tìm tối đa limit slot trống sớm nhất trong [from, to] của các bác sĩ đang hoạt động thuộc khoa
+     * và/hoặc chuyên khoa đã chọn (null = không lọc), sắp theo giờ bắt đầu.
+     * @return appointmentId theo thứ tự; rỗng nếu index chưa sẵn sàng hoặc khoảng ngày nằm ngoài index
+     */
+    public Optional<List<Long>> findEarliest(Long departmentId, String specialty, LocalDateTime from, LocalDate to, int limit) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        String wantedSpecialty = normalize(specialty);
+        int fromMinute = from.getHour() * 60 + from.getMinute() + (from.getSecond() > 0 || from.getNano() > 0 ? 1 : 0);
+        List<Long> result = new ArrayList<>(limit);
+
+        lock.readLock().lock();
+        try {
+            if (!state.covers(from.toLocalDate()) || !state.covers(to)) {
+                return Optional.empty();
+            }
+            PriorityQueue<Slot> heap = new PriorityQueue<>(EARLIEST_FIRST);
+            for (LocalDate date = from.toLocalDate(); !date.isAfter(to) && result.size() < limit; date = date.plusDays(1)) {
+                Map<Long, Day> onDay = state.days.get(date);
+                if (onDay == null) {
+                    continue;
+                }
+                int startMinute = date.equals(from.toLocalDate()) ? fromMinute : 0;
+                heap.clear();
+                for (Map.Entry<Long, Day> entry : onDay.entrySet()) {
+                    DoctorInfo doctor = state.doctors.get(entry.getKey());
+                    if (doctor != null && doctor.matches(departmentId, wantedSpecialty)) {
+                        Slot first = entry.getValue().next(startMinute);
+                        if (first != null) {
+                            heap.add(first);
+                        }
+                    }
+                }
+                while (!heap.isEmpty() && result.size() < limit) {
+                    Slot slot = heap.poll();
+                    result.add(slot.appointmentId());
+                    Slot following = onDay.get(slot.doctorId()).next(slot.startMinute() + 1);
+                    if (following != null) {
+                        heap.add(following);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * Slot vừa được đặt hoặc bị xóa: gỡ khỏi index sau khi commit, không cần đọc DB.
+     */
+    public void remove(Long appointmentId) {
+        if (enabled && appointmentId != null) {
+            AfterCommit.run(() -> {
+                removeSlot(appointmentId);
+                notifyOtherNodes(SLOT_TOPIC, appointmentId.toString());
+            });
+        }
+    }
+
+    /**
+     * Nạp lại slot trống của một bác sĩ trong một ngày sau khi commit
+     * (tạo/sửa/hủy appointment, thêm/sửa/xóa lịch làm việc).
+     */
+    public void reloadDay(Long doctorId, LocalDate workDate) {
+        if (enabled && doctorId != null && workDate != null) {
+            DayKey key = new DayKey(doctorId, workDate);
+            AfterCommit.run(() -> {
+                updater.submit(() -> reload(key));
+                notifyOtherNodes(DAY_TOPIC, doctorId + "/" + workDate);
+            });
+        }
+    }
+
+    @EventListener
+    public void onClusterEvent(ClusterEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (SLOT_TOPIC.equals(event.topic())) {
+            removeSlot(Long.valueOf(event.payload()));
+        } else if (DAY_TOPIC.equals(event.topic())) {
+            String[] parts = event.payload().split("/", 2);
+            DayKey key = new DayKey(Long.valueOf(parts[0]), LocalDate.parse(parts[1]));
+            updater.submit(() -> reload(key));
+        }
+    }
+
+    /**
+     * Cập nhật khoa/chuyên khoa/trạng thái của bác sĩ (gọi từ AvailabilityEntityListener).
+     */
+    public void updateDoctor(Long doctorId, Long departmentId, String specialty, String status) {
+        if (enabled && doctorId != null) {
+            DoctorInfo info = DoctorInfo.of(departmentId, specialty, status);
+            AfterCommit.run(() -> {
+                lock.writeLock().lock();
+                try {
+                    state.doctors.computeIfPresent(doctorId, (id, old) -> info);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        }
+    }
+
+    private void removeSlot(Long appointmentId) {
+        lock.writeLock().lock();
+        try {
+            state.remove(appointmentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void notifyOtherNodes(String topic, String payload) {
+        brokerRelay.ifAvailable(relay -> relay.publishInternal(topic, payload));
+    }
+
+    void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildIndex();
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuildIndex() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        LocalDate today = LocalDate.now();
+        State fresh = new State(today, today.plusDays(horizonDays - 1L));
+        try {
+            long afterId = 0L;
+            while (true) {
+                List<Object[]> batch = appointmentRepository.findOpenSlotRows(today.atStartOfDay(),
+                        fresh.lastDay.plusDays(1).atStartOfDay(), afterId, PageRequest.of(0, loadBatchSize));
+                for (Object[] columns : batch) {
+                    fresh.put(Row.of(columns));
+                }
+                if (batch.size() < loadBatchSize) {
+                    break;
+                }
+                afterId = (Long) batch.get(batch.size() - 1)[0];
+            }
+        } catch (Exception ex) {
+            log.error("Doctor availability index rebuild failed: {}", ex.getMessage());
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        Set<DayKey> changed;
+        lock.writeLock().lock();
+        try {
+            state = fresh;
+            changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed.forEach(this::reload);
+        log.info("Doctor availability index built: {} open slots over {} days in {} ms",
+                fresh.size(), horizonDays, System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Thay toàn bộ nội dung index bằng các dòng cho sẵn trong [firstDay, lastDay] (dùng trong test/benchmark).
+     */
+    void load(LocalDate firstDay, LocalDate lastDay, List<Row> rows) {
+        State fresh = new State(firstDay, lastDay);
+        rows.forEach(fresh::put);
+        lock.writeLock().lock();
+        try {
+            state = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Thay các slot trống của (bác sĩ, ngày) bằng rows.
+     */
+    void apply(Long doctorId, LocalDate workDate, List<Row> rows) {
+        DayKey key = new DayKey(doctorId, workDate);
+        lock.writeLock().lock();
+        try {
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(key);
+            }
+            state.replaceDay(key, rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reload(DayKey key) {
+        try {
+            List<Row> rows = appointmentRepository.findOpenSlotRowsByDoctor(key.doctorId(),
+                    key.workDate().atStartOfDay(), key.workDate().plusDays(1).atStartOfDay())
+                    .stream()
+                    .map(Row::of)
+                    .toList();
+            apply(key.doctorId(), key.workDate(), rows);
+        } catch (Exception ex) {
+            log.warn("Could not reload availability of doctor {} on {}: {}", key.doctorId(), key.workDate(), ex.getMessage());
+        }
+    }
+
+    private static String normalize(String specialty) {
+        return specialty == null || specialty.isBlank() ? null : specialty.trim().toLowerCase(Locale.ROOT);
+    }
+}
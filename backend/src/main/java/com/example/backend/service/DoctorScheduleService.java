@@ -1,5 +1,6 @@
 package com.example.backend.service;
 
+import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
 
@@ -27,6 +28,7 @@ public class DoctorScheduleService {
     private final DoctorRepository doctorRepository;
     private final DoctorScheduleMapper doctorScheduleMapper;
     private final AppointmentRepository appointmentRepository;
+    private final DoctorAvailabilityIndex availabilityIndex;
 
     public DoctorScheduleDTO.Response create(DoctorScheduleDTO.Create dto) {
         Doctor doctor = findDoctor(dto.getDoctorId());
@@ -35,6 +37,7 @@ public class DoctorScheduleService {
 
         DoctorSchedule entity = doctorScheduleMapper.createDTOToEntity(dto, doctor);
         DoctorSchedule saved = doctorScheduleRepository.save(entity);
+        availabilityIndex.reloadDay(doctor.getDoctorId(), saved.getWorkDate());
         return doctorScheduleMapper.entityToResponseDTO(saved);
     }
 
@@ -54,18 +57,24 @@ public class DoctorScheduleService {
 
     public DoctorScheduleDTO.Response update(Long scheduleId, DoctorScheduleDTO.Update dto) {
         DoctorSchedule entity = findSchedule(scheduleId);
+        LocalDate previousDate = entity.getWorkDate();
 
         if (dto.getStartTime() != null || dto.getEndTime() != null || dto.getWorkDate() != null) {
             LocalTime newStart = dto.getStartTime() != null ? dto.getStartTime() : entity.getStartTime();
             LocalTime newEnd = dto.getEndTime() != null ? dto.getEndTime() : entity.getEndTime();
             validateTimeRange(newStart, newEnd);
-            java.time.LocalDate newDate = dto.getWorkDate() != null ? dto.getWorkDate() : entity.getWorkDate();
+            LocalDate newDate = dto.getWorkDate() != null ? dto.getWorkDate() : entity.getWorkDate();
             validateNoOverlap(entity.getDoctor().getDoctorId(), newDate, newStart, newEnd, entity.getScheduleId());
         }
 
         doctorScheduleMapper.applyUpdateToEntity(entity, dto);
         DoctorSchedule saved = doctorScheduleRepository.save(entity);
-        
+        // Đổi trạng thái/ngày của lịch làm thay đổi slot trống của cả ngày cũ và ngày mới
+        availabilityIndex.reloadDay(saved.getDoctor().getDoctorId(), previousDate);
+        if (!saved.getWorkDate().equals(previousDate)) {
+            availabilityIndex.reloadDay(saved.getDoctor().getDoctorId(), saved.getWorkDate());
+        }
+
         return doctorScheduleMapper.entityToResponseDTO(saved);
     }
 
@@ -79,6 +88,7 @@ public class DoctorScheduleService {
         
         // Xóa schedule
         doctorScheduleRepository.delete(entity);
+        availabilityIndex.reloadDay(entity.getDoctor().getDoctorId(), entity.getWorkDate());
         System.out.println("Schedule " + scheduleId + " deleted successfully");
     }
 
@@ -99,21 +109,14 @@ public class DoctorScheduleService {
         }
     }
 
-    private void validateNoOverlap(Long doctorId, java.time.LocalDate date, LocalTime start, LocalTime end) {
-        List<DoctorSchedule> sameDay = doctorScheduleRepository.findByDoctor_DoctorIdAndWorkDate(doctorId, date);
-        boolean overlaps = sameDay.stream()
-                .anyMatch(ds -> start.isBefore(ds.getEndTime()) && end.isAfter(ds.getStartTime()));
-        if (overlaps) {
+    private void validateNoOverlap(Long doctorId, LocalDate date, LocalTime start, LocalTime end) {
+        if (doctorScheduleRepository.existsOverlap(doctorId, date, start, end)) {
             throw new IllegalArgumentException("Khoảng thời gian bị trùng với lịch khác");
         }
     }
 
-    private void validateNoOverlap(Long doctorId, java.time.LocalDate date, LocalTime start, LocalTime end, Long excludeScheduleId) {
-        List<DoctorSchedule> sameDay = doctorScheduleRepository.findByDoctor_DoctorIdAndWorkDate(doctorId, date);
-        boolean overlaps = sameDay.stream()
-                .filter(ds -> !ds.getScheduleId().equals(excludeScheduleId))
-                .anyMatch(ds -> start.isBefore(ds.getEndTime()) && end.isAfter(ds.getStartTime()));
-        if (overlaps) {
+    private void validateNoOverlap(Long doctorId, LocalDate date, LocalTime start, LocalTime end, Long excludeScheduleId) {
+        if (doctorScheduleRepository.existsOverlapExcluding(doctorId, date, start, end, excludeScheduleId)) {
             throw new IllegalArgumentException("Khoảng thời gian bị trùng với lịch khác");
         }
     }
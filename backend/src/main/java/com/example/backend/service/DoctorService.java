@@ -2,6 +2,8 @@ package com.example.backend.service;
 
 import java.util.List;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -35,7 +37,11 @@ public class DoctorService {
     private final DepartmentRepository departmentRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PeopleSearchIndex searchIndex;
+    private final BlockIdAllocator idAllocator;
     
+    private static final int MAX_PAGE_SIZE = 100;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -87,7 +93,26 @@ public class DoctorService {
      */
     @Transactional(readOnly = true)
     public List<Doctor> getDoctorsByNameWithUserAndRole(String keyword) {
-        return doctorRepository.findByNameContainingWithUserAndRole(keyword);
+        // Tra index trong bộ nhớ (bỏ dấu, trigram) rồi nạp entity bằng truy vấn IN theo lô;
+        // index chưa sẵn sàng thì dùng truy vấn LIKE
+        return searchIndex.search(PeopleSearchIndex.Kind.DOCTOR, keyword)
+                .map(ids -> RankedIds.loadInRankOrder(ids, doctorRepository::findByDoctorIdInWithUserAndRole,
+                        Doctor::getDoctorId))
+                .orElseGet(() -> doctorRepository.findByNameContainingWithUserAndRole(keyword));
+    }
+
+    /**
+     * Bác sĩ có điểm đánh giá cao nhất theo khoa và/hoặc chuyên khoa
+     * @param departmentId ID của department (null = mọi khoa)
+     * @param specialty chuyên khoa (null = mọi chuyên khoa)
+     * @param minReviews số đánh giá tối thiểu để được xếp hạng
+     * @return trang doctor đã xếp theo điểm trung bình, rồi theo số đánh giá
+     */
+    @Transactional(readOnly = true)
+    public Page<Doctor> getTopRatedDoctors(Long departmentId, String specialty, int minReviews, int page, int size) {
+        String wantedSpecialty = (specialty != null && !specialty.isBlank()) ? specialty.trim() : null;
+        PageRequest pageRequest = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        return doctorRepository.findTopRated(departmentId, wantedSpecialty, Math.max(1, minReviews), pageRequest);
     }
 
     /**
@@ -124,8 +149,8 @@ public class DoctorService {
         Department refreshedDepartment = entityManager.merge(department);
         entityManager.flush();
 
-        // Get next Doctor ID
-        Long nextDoctorId = getNextDoctorId(); 
+        // Lấy Doctor ID từ khối ID đã giữ sẵn
+        Long nextDoctorId = idAllocator.next(BlockIdAllocator.Sequence.DOCTOR);
         
         // Tạo doctor mới
         Doctor doctor = new Doctor();
@@ -294,16 +319,6 @@ public class DoctorService {
         return doctorRepository.save(doctor);
     }
     
-    private Long getNextDoctorId() {
-        // Simple approach: get max ID + 1
-        try {
-            Long maxId = doctorRepository.findMaxDoctorId().orElse(0L);
-            return maxId + 1;
-        } catch (Exception e) {
-            return 1L; // Fallback to 1 if no doctors exist
-        }
-    }
-
     /**
      * Đăng ký bác sĩ mới (tạo cả User và Doctor)
      * @param request thông tin đăng ký bác sĩ
@@ -377,8 +392,8 @@ public class DoctorService {
         Department refreshedDepartment = entityManager.merge(department);
         entityManager.flush();
 
-        // Get next Doctor ID
-        Long nextDoctorId = getNextDoctorId();
+        // Lấy Doctor ID từ khối ID đã giữ sẵn
+        Long nextDoctorId = idAllocator.next(BlockIdAllocator.Sequence.DOCTOR);
         
         // Tạo doctor mới
         Doctor doctor = new Doctor();
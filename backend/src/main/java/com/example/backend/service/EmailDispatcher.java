@@ -0,0 +1,239 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.event.OutboxSupport;
+import com.example.backend.model.EmailJob;
+import com.example.backend.repository.EmailJobRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gửi các email trong outbox (EmailJobs).
+ *
+ * Poller nhận một batch job đến hạn, chia thành từng nhóm và mỗi nhóm được gửi trong
+ * một phiên SMTP duy nhất (JavaMailSender.send(MimeMessage...)) trên virtual thread.
+ * Mỗi message mang header X-Email-Job-Id để lỗi từng message được gán đúng job, kể cả
+ * khi hai job có cùng người nhận, tiêu đề và nội dung.
+ * Số phiên SMTP đồng thời bị giới hạn bởi email.outbox.max-concurrent-sessions.
+ * Job gửi lỗi được thử lại với backoff lũy thừa cho tới email.outbox.max-attempts.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EmailDispatcher {
+
+    static final String JOB_ID_HEADER = "X-Email-Job-Id";
+
+    private final EmailJobRepository emailJobRepository;
+    private final JavaMailSender mailSender;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${email.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${email.outbox.messages-per-session:20}")
+    private int messagesPerSession;
+
+    @Value("${email.outbox.max-concurrent-sessions:4}")
+    private int maxConcurrentSessions;
+
+    @Value("${email.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.retry-base-delay-ms:30000}")
+    private long retryBaseDelayMs;
+
+    @Value("${email.outbox.lease-ms:300000}")
+    private long leaseMs;
+
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private Semaphore sessions;
+    private Timer deliveryLatency;
+    private Timer sessionDuration;
+    private Counter sentCounter;
+    private Counter retryCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void init() {
+        sessions = new Semaphore(maxConcurrentSessions);
+        Gauge.builder("email.outbox.depth", queueDepth, AtomicLong::get)
+                .description("Số email PENDING trong outbox")
+                .register(meterRegistry);
+        deliveryLatency = Timer.builder("email.outbox.latency")
+                .description("Thời gian từ lúc xếp hàng tới lúc gửi thành công")
+                .register(meterRegistry);
+        sessionDuration = Timer.builder("email.outbox.session")
+                .description("Thời gian một phiên SMTP")
+                .register(meterRegistry);
+        sentCounter = meterRegistry.counter("email.outbox.sent");
+        retryCounter = meterRegistry.counter("email.outbox.retried");
+        failedCounter = meterRegistry.counter("email.outbox.failed");
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // Gọi sau khi transaction xếp email đã commit để không phải chờ tới lượt poll kế tiếp
+    public void requestDispatch() {
+        if (!workers.isShutdown()) {
+            workers.submit(this::dispatch);
+        }
+    }
+
+    // Poll định kỳ chạy trên virtual thread để không chiếm thread của scheduler khi chờ phiên SMTP
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:1000}")
+    public void poll() {
+        requestDispatch();
+    }
+
+    void dispatch() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<EmailJob> claimed = OutboxSupport.claimDue(emailJobRepository, LocalDateTime.now(), batchSize, leaseMs);
+            for (int i = 0; i < claimed.size(); i += messagesPerSession) {
+                List<EmailJob> session = claimed.subList(i, Math.min(i + messagesPerSession, claimed.size()));
+                sessions.acquire();
+                workers.submit(() -> {
+                    try {
+                        sendSession(session);
+                    } finally {
+                        sessions.release();
+                    }
+                });
+            }
+            queueDepth.set(emailJobRepository.countByStatus(EmailJob.EmailJobStatus.PENDING));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.error("Email outbox dispatch failed: {}", ex.getMessage());
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    void sendSession(List<EmailJob> jobs) {
+        // Lỗi theo emailJobId; message không dựng được thì lỗi ngay, không đưa vào phiên SMTP
+        Map<Long, Exception> failures = new HashMap<>();
+        List<MimeMessage> messages = new ArrayList<>();
+        for (EmailJob job : jobs) {
+            try {
+                messages.add(toMessage(job));
+            } catch (MessagingException ex) {
+                failures.put(job.getEmailJobId(), ex);
+            }
+        }
+        Exception sessionError = null;
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            if (!messages.isEmpty()) {
+                mailSender.send(messages.toArray(MimeMessage[]::new));
+            }
+        } catch (MailSendException ex) {
+            if (ex.getFailedMessages().isEmpty()) {
+                sessionError = ex;
+            }
+            ex.getFailedMessages().forEach((message, error) -> {
+                Long jobId = jobIdOf(message);
+                if (jobId != null) {
+                    failures.put(jobId, error);
+                }
+            });
+        } catch (MailException ex) {
+            sessionError = ex;
+        }
+        sample.stop(sessionDuration);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (EmailJob job : jobs) {
+            Exception error = failures.getOrDefault(job.getEmailJobId(), sessionError);
+            if (error == null) {
+                markSent(job, now);
+            } else {
+                markFailed(job, error, now);
+            }
+        }
+        emailJobRepository.saveAll(jobs);
+    }
+
+    private MimeMessage toMessage(EmailJob job) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+        helper.setTo(job.getRecipient());
+        helper.setSubject(job.getSubject());
+        helper.setText(job.getBody());
+        message.setHeader(JOB_ID_HEADER, String.valueOf(job.getEmailJobId()));
+        return message;
+    }
+
+    private static Long jobIdOf(Object message) {
+        try {
+            String id = ((MimeMessage) message).getHeader(JOB_ID_HEADER, null);
+            return id != null ? Long.valueOf(id) : null;
+        } catch (MessagingException | ClassCastException | NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private void markSent(EmailJob job, LocalDateTime now) {
+        job.setStatus(EmailJob.EmailJobStatus.SENT);
+        job.setSentAt(now);
+        job.setClaimToken(null);
+        job.setLastError(null);
+        deliveryLatency.record(Duration.between(job.getCreatedAt(), now));
+        sentCounter.increment();
+        log.debug("Sent email job {} to {}", job.getEmailJobId(), job.getRecipient());
+    }
+
+    private void markFailed(EmailJob job, Exception error, LocalDateTime now) {
+        long delayMs = OutboxSupport.recordFailure(job, error, now, maxAttempts, retryBaseDelayMs);
+        if (delayMs < 0) {
+            job.setStatus(EmailJob.EmailJobStatus.FAILED);
+            failedCounter.increment();
+            log.error("Email job {} to {} failed after {} attempts: {}",
+                    job.getEmailJobId(), job.getRecipient(), job.getAttempts(), error.getMessage());
+        } else {
+            job.setStatus(EmailJob.EmailJobStatus.PENDING);
+            retryCounter.increment();
+            log.warn("Email job {} to {} failed (attempt {}), retrying in {} ms: {}",
+                    job.getEmailJobId(), job.getRecipient(), job.getAttempts(), delayMs, error.getMessage());
+        }
+    }
+}
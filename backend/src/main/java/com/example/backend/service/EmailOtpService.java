@@ -1,50 +1,96 @@
 package com.example.backend.service;
 
-import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.MailAuthenticationException;
 import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import com.example.backend.exception.TooManyRequestsException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Gửi và xác thực OTP qua email, giữ đăng ký bệnh nhân đang chờ xác thực.
+ *
+ * Dữ liệu nằm trong OtpStore (có hạn dùng, có giới hạn kích thước): OTP chỉ lưu bản băm và được
+ * so sánh constant-time; gửi lại OTP ghi đè mã cũ kèm hạn mới. Số lần gửi bị giới hạn theo email
+ * và theo IP (OtpRateLimiter). Số lần nhập sai được đếm trên chính entry OTP trong OtpStore, nên với
+ * otp.store = db giới hạn này tính chung cho mọi node, và gửi OTP mới thì đếm lại từ đầu.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailOtpService {
 
+    private static final String OTP_NAMESPACE = "otp";
+    private static final String REGISTRATION_NAMESPACE = "registration";
+
     private final JavaMailSender mailSender;
-    
+    private final OtpStore otpStore;
+    private final OtpRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final PasswordEncoder passwordEncoder;
+    private final SecureRandom secureRandom = new SecureRandom();
+
     @Value("${spring.mail.username:noreply@clinic.com}")
     private String fromEmail;
 
-    // Lưu OTP tạm thời trong memory (email -> otp)
-    private final Map<String, String> otpStorage = new ConcurrentHashMap<>();
-    // Lưu pending patient registration (email -> PatientRegisterRequest)
-    private final Map<String, com.example.backend.service.PatientService.PatientRegisterRequest> pendingRegistrations = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    @Value("${otp.ttl-ms:300000}")
+    private long otpTtlMs;
+
+    @Value("${otp.registration-ttl-ms:1800000}")
+    private long registrationTtlMs;
+
+    @Value("${otp.rate-limit.per-email:3}")
+    private int sendsPerEmail;
+
+    @Value("${otp.rate-limit.per-ip:20}")
+    private int sendsPerIp;
+
+    @Value("${otp.rate-limit.max-verify-attempts:5}")
+    private int maxVerifyAttempts;
 
     public boolean sendOtp(String email) {
+        return sendOtp(email, null);
+    }
+
+    /**
+     * Gửi OTP mới cho email.
+     * @param clientIp IP của người yêu cầu, null nếu không gọi từ request của client
+     * @throws TooManyRequestsException nếu email hoặc IP đã yêu cầu quá nhiều lần
+     */
+    public boolean sendOtp(String email, String clientIp) {
+        String key = normalize(email);
+        // Kiểm tra IP trước: IP đang spam không được tiêu lượt gửi của email người khác
+        if ((clientIp != null && !rateLimiter.tryAcquire("send:ip:" + clientIp, sendsPerIp))
+                || !rateLimiter.tryAcquire("send:email:" + key, sendsPerEmail)) {
+            log.warn("OTP send rate limit exceeded for email {} ip {}", email, clientIp);
+            throw new TooManyRequestsException("Bạn đã yêu cầu OTP quá nhiều lần, vui lòng thử lại sau ít phút");
+        }
+
         try {
             log.info("Starting OTP send process for email: {}", email);
             
             // Tạo OTP 6 số
             String otp = generateOtp();
-            log.info("Generated OTP: {}", otp);
             
-            // Lưu OTP vào memory với thời gian hết hạn 5 phút
-            otpStorage.put(email, otp);
-            scheduleOtpExpiry(email, 5); // 5 phút
-            log.info("OTP stored in memory for email: {}", email);
+            // Chỉ lưu bản băm của OTP; ghi đè mã cũ và hạn dùng cũ
+            otpStore.put(OTP_NAMESPACE, key, hashOtp(key, otp), Duration.ofMillis(otpTtlMs));
+            log.info("OTP stored for email: {}", email);
             
             // Tạo email content
             String subject = "Mã xác thực OTP - ClinicBooking";
@@ -82,33 +128,64 @@ public class EmailOtpService {
 
     // Save a pending registration (will send OTP)
     public void savePendingRegistration(com.example.backend.service.PatientService.PatientRegisterRequest req) {
+        savePendingRegistration(req, null);
+    }
+
+    public void savePendingRegistration(com.example.backend.service.PatientService.PatientRegisterRequest req, String clientIp) {
         if (req == null || req.getEmail() == null) return;
-        pendingRegistrations.put(req.getEmail(), req);
+        // Kiểm tra giới hạn gửi trước khi lưu để spam đăng ký không chiếm chỗ trong store
         // send OTP to email (simulate or real depending on config)
-        sendOtp(req.getEmail());
+        sendOtp(req.getEmail(), clientIp);
+        // Băm mật khẩu trước khi lưu để store (kể cả bảng OtpEntries) không giữ mật khẩu thô
+        if (req.getPassword() != null) {
+            req.setPasswordHash(passwordEncoder.encode(req.getPassword()));
+            req.setPassword(null);
+        }
+        try {
+            otpStore.put(REGISTRATION_NAMESPACE, normalize(req.getEmail()), objectMapper.writeValueAsString(req),
+                    Duration.ofMillis(registrationTtlMs));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Không thể lưu yêu cầu đăng ký", e);
+        }
     }
 
     // Consume (remove and return) pending registration
     public com.example.backend.service.PatientService.PatientRegisterRequest consumePendingRegistration(String email) {
-        return pendingRegistrations.remove(email);
+        return otpStore.remove(REGISTRATION_NAMESPACE, normalize(email))
+                .map(this::readRegistration)
+                .orElse(null);
     }
 
     // Check if there is a pending registration for email
     public boolean hasPendingRegistration(String email) {
-        return pendingRegistrations.containsKey(email);
+        return otpStore.get(REGISTRATION_NAMESPACE, normalize(email)).isPresent();
     }
 
     public boolean verifyOtp(String email, String inputOtp) {
-        String savedOtp = otpStorage.get(email);
+        if (email == null || inputOtp == null) {
+            return false;
+        }
+        String key = normalize(email);
+        String savedHash = otpStore.get(OTP_NAMESPACE, key).orElse(null);
         
-        if (savedOtp == null) {
+        if (savedHash == null) {
             log.warn("No OTP found for email: {}", email);
             return false;
         }
+
+        // Chặn dò mã: quá số lần nhập sai thì phải yêu cầu OTP mới
+        if (!otpStore.tryAttempt(OTP_NAMESPACE, key, maxVerifyAttempts)) {
+            log.warn("Too many OTP attempts for email: {}", email);
+            return false;
+        }
         
-        boolean isValid = savedOtp.equals(inputOtp);
+        boolean isValid = MessageDigest.isEqual(
+                savedHash.getBytes(StandardCharsets.UTF_8),
+                hashOtp(key, inputOtp.trim()).getBytes(StandardCharsets.UTF_8));
         
         if (isValid) {
+            // Mã đúng không tính vào lượt nhập sai (reset password xác thực lại cùng mã)
+            otpStore.resetAttempts(OTP_NAMESPACE, key);
             log.info("OTP verified successfully for email: {}", email);
         } else {
             log.warn("Invalid OTP for email: {}", email);
@@ -121,27 +198,43 @@ public class EmailOtpService {
      * Xóa OTP sau khi sử dụng thành công (cho reset password)
      */
     public void consumeOtp(String email) {
-        otpStorage.remove(email);
+        otpStore.remove(OTP_NAMESPACE, normalize(email));
         log.info("OTP consumed and removed for email: {}", email);
     }
 
     private String generateOtp() {
-        Random random = new Random();
-        int otp = 100000 + random.nextInt(900000); // 6 digit OTP
+        int otp = 100000 + secureRandom.nextInt(900000); // 6 digit OTP
         return String.valueOf(otp);
     }
 
-    private void scheduleOtpExpiry(String email, int minutes) {
-        scheduler.schedule(() -> {
-            otpStorage.remove(email);
-            log.info("OTP expired and removed for email: {}", email);
-        }, minutes, TimeUnit.MINUTES);
+    // SHA-256(email:otp) dạng Base64, email làm salt để cùng một mã ở hai email cho hai bản băm khác nhau
+    private static String hashOtp(String key, String otp) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((key + ":" + otp).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
+    }
+
+    private static String normalize(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private com.example.backend.service.PatientService.PatientRegisterRequest readRegistration(String json) {
+        try {
+            return objectMapper.readValue(json, com.example.backend.service.PatientService.PatientRegisterRequest.class);
+        } catch (JsonProcessingException e) {
+            log.error("Cannot read pending registration: {}", e.getMessage());
+            return null;
+        }
     }
 
     private String buildOtpEmailContent(String otp) {
         return "Chào bạn,\n\n"
              + "Mã xác thực OTP của bạn là: " + otp + "\n"
-             + "Mã này có hiệu lực trong 5 phút.\n\n"
+             + "Mã này có hiệu lực trong " + Math.max(1, otpTtlMs / 60000) + " phút.\n\n"
              + "Nếu bạn không yêu cầu mã này, vui lòng bỏ qua email này.\n\n"
              + "Trân trọng,\n"
              + "Đội ngũ ClinicBooking";
@@ -210,7 +303,7 @@ public class EmailOtpService {
 
     // Method để clear OTP manually nếu cần
     public void clearOtp(String email) {
-        otpStorage.remove(email);
+        otpStore.remove(OTP_NAMESPACE, normalize(email));
         log.info("OTP cleared manually for email: {}", email);
     }
-}
\ No newline at end of file
+}
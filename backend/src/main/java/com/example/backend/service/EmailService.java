@@ -1,8 +1,11 @@
 package com.example.backend.service;
 
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.backend.event.AfterCommit;
+import com.example.backend.model.EmailJob;
+import com.example.backend.repository.EmailJobRepository;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,37 +14,27 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 @Slf4j
 public class EmailService {
-    private final JavaMailSender mailSender;
+    private final EmailJobRepository emailJobRepository;
+    private final EmailDispatcher emailDispatcher;
 
+    /**
+     * Xếp email vào outbox trong transaction hiện tại; EmailDispatcher gửi sau khi commit.
+     * Không còn chờ SMTP trên request thread.
+     */
+    @Transactional
     public void sendSimpleEmail(String to, String subject, String text) {
-        System.out.println("📧 EmailService.sendSimpleEmail() called");
-        System.out.println("📧 To: " + to);
-        System.out.println("📧 Subject: " + subject);
-        System.out.println("📧 Text length: " + (text != null ? text.length() : 0));
-        
         if (to == null || to.isBlank()) {
-            System.out.println("⚠️ Email to is null/blank, skipping send");
             log.warn("Email to is null/blank, skipping send. subject={}", subject);
             return;
         }
-        
-        try {
-            System.out.println("📧 Creating SimpleMailMessage...");
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setTo(to);
-            message.setSubject(subject);
-            message.setText(text);
-            
-            System.out.println("📧 Sending email via JavaMailSender...");
-            mailSender.send(message);
-            
-            System.out.println("✅ Email sent successfully to: " + to);
-            log.debug("Sent email to {} subject={}", to, subject);
-        } catch (Exception ex) {
-            System.err.println("❌ FAILED to send email to " + to + ": " + ex.getMessage());
-            ex.printStackTrace();
-            // if mail is not configured or fails, still log
-            log.error("Failed to send email to {} subject={} error={}", to, subject, ex.getMessage());
-        }
+
+        EmailJob job = new EmailJob();
+        job.setRecipient(to);
+        job.setSubject(subject);
+        job.setBody(text);
+        emailJobRepository.save(job);
+        log.debug("Queued email job {} to {} subject={}", job.getEmailJobId(), to, subject);
+
+        AfterCommit.run(emailDispatcher::requestDispatch);
     }
 }
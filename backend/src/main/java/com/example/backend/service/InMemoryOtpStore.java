@@ -0,0 +1,163 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * OtpStore trong bộ nhớ của node.
+ *
+ * Mỗi namespace là một LinkedHashMap theo thứ tự ghi: ghi lại một key sẽ đưa nó về cuối, nên với
+ * TTL cố định của namespace thì đầu map luôn là entry hết hạn sớm nhất. Lượt dọn định kỳ chỉ cắt
+ * phần đầu đã hết hạn (không quét toàn bộ), còn đọc thì kiểm tra hạn ngay trên entry. Mỗi namespace
+ * bị giới hạn otp.max-entries; vượt quá thì bỏ entry cũ nhất.
+ */
+@Component
+@ConditionalOnProperty(prefix = "otp", name = "store", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class InMemoryOtpStore implements OtpStore {
+
+    @Value("${otp.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<String, LinkedHashMap<String, Entry>> namespaces = new HashMap<>();
+    // ReentrantLock thay vì synchronized để không ghim carrier thread của virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private record Entry(String value, long expiresAt, int attempts) {
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+
+    @Override
+    public void put(String namespace, String key, String value, Duration ttl) {
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        lock.lock();
+        try {
+            LinkedHashMap<String, Entry> entries = namespaces.computeIfAbsent(namespace, ns -> new LinkedHashMap<>());
+            entries.remove(key);
+            entries.put(key, new Entry(value, expiresAt, 0));
+            int evicted = 0;
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+                evicted++;
+            }
+            if (evicted > 0) {
+                log.warn("OTP store namespace {} full ({}), evicted {} oldest entries", namespace, maxEntries, evicted);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<String> get(String namespace, String key) {
+        lock.lock();
+        try {
+            return Optional.ofNullable(live(namespace, key, false)).map(Entry::value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<String> remove(String namespace, String key) {
+        lock.lock();
+        try {
+            return Optional.ofNullable(live(namespace, key, true)).map(Entry::value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryAttempt(String namespace, String key, int maxAttempts) {
+        lock.lock();
+        try {
+            Entry entry = live(namespace, key, false);
+            if (entry == null || entry.attempts() >= maxAttempts) {
+                return false;
+            }
+            // Ghi lại key đã có không đổi thứ tự của LinkedHashMap
+            namespaces.get(namespace).put(key, new Entry(entry.value(), entry.expiresAt(), entry.attempts() + 1));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void resetAttempts(String namespace, String key) {
+        lock.lock();
+        try {
+            Entry entry = live(namespace, key, false);
+            if (entry != null) {
+                namespaces.get(namespace).put(key, new Entry(entry.value(), entry.expiresAt(), 0));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Entry còn hạn của key; entry đã hết hạn bị xóa luôn
+    private Entry live(String namespace, String key, boolean remove) {
+        LinkedHashMap<String, Entry> entries = namespaces.get(namespace);
+        if (entries == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        boolean expired = entry.isExpired(System.currentTimeMillis());
+        if (remove || expired) {
+            entries.remove(key);
+        }
+        return expired ? null : entry;
+    }
+
+    int size(String namespace) {
+        lock.lock();
+        try {
+            LinkedHashMap<String, Entry> entries = namespaces.get(namespace);
+            return entries == null ? 0 : entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${otp.sweep-interval-ms:30000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        lock.lock();
+        try {
+            for (LinkedHashMap<String, Entry> entries : namespaces.values()) {
+                Iterator<Entry> it = entries.values().iterator();
+                while (it.hasNext() && it.next().isExpired(now)) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removed > 0) {
+            log.debug("Evicted {} expired OTP store entries", removed);
+        }
+    }
+}
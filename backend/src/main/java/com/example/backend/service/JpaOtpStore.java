@@ -0,0 +1,71 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.OtpEntry;
+import com.example.backend.repository.OtpEntryRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * OtpStore dùng chung giữa các node qua bảng OtpEntries (otp.store = db).
+ * Entry hết hạn bị lọc khi đọc và được xóa định kỳ. Số lần thử nằm trong cột Attempts và chỉ tăng bằng
+ * UPDATE có điều kiện, nên giới hạn nhập sai OTP tính chung cho mọi node.
+ */
+@Component
+@ConditionalOnProperty(prefix = "otp", name = "store", havingValue = "db")
+@RequiredArgsConstructor
+@Slf4j
+public class JpaOtpStore implements OtpStore {
+
+    private final OtpEntryRepository otpEntryRepository;
+
+    @Override
+    public void put(String namespace, String key, String value, Duration ttl) {
+        otpEntryRepository.save(new OtpEntry(entryKey(namespace, key), value, LocalDateTime.now().plus(ttl), 0));
+    }
+
+    @Override
+    public Optional<String> get(String namespace, String key) {
+        return otpEntryRepository.findLive(entryKey(namespace, key), LocalDateTime.now()).map(OtpEntry::getPayload);
+    }
+
+    @Override
+    public Optional<String> remove(String namespace, String key) {
+        String entryKey = entryKey(namespace, key);
+        Optional<OtpEntry> entry = otpEntryRepository.findLive(entryKey, LocalDateTime.now());
+        if (entry.isEmpty() || otpEntryRepository.deleteByKey(entryKey) == 0) {
+            return Optional.empty();
+        }
+        return entry.map(OtpEntry::getPayload);
+    }
+
+    @Override
+    public boolean tryAttempt(String namespace, String key, int maxAttempts) {
+        return otpEntryRepository.incrementAttempts(entryKey(namespace, key), LocalDateTime.now(), maxAttempts) == 1;
+    }
+
+    @Override
+    public void resetAttempts(String namespace, String key) {
+        otpEntryRepository.resetAttempts(entryKey(namespace, key));
+    }
+
+    @Scheduled(fixedDelayString = "${otp.sweep-interval-ms:30000}")
+    public void evictExpired() {
+        int removed = otpEntryRepository.deleteExpired(LocalDateTime.now());
+        if (removed > 0) {
+            log.debug("Deleted {} expired OTP entries", removed);
+        }
+    }
+
+    private static String entryKey(String namespace, String key) {
+        return namespace + ":" + key;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.backend.service;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.crypto.SecretKey;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.model.User;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Phát hành và kiểm tra JWT (HS256) cho phiên đăng nhập.
+ *
+ * Token mang userId (sub), role và jti; việc kiểm tra chỉ dùng khóa và parser đã dựng sẵn
+ * lúc khởi động nên không chạm DB. Token đã logout bị chặn qua TokenRevocationList.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JwtService {
+
+    static final String ROLE_CLAIM = "role";
+
+    private final TokenRevocationList revocationList;
+
+    // Base64 của khóa >= 256 bit; để trống thì sinh khóa ngẫu nhiên (token mất hiệu lực khi restart)
+    @Value("${jwt.secret:}")
+    private String secret;
+
+    @Value("${jwt.expiration-ms:86400000}")
+    private long expirationMs;
+
+    @Value("${jwt.issuer:clinic-backend}")
+    private String issuer;
+
+    private SecretKey key;
+    private JwtParser parser;
+
+    /**
+     * Thông tin đã xác thực trong token.
+     */
+    public record TokenInfo(Long userId, String role, String tokenId, Instant expiresAt) {
+    }
+
+    @PostConstruct
+    void init() {
+        if (secret == null || secret.isBlank()) {
+            log.warn("jwt.secret chưa được cấu hình, dùng khóa ngẫu nhiên cho phiên chạy này");
+            key = Jwts.SIG.HS256.key().build();
+        } else {
+            key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        }
+        parser = Jwts.parser()
+                .verifyWith(key)
+                .requireIssuer(issuer)
+                .build();
+    }
+
+    public String issueToken(User user) {
+        Instant now = Instant.now();
+        return Jwts.builder()
+                .id(UUID.randomUUID().toString())
+                .issuer(issuer)
+                .subject(String.valueOf(user.getId()))
+                .claim(ROLE_CLAIM, user.getRole() != null ? user.getRole().getName() : null)
+                .issuedAt(Date.from(now))
+                .expiration(Date.from(now.plusMillis(expirationMs)))
+                .signWith(key)
+                .compact();
+    }
+
+    /**
+     * Kiểm tra chữ ký, hạn dùng và danh sách thu hồi.
+     * @return TokenInfo nếu token hợp lệ, rỗng nếu không
+     */
+    public Optional<TokenInfo> verify(String token) {
+        if (token == null || token.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            if (revocationList.isRevoked(claims.getId())) {
+                return Optional.empty();
+            }
+            return Optional.of(new TokenInfo(
+                    Long.valueOf(claims.getSubject()),
+                    claims.get(ROLE_CLAIM, String.class),
+                    claims.getId(),
+                    claims.getExpiration().toInstant()));
+        } catch (JwtException | IllegalArgumentException ex) {
+            log.debug("Rejected JWT: {}", ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Thu hồi token tới khi nó hết hạn; token không hợp lệ thì bỏ qua.
+     * @return true nếu token đã được thu hồi
+     */
+    public boolean revoke(String token) {
+        return verify(token)
+                .map(info -> {
+                    revocationList.revoke(info.tokenId(), info.expiresAt());
+                    return true;
+                })
+                .orElse(false);
+    }
+
+    /**
+     * Lấy token từ header "Authorization: Bearer ...".
+     */
+    public static String extractBearer(String authHeader) {
+        if (authHeader == null || !authHeader.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        String token = authHeader.substring(7).trim();
+        return token.isEmpty() ? null : token;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.backend.service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Token bucket cho /api/auth/login theo tài khoản (email) và theo IP, kiểm tra trước khi chạy BCrypt.
+ *
+ * Mỗi bucket chứa tối đa capacity token và được nạp lại refill-per-minute token mỗi phút;
+ * lần đăng nhập được nhận tốn một token ở cả hai bucket, lần bị từ chối không tốn token nào.
+ * Bucket đầy lại hoàn toàn thì bị dọn; số bucket bị chặn bởi login-rate-limit.max-keys,
+ * đầy thì bỏ các bucket lâu không dùng nhất thay vì từ chối key mới.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LoginRateLimiter {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${login-rate-limit.account.capacity:5}")
+    private int accountCapacity;
+
+    @Value("${login-rate-limit.account.refill-per-minute:5}")
+    private double accountRefillPerMinute;
+
+    @Value("${login-rate-limit.ip.capacity:30}")
+    private int ipCapacity;
+
+    @Value("${login-rate-limit.ip.refill-per-minute:30}")
+    private double ipRefillPerMinute;
+
+    @Value("${login-rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private Counter accountRejected;
+    private Counter ipRejected;
+
+    private record Bucket(double tokens, long updatedAt, int capacity, double refillPerMs) {
+
+        Bucket refill(long now) {
+            double refilled = Math.min(capacity, tokens + (now - updatedAt) * refillPerMs);
+            return new Bucket(refilled, now, capacity, refillPerMs);
+        }
+
+        boolean isFull(long now) {
+            return refill(now).tokens() >= capacity;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        accountRejected = meterRegistry.counter("auth.login.rejected", "limit", "account");
+        ipRejected = meterRegistry.counter("auth.login.rejected", "limit", "ip");
+    }
+
+    /**
+     * Lấy một token cho lần đăng nhập.
+     * @return false nếu tài khoản hoặc IP đã hết token
+     */
+    public boolean tryAcquire(String email, String clientIp) {
+        String ipKey = clientIp != null ? "ip:" + clientIp : null;
+        if (ipKey != null && !take(ipKey, ipCapacity, ipRefillPerMinute)) {
+            ipRejected.increment();
+            log.warn("Login rate limit exceeded for ip {}", clientIp);
+            return false;
+        }
+        if (email != null && !take("account:" + email.trim().toLowerCase(Locale.ROOT), accountCapacity, accountRefillPerMinute)) {
+            // Lần thử bị từ chối không được tính vào IP: trả lại token vừa lấy
+            if (ipKey != null) {
+                refund(ipKey);
+            }
+            accountRejected.increment();
+            log.warn("Login rate limit exceeded for account {}", email);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean take(String key, int capacity, double refillPerMinute) {
+        long now = System.currentTimeMillis();
+        if (buckets.size() >= maxKeys && !buckets.containsKey(key)) {
+            makeRoom();
+        }
+        double refillPerMs = refillPerMinute / 60_000d;
+        boolean[] granted = new boolean[1];
+        buckets.compute(key, (k, current) -> {
+            Bucket bucket = current == null
+                    ? new Bucket(capacity, now, capacity, refillPerMs)
+                    : current.refill(now);
+            if (bucket.tokens() >= 1) {
+                granted[0] = true;
+                return new Bucket(bucket.tokens() - 1, now, capacity, refillPerMs);
+            }
+            return bucket;
+        });
+        return granted[0];
+    }
+
+    private void refund(String key) {
+        buckets.computeIfPresent(key, (k, bucket) -> new Bucket(
+                Math.min(bucket.capacity(), bucket.tokens() + 1), bucket.updatedAt(), bucket.capacity(), bucket.refillPerMs()));
+    }
+
+    // Dọn bucket đã đầy; vẫn đầy thì bỏ các bucket lâu không dùng nhất, thêm 1% để không phải sắp xếp lại ở mỗi key mới
+    private void makeRoom() {
+        evictFull();
+        int excess = buckets.size() - maxKeys + 1;
+        if (excess <= 0) {
+            return;
+        }
+        List<String> idle = buckets.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().updatedAt()))
+                .limit(excess + Math.max(1, maxKeys / 100))
+                .map(Map.Entry::getKey)
+                .toList();
+        idle.forEach(buckets::remove);
+        log.warn("Login rate limiter full ({} keys), evicted {} least recently used buckets", maxKeys, idle.size());
+    }
+
+    // Bucket đã nạp đầy không khác gì bucket mới tạo nên có thể bỏ
+    @Scheduled(fixedDelayString = "${login-rate-limit.sweep-interval-ms:60000}")
+    public void evictFull() {
+        long now = System.currentTimeMillis();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+}
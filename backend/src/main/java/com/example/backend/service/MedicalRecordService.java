@@ -53,6 +53,12 @@ public class MedicalRecordService {
                 .collect(Collectors.toList());
     }
 
+    public List<MedicalRecordDto> getMedicalRecordsByPatientId(Long patientId) {
+        return medicalRecordRepository.findByPatientId(patientId).stream()
+                .map(medicalRecordMapper::toDto)
+                .collect(Collectors.toList());
+    }
+
     public MedicalRecordDto createMedicalRecord(MedicalRecordDto requestDto) {
         // Validate appointment exists
         Appointment appointment = appointmentRepository.findById(requestDto.getAppointmentId())
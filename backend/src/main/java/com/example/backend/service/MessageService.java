@@ -1,15 +1,21 @@
 package com.example.backend.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.backend.dto.MessageDTO;
+import com.example.backend.event.AfterCommit;
 import com.example.backend.exception.NotFoundException;
 import com.example.backend.mapper.MessageMapper;
 import com.example.backend.model.Conversation;
@@ -33,6 +39,10 @@ public class MessageService {
     private final UserRepository userRepository;
     private final MessageMapper messageMapper;
     private final SimpMessagingTemplate messagingTemplate;
+    private final UnreadCountCache unreadCountCache;
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_PREVIEW_LENGTH = 200;
 
     public MessageDTO.Response createMessage(MessageDTO.Create dto) {
         // Validate conversation exists
@@ -47,6 +57,9 @@ public class MessageService {
         Message message = messageMapper.createDTOToEntity(dto, sender);
         message.setConversation(conversation);
         Message savedMessage = messageRepository.save(message);
+        conversationRepository.recordMessage(conversation.getConversationId(), savedMessage.getMessageId(),
+                savedMessage.getSentAt(), preview(savedMessage), sender.getId());
+        unreadCountCache.messageCreated(conversation.getConversationId(), otherParticipant(conversation, sender.getId()));
         MessageDTO.Response response = messageMapper.entityToResponseDTO(savedMessage);
         broadcastMessage(response);
         return response;
@@ -68,6 +81,43 @@ public class MessageService {
                 .toList();
     }
 
+    /**
+     * Phân trang theo cursor (sentAt, messageId). Không truyền cursor: trang mới nhất;
+     * before: các tin cũ hơn cursor; after: các tin mới hơn cursor.
+     * limit phải trong khoảng 1-100, ngoài khoảng trả 400.
+     */
+    @Transactional(readOnly = true)
+    public MessageDTO.CursorPage getMessagesPage(Long conversationId, String before, String after, int limit) {
+        int size = checkLimit(limit);
+        // Lấy dư một dòng để biết còn trang tiếp theo hay không
+        PageRequest page = PageRequest.of(0, size + 1);
+        boolean forward = after != null && !after.isBlank();
+
+        List<Message> rows;
+        if (forward) {
+            Cursor cursor = Cursor.decode(after);
+            rows = messageRepository.findByConversationIdAfter(conversationId, cursor.sentAt(), cursor.messageId(), page);
+        } else if (before != null && !before.isBlank()) {
+            Cursor cursor = Cursor.decode(before);
+            rows = messageRepository.findByConversationIdBefore(conversationId, cursor.sentAt(), cursor.messageId(), page);
+        } else {
+            rows = messageRepository.findLatestByConversationId(conversationId, page);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<Message> pageRows = new ArrayList<>(hasMore ? rows.subList(0, size) : rows);
+        if (!forward) {
+            Collections.reverse(pageRows);
+        }
+
+        List<MessageDTO.Response> messages = pageRows.stream()
+                .map(messageMapper::entityToResponseDTO)
+                .toList();
+        String olderCursor = pageRows.isEmpty() ? null : Cursor.of(pageRows.get(0)).encode();
+        String newerCursor = pageRows.isEmpty() ? null : Cursor.of(pageRows.get(pageRows.size() - 1)).encode();
+        return new MessageDTO.CursorPage(messages, olderCursor, newerCursor, hasMore);
+    }
+
     @Transactional(readOnly = true)
     public Page<MessageDTO.Response> getMessagesByConversationPaginated(Long conversationId, Pageable pageable) {
         Page<Message> messages = messageRepository.findByConversationIdOrderBySentAtAsc(conversationId, pageable);
@@ -126,7 +176,7 @@ public class MessageService {
 
     @Transactional(readOnly = true)
     public MessageDTO.Response getLatestMessageByConversation(Long conversationId) {
-        List<Message> messages = messageRepository.findLatestMessageByConversationId(conversationId);
+        List<Message> messages = messageRepository.findLatestByConversationId(conversationId, PageRequest.of(0, 1));
         if (messages.isEmpty()) {
             throw new NotFoundException("Không tìm thấy tin nhắn nào trong cuộc trò chuyện với ID: " + conversationId);
         }
@@ -139,6 +189,8 @@ public class MessageService {
         
         messageMapper.applyUpdateToEntity(message, dto);
         Message savedMessage = messageRepository.save(message);
+        conversationRepository.updateLastMessagePreview(
+                savedMessage.getConversation().getConversationId(), messageId, preview(savedMessage));
         MessageDTO.Response response = messageMapper.entityToResponseDTO(savedMessage);
         broadcastMessage(response);
         return response;
@@ -149,25 +201,39 @@ public class MessageService {
                 .orElseThrow(() -> new NotFoundException("Không tìm thấy tin nhắn với ID: " + messageId));
         
         messageRepository.delete(message);
+        messageRepository.flush();
+        refreshSummary(message.getConversation());
+        invalidateUnread(message.getConversation());
     }
 
     public void deleteMessagesByConversation(Long conversationId) {
         List<Message> messages = messageRepository.findByConversationIdOrderBySentAtAsc(conversationId);
         messageRepository.deleteAll(messages);
+        messageRepository.flush();
+        conversationRepository.findById(conversationId).ifPresent(conversation -> {
+            refreshSummary(conversation);
+            invalidateUnread(conversation);
+        });
     }
 
     @Transactional(readOnly = true)
     public List<MessageDTO.Response> getRecentMessages(Long conversationId, int limit) {
-        List<Message> messages = messageRepository.findByConversationIdOrderBySentAtDesc(conversationId);
+        int size = checkLimit(limit);
+        List<Message> messages = messageRepository.findLatestByConversationId(conversationId, PageRequest.of(0, size));
         return messages.stream()
-                .limit(limit)
                 .map(messageMapper::entityToResponseDTO)
                 .toList();
     }
 
+    // Đọc từ UnreadCountCache, không COUNT(*) trên Messages mỗi lần client hỏi
     @Transactional(readOnly = true)
     public Long getUnreadMessageCount(Long conversationId, Long userId) {
-        return messageRepository.countUnreadMessagesByConversationAndUser(conversationId, userId);
+        return (long) unreadCountCache.get(userId, conversationId);
+    }
+
+    @Transactional(readOnly = true)
+    public Long getTotalUnreadMessageCount(Long userId) {
+        return unreadCountCache.total(userId);
     }
 
     @Transactional(readOnly = true)
@@ -181,24 +247,109 @@ public class MessageService {
     @Transactional
     public void markMessagesAsRead(Long conversationId, Long userId) {
         messageRepository.markMessagesAsReadByConversationAndUser(conversationId, userId);
+        conversationRepository.resetUnread(conversationId, userId);
+        unreadCountCache.conversationRead(conversationId, userId);
     }
 
     @Transactional
     public void markMessageAsRead(Long messageId) {
-        messageRepository.markMessageAsRead(messageId);
+        Message message = messageRepository.findById(messageId)
+                .orElseThrow(() -> new NotFoundException("Không tìm thấy tin nhắn với ID: " + messageId));
+        if (messageRepository.markMessageAsRead(messageId) > 0) {
+            Conversation conversation = message.getConversation();
+            conversationRepository.decrementUnread(conversation.getConversationId(), message.getSender().getId());
+            unreadCountCache.messageRead(conversation.getConversationId(),
+                    otherParticipant(conversation, message.getSender().getId()));
+        }
+    }
+
+    // Xóa tin nhắn hiếm khi xảy ra nên tính lại toàn bộ tóm tắt thay vì cập nhật tăng dần
+    private void refreshSummary(Conversation conversation) {
+        if (conversation == null) {
+            return;
+        }
+        Long conversationId = conversation.getConversationId();
+        List<Message> latest = messageRepository.findLatestByConversationId(conversationId, PageRequest.of(0, 1));
+        Message lastMessage = latest.isEmpty() ? null : latest.get(0);
+        conversation.setLastMessageId(lastMessage != null ? lastMessage.getMessageId() : null);
+        conversation.setLastMessageAt(lastMessage != null ? lastMessage.getSentAt() : null);
+        conversation.setLastMessagePreview(lastMessage != null ? preview(lastMessage) : null);
+        conversation.setMessageCount(messageRepository.countByConversationId(conversationId));
+        conversation.setPatientUnreadCount(Math.toIntExact(messageRepository.countUnreadMessagesByConversationAndUser(
+                conversationId, conversation.getPatientUser().getId())));
+        conversation.setDoctorUnreadCount(Math.toIntExact(messageRepository.countUnreadMessagesByConversationAndUser(
+                conversationId, conversation.getDoctorUser().getId())));
+        conversationRepository.save(conversation);
+    }
+
+    private void invalidateUnread(Conversation conversation) {
+        if (conversation == null) {
+            return;
+        }
+        unreadCountCache.invalidate(conversation.getPatientUser().getId());
+        unreadCountCache.invalidate(conversation.getDoctorUser().getId());
+    }
+
+    private static Long otherParticipant(Conversation conversation, Long userId) {
+        Long patientUserId = conversation.getPatientUser().getId();
+        return patientUserId.equals(userId) ? conversation.getDoctorUser().getId() : patientUserId;
+    }
+
+    // Dùng chung cho mọi API trả về một trang tin nhắn
+    static int checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit phải trong khoảng 1-" + MAX_PAGE_SIZE + ", nhận được: " + limit);
+        }
+        return limit;
     }
 
+    private static String preview(Message message) {
+        String content = message.getContent();
+        if (content == null || content.isBlank()) {
+            return message.getAttachmentURL() != null ? "[Tệp đính kèm]" : "";
+        }
+        return content.length() > MAX_PREVIEW_LENGTH ? content.substring(0, MAX_PREVIEW_LENGTH) : content;
+    }
+
+    // Phát sau khi commit để client không nhận tin nhắn của transaction bị rollback.
+    // Cố ý không đi qua outbox: chờ DomainEventDispatcher poll (domain-events.poll-interval-ms) làm chat chậm
+    // thấy rõ, còn frame bị mất thì client tự đồng bộ lại khi reconnect
     private void broadcastMessage(MessageDTO.Response message) {
         if (message == null || message.getConversationId() == null) {
             return;
         }
-        try {
-            messagingTemplate.convertAndSend(
-                    "/topic/conversations/" + message.getConversationId(),
-                    message
-            );
-        } catch (Exception ex) {
-            log.warn("Failed to publish message {} to WebSocket: {}", message.getMessageId(), ex.getMessage());
+        AfterCommit.run(() -> {
+            try {
+                messagingTemplate.convertAndSend(
+                        "/topic/conversations/" + message.getConversationId(),
+                        message
+                );
+            } catch (Exception ex) {
+                log.warn("Failed to publish message {} to WebSocket: {}", message.getMessageId(), ex.getMessage());
+            }
+        });
+    }
+
+    // Cursor dạng opaque cho client: base64url("sentAt|messageId")
+    private record Cursor(LocalDateTime sentAt, Long messageId) {
+
+        static Cursor of(Message message) {
+            return new Cursor(message.getSentAt(), message.getMessageId());
+        }
+
+        String encode() {
+            String raw = sentAt + "|" + messageId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Cursor không hợp lệ: " + value);
+            }
         }
     }
 }
@@ -0,0 +1,86 @@
+package com.example.backend.service;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sinh orderCode PayOS kiểu Snowflake trong 53 bit (không vượt 2^53 - 1, giới hạn số của PayOS):
+ * 41 bit mili giây kể từ EPOCH, 5 bit node (payos.order-code.node-id, 0-31) và 7 bit thứ tự trong cùng mili giây.
+ *
+ * Mã tăng dần trên mỗi node và không trùng giữa các node có node-id khác nhau. Thời gian và thứ tự được
+ * giữ chung trong một AtomicLong nên không cần khóa: hết 128 mã trong một mili giây thì mượn mili giây
+ * kế tiếp, đồng hồ lùi thì tiếp tục từ mốc đã cấp thay vì cấp lại mã cũ.
+ *
+ * node-id là bắt buộc và phải khác nhau giữa các node: thiếu node-id thì ứng dụng không khởi động, trừ
+ * profile dev/test (một node) nơi node-id được lấy theo hostname. Mốc đã cấp chỉ nằm trong bộ nhớ, nên
+ * bảo vệ khi đồng hồ lùi không còn sau khi khởi động lại: node khởi động lại trong lúc đồng hồ đang chậm
+ * hơn lần chạy trước có thể cấp lại mã cũ. Khi đó UX_Payments_PayOSCode và PayOS (orderCode đã tồn tại)
+ * từ chối mã trùng, request tạo link lỗi và lần thử sau lấy mã mới.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderCodeGenerator {
+
+    static final long EPOCH_MS = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 5;
+    static final int SEQUENCE_BITS = 7;
+    static final int TIMESTAMP_BITS = 53 - NODE_BITS - SEQUENCE_BITS;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final long MAX_ORDER_CODE = (1L << 53) - 1;
+
+    @Value("${payos.order-code.node-id:-1}")
+    private long configuredNodeId;
+
+    private final Environment environment;
+
+    private long nodeId;
+    // (mili giây kể từ EPOCH << SEQUENCE_BITS) | thứ tự của mã cấp gần nhất
+    private final AtomicLong last = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        if (configuredNodeId >= 0) {
+            if (configuredNodeId > MAX_NODE_ID) {
+                throw new IllegalStateException("payos.order-code.node-id phải trong khoảng 0-" + MAX_NODE_ID);
+            }
+            nodeId = configuredNodeId;
+        } else if (environment.acceptsProfiles(Profiles.of("dev", "test"))) {
+            // Chỉ dùng cho một node: hash hostname của hai node có thể trùng nhau
+            nodeId = Math.floorMod(hostName().hashCode(), MAX_NODE_ID + 1);
+            log.warn("payos.order-code.node-id not set, using {} derived from host name (dev/test only)", nodeId);
+        } else {
+            throw new IllegalStateException("Chưa cấu hình payos.order-code.node-id (PAYOS_ORDER_CODE_NODE_ID), "
+                    + "mỗi node cần một giá trị riêng trong khoảng 0-" + MAX_NODE_ID);
+        }
+    }
+
+    public long next() {
+        long now = (System.currentTimeMillis() - EPOCH_MS) << SEQUENCE_BITS;
+        long state = last.accumulateAndGet(now, (previous, current) -> Math.max(previous + 1, current));
+        long timestamp = state >>> SEQUENCE_BITS;
+        if (timestamp >= 1L << TIMESTAMP_BITS) {
+            throw new IllegalStateException("orderCode vượt quá 53 bit");
+        }
+        long sequence = state & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return String.valueOf(ProcessHandle.current().pid());
+        }
+    }
+}
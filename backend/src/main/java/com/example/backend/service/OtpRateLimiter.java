@@ -0,0 +1,80 @@
+package com.example.backend.service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Giới hạn số lần gửi OTP theo cửa sổ cố định cho mỗi key (email, IP); số lần nhập sai được đếm trong OtpStore.
+ *
+ * Số key bị chặn bởi otp.rate-limit.max-keys: khi đầy, cửa sổ đã hết hạn được dọn ngay,
+ * nếu vẫn đầy thì bỏ các cửa sổ bắt đầu sớm nhất để nhận key mới, không từ chối mọi người dùng.
+ * Bộ đếm nằm trong bộ nhớ của node.
+ */
+@Component
+@Slf4j
+public class OtpRateLimiter {
+
+    @Value("${otp.rate-limit.window-ms:600000}")
+    private long windowMs;
+
+    @Value("${otp.rate-limit.max-keys:50000}")
+    private int maxKeys;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private record Window(long startedAt, int count) {
+    }
+
+    /**
+     * Ghi nhận một lần dùng của key.
+     * @return false nếu key đã dùng hết limit trong cửa sổ hiện tại
+     */
+    public boolean tryAcquire(String key, int limit) {
+        long now = System.currentTimeMillis();
+        if (windows.size() >= maxKeys && !windows.containsKey(key)) {
+            makeRoom();
+        }
+        Window window = windows.compute(key, (k, current) -> {
+            if (current == null || now - current.startedAt() >= windowMs) {
+                return new Window(now, 1);
+            }
+            // Dừng đếm ở limit + 1: đủ để biết đã vượt, không tràn số khi bị spam
+            return current.count() > limit ? current : new Window(current.startedAt(), current.count() + 1);
+        });
+        return window.count() <= limit;
+    }
+
+    public void reset(String key) {
+        windows.remove(key);
+    }
+
+    // Dọn cửa sổ hết hạn; vẫn đầy thì bỏ các cửa sổ cũ nhất, thêm 1% để không phải sắp xếp lại ở mỗi key mới
+    private void makeRoom() {
+        evictExpired();
+        int excess = windows.size() - maxKeys + 1;
+        if (excess <= 0) {
+            return;
+        }
+        List<String> oldest = windows.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().startedAt()))
+                .limit(excess + Math.max(1, maxKeys / 100))
+                .map(Map.Entry::getKey)
+                .toList();
+        oldest.forEach(windows::remove);
+        log.warn("OTP rate limiter full ({} keys), evicted {} oldest windows", maxKeys, oldest.size());
+    }
+
+    @Scheduled(fixedDelayString = "${otp.sweep-interval-ms:30000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        windows.values().removeIf(window -> now - window.startedAt() >= windowMs);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Nơi lưu dữ liệu tạm có hạn dùng cho EmailOtpService (mã OTP, đăng ký đang chờ xác thực).
+ *
+ * Mỗi giá trị thuộc một namespace và hết hạn sau ttl; giá trị hết hạn không bao giờ được trả về.
+ * Chọn backend qua otp.store: memory (mặc định, một node) hoặc db (dùng chung giữa các node).
+ */
+public interface OtpStore {
+
+    /**
+     * Ghi đè giá trị cũ (nếu có), đặt lại hạn dùng và số lần thử về 0.
+     */
+    void put(String namespace, String key, String value, Duration ttl);
+
+    Optional<String> get(String namespace, String key);
+
+    /**
+     * Xóa và trả về giá trị còn hạn. Khi nhiều request cùng xóa thì chỉ một request nhận được giá trị.
+     */
+    Optional<String> remove(String namespace, String key);
+
+    /**
+     * Tính một lần thử cho entry còn hạn nếu entry chưa dùng hết maxAttempts lượt. Kiểm tra và tăng trong
+     * một bước, nên khi nhiều request (hoặc nhiều node với otp.store = db) cùng thử thì tổng số lượt được
+     * cấp không vượt maxAttempts.
+     * @return false nếu entry không còn hoặc đã hết lượt thử
+     */
+    boolean tryAttempt(String namespace, String key, int maxAttempts);
+
+    /**
+     * Đặt số lần thử của entry về 0 (không đổi giá trị và hạn dùng).
+     */
+    void resetAttempts(String namespace, String key);
+}
@@ -0,0 +1,172 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.PatientDTO;
+import com.example.backend.exception.NotFoundException;
+import com.example.backend.repository.PatientRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gom dữ liệu trang tổng quan bệnh nhân (lịch hẹn, hồ sơ khám, đơn thuốc, thanh toán, hội thoại)
+ * trong một lần gọi.
+ *
+ * Mỗi nhánh chạy song song trên một virtual thread với transaction riêng của service tương ứng,
+ * nên thời gian trả về bằng nhánh chậm nhất thay vì tổng các nhánh. Nhánh nào quá
+ * patient-overview.branch-timeout-ms hoặc lỗi thì bị hủy và được ghi vào incomplete; các nhánh
+ * còn lại vẫn được trả về. Không nhánh nào sống quá thời gian của request.
+ *
+ * Mỗi nhánh giữ một kết nối DB trong lúc chạy, nên số nhánh chạy cùng lúc trên cả node (mọi request cộng lại)
+ * bị giới hạn bởi patient-overview.max-concurrent-branches, nhỏ hơn kích thước pool Hikari để các API khác
+ * vẫn còn kết nối. Nhánh chờ tới hạn mà chưa được chạy cũng bị ghi vào incomplete.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PatientOverviewService {
+
+    static final String APPOINTMENTS = "appointments";
+    static final String MEDICAL_RECORDS = "medicalRecords";
+    static final String PRESCRIPTIONS = "prescriptions";
+    static final String PAYMENTS = "payments";
+    static final String CONVERSATIONS = "conversations";
+
+    private final PatientRepository patientRepository;
+    private final AppointmentService appointmentService;
+    private final MedicalRecordService medicalRecordService;
+    private final PrescriptionService prescriptionService;
+    private final PaymentService paymentService;
+    private final ConversationService conversationService;
+
+    @Value("${patient-overview.branch-timeout-ms:2000}")
+    private long branchTimeoutMs;
+
+    @Value("${patient-overview.max-concurrent-branches:4}")
+    private int maxConcurrentBranches;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
+
+    private final ExecutorService branches = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("patient-overview-", 0).factory());
+
+    private Semaphore permits;
+
+    @PostConstruct
+    void init() {
+        if (maxConcurrentBranches < 1 || maxConcurrentBranches >= connectionPoolSize) {
+            throw new IllegalStateException("patient-overview.max-concurrent-branches phải trong khoảng 1-"
+                    + (connectionPoolSize - 1) + " (nhỏ hơn kích thước pool kết nối " + connectionPoolSize + ")");
+        }
+        permits = new Semaphore(maxConcurrentBranches, true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        branches.shutdownNow();
+    }
+
+    public PatientDTO.Overview getOverview(Long patientId) {
+        if (!patientRepository.existsById(patientId)) {
+            throw new NotFoundException("Không tìm thấy bệnh nhân với ID: " + patientId);
+        }
+
+        // Các nhánh bắt đầu cùng lúc nên hạn chung cũng là hạn riêng của từng nhánh
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(branchTimeoutMs);
+        List<Future<?>> started = new ArrayList<>();
+        // Nhánh còn chờ suất chạy
+        Set<String> waiting = ConcurrentHashMap.newKeySet();
+        var appointments = fork(started, waiting, APPOINTMENTS, deadline,
+                () -> appointmentService.getByPatient(patientId));
+        var medicalRecords = fork(started, waiting, MEDICAL_RECORDS, deadline,
+                () -> medicalRecordService.getMedicalRecordsByPatientId(patientId));
+        var prescriptions = fork(started, waiting, PRESCRIPTIONS, deadline,
+                () -> prescriptionService.getPrescriptionsByPatientId(patientId));
+        var payments = fork(started, waiting, PAYMENTS, deadline,
+                () -> paymentService.getPaymentsByPatientId(patientId));
+        var conversations = fork(started, waiting, CONVERSATIONS, deadline,
+                () -> conversationService.getConversationsByPatient(null, patientId));
+
+        Map<String, String> incomplete = new LinkedHashMap<>();
+        try {
+            PatientDTO.Overview overview = new PatientDTO.Overview();
+            overview.setPatientId(patientId);
+            overview.setAppointments(join(APPOINTMENTS, appointments, deadline, waiting, incomplete));
+            overview.setMedicalRecords(join(MEDICAL_RECORDS, medicalRecords, deadline, waiting, incomplete));
+            overview.setPrescriptions(join(PRESCRIPTIONS, prescriptions, deadline, waiting, incomplete));
+            overview.setPayments(join(PAYMENTS, payments, deadline, waiting, incomplete));
+            overview.setConversations(join(CONVERSATIONS, conversations, deadline, waiting, incomplete));
+            overview.setIncomplete(incomplete);
+            return overview;
+        } finally {
+            // Nhánh nào chưa xong (kể cả khi thread request bị ngắt) thì hủy luôn
+            started.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private <T> Future<T> fork(List<Future<?>> started, Set<String> waiting, String name, long deadline,
+                               Callable<T> branch) {
+        waiting.add(name);
+        Future<T> future = branches.submit(() -> {
+            if (!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new RejectedExecutionException("Không có suất chạy trước hạn");
+            }
+            waiting.remove(name);
+            try {
+                return branch.call();
+            } finally {
+                permits.release();
+            }
+        });
+        started.add(future);
+        return future;
+    }
+
+    private <T> T join(String branch, Future<T> future, long deadline, Set<String> waiting,
+                       Map<String, String> incomplete) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (waiting.contains(branch)) {
+                log.warn("Patient overview branch {} got no slot within {} ms", branch, branchTimeoutMs);
+                incomplete.put(branch, "Hệ thống đang bận");
+            } else {
+                log.warn("Patient overview branch {} timed out after {} ms", branch, branchTimeoutMs);
+                incomplete.put(branch, "Quá thời gian chờ");
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                log.warn("Patient overview branch {} got no slot within {} ms", branch, branchTimeoutMs);
+                incomplete.put(branch, "Hệ thống đang bận");
+                return null;
+            }
+            log.warn("Patient overview branch {} failed", branch, e.getCause());
+            incomplete.put(branch, "Không tải được dữ liệu");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            incomplete.put(branch, "Yêu cầu bị hủy");
+        }
+        return null;
+    }
+}
@@ -35,6 +35,8 @@ public class PatientService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PeopleSearchIndex searchIndex;
+    private final BlockIdAllocator idAllocator;
     
     @PersistenceContext
     private EntityManager entityManager;
@@ -67,7 +69,12 @@ public class PatientService {
      */
     @Transactional(readOnly = true)
     public List<Patient> getPatientsByNameWithUserAndRole(String keyword) {
-        return patientRepository.findByNameContainingWithUserAndRole(keyword);
+        // Tra index trong bộ nhớ (bỏ dấu, trigram) rồi nạp entity bằng truy vấn IN theo lô;
+        // index chưa sẵn sàng thì dùng truy vấn LIKE
+        return searchIndex.search(PeopleSearchIndex.Kind.PATIENT, keyword)
+                .map(ids -> RankedIds.loadInRankOrder(ids, patientRepository::findByPatientIdInWithUserAndRole,
+                        Patient::getPatientId))
+                .orElseGet(() -> patientRepository.findByNameContainingWithUserAndRole(keyword));
     }
 
     /**
@@ -110,7 +117,7 @@ public class PatientService {
         }
 
         // Kiểm tra user đã có thông tin patient chưa
-        if (patientRepository.existsByPatientId(userId)) {
+        if (patientRepository.existsByUserId(userId)) {
             throw new ConflictException("User đã có thông tin bệnh nhân");
         }
 
@@ -123,7 +130,7 @@ public class PatientService {
 
         // Tạo patient mới
         Patient patient = new Patient();
-        patient.setPatientId(userId); // Set patientId = userId for @MapsId
+        patient.setPatientId(idAllocator.next(BlockIdAllocator.Sequence.PATIENT));
         patient.setUser(user); // Set user reference
         patient.setHealthInsuranceNumber(healthInsuranceNumber);
         patient.setMedicalHistory(medicalHistory);
@@ -205,7 +212,7 @@ public class PatientService {
      */
     @Transactional(readOnly = true)
     public boolean isUserPatient(Long userId) {
-        return patientRepository.existsByPatientId(userId);
+        return patientRepository.existsByUserId(userId);
     }
 
     /**
@@ -237,7 +244,10 @@ public class PatientService {
         // 3️⃣ Tạo User
         User user = new User();
         user.setEmail(request.getEmail());
-        user.setPasswordHash(passwordEncoder.encode(request.getPassword()));
+        // Đăng ký qua OTP đã băm mật khẩu từ trước (EmailOtpService.savePendingRegistration)
+        user.setPasswordHash(request.getPasswordHash() != null
+                ? request.getPasswordHash()
+                : passwordEncoder.encode(request.getPassword()));
         user.setFirstName(request.getFirstName());
         user.setLastName(request.getLastName());
         user.setPhone(request.getPhone());
@@ -270,8 +280,8 @@ public class PatientService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new NotFoundException("User not found with ID: " + userId));
         
-        // Get next Patient ID
-        Long nextPatientId = getNextPatientId();
+        // Lấy Patient ID từ khối ID đã giữ sẵn
+        Long nextPatientId = idAllocator.next(BlockIdAllocator.Sequence.PATIENT);
         
         Patient patient = new Patient();
         patient.setPatientId(nextPatientId); // Set patientId manually
@@ -285,22 +295,13 @@ public class PatientService {
         patientRepository.save(patient);
     }
     
-    private Long getNextPatientId() {
-        // Simple approach: get max ID + 1
-        try {
-            Long maxId = patientRepository.findMaxPatientId().orElse(0L);
-            return maxId + 1;
-        } catch (Exception e) {
-            return 1L; // Fallback to 1 if no patients exist
-        }
-    }
-
     /**
      * Request DTO cho đăng ký bệnh nhân
      */
     public static class PatientRegisterRequest {
         private String email;
         private String password;
+        private String passwordHash;
         private String firstName;
         private String lastName;
         private String phone;
@@ -317,6 +318,9 @@ public class PatientService {
         public String getPassword() { return password; }
         public void setPassword(String password) { this.password = password; }
 
+        public String getPasswordHash() { return passwordHash; }
+        public void setPasswordHash(String passwordHash) { this.passwordHash = passwordHash; }
+
         public String getFirstName() { return firstName; }
         public void setFirstName(String firstName) { this.firstName = firstName; }
 
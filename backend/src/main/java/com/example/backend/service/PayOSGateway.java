@@ -0,0 +1,18 @@
+package com.example.backend.service;
+
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkRequest;
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkResponse;
+
+/**
+ * Các lời gọi PayOS payment-requests API mà ứng dụng dùng.
+ *
+ * Bản chạy thật (PayOSConfig) ủy quyền cho payOS.paymentRequests() của SDK; test thay bằng stub cục bộ
+ * để kiểm tra timeout, bulkhead, circuit breaker và đối soát mà không cần mạng.
+ */
+public interface PayOSGateway {
+
+    CreatePaymentLinkResponse createPaymentLink(CreatePaymentLinkRequest request) throws Exception;
+
+    // Trạng thái link theo orderCode: PENDING, PROCESSING, PAID, CANCELLED, EXPIRED, ...
+    String getPaymentStatus(long orderCode) throws Exception;
+}
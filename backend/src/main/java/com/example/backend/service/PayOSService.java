@@ -1,99 +1,162 @@
 package com.example.backend.service;
 
-import com.example.backend.model.Payment;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
 import vn.payos.PayOS;
+import vn.payos.exception.APIException;
+import vn.payos.exception.ConnectionException;
+import vn.payos.exception.ConnectionTimeoutException;
 import vn.payos.model.v2.paymentRequests.CreatePaymentLinkRequest;
 import vn.payos.model.v2.paymentRequests.CreatePaymentLinkResponse;
 import vn.payos.model.v2.paymentRequests.PaymentLinkItem;
 
+/**
+ * Gọi PayOS API.
+ *
+ * Lời gọi tạo link là HTTPS chặn nên được bảo vệ ba lớp: bulkhead giới hạn số lời gọi đồng thời
+ * (payos.bulkhead.*), mỗi lời gọi có hạn payos.call-timeout-ms, và circuit breaker mở sau
+ * payos.circuit-breaker.failure-threshold lỗi hạ tầng liên tiếp (timeout, lỗi kết nối, HTTP 5xx; không tính lỗi
+ * 4xx/nghiệp vụ) để từ chối nhanh trong payos.circuit-breaker.open-ms.
+ * Bị bulkhead hoặc breaker từ chối thì ném RejectedExecutionException (trả 503). Service không đụng tới
+ * entity hay transaction: người gọi truyền giá trị đã đọc sẵn và tự lưu kết quả.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class PayOSService {
-    
+
+    /**
+     * Dữ liệu cần để tạo link, đọc từ payment trước khi rời transaction.
+     */
+    public record LinkRequest(Long paymentId, Long appointmentId, BigDecimal amount, String description,
+                              String returnUrl, String cancelUrl) {
+    }
+
+    /**
+     * Link PayOS vừa tạo: paymentLinkId, orderCode, checkoutUrl và thời điểm link hết hạn phía PayOS.
+     */
+    public record CreatedLink(String paymentLinkId, String orderCode, String checkoutUrl, LocalDateTime expiresAt) {
+    }
+
     private final PayOS payOS;
-    
-    public CreatePaymentLinkResponse createPaymentLink(Payment payment, String returnUrl, String cancelUrl) {
-        try {
-            log.info("🔍 Creating PayOS payment link for payment ID: {}", payment.getPaymentId());
-            log.info("🔍 Payment details: appointmentId={}, amount={}", 
-                payment.getAppointment().getAppointmentId(), payment.getAmount());
-            
-            String orderCode = String.valueOf(System.currentTimeMillis());
-            // PayOS yêu cầu description tối đa 25 ký tự
-            String description = payment.getDescription() != null ? 
-                payment.getDescription() : "Thanh toán lịch hẹn";
-            
-            // Cắt ngắn description nếu quá 25 ký tự
-            if (description.length() > 25) {
-                description = description.substring(0, 22) + "...";
-            }
-            
-            // Tạo PaymentLinkItem theo PayOS SDK
-            String itemName = "Phí khám bệnh #" + payment.getAppointment().getAppointmentId();
-            // Cắt ngắn item name nếu quá dài
-            if (itemName.length() > 50) {
-                itemName = itemName.substring(0, 47) + "...";
-            }
-            
-            // Lấy fee từ appointment thay vì từ payment amount
-            long appointmentFee = 0;
-            if (payment.getAppointment() != null && payment.getAppointment().getFee() != null) {
-                appointmentFee = payment.getAppointment().getFee().longValue();
-                log.info("Using appointment fee: {} VND", appointmentFee);
-            } else {
-                // Fallback nếu không có appointment fee
-                appointmentFee = payment.getAmount().longValue();
-                log.warn("No appointment fee, using payment amount: {} VND", appointmentFee);
-            }
-            
-            // PayOS yêu cầu amount theo VND (đồng Việt Nam)
-            // Appointment fee đã là VND thực tế, không cần chuyển đổi
-            long payOSAmount = appointmentFee;
-            
-            // Log để debug
-            log.info("PayOS amount calculation: appointment fee = {}, PayOS amount = {}", 
-                appointmentFee, payOSAmount);
-            log.info("PayOS will display: {} VND", payOSAmount);
-            
-            PaymentLinkItem item = PaymentLinkItem.builder()
-                .name(itemName)
-                .quantity(1)
-                .price(payOSAmount)
-                .build();
-            
-            // Tạo CreatePaymentLinkRequest theo PayOS SDK
-            CreatePaymentLinkRequest paymentData = CreatePaymentLinkRequest.builder()
-                .orderCode(Long.parseLong(orderCode))
-                .amount(payOSAmount)
-                .description(description)
-                .returnUrl(returnUrl != null ? returnUrl : "http://localhost:3000/payment/success")
-                .cancelUrl(cancelUrl != null ? cancelUrl : "http://localhost:3000/payment/cancel")
-                .item(item)
-                .build();
-            
-            // Gọi PayOS API sử dụng SDK
-            log.info("🔍 Calling PayOS API with data: {}", paymentData);
-            CreatePaymentLinkResponse response = payOS.paymentRequests().create(paymentData);
-            log.info("✅ PayOS API response: {}", response);
-            
-            // Cập nhật payment với thông tin từ PayOS
-            payment.setPayOSPaymentId(response.getPaymentLinkId());
-            payment.setPayOSCode(orderCode);
-            payment.setPayOSLink(response.getCheckoutUrl());
-            
-            log.info("✅ PayOS payment link created successfully for payment ID: {}", payment.getPaymentId());
-            return response;
-            
-        } catch (Exception e) {
-            log.error("Error creating PayOS payment link: ", e);
-            throw new RuntimeException("Lỗi khi tạo link thanh toán: " + e.getMessage());
+    private final PayOSGateway payOSGateway;
+    private final OrderCodeGenerator orderCodeGenerator;
+
+    // Thời hạn link gửi cho PayOS (expiredAt); hết hạn thì PayOS không nhận thanh toán qua link đó nữa
+    @Value("${payos.link-expiry-ms:900000}")
+    private long linkExpiryMs;
+
+    @Value("${payos.call-timeout-ms:10000}")
+    private long callTimeoutMs;
+
+    @Value("${payos.bulkhead.max-concurrent:20}")
+    private int maxConcurrentCalls;
+
+    @Value("${payos.bulkhead.max-wait-ms:200}")
+    private long bulkheadMaxWaitMs;
+
+    @Value("${payos.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${payos.circuit-breaker.open-ms:30000}")
+    private long openMs;
+
+    private final ExecutorService calls = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("payos-call-", 0).factory());
+
+    private Semaphore bulkhead;
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    void init() {
+        bulkhead = new Semaphore(maxConcurrentCalls, true);
+        circuitBreaker = new CircuitBreaker(failureThreshold, TimeUnit.MILLISECONDS.toNanos(openMs));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        calls.shutdownNow();
+    }
+
+    public CreatedLink createPaymentLink(LinkRequest request) {
+        log.info("🔍 Creating PayOS payment link for payment ID: {}", request.paymentId());
+        log.info("🔍 Payment details: appointmentId={}, amount={}", request.appointmentId(), request.amount());
+
+        // Mã duy nhất giữa các node và thread, kể cả khi tạo trong cùng mili giây
+        String orderCode = String.valueOf(orderCodeGenerator.next());
+        // PayOS yêu cầu description tối đa 25 ký tự
+        String description = request.description() != null ? request.description() : "Thanh toán lịch hẹn";
+
+        // Cắt ngắn description nếu quá 25 ký tự
+        if (description.length() > 25) {
+            description = description.substring(0, 22) + "...";
+        }
+
+        // Tạo PaymentLinkItem theo PayOS SDK
+        String itemName = "Phí khám bệnh #" + request.appointmentId();
+        // Cắt ngắn item name nếu quá dài
+        if (itemName.length() > 50) {
+            itemName = itemName.substring(0, 47) + "...";
         }
+
+        // PayOS yêu cầu amount theo VND (đồng Việt Nam), fee của appointment đã là VND thực tế
+        long payOSAmount = request.amount().longValue();
+        log.info("PayOS will display: {} VND", payOSAmount);
+        Instant expiresAt = Instant.now().plusMillis(linkExpiryMs);
+
+        PaymentLinkItem item = PaymentLinkItem.builder()
+            .name(itemName)
+            .quantity(1)
+            .price(payOSAmount)
+            .build();
+
+        // Tạo CreatePaymentLinkRequest theo PayOS SDK
+        CreatePaymentLinkRequest paymentData = CreatePaymentLinkRequest.builder()
+            .orderCode(Long.parseLong(orderCode))
+            .amount(payOSAmount)
+            .description(description)
+            .returnUrl(request.returnUrl() != null ? request.returnUrl() : "http://localhost:3000/payment/success")
+            .cancelUrl(request.cancelUrl() != null ? request.cancelUrl() : "http://localhost:3000/payment/cancel")
+            .item(item)
+            .expiredAt(expiresAt.getEpochSecond())
+            .build();
+
+        log.info("🔍 Calling PayOS API with data: {}", paymentData);
+        CreatePaymentLinkResponse response = call("tạo link thanh toán", () -> payOSGateway.createPaymentLink(paymentData));
+        log.info("✅ PayOS payment link created successfully for payment ID: {}", request.paymentId());
+        return new CreatedLink(response.getPaymentLinkId(), orderCode, response.getCheckoutUrl(),
+                LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault()));
+    }
+
+    /**
+     * Trạng thái hiện tại của link theo orderCode, qua cùng các lớp bảo vệ với lời gọi tạo link.
+     */
+    public String getPaymentStatus(long orderCode) {
+        return call("lấy trạng thái thanh toán", () -> payOSGateway.getPaymentStatus(orderCode));
     }
-    
+
     public Object getPaymentInfo(String payOSPaymentId) {
         try {
             // Sử dụng PayOS SDK để lấy thông tin payment
@@ -103,6 +166,194 @@ public class PayOSService {
             throw new RuntimeException("Lỗi khi lấy thông tin thanh toán: " + e.getMessage());
         }
     }
-    
-    
+
+    CircuitBreaker.State circuitState() {
+        return circuitBreaker.state();
+    }
+
+    /**
+     * Chạy lời gọi PayOS qua circuit breaker, bulkhead và hạn thời gian.
+     */
+    private <T> T call(String operation, Callable<T> request) {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new RejectedExecutionException("PayOS tạm thời không khả dụng, vui lòng thử lại sau");
+        }
+        boolean permitted;
+        try {
+            permitted = bulkhead.tryAcquire(bulkheadMaxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permitted = false;
+        }
+        if (!permitted) {
+            circuitBreaker.release();
+            throw new RejectedExecutionException("Quá nhiều yêu cầu đang gọi PayOS, vui lòng thử lại sau");
+        }
+
+        // Suất bulkhead chỉ được trả khi lời gọi HTTP thật sự kết thúc (hoặc chưa kịp bắt đầu),
+        // để lời gọi bị bỏ chờ do timeout vẫn được tính vào giới hạn đồng thời
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = calls.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return request.call();
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            circuitBreaker.release();
+            throw e;
+        }
+
+        try {
+            T result = future.get(callTimeoutMs, TimeUnit.MILLISECONDS);
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            abandon(future, claimed);
+            circuitBreaker.onFailure();
+            log.error("PayOS did not respond within {} ms ({})", callTimeoutMs, operation);
+            throw new RuntimeException("PayOS không phản hồi trong " + callTimeoutMs + " ms khi " + operation, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (isOutage(cause)) {
+                circuitBreaker.onFailure();
+            } else {
+                // PayOS đã trả lời (lỗi 4xx hoặc lỗi nghiệp vụ như orderCode trùng): dịch vụ vẫn hoạt động
+                circuitBreaker.onSuccess();
+            }
+            log.error("Error calling PayOS ({}): ", operation, cause);
+            throw new RuntimeException("Lỗi khi " + operation + ": " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            abandon(future, claimed);
+            circuitBreaker.release();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Yêu cầu bị hủy khi " + operation, e);
+        }
+    }
+
+    /**
+     * Chỉ lỗi hạ tầng mới tính vào circuit breaker: mất kết nối, hết thời gian chờ hoặc PayOS trả 5xx.
+     * Người gọi cũng dùng để phân biệt lỗi tạm thời (nên thử lại) với lỗi PayOS đã trả lời.
+     */
+    static boolean isOutage(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ConnectionException || t instanceof ConnectionTimeoutException || t instanceof IOException
+                    || t instanceof TimeoutException) {
+                return true;
+            }
+            if (t instanceof APIException api) {
+                return api.getStatusCode().map(status -> status >= 500).orElse(false);
+            }
+        }
+        return false;
+    }
+
+    private void abandon(Future<?> future, AtomicBoolean claimed) {
+        future.cancel(true);
+        if (claimed.compareAndSet(false, true)) {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Circuit breaker đếm lỗi liên tiếp. OPEN từ chối mọi lời gọi trong openNanos, sau đó HALF_OPEN
+     * cho đúng một lời gọi thử: thành công thì đóng lại, lỗi thì mở tiếp.
+     */
+    static final class CircuitBreaker {
+
+        enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final int failureThreshold;
+        private final long openNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int failureThreshold, long openNanos) {
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openNanos;
+        }
+
+        boolean tryAcquire() {
+            lock.lock();
+            try {
+                if (state == State.OPEN) {
+                    if (System.nanoTime() - openedAt < openNanos) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    trialInFlight = false;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (trialInFlight) {
+                        return false;
+                    }
+                    trialInFlight = true;
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Lời gọi đã được cho phép nhưng không chạy (bị bulkhead từ chối, bị hủy)
+        void release() {
+            lock.lock();
+            try {
+                trialInFlight = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onSuccess() {
+            lock.lock();
+            try {
+                // Lời gọi được cho qua trước khi breaker mở không được đóng breaker lại
+                if (state != State.OPEN) {
+                    state = State.CLOSED;
+                    consecutiveFailures = 0;
+                    trialInFlight = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onFailure() {
+            lock.lock();
+            try {
+                if (state == State.OPEN) {
+                    return;
+                }
+                trialInFlight = false;
+                if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+                    log.warn("PayOS circuit breaker opened ({} state, {} consecutive failures)", state, consecutiveFailures);
+                    state = State.OPEN;
+                    openedAt = System.nanoTime();
+                    consecutiveFailures = 0;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        State state() {
+            lock.lock();
+            try {
+                return state;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
 }
@@ -0,0 +1,251 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.backend.event.OutboxSupport;
+import com.example.backend.exception.NotFoundException;
+import com.example.backend.model.PayOSWebhookEvent;
+import com.example.backend.repository.PayOSWebhookEventRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import vn.payos.model.webhooks.WebhookData;
+
+/**
+ * Hàng đợi webhook PayOS: nhận nhanh, áp vào payment bất đồng bộ.
+ *
+ * Controller chỉ xác thực chữ ký rồi gọi ingest, ghi event vào PayOSWebhookEvents và trả 200 ngay;
+ * webhook PayOS gửi lại (cùng OrderCode và Code) bị ràng buộc unique chặn và bỏ qua. Một poller đọc
+ * event tới hạn và chia cho payos-webhooks.workers worker; mỗi lượt chỉ lấy event đầu tiên chưa xử lý
+ * của mỗi OrderCode, nên các event của cùng một payment được áp đúng thứ tự còn các payment khác chạy
+ * song song; event FAILED cũng chặn các event sau của OrderCode đó tới khi được replay. Event được áp
+ * trong cùng transaction với việc đánh dấu PROCESSED; lỗi thì thử lại với backoff tới
+ * payos-webhooks.max-attempts rồi chuyển FAILED chờ replay. Nhận việc và ghi lỗi dùng chung OutboxSupport
+ * với các outbox khác; lần áp lỗi được ghi bằng UPDATE theo EventID và ClaimToken.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PayOSWebhookQueue {
+
+    private final PayOSWebhookEventRepository webhookEventRepository;
+    private final WebhookService webhookService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payos-webhooks.workers:4}")
+    private int workerCount;
+
+    @Value("${payos-webhooks.batch-size:100}")
+    private int batchSize;
+
+    @Value("${payos-webhooks.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${payos-webhooks.retry-base-delay-ms:5000}")
+    private long retryBaseDelayMs;
+
+    @Value("${payos-webhooks.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${payos-webhooks.retention-days:30}")
+    private int retentionDays;
+
+    private final ExecutorService poller = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("payos-webhooks").factory());
+    private ExecutorService workers;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong lagMs = new AtomicLong();
+    private Timer applyLatency;
+    private Counter receivedCounter;
+    private Counter duplicateCounter;
+    private Counter processedCounter;
+    private Counter retryCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void init() {
+        workers = Executors.newFixedThreadPool(workerCount, Thread.ofVirtual().name("payos-webhook-worker-", 0).factory());
+        Gauge.builder("payos.webhooks.depth", queueDepth, AtomicLong::get)
+                .description("Số webhook PayOS PENDING chưa áp")
+                .register(meterRegistry);
+        Gauge.builder("payos.webhooks.lag", lagMs, value -> value.get() / 1000.0)
+                .description("Tuổi (giây) của webhook PENDING cũ nhất")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        applyLatency = Timer.builder("payos.webhooks.latency")
+                .description("Thời gian từ lúc nhận webhook tới lúc áp xong vào payment")
+                .register(meterRegistry);
+        receivedCounter = meterRegistry.counter("payos.webhooks.received");
+        duplicateCounter = meterRegistry.counter("payos.webhooks.duplicates");
+        processedCounter = meterRegistry.counter("payos.webhooks.processed");
+        retryCounter = meterRegistry.counter("payos.webhooks.retried");
+        failedCounter = meterRegistry.counter("payos.webhooks.failed");
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        poller.shutdown();
+        poller.awaitTermination(10, TimeUnit.SECONDS);
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ghi webhook đã xác thực; trả false nếu cùng (orderCode, code) đã được nhận trước đó.
+     */
+    public boolean ingest(WebhookData webhookData, String payload) {
+        return enqueue(Long.parseLong(String.valueOf(webhookData.getOrderCode())),
+                webhookData.getCode() != null ? webhookData.getCode() : "", webhookData.getDesc(), payload);
+    }
+
+    /**
+     * Ghi một thay đổi trạng thái (từ webhook hoặc đối soát) để áp qua cùng một đường xử lý;
+     * trả false nếu cùng (orderCode, code) đã có trong hàng đợi.
+     */
+    public boolean enqueue(Long orderCode, String code, String description, String payload) {
+        PayOSWebhookEvent event = new PayOSWebhookEvent();
+        event.setOrderCode(orderCode);
+        event.setCode(code);
+        event.setDescription(OutboxSupport.truncate(description, 255));
+        event.setPayload(payload);
+        try {
+            // Transaction riêng của repository: event đã commit khi worker được đánh thức
+            webhookEventRepository.saveAndFlush(event);
+        } catch (DataIntegrityViolationException ex) {
+            duplicateCounter.increment();
+            log.info("Duplicate PayOS status update ignored: orderCode={}, code={}", event.getOrderCode(), event.getCode());
+            return false;
+        }
+        receivedCounter.increment();
+        requestDispatch();
+        return true;
+    }
+
+    /**
+     * Đưa một event (đã xử lý hoặc FAILED) về hàng đợi để áp lại.
+     */
+    public void replay(Long eventId) {
+        if (webhookEventRepository.requeue(eventId, LocalDateTime.now()) == 0) {
+            throw new NotFoundException("Không tìm thấy webhook đã xử lý hoặc thất bại với ID: " + eventId);
+        }
+        log.info("PayOS webhook {} queued for replay", eventId);
+        requestDispatch();
+    }
+
+    /**
+     * Đưa toàn bộ event FAILED về hàng đợi, trả về số event được áp lại.
+     */
+    public int replayFailed() {
+        int requeued = webhookEventRepository.requeueFailed(LocalDateTime.now());
+        log.info("{} failed PayOS webhooks queued for replay", requeued);
+        if (requeued > 0) {
+            requestDispatch();
+        }
+        return requeued;
+    }
+
+    public void requestDispatch() {
+        if (!poller.isShutdown()) {
+            poller.submit(this::dispatch);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payos-webhooks.poll-interval-ms:1000}")
+    public void poll() {
+        requestDispatch();
+    }
+
+    // Dọn các webhook đã xử lý để bảng không phình ra
+    @Scheduled(cron = "0 45 3 * * *")
+    public void purgeProcessed() {
+        int deleted = webhookEventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            log.info("Purged {} processed PayOS webhooks", deleted);
+        }
+    }
+
+    void dispatch() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+
+            // Mỗi lượt lấy tối đa một event cho mỗi OrderCode; event kế tiếp của OrderCode đó tới hạn ở lượt sau
+            List<PayOSWebhookEvent> claimed;
+            while (!(claimed = OutboxSupport.claimDue(webhookEventRepository, now, batchSize, leaseMs)).isEmpty()) {
+                List<Callable<Void>> tasks = claimed.stream()
+                        .<Callable<Void>>map(event -> () -> {
+                            process(event);
+                            return null;
+                        })
+                        .toList();
+                workers.invokeAll(tasks);
+            }
+
+            queueDepth.set(webhookEventRepository.countByStatus(PayOSWebhookEvent.WebhookEventStatus.PENDING));
+            LocalDateTime oldest = webhookEventRepository.findOldestPendingReceivedAt();
+            lagMs.set(oldest != null ? Duration.between(oldest, LocalDateTime.now()).toMillis() : 0);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.error("PayOS webhook dispatch failed: {}", ex.getMessage());
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    void process(PayOSWebhookEvent event) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                webhookService.applyPayOSWebhook(event.getOrderCode(), event.getCode(), event.getDescription());
+                webhookEventRepository.markProcessed(event.getEventId(), LocalDateTime.now());
+            });
+            applyLatency.record(Duration.between(event.getReceivedAt(), LocalDateTime.now()));
+            processedCounter.increment();
+        } catch (Exception ex) {
+            String claimToken = event.getClaimToken();
+            markFailed(event, ex, LocalDateTime.now());
+            if (webhookEventRepository.recordFailure(event.getEventId(), claimToken, event.getStatus(), event.getAttempts(),
+                    event.getNextAttemptAt(), event.getLastError()) == 0) {
+                log.warn("PayOS webhook {} lease lost before its failure was recorded", event.getEventId());
+            }
+        }
+    }
+
+    private void markFailed(PayOSWebhookEvent event, Exception error, LocalDateTime now) {
+        long delayMs = OutboxSupport.recordFailure(event, error, now, maxAttempts, retryBaseDelayMs);
+        if (delayMs < 0) {
+            event.setStatus(PayOSWebhookEvent.WebhookEventStatus.FAILED);
+            failedCounter.increment();
+            log.error("PayOS webhook {} (orderCode {}) failed after {} attempts: {}",
+                    event.getEventId(), event.getOrderCode(), event.getAttempts(), error.getMessage());
+        } else {
+            event.setStatus(PayOSWebhookEvent.WebhookEventStatus.PENDING);
+            retryCounter.increment();
+            log.warn("PayOS webhook {} (orderCode {}) failed (attempt {}), retrying in {} ms: {}",
+                    event.getEventId(), event.getOrderCode(), event.getAttempts(), delayMs, error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.backend.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.example.backend.dto.PaymentDTO;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gom các request tạo link đồng thời cho cùng một lịch hẹn trên node này: request đến sau chờ và dùng
+ * chung kết quả của request đang gọi PayOS thay vì gọi thêm.
+ *
+ * Chỉ có tác dụng trong một node. Giữa các node, việc dùng lại link dựa vào Payments.LinkExpiresAt và
+ * mỗi lịch hẹn chỉ có một payment PENDING nhờ UX_Payments_AppointmentID_Pending; hai node cùng tạo link
+ * cho một payment thì link gắn sau thắng, link còn lại tự hết hạn phía PayOS.
+ */
+@Component
+@Slf4j
+public class PaymentLinkSingleFlight {
+
+    private final Map<Long, CompletableFuture<PaymentDTO.Response>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Chạy creator cho appointmentId nếu chưa có request nào đang chạy cho lịch hẹn đó,
+     * ngược lại chờ và trả kết quả (hoặc lỗi) của request đang chạy.
+     */
+    public PaymentDTO.Response createOnce(Long appointmentId, Supplier<PaymentDTO.Response> creator) {
+        CompletableFuture<PaymentDTO.Response> mine = new CompletableFuture<>();
+        CompletableFuture<PaymentDTO.Response> running = inFlight.putIfAbsent(appointmentId, mine);
+        if (running != null) {
+            log.info("Joining in-flight payment link creation for appointment ID: {}", appointmentId);
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            PaymentDTO.Response response = creator.get();
+            mine.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(appointmentId, mine);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.dto.PaymentDTO;
+import com.example.backend.model.JobCheckpoint;
+import com.example.backend.repository.JobCheckpointRepository;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
+import com.example.backend.repository.PaymentRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Đối soát các payment PENDING mà webhook PayOS không tới (mất, lỗi mạng, bị chặn).
+ *
+ * Job đi qua các payment PENDING đã có link và cũ hơn payment-reconciliation.min-age-ms theo keyset
+ * (CreatedAt, PaymentID) trên IX_Payments_Status_CreatedAt, mỗi trang hỏi PayOS song song bằng
+ * payment-reconciliation.concurrency thread và không quá payment-reconciliation.requests-per-second lời gọi.
+ * Trạng thái cuối (PAID, CANCELLED, EXPIRED) được ghi vào PayOSWebhookQueue để áp qua cùng đường với
+ * webhook. Cursor được lưu sau mỗi trang vào JobCheckpoints cùng với lease, nên chỉ một node chạy và job
+ * khởi động lại sẽ chạy tiếp từ trang dở dang; đi hết dữ liệu thì lượt sau bắt đầu lại từ đầu. Trang có
+ * lời gọi bị từ chối hoặc lỗi tạm thời (timeout, mất kết nối, 5xx) không được vượt qua: lượt chạy dừng và
+ * lượt sau hỏi lại cả trang; lỗi PayOS đã trả lời (4xx, orderCode sai) chỉ được đếm rồi bỏ qua.
+ *
+ * Sau đó job hỏi tiếp các link cũ trong PaymentLinkHistory chưa có trạng thái cuối (PayOSCode đã đổi nhưng
+ * PayOS có thể vẫn nhận thanh toán trên link cũ), theo keyset (ReplacedAt, OrderCode) từ đầu mỗi lượt:
+ * PAID, CANCELLED, EXPIRED cũng đi qua PayOSWebhookQueue và WebhookService đóng dòng lịch sử; link PayOS
+ * trả lỗi 4xx được đóng với LOOKUP_FAILED để không hỏi mãi.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentReconciliationJob {
+
+    static final String JOB_NAME = "payment-reconciliation";
+    private static final LocalDateTime START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    // Trạng thái link PayOS đã kết thúc; PENDING, PROCESSING, UNDERPAID thì chờ lượt sau
+    private static final Set<String> CANCELLED_STATUSES = Set.of("CANCELLED", "EXPIRED");
+
+    private final PaymentRepository paymentRepository;
+    private final JobCheckpointRepository jobCheckpointRepository;
+    private final PayOSService payOSService;
+    private final PayOSWebhookQueue webhookQueue;
+    private final PaymentLinkHistoryRepository paymentLinkHistoryRepository;
+
+    @Value("${payment-reconciliation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${payment-reconciliation.min-age-ms:900000}")
+    private long minAgeMs;
+
+    @Value("${payment-reconciliation.batch-size:100}")
+    private int batchSize;
+
+    @Value("${payment-reconciliation.pages-per-run:50}")
+    private int pagesPerRun;
+
+    @Value("${payment-reconciliation.concurrency:4}")
+    private int concurrency;
+
+    @Value("${payment-reconciliation.requests-per-second:10}")
+    private int requestsPerSecond;
+
+    @Value("${payment-reconciliation.lease-ms:600000}")
+    private long leaseMs;
+
+    private ExecutorService lookups;
+    private RatePacer pacer;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Kết quả một lượt chạy.
+     */
+    public record Result(int checked, int paid, int cancelled, int unchanged, int errors, boolean finished) {
+    }
+
+    @PostConstruct
+    void init() {
+        lookups = Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().name("payment-reconciliation-", 0).factory());
+        pacer = new RatePacer(requestsPerSecond);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        lookups.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${payment-reconciliation.interval-ms:300000}",
+               initialDelayString = "${payment-reconciliation.initial-delay-ms:60000}")
+    public void scheduledRun() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    /**
+     * Chạy tối đa pages-per-run trang; trả null nếu node khác đang giữ lease hoặc job đang chạy.
+     */
+    public Result run() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        String owner = UUID.randomUUID().toString();
+        try {
+            ensureCheckpoint();
+            LocalDateTime now = LocalDateTime.now();
+            if (jobCheckpointRepository.acquireLease(JOB_NAME, owner, now, now.plus(Duration.ofMillis(leaseMs))) == 0) {
+                log.debug("Payment reconciliation lease held by another node");
+                return null;
+            }
+            try {
+                return reconcile(owner);
+            } finally {
+                jobCheckpointRepository.releaseLease(JOB_NAME, owner);
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Result reconcile(String owner) {
+        JobCheckpoint checkpoint = jobCheckpointRepository.findById(JOB_NAME).orElseThrow();
+        LocalDateTime afterCreatedAt = checkpoint.getCursorCreatedAt() != null ? checkpoint.getCursorCreatedAt() : START;
+        long afterId = checkpoint.getCursorId() != null ? checkpoint.getCursorId() : 0L;
+        LocalDateTime olderThan = LocalDateTime.now().minus(Duration.ofMillis(minAgeMs));
+        Counts counts = new Counts();
+        boolean finished = false;
+        boolean stopped = false;
+        long startedAt = System.currentTimeMillis();
+
+        for (int page = 0; page < pagesPerRun; page++) {
+            List<PaymentDTO.ReconcileCandidate> candidates = paymentRepository.findReconcileCandidates(
+                    olderThan, afterCreatedAt, afterId, PageRequest.of(0, batchSize));
+            if (candidates.isEmpty()) {
+                jobCheckpointRepository.markCompleted(JOB_NAME, owner, LocalDateTime.now());
+                finished = true;
+                break;
+            }
+
+            if (!checkPage(candidates, counts, false)) {
+                // PayOS từ chối (breaker mở, quá tải) hoặc lỗi tạm thời: giữ cursor để lượt sau hỏi lại trang này
+                log.warn("Payment reconciliation paused: PayOS lookups rejected or failed transiently");
+                stopped = true;
+                break;
+            }
+
+            PaymentDTO.ReconcileCandidate last = candidates.get(candidates.size() - 1);
+            afterCreatedAt = last.createdAt();
+            afterId = last.paymentId();
+            LocalDateTime now = LocalDateTime.now();
+            if (jobCheckpointRepository.saveProgress(JOB_NAME, owner, afterCreatedAt, afterId,
+                    now, now.plus(Duration.ofMillis(leaseMs))) == 0) {
+                log.warn("Payment reconciliation lost its lease, stopping");
+                stopped = true;
+                break;
+            }
+        }
+        if (!stopped) {
+            reconcileSuperseded(owner, olderThan, counts);
+        }
+
+        Result result = counts.toResult(finished);
+        log.info("Payment reconciliation: checked={}, paid={}, cancelled={}, unchanged={}, errors={}, finished={} in {} ms",
+                result.checked(), result.paid(), result.cancelled(), result.unchanged(), result.errors(), finished,
+                System.currentTimeMillis() - startedAt);
+        return result;
+    }
+
+    // Link cũ đã bị thay trong PaymentLinkHistory, hỏi tới khi PayOS báo trạng thái cuối
+    private void reconcileSuperseded(String owner, LocalDateTime olderThan, Counts counts) {
+        LocalDateTime afterReplacedAt = START;
+        String afterOrderCode = "";
+        for (int page = 0; page < pagesPerRun; page++) {
+            List<PaymentDTO.ReconcileCandidate> candidates = paymentLinkHistoryRepository.findOpenSuperseded(
+                    olderThan, afterReplacedAt, afterOrderCode, PageRequest.of(0, batchSize));
+            if (candidates.isEmpty()) {
+                return;
+            }
+            if (!checkPage(candidates, counts, true)) {
+                log.warn("Superseded link reconciliation paused: PayOS lookups rejected or failed transiently");
+                return;
+            }
+
+            PaymentDTO.ReconcileCandidate last = candidates.get(candidates.size() - 1);
+            afterReplacedAt = last.createdAt();
+            afterOrderCode = last.payOSCode();
+            LocalDateTime now = LocalDateTime.now();
+            if (jobCheckpointRepository.renewLease(JOB_NAME, owner, now, now.plus(Duration.ofMillis(leaseMs))) == 0) {
+                log.warn("Payment reconciliation lost its lease, stopping");
+                return;
+            }
+        }
+    }
+
+    // false nếu có lời gọi bị PayOSService từ chối hoặc lỗi tạm thời
+    private boolean checkPage(List<PaymentDTO.ReconcileCandidate> candidates, Counts counts, boolean superseded) {
+        AtomicBoolean retryPage = new AtomicBoolean();
+        List<Callable<Void>> tasks = candidates.stream()
+                .<Callable<Void>>map(candidate -> () -> {
+                    if (!retryPage.get()) {
+                        check(candidate, counts, retryPage, superseded);
+                    }
+                    return null;
+                })
+                .toList();
+        try {
+            lookups.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !retryPage.get();
+    }
+
+    private void check(PaymentDTO.ReconcileCandidate candidate, Counts counts, AtomicBoolean retryPage,
+                       boolean superseded) throws InterruptedException {
+        long orderCode;
+        try {
+            orderCode = Long.parseLong(candidate.payOSCode());
+        } catch (NumberFormatException e) {
+            counts.errors.incrementAndGet();
+            log.warn("Payment {} has invalid PayOS order code: {}", candidate.paymentId(), candidate.payOSCode());
+            return;
+        }
+
+        pacer.acquire();
+        String status;
+        try {
+            status = payOSService.getPaymentStatus(orderCode);
+        } catch (RejectedExecutionException e) {
+            retryPage.set(true);
+            return;
+        } catch (Exception e) {
+            counts.errors.incrementAndGet();
+            log.warn("Payment reconciliation lookup failed for order code {}: {}", orderCode, e.getMessage());
+            if (PayOSService.isOutage(e)) {
+                // Lỗi tạm thời: không vượt qua trang này, lượt sau hỏi lại
+                retryPage.set(true);
+            } else if (superseded) {
+                // PayOS đã trả lời lỗi cho link cũ: hỏi lại cũng vậy, đóng để không hỏi mãi
+                paymentLinkHistoryRepository.close(candidate.payOSCode(), "LOOKUP_FAILED", LocalDateTime.now());
+            }
+            return;
+        }
+        counts.checked.incrementAndGet();
+
+        String payload = "{\"source\":\"reconciliation\",\"orderCode\":" + orderCode + ",\"status\":\"" + status + "\"}";
+        if ("PAID".equals(status)) {
+            webhookQueue.enqueue(orderCode, "00", "Đối soát: đã thanh toán", payload);
+            counts.paid.incrementAndGet();
+        } else if (CANCELLED_STATUSES.contains(status)) {
+            webhookQueue.enqueue(orderCode, status, "Đối soát: link thanh toán " + status, payload);
+            counts.cancelled.incrementAndGet();
+        } else {
+            counts.unchanged.incrementAndGet();
+        }
+    }
+
+    private void ensureCheckpoint() {
+        if (!jobCheckpointRepository.existsById(JOB_NAME)) {
+            try {
+                jobCheckpointRepository.saveAndFlush(new JobCheckpoint(JOB_NAME));
+            } catch (DataIntegrityViolationException e) {
+                // Node khác vừa tạo
+            }
+        }
+    }
+
+    private static final class Counts {
+        final AtomicInteger checked = new AtomicInteger();
+        final AtomicInteger paid = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+
+        Result toResult(boolean finished) {
+            return new Result(checked.get(), paid.get(), cancelled.get(), unchanged.get(), errors.get(), finished);
+        }
+    }
+
+    /**
+     * Giãn đều các lời gọi: mỗi lời gọi nhận một khe thời gian cách khe trước 1/permitsPerSecond giây.
+     */
+    static final class RatePacer {
+        private final long intervalNanos;
+        private final AtomicLong nextSlot = new AtomicLong(Long.MIN_VALUE);
+
+        RatePacer(int permitsPerSecond) {
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, permitsPerSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            long now = System.nanoTime();
+            long previous = nextSlot.getAndAccumulate(now, (slot, current) -> Math.max(slot, current) + intervalNanos);
+            long wait = Math.max(previous, now) - now;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
@@ -4,17 +4,26 @@ import com.example.backend.dto.PaymentDTO;
 import com.example.backend.mapper.PaymentMapper;
 import com.example.backend.model.Appointment;
 import com.example.backend.model.Payment;
+import com.example.backend.model.PaymentLinkHistory;
 import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
 import com.example.backend.repository.PaymentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 @RequiredArgsConstructor
@@ -25,80 +34,127 @@ public class PaymentService {
     private final AppointmentRepository appointmentRepository;
     private final PayOSService payOSService;
     private final PaymentMapper paymentMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentLinkSingleFlight paymentLinkSingleFlight;
+    private final PaymentLinkHistoryRepository paymentLinkHistoryRepository;
+
+    // Link sắp hết hạn thì tạo link mới thay vì đưa người dùng tới trang thanh toán sắp đóng
+    private static final Duration LINK_REUSE_MARGIN = Duration.ofMinutes(2);
     
-    @Transactional
+    /**
+     * Tạo (hoặc dùng lại) payment PENDING và link PayOS cho lịch hẹn.
+     *
+     * Chia ba giai đoạn để không giữ kết nối DB và khóa dòng trong lúc chờ PayOS: transaction ngắn giữ chỗ
+     * payment PENDING, lời gọi PayOS chạy ngoài mọi transaction (có bulkhead, timeout, circuit breaker),
+     * rồi transaction ngắn thứ hai gắn link vào payment. Nếu PayOS lỗi, payment vẫn PENDING chưa có link
+     * và lần gọi sau sẽ tạo lại link. Payment PENDING có link chưa tới LinkExpiresAt được trả về ngay,
+     * và các request đồng thời cho cùng lịch hẹn trên một node dùng chung một lần tạo.
+     *
+     * Mỗi lịch hẹn chỉ có một payment PENDING (UX_Payments_AppointmentID_Pending): nếu node khác vừa
+     * tạo payment cho cùng lịch hẹn thì INSERT trùng khóa và giai đoạn 1 chạy lại để dùng payment đó.
+     */
     public PaymentDTO.Response createPayment(PaymentDTO.Create paymentCreateDTO) {
+        return paymentLinkSingleFlight.createOnce(paymentCreateDTO.getAppointmentId(), () -> createPaymentOnce(paymentCreateDTO));
+    }
+
+    private PaymentDTO.Response createPaymentOnce(PaymentDTO.Create paymentCreateDTO) {
         try {
             log.info("🔍 Creating payment for appointment ID: {}", paymentCreateDTO.getAppointmentId());
             log.info("🔍 Payment DTO: {}", paymentCreateDTO);
-            
-            // Kiểm tra appointment có tồn tại không
-            Optional<Appointment> appointmentOpt = appointmentRepository.findById(paymentCreateDTO.getAppointmentId());
-            if (appointmentOpt.isEmpty()) {
-                log.error("❌ Appointment not found with ID: {}", paymentCreateDTO.getAppointmentId());
-                throw new RuntimeException("Không tìm thấy lịch hẹn với ID: " + paymentCreateDTO.getAppointmentId());
+
+            // Giai đoạn 1: giữ chỗ payment PENDING
+            Reservation reservation;
+            try {
+                reservation = transactionTemplate.execute(status -> reservePayment(paymentCreateDTO));
+            } catch (DataIntegrityViolationException e) {
+                log.info("Payment for appointment ID {} created concurrently, reusing it", paymentCreateDTO.getAppointmentId());
+                reservation = transactionTemplate.execute(status -> reservePayment(paymentCreateDTO));
+            }
+            if (reservation.cached() != null) {
+                return reservation.cached();
             }
-            
-            Appointment appointment = appointmentOpt.get();
-            log.info("✅ Found appointment: ID={}, Fee={}", appointment.getAppointmentId(), appointment.getFee());
-            
-            // Kiểm tra xem đã có payment cho appointment này chưa
-            List<Payment> existingPayments = paymentRepository.findByAppointment_AppointmentId(paymentCreateDTO.getAppointmentId());
-            Optional<Payment> existingPayment = existingPayments.isEmpty() ? Optional.empty() : Optional.of(existingPayments.get(0));
-            if (existingPayment.isPresent()) {
-                Payment payment = existingPayment.get();
-                if (payment.getStatus() == Payment.PaymentStatus.PENDING) {
-                    // Nếu payment đang pending, tạo lại link thanh toán
-                    payOSService.createPaymentLink(
-                        payment, 
-                        paymentCreateDTO.getReturnUrl(), 
-                        paymentCreateDTO.getCancelUrl()
-                    );
-                    
-                    paymentRepository.save(payment);
-                    return paymentMapper.toResponseDTO(payment);
-                } else if (payment.getStatus() == Payment.PaymentStatus.PAID) {
-                    throw new RuntimeException("Lịch hẹn này đã được thanh toán");
-                } else if (payment.getStatus() == Payment.PaymentStatus.CANCELLED || 
-                          payment.getStatus() == Payment.PaymentStatus.FAILED) {
-                    // Nếu payment đã bị hủy hoặc thất bại, cập nhật lại thành PENDING và tạo link mới
-                    log.info("🔄 Reusing cancelled/failed payment for appointment ID: {}", paymentCreateDTO.getAppointmentId());
-                    
-                    // Reset payment fields
-                    payment.setStatus(Payment.PaymentStatus.PENDING);
-                    payment.setPayOSLink(null);
-                    payment.setPayOSPaymentId(null);
-                    payment.setPayOSCode(null);
-                    payment.setPaidAt(null);
-                    payment.setFailureReason(null);
-                    
-                    // Cập nhật amount từ appointment
-                    if (appointment.getFee() != null) {
-                        payment.setAmount(appointment.getFee());
-                        log.info("Updated payment amount from appointment fee: {} VND", appointment.getFee());
-                    }
-                    
-                    // Cập nhật description
-                    payment.setDescription(paymentCreateDTO.getDescription() != null ? 
-                        paymentCreateDTO.getDescription() : "Thanh toán lịch hẹn khám bệnh");
-                    
-                    // Tạo PayOS payment link mới
-                    payOSService.createPaymentLink(
-                        payment,
-                        paymentCreateDTO.getReturnUrl(),
-                        paymentCreateDTO.getCancelUrl()
-                    );
-                    
-                    payment = paymentRepository.save(payment);
-                    log.info("✅ Reused payment with new PayOS link for payment ID: {}", payment.getPaymentId());
-                    return paymentMapper.toResponseDTO(payment);
-                }
+            PayOSService.LinkRequest linkRequest = reservation.linkRequest();
+
+            // Giai đoạn 2: gọi PayOS, không có transaction nào đang mở
+            PayOSService.CreatedLink link = payOSService.createPaymentLink(linkRequest);
+
+            // Giai đoạn 3: gắn link vào payment
+            PaymentDTO.Response response = transactionTemplate.execute(status -> attachPaymentLink(linkRequest.paymentId(), link));
+            log.info("Payment created successfully with ID: {}", linkRequest.paymentId());
+            return response;
+
+        } catch (RejectedExecutionException e) {
+            // PayOS đang quá tải hoặc circuit breaker mở: để GlobalExceptionHandler trả 503
+            log.warn("PayOS call rejected for appointment ID {}: {}", paymentCreateDTO.getAppointmentId(), e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Error creating payment: ", e);
+            throw new RuntimeException("Lỗi khi tạo thanh toán: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Kết quả giai đoạn 1: cached khác null khi payment đã có link còn hạn, ngược lại linkRequest để gọi PayOS.
+     */
+    private record Reservation(PayOSService.LinkRequest linkRequest, PaymentDTO.Response cached) {
+    }
+
+    private Reservation reservePayment(PaymentDTO.Create paymentCreateDTO) {
+        // Kiểm tra appointment có tồn tại không
+        Optional<Appointment> appointmentOpt = appointmentRepository.findById(paymentCreateDTO.getAppointmentId());
+        if (appointmentOpt.isEmpty()) {
+            log.error("❌ Appointment not found with ID: {}", paymentCreateDTO.getAppointmentId());
+            throw new RuntimeException("Không tìm thấy lịch hẹn với ID: " + paymentCreateDTO.getAppointmentId());
+        }
+
+        Appointment appointment = appointmentOpt.get();
+        log.info("✅ Found appointment: ID={}, Fee={}", appointment.getAppointmentId(), appointment.getFee());
+
+        // Kiểm tra xem đã có payment cho appointment này chưa
+        List<Payment> existingPayments = paymentRepository.findByAppointment_AppointmentId(paymentCreateDTO.getAppointmentId());
+        Payment payment = existingPayments.isEmpty() ? null : existingPayments.get(0);
+        if (payment != null && payment.getStatus() == Payment.PaymentStatus.PAID) {
+            throw new RuntimeException("Lịch hẹn này đã được thanh toán");
+        }
+
+        if (payment != null && payment.getStatus() == Payment.PaymentStatus.PENDING && payment.getPayOSLink() != null
+                && payment.getLinkExpiresAt() != null
+                && payment.getLinkExpiresAt().isAfter(LocalDateTime.now().plus(LINK_REUSE_MARGIN))) {
+            // Link đang gắn với payment còn đủ hạn để thanh toán thì trả lại luôn, không gọi PayOS
+            log.info("♻️ Reusing unexpired PayOS link for payment ID: {}", payment.getPaymentId());
+            return new Reservation(null, paymentMapper.toResponseDTO(payment));
+        }
+
+        if (payment != null && (payment.getStatus() == Payment.PaymentStatus.CANCELLED ||
+                payment.getStatus() == Payment.PaymentStatus.FAILED)) {
+            // Nếu payment đã bị hủy hoặc thất bại, cập nhật lại thành PENDING và tạo link mới
+            log.info("🔄 Reusing cancelled/failed payment for appointment ID: {}", paymentCreateDTO.getAppointmentId());
+
+            // Reset payment fields
+            supersedeLink(payment);
+            payment.setStatus(Payment.PaymentStatus.PENDING);
+            payment.setPayOSLink(null);
+            payment.setPayOSPaymentId(null);
+            payment.setPayOSCode(null);
+            payment.setLinkExpiresAt(null);
+            payment.setPaidAt(null);
+            payment.setFailureReason(null);
+
+            // Cập nhật amount từ appointment
+            if (appointment.getFee() != null) {
+                payment.setAmount(appointment.getFee());
+                log.info("Updated payment amount from appointment fee: {} VND", appointment.getFee());
             }
-            
+
+            // Cập nhật description
+            payment.setDescription(paymentCreateDTO.getDescription() != null ?
+                paymentCreateDTO.getDescription() : "Thanh toán lịch hẹn khám bệnh");
+            payment = paymentRepository.save(payment);
+        } else if (payment == null) {
             // Tạo payment mới
-            Payment payment = new Payment();
+            payment = new Payment();
             payment.setAppointment(appointment);
-            
+
             // Lấy fee từ appointment thay vì từ DTO
             if (appointment.getFee() != null) {
                 payment.setAmount(appointment.getFee());
@@ -108,37 +164,48 @@ public class PaymentService {
                 payment.setAmount(paymentCreateDTO.getAmount());
                 log.warn("Appointment has no fee, using DTO amount: {}", paymentCreateDTO.getAmount());
             }
-            
-            payment.setDescription(paymentCreateDTO.getDescription() != null ? 
+
+            payment.setDescription(paymentCreateDTO.getDescription() != null ?
                 paymentCreateDTO.getDescription() : "Thanh toán lịch hẹn khám bệnh");
             payment.setStatus(Payment.PaymentStatus.PENDING);
-            
-            // Lưu payment trước
-            payment = paymentRepository.save(payment);
-            
-            // Tạo PayOS payment link
-            log.info("🔍 Creating PayOS payment link for payment ID: {}", payment.getPaymentId());
-            payOSService.createPaymentLink(
-                payment,
-                paymentCreateDTO.getReturnUrl(),
-                paymentCreateDTO.getCancelUrl()
-            );
-            
-            // Cập nhật payment với thông tin từ PayOS (đã được xử lý trong PayOSService)
-            // PayOSService đã handle việc set PayOS fields, chỉ cần log
-            log.info("Payment created with PayOS integration for payment ID: {}", payment.getPaymentId());
-            
             payment = paymentRepository.save(payment);
-            
-            log.info("Payment created successfully with ID: {}", payment.getPaymentId());
+        }
+        // Payment đang PENDING mà link đã hết hạn thì giữ nguyên payment và tạo link mới
+
+        // PayOS tính tiền theo fee của appointment, không có fee thì theo amount của payment
+        BigDecimal amount = appointment.getFee() != null ? appointment.getFee() : payment.getAmount();
+        return new Reservation(new PayOSService.LinkRequest(payment.getPaymentId(), appointment.getAppointmentId(), amount,
+                payment.getDescription(), paymentCreateDTO.getReturnUrl(), paymentCreateDTO.getCancelUrl()), null);
+    }
+
+    private PaymentDTO.Response attachPaymentLink(Long paymentId, PayOSService.CreatedLink link) {
+        Payment payment = paymentRepository.findById(paymentId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy thanh toán với ID: " + paymentId));
+        if (payment.getStatus() != Payment.PaymentStatus.PENDING) {
+            // Trạng thái đã đổi trong lúc chờ PayOS (vd. bị hủy), không gắn link nữa
+            log.warn("Payment {} is {} after PayOS call, link {} not attached", paymentId, payment.getStatus(), link.orderCode());
             return paymentMapper.toResponseDTO(payment);
-            
-        } catch (Exception e) {
-            log.error("Error creating payment: ", e);
-            throw new RuntimeException("Lỗi khi tạo thanh toán: " + e.getMessage());
         }
+        supersedeLink(payment);
+        payment.setPayOSPaymentId(link.paymentLinkId());
+        payment.setPayOSCode(link.orderCode());
+        payment.setPayOSLink(link.checkoutUrl());
+        payment.setLinkExpiresAt(link.expiresAt());
+        payment = paymentRepository.save(payment);
+        log.info("Payment created with PayOS integration for payment ID: {}", paymentId);
+        return paymentMapper.toResponseDTO(payment);
     }
     
+    // Link cũ có thể vẫn được thanh toán trên PayOS: giữ orderCode cũ trỏ về payment trước khi PayOSCode bị ghi đè
+    private void supersedeLink(Payment payment) {
+        if (payment.getPayOSCode() == null) {
+            return;
+        }
+        paymentLinkHistoryRepository.save(new PaymentLinkHistory(payment.getPayOSCode(), payment.getPaymentId(),
+                payment.getPayOSPaymentId(), LocalDateTime.now(), null, null));
+        log.info("PayOS order code {} of payment {} superseded", payment.getPayOSCode(), payment.getPaymentId());
+    }
+
     public PaymentDTO.Response getPaymentById(Long paymentId) {
         Optional<Payment> paymentOpt = paymentRepository.findById(paymentId);
         if (paymentOpt.isEmpty()) {
@@ -155,37 +222,34 @@ public class PaymentService {
         return paymentMapper.toResponseDTO(paymentOpt.get());
     }
     
+    @Transactional(readOnly = true)
     public List<PaymentDTO.Response> getPaymentsByAppointmentId(Long appointmentId) {
         List<Payment> payments = paymentRepository.findByAppointment_AppointmentId(appointmentId);
-        return payments.stream()
-                .map(paymentMapper::toResponseDTO)
-                .toList();
+        return paymentMapper.toResponseDTOs(payments);
     }
     
+    @Transactional(readOnly = true)
     public List<PaymentDTO.Response> getPaymentsByPatientId(Long patientId) {
         List<Payment> payments = paymentRepository.findByPatientId(patientId);
-        return payments.stream()
-                .map(paymentMapper::toResponseDTO)
-                .toList();
+        return paymentMapper.toResponseDTOs(payments);
     }
     
+    @Transactional(readOnly = true)
     public List<PaymentDTO.Response> getPaymentsByDoctorId(Long doctorId) {
         List<Payment> payments = paymentRepository.findByDoctorId(doctorId);
-        return payments.stream()
-                .map(paymentMapper::toResponseDTO)
-                .toList();
+        return paymentMapper.toResponseDTOs(payments);
     }
     
+    @Transactional(readOnly = true)
     public Page<PaymentDTO.Response> getAllPayments(Pageable pageable) {
         Page<Payment> payments = paymentRepository.findAll(pageable);
-        return payments.map(paymentMapper::toResponseDTO);
+        return new PageImpl<>(paymentMapper.toResponseDTOs(payments.getContent()), pageable, payments.getTotalElements());
     }
     
+    @Transactional(readOnly = true)
     public List<PaymentDTO.Response> getPaymentsByStatus(Payment.PaymentStatus status) {
         List<Payment> payments = paymentRepository.findByStatus(status);
-        return payments.stream()
-                .map(paymentMapper::toResponseDTO)
-                .toList();
+        return paymentMapper.toResponseDTOs(payments);
     }
     
     @Transactional
@@ -266,6 +330,9 @@ public class PaymentService {
         
         // Cập nhật orderCode nếu có
         if (orderCode != null && !orderCode.isEmpty()) {
+            if (!orderCode.equals(payment.getPayOSCode())) {
+                supersedeLink(payment);
+            }
             payment.setPayOSCode(orderCode);
         }
         
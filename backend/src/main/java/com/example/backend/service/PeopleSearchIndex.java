@@ -0,0 +1,502 @@
+package com.example.backend.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.event.AfterCommit;
+import com.example.backend.event.ClusterEvent;
+import com.example.backend.model.User;
+import com.example.backend.repository.UserRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chỉ mục tìm kiếm trong bộ nhớ cho user/bác sĩ/bệnh nhân theo họ tên, email, số điện thoại và chuyên khoa.
+ *
+ * Văn bản được bỏ dấu tiếng Việt ("Nguyễn" -> "nguyen") trước khi index và trước khi tìm. Mọi từ khóa
+ * đều khớp chuỗi con như LIKE '%kw%': từ khóa từ 3 ký tự tra bằng trigram, từ khóa 1-2 ký tự tra bằng
+ * gram 1-2 ký tự lấy ở mọi vị trí trong từ. Posting list là mảng int tăng dần (ordinal của document); sửa
+ * một user cấp ordinal mới và bỏ ordinal cũ, khi số ordinal đã bỏ vượt 1/4 thì nén lại.
+ *
+ * Kết quả là toàn bộ ID khớp (không cắt bớt, như truy vấn LIKE); từ khóa ngắn như "an" có thể khớp phần lớn
+ * bảng nên service nạp entity bằng truy vấn IN chia lô (RankedIds.loadInRankOrder) để không vượt giới hạn
+ * 2100 tham số của SQL Server;
+ * khác truy vấn LIKE (không có ORDER BY) ở chỗ danh sách được xếp hạng theo mức độ khớp họ tên.
+ *
+ * Index nằm trong bộ nhớ của từng node. Thay đổi qua entity listener được nạp lại ở node ghi sau commit và,
+ * khi chat.broker.mode = shared-db, báo cho các node khác qua SharedDbBrokerRelay để nạp lại cùng user.
+ * Với các chế độ broker khác, node khác và các cập nhật hàng loạt bằng JPQL (không đi qua entity listener)
+ * chỉ được cập nhật ở lần dựng lại mỗi đêm. Trong lúc chưa dựng xong, search trả về rỗng để service dùng
+ * truy vấn LIKE cũ.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PeopleSearchIndex {
+
+    private static final char FIELD_SEPARATOR = '\n';
+    // Chủ đề ClusterEvent báo user vừa đổi ở node khác, payload là userId
+    static final String CLUSTER_TOPIC = "search-index/users";
+
+    private final UserRepository userRepository;
+    private final ObjectProvider<SharedDbBrokerRelay> brokerRelay;
+
+    @Value("${search-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${search-index.load-batch-size:5000}")
+    private int loadBatchSize;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService updater = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private State state = new State();
+    private volatile boolean ready;
+    // userId thay đổi trong lúc đang dựng lại index, áp lại sau khi đổi sang index mới
+    private Set<Long> changedDuringRebuild;
+
+    public enum Kind { USER, DOCTOR, PATIENT }
+
+    /**
+     * Dữ liệu của một user cần cho tìm kiếm (một dòng của UserRepository.findSearchRows).
+     */
+    public record Row(Long userId, String firstName, String lastName, String email, String phone,
+                      boolean userActive, Long doctorId, boolean doctorActive, String specialty, Long patientId) {
+
+        static Row of(Object[] columns) {
+            return new Row(
+                    (Long) columns[0],
+                    (String) columns[1],
+                    (String) columns[2],
+                    (String) columns[3],
+                    (String) columns[4],
+                    columns[5] == User.UserStatus.ACTIVE,
+                    (Long) columns[6],
+                    "ACTIVE".equals(columns[7]),
+                    (String) columns[8],
+                    (Long) columns[9]);
+        }
+    }
+
+    private static final class Doc {
+        final Row row;
+        final String name;
+        final String haystack;
+
+        Doc(Row row) {
+            this.row = row;
+            this.name = fold(join(row.firstName(), row.lastName()));
+            this.haystack = name + FIELD_SEPARATOR + fold(row.email()) + FIELD_SEPARATOR
+                    + fold(row.phone()) + FIELD_SEPARATOR + fold(row.specialty());
+        }
+
+        Long idOf(Kind kind) {
+            return switch (kind) {
+                case USER -> row.userId();
+                case DOCTOR -> row.doctorId();
+                case PATIENT -> row.patientId();
+            };
+        }
+
+        // Cùng điều kiện với các truy vấn LIKE: bác sĩ ACTIVE, bệnh nhân có user ACTIVE
+        boolean matchesKind(Kind kind) {
+            return switch (kind) {
+                case USER -> true;
+                case DOCTOR -> row.doctorId() != null && row.doctorActive();
+                case PATIENT -> row.patientId() != null && row.userActive();
+            };
+        }
+    }
+
+    private static final class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        boolean contains(int ordinal) {
+            return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+        }
+    }
+
+    private static final class State {
+        final Map<String, Postings> postings = new HashMap<>();
+        final List<Doc> docs = new ArrayList<>();
+        final Map<Long, Integer> ordinalByUserId = new HashMap<>();
+        int removed;
+
+        void put(Row row) {
+            remove(row.userId());
+            Doc doc = new Doc(row);
+            int ordinal = docs.size();
+            docs.add(doc);
+            ordinalByUserId.put(row.userId(), ordinal);
+            for (String gram : grams(doc.haystack)) {
+                postings.computeIfAbsent(gram, g -> new Postings()).add(ordinal);
+            }
+        }
+
+        void remove(Long userId) {
+            Integer old = ordinalByUserId.remove(userId);
+            if (old != null) {
+                docs.set(old, null);
+                removed++;
+            }
+        }
+
+        int size() {
+            return ordinalByUserId.size();
+        }
+
+        boolean needsCompaction() {
+            return removed > 1000 && removed > docs.size() / 4;
+        }
+
+        State compact() {
+            State compacted = new State();
+            for (Doc doc : docs) {
+                if (doc != null) {
+                    compacted.put(doc.row);
+                }
+            }
+            return compacted;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        updater.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            updater.submit(this::rebuild);
+        }
+    }
+
+    // Dựng lại mỗi đêm để bắt các thay đổi không đi qua entity listener
+    @Scheduled(cron = "${search-index.rebuild-cron:0 0 4 * * *}")
+    public void scheduledRebuild() {
+        if (enabled) {
+            updater.submit(this::rebuild);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Tìm theo từ khóa, trả về mọi ID khớp (userId/doctorId/patientId tùy kind) đã xếp hạng.
+     * @return rỗng nếu index chưa sẵn sàng hoặc từ khóa trống, khi đó dùng truy vấn DB
+     */
+    public Optional<List<Long>> search(Kind kind, String keyword) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        String query = fold(keyword);
+        List<String> tokens = tokens(query);
+        if (tokens.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<Doc> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            for (String token : tokens) {
+                for (String gram : queryGrams(token)) {
+                    Postings list = state.postings.get(gram);
+                    if (list == null) {
+                        return Optional.of(List.of());
+                    }
+                    lists.add(list);
+                }
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            Postings smallest = lists.get(0);
+            candidates:
+            for (int i = 0; i < smallest.size; i++) {
+                int ordinal = smallest.ordinals[i];
+                for (int j = 1; j < lists.size(); j++) {
+                    if (!lists.get(j).contains(ordinal)) {
+                        continue candidates;
+                    }
+                }
+                Doc doc = state.docs.get(ordinal);
+                if (doc != null && doc.matchesKind(kind) && containsAll(doc, tokens)) {
+                    matches.add(doc);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        String phrase = String.join(" ", tokens);
+        return Optional.of(matches.stream()
+                .sorted(Comparator.<Doc>comparingInt(doc -> rank(doc, phrase, tokens))
+                        .thenComparing(doc -> doc.name)
+                        .thenComparing(doc -> doc.row.userId()))
+                .map(doc -> doc.idOf(kind))
+                .toList());
+    }
+
+    /**
+     * Nạp lại một user từ DB sau khi transaction hiện tại commit (gọi từ SearchIndexEntityListener).
+     */
+    public void reindexUser(Long userId) {
+        if (userId != null) {
+            AfterCommit.run(() -> {
+                updater.submit(() -> reload(userId));
+                notifyOtherNodes(userId);
+            });
+        }
+    }
+
+    public void removeUser(Long userId) {
+        if (userId != null) {
+            AfterCommit.run(() -> {
+                apply(userId, null);
+                notifyOtherNodes(userId);
+            });
+        }
+    }
+
+    // Node khác nạp lại user từ DB: user đã xóa thì không còn dòng nào và bị bỏ khỏi index
+    @EventListener
+    public void onClusterEvent(ClusterEvent event) {
+        if (enabled && CLUSTER_TOPIC.equals(event.topic())) {
+            Long userId = Long.valueOf(event.payload());
+            updater.submit(() -> reload(userId));
+        }
+    }
+
+    private void notifyOtherNodes(Long userId) {
+        brokerRelay.ifAvailable(relay -> relay.publishInternal(CLUSTER_TOPIC, userId.toString()));
+    }
+
+    void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildIndex();
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuildIndex() {
+        long startedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        State fresh = new State();
+        try {
+            long afterId = 0L;
+            while (true) {
+                List<Object[]> batch = userRepository.findSearchRows(afterId, PageRequest.of(0, loadBatchSize));
+                for (Object[] columns : batch) {
+                    fresh.put(Row.of(columns));
+                }
+                if (batch.size() < loadBatchSize) {
+                    break;
+                }
+                afterId = (Long) batch.get(batch.size() - 1)[0];
+            }
+        } catch (Exception ex) {
+            log.error("People search index rebuild failed: {}", ex.getMessage());
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        Set<Long> changed;
+        lock.writeLock().lock();
+        try {
+            state = fresh;
+            changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed.forEach(this::reload);
+        log.info("People search index built: {} users in {} ms", fresh.size(), System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Thay toàn bộ nội dung index (dùng khi dựng từ nguồn khác DB, ví dụ trong test/benchmark).
+     */
+    void load(List<Row> rows) {
+        State fresh = new State();
+        rows.forEach(fresh::put);
+        lock.writeLock().lock();
+        try {
+            state = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reload(Long userId) {
+        try {
+            List<Object[]> rows = userRepository.findSearchRowsByUserId(userId);
+            apply(userId, rows.isEmpty() ? null : Row.of(rows.get(0)));
+        } catch (Exception ex) {
+            log.warn("Could not reindex user {}: {}", userId, ex.getMessage());
+        }
+    }
+
+    void apply(Long userId, Row row) {
+        lock.writeLock().lock();
+        try {
+            if (row == null) {
+                state.remove(userId);
+            } else {
+                state.put(row);
+            }
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(userId);
+            }
+            if (state.needsCompaction()) {
+                state = state.compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean containsAll(Doc doc, List<String> tokens) {
+        for (String token : tokens) {
+            // Từ khóa 1-2 ký tự đã khớp chính xác qua gram; từ khóa dài cần kiểm tra vì trigram có thể khớp giả
+            if (token.length() >= 3 && !doc.haystack.contains(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 0 = trùng họ tên, 1 = họ tên bắt đầu bằng từ khóa, 2 = mọi từ khóa là đầu một từ trong họ tên,
+    // 3 = họ tên chứa mọi từ khóa, 4 = khớp ở email/số điện thoại/chuyên khoa
+    private static int rank(Doc doc, String phrase, List<String> tokens) {
+        if (doc.name.equals(phrase)) {
+            return 0;
+        }
+        if (doc.name.startsWith(phrase)) {
+            return 1;
+        }
+        String spaced = " " + doc.name;
+        boolean allWordPrefixes = true;
+        boolean allInName = true;
+        for (String token : tokens) {
+            allWordPrefixes &= spaced.contains(" " + token);
+            allInName &= doc.name.contains(token);
+        }
+        if (allWordPrefixes) {
+            return 2;
+        }
+        return allInName ? 3 : 4;
+    }
+
+    private static Set<String> grams(String haystack) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String word : tokens(haystack)) {
+            for (int i = 0; i < word.length(); i++) {
+                grams.add(word.substring(i, i + 1));
+                if (i + 2 <= word.length()) {
+                    grams.add(word.substring(i, i + 2));
+                }
+                if (i + 3 <= word.length()) {
+                    grams.add(word.substring(i, i + 3));
+                }
+            }
+        }
+        return grams;
+    }
+
+    private static List<String> queryGrams(String token) {
+        if (token.length() < 3) {
+            return List.of(token);
+        }
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            grams.add(token.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    private static List<String> tokens(String folded) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : folded.split("\\s+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Bỏ dấu tiếng Việt và chuyển về chữ thường: "Nguyễn Đức" -> "nguyen duc".
+     */
+    static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == 'đ' || c == 'Đ') {
+                c = 'd';
+            }
+            folded.append(Character.toLowerCase(c));
+        }
+        return folded.toString().trim();
+    }
+
+    private static String join(String first, String last) {
+        return ((first == null ? "" : first) + " " + (last == null ? "" : last)).trim();
+    }
+}
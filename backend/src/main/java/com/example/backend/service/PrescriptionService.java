@@ -60,6 +60,12 @@ public class PrescriptionService {
                 .collect(Collectors.toList());
     }
 
+    public List<PrescriptionDto> getPrescriptionsByPatientId(Long patientId) {
+        return prescriptionRepository.findByPatientId(patientId).stream()
+                .map(prescriptionMapper::toDto)
+                .collect(Collectors.toList());
+    }
+
     public PrescriptionDto createPrescription(PrescriptionDto requestDto) {
         // Validate medical record exists
         MedicalRecord medicalRecord = medicalRecordRepository.findById(requestDto.getRecordId().intValue())
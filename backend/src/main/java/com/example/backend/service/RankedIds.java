@@ -0,0 +1,48 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Dùng chung cho các index trong bộ nhớ trả về danh sách ID đã xếp hạng (PeopleSearchIndex, DoctorAvailabilityIndex).
+ */
+public final class RankedIds {
+
+    private RankedIds() {
+        // Utility class
+    }
+
+    /**
+     * Sắp xếp entity theo thứ tự ID đã xếp hạng (truy vấn IN không giữ thứ tự); ID không còn entity thì bỏ qua.
+     */
+    public static <T> List<T> inRankOrder(List<Long> rankedIds, List<T> entities, Function<T, Long> idOf) {
+        Map<Long, T> byId = new HashMap<>();
+        for (T entity : entities) {
+            byId.put(idOf.apply(entity), entity);
+        }
+        List<T> ordered = new ArrayList<>(rankedIds.size());
+        for (Long id : rankedIds) {
+            T entity = byId.get(id);
+            if (entity != null) {
+                ordered.add(entity);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Nạp entity theo ID đã xếp hạng, mỗi truy vấn IN tối đa BatchLoader.IN_CHUNK_SIZE ID (SQL Server giới hạn
+     * 2100 tham số), rồi sắp theo thứ tự xếp hạng. Danh sách rỗng thì không truy vấn.
+     */
+    public static <T> List<T> loadInRankOrder(List<Long> rankedIds, Function<List<Long>, List<T>> loader,
+                                              Function<T, Long> idOf) {
+        List<T> entities = new ArrayList<>(rankedIds.size());
+        for (int from = 0; from < rankedIds.size(); from += BatchLoader.IN_CHUNK_SIZE) {
+            entities.addAll(loader.apply(rankedIds.subList(from, Math.min(from + BatchLoader.IN_CHUNK_SIZE, rankedIds.size()))));
+        }
+        return inRankOrder(rankedIds, entities, idOf);
+    }
+}
@@ -1,13 +1,13 @@
 package com.example.backend.service;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import com.example.backend.model.Appointment;
 import com.example.backend.repository.AppointmentRepository;
@@ -15,55 +15,81 @@ import com.example.backend.repository.AppointmentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Gửi email nhắc lịch khám sắp tới.
+ *
+ * Chỉ đọc các appointment trong cửa sổ thời gian tới và chưa được nhắc (cột ReminderSentAt),
+ * theo từng batch. Mỗi node xử lý một shard theo appointmentId (reminder.shard-count /
+ * reminder.shard-index); việc đánh dấu ReminderSentAt trước khi gửi đảm bảo không gửi trùng
+ * kể cả khi restart hoặc nhiều node cùng chạy.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class ReminderScheduler {
     private final AppointmentRepository appointmentRepository;
     private final EmailService emailService;
-    
-    // Set để track appointments đã gửi nhắc nhở (trong memory)
-    private final Set<Long> sentReminders = ConcurrentHashMap.newKeySet();
 
-    // every 5 minutes check for appointments in next 30 minutes
-    @Scheduled(fixedDelay = 300000)
-    @Transactional
+    @Value("${reminder.window-minutes:30}")
+    private int windowMinutes;
+
+    @Value("${reminder.batch-size:200}")
+    private int batchSize;
+
+    @Value("${reminder.shard-count:1}")
+    private int shardCount;
+
+    @Value("${reminder.shard-index:0}")
+    private int shardIndex;
+
+    // mặc định 5 phút một lần, nhắc các lịch trong 30 phút tới
+    @Scheduled(fixedDelayString = "${reminder.fixed-delay-ms:300000}")
     public void sendUpcomingReminders() {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime until = now.plusMinutes(30);
-        List<Appointment> list = appointmentRepository.findAll().stream()
-                .filter(a -> a.getStartTime() != null && a.getStartTime().isAfter(now)
-                        && a.getStartTime().isBefore(until) && !sentReminders.contains(a.getAppointmentId()))
-                .toList();
-        for (Appointment a : list) {
-            try {
-                String patientEmail = a.getPatient() != null && a.getPatient().getUser() != null
-                        ? a.getPatient().getUser().getEmail()
-                        : null;
-                String subject = "Nhắc lịch khám sắp tới";
-                String text = String.format("Xin chào %s %s,\n\nBạn có lịch khám với bác sĩ %s vào %s. Vui lòng có mặt đúng giờ.",
-                        a.getPatient() != null && a.getPatient().getUser() != null ? a.getPatient().getUser().getFirstName() : "",
-                        a.getPatient() != null && a.getPatient().getUser() != null ? a.getPatient().getUser().getLastName() : "",
-                        a.getDoctor() != null && a.getDoctor().getUser() != null ? a.getDoctor().getUser().getFirstName() + " " + a.getDoctor().getUser().getLastName() : "",
-                        a.getStartTime() != null ? a.getStartTime().toString() : "");
-                emailService.sendSimpleEmail(patientEmail, subject, text);
-                // Track trong memory để tránh spam, không thay đổi status appointment
-                sentReminders.add(a.getAppointmentId());
-                log.debug("Reminder sent for appointment {}", a.getAppointmentId());
-            } catch (Exception ex) {
-                log.error("Failed sending reminder for appointment {}: {}", a.getAppointmentId(), ex.getMessage());
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        LocalDateTime until = now.plusMinutes(windowMinutes);
+        long afterId = 0L;
+        int sent = 0;
+
+        while (true) {
+            List<Appointment> batch = appointmentRepository.findDueReminders(
+                    now, until, afterId, shardCount, shardIndex, PageRequest.of(0, batchSize));
+            for (Appointment a : batch) {
+                if (sendReminder(a, now)) {
+                    sent++;
+                }
+            }
+            if (batch.size() < batchSize) {
+                break;
             }
+            afterId = batch.get(batch.size() - 1).getAppointmentId();
+        }
+
+        if (sent > 0) {
+            log.info("Sent {} appointment reminders (shard {}/{})", sent, shardIndex, shardCount);
         }
     }
-    
-    // Method để clear memory tracking nếu cần (restart server sẽ tự clear)
-    public void clearReminderTracking() {
-        sentReminders.clear();
-        log.info("Reminder tracking cleared");
-    }
-    
-    // Method để xem appointments đã gửi nhắc nhở
-    public Set<Long> getSentReminders() {
-        return Set.copyOf(sentReminders);
+
+    private boolean sendReminder(Appointment a, LocalDateTime sentAt) {
+        // Nhận appointment trước khi gửi; node khác đã nhận thì bỏ qua
+        if (appointmentRepository.markReminderSent(a.getAppointmentId(), sentAt) == 0) {
+            return false;
+        }
+        try {
+            String patientEmail = a.getPatient().getUser() != null ? a.getPatient().getUser().getEmail() : null;
+            String subject = "Nhắc lịch khám sắp tới";
+            String text = String.format("Xin chào %s %s,\n\nBạn có lịch khám với bác sĩ %s vào %s. Vui lòng có mặt đúng giờ.",
+                    a.getPatient().getUser() != null ? a.getPatient().getUser().getFirstName() : "",
+                    a.getPatient().getUser() != null ? a.getPatient().getUser().getLastName() : "",
+                    a.getDoctor() != null && a.getDoctor().getUser() != null ? a.getDoctor().getUser().getFirstName() + " " + a.getDoctor().getUser().getLastName() : "",
+                    a.getStartTime() != null ? a.getStartTime().toString() : "");
+            emailService.sendSimpleEmail(patientEmail, subject, text);
+            log.debug("Reminder sent for appointment {}", a.getAppointmentId());
+            return true;
+        } catch (Exception ex) {
+            // Trả lại để lượt chạy sau thử gửi lại
+            appointmentRepository.releaseReminder(a.getAppointmentId(), sentAt);
+            log.error("Failed sending reminder for appointment {}: {}", a.getAppointmentId(), ex.getMessage());
+            return false;
+        }
     }
 }
@@ -1,6 +1,7 @@
 package com.example.backend.service;
 
 import java.util.List;
+import java.util.Objects;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -49,6 +50,7 @@ public class ReviewService {
 
         Review entity = reviewMapper.createDTOToEntity(dto, patient, doctor);
         Review saved = reviewRepository.save(entity);
+        adjustRating(doctor.getDoctorId(), null, ratingOf(saved));
         return reviewMapper.entityToResponseDTO(saved);
     }
 
@@ -79,36 +81,73 @@ public class ReviewService {
 
     @Transactional(readOnly = true)
     public Double getAverageRatingByDoctor(Long doctorId) {
-        return reviewRepository.getAverageRatingByDoctor(doctorId);
+        // Đọc tổng hợp đã tính sẵn trên Doctors thay vì AVG trên Reviews
+        return doctorRepository.findById(doctorId)
+                .filter(doctor -> doctor.getRatingCount() > 0)
+                .map(Doctor::getAverageRating)
+                .orElse(null);
     }
 
     @Transactional(readOnly = true)
     public Long getReviewCountByDoctor(Long doctorId) {
-        return reviewRepository.getReviewCountByDoctor(doctorId);
+        return doctorRepository.findById(doctorId)
+                .map(Doctor::getRatingCount)
+                .orElse(0L);
     }
 
     public ReviewDTO.Response update(Long reviewId, ReviewDTO.Update dto) {
-        Review entity = reviewRepository.findById(reviewId)
+        Review entity = reviewRepository.findByIdForUpdate(reviewId)
                 .orElseThrow(() -> new NotFoundException("Không tìm thấy đánh giá với ID: " + reviewId));
+        Integer before = ratingOf(entity);
         reviewMapper.applyUpdateToEntity(entity, dto);
         Review saved = reviewRepository.save(entity);
+        adjustRating(saved.getDoctor().getDoctorId(), before, ratingOf(saved));
         return reviewMapper.entityToResponseDTO(saved);
     }
 
     public void delete(Long reviewId) {
-        if (!reviewRepository.existsById(reviewId)) {
-            throw new NotFoundException("Không tìm thấy đánh giá với ID: " + reviewId);
-        }
-        reviewRepository.deleteById(reviewId);
+        Review entity = reviewRepository.findByIdForUpdate(reviewId)
+                .orElseThrow(() -> new NotFoundException("Không tìm thấy đánh giá với ID: " + reviewId));
+        reviewRepository.delete(entity);
+        adjustRating(entity.getDoctor().getDoctorId(), ratingOf(entity), null);
     }
 
     public ReviewDTO.Response deactivateReview(Long reviewId) {
-        Review entity = reviewRepository.findById(reviewId)
+        Review entity = reviewRepository.findByIdForUpdate(reviewId)
                 .orElseThrow(() -> new NotFoundException("Không tìm thấy đánh giá với ID: " + reviewId));
+        Integer before = ratingOf(entity);
         
         entity.setStatus("INACTIVE");
         Review saved = reviewRepository.save(entity);
+        adjustRating(saved.getDoctor().getDoctorId(), before, ratingOf(saved));
         return reviewMapper.entityToResponseDTO(saved);
     }
+
+    // Điểm mà review đóng góp vào tổng hợp của bác sĩ: chỉ review ACTIVE có điểm 1-5
+    private static Integer ratingOf(Review review) {
+        Integer rating = review.getRating();
+        return "ACTIVE".equals(review.getStatus()) && rating != null && rating >= 1 && rating <= 5 ? rating : null;
+    }
+
+    private void adjustRating(Long doctorId, Integer removed, Integer added) {
+        if (Objects.equals(removed, added)) {
+            return;
+        }
+        int[] histogram = new int[6];
+        long sumDelta = 0;
+        long countDelta = 0;
+        if (removed != null) {
+            histogram[removed]--;
+            sumDelta -= removed;
+            countDelta--;
+        }
+        if (added != null) {
+            histogram[added]++;
+            sumDelta += added;
+            countDelta++;
+        }
+        doctorRepository.adjustRating(doctorId, sumDelta, countDelta,
+                histogram[1], histogram[2], histogram[3], histogram[4], histogram[5]);
+    }
 }
 
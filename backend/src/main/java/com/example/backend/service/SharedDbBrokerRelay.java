@@ -0,0 +1,254 @@
+package com.example.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import com.example.backend.event.ClusterEvent;
+import com.example.backend.model.BrokerMessage;
+import com.example.backend.repository.BrokerMessageRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chuyển tiếp message /topic giữa các node qua bảng BrokerMessages (chat.broker.mode = shared-db).
+ *
+ * Mỗi node vẫn dùng simple broker trong JVM. Interceptor trên brokerChannel chép các message
+ * gửi tới chat.broker.shared-db.destinations vào một hàng đợi có giới hạn; worker ghi theo batch
+ * và đọc các message mới của node khác (theo khóa chính) rồi phát lại vào simple broker cục bộ.
+ * Không cần broker ngoài nên chạy được với H2 trong test hoặc nhiều node dùng chung SQL Server.
+ *
+ * Cùng bảng này chở các thông báo nội bộ (publishInternal, destination /internal/...): node nhận
+ * không phát chúng cho client mà chuyển thành ClusterEvent cho các @EventListener.
+ */
+@Component
+@ConditionalOnProperty(prefix = "chat.broker", name = "mode", havingValue = "shared-db")
+@Slf4j
+public class SharedDbBrokerRelay implements ChannelInterceptor {
+
+    // Header đánh dấu message đến từ node khác để không ghi lại lần nữa
+    static final String RELAYED_HEADER = "relayedFrom";
+    // Destination của thông báo nội bộ giữa các node, không đi qua simple broker
+    static final String INTERNAL_PREFIX = "/internal/";
+
+    private final BrokerMessageRepository brokerMessageRepository;
+    private final MessageChannel brokerChannel;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${chat.broker.shared-db.destinations:/topic/conversations/,/topic/users/}")
+    private List<String> destinations;
+
+    @Value("${chat.broker.shared-db.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.broker.shared-db.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.broker.shared-db.gap-timeout-ms:5000}")
+    private long gapTimeoutMs;
+
+    @Value("${chat.broker.shared-db.retention-ms:300000}")
+    private long retentionMs;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("broker-relay").factory());
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    // ID bị bỏ qua ở lần đọc trước -> hạn chờ (epoch ms)
+    private final Map<Long, Long> pendingIds = new HashMap<>();
+    private BlockingQueue<BrokerMessage> outgoing;
+    private long lastSeenId;
+    private Counter droppedCounter;
+    private Counter relayedCounter;
+
+    // brokerChannel được tạo bởi cấu hình WebSocket, vốn lại dùng bean này làm interceptor
+    public SharedDbBrokerRelay(BrokerMessageRepository brokerMessageRepository,
+                               @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel,
+                               ApplicationEventPublisher applicationEventPublisher,
+                               MeterRegistry meterRegistry) {
+        this.brokerMessageRepository = brokerMessageRepository;
+        this.brokerChannel = brokerChannel;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        outgoing = new ArrayBlockingQueue<>(queueCapacity);
+        // Chỉ nhận message phát sau khi node khởi động
+        lastSeenId = brokerMessageRepository.findMaxId();
+        droppedCounter = meterRegistry.counter("chat.broker.relay.dropped");
+        relayedCounter = meterRegistry.counter("chat.broker.relay.received");
+        log.info("Shared-DB broker relay started as node {} from message {}", nodeId, lastSeenId);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        worker.shutdown();
+        worker.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE
+                || accessor.getHeader(RELAYED_HEADER) != null
+                || !(message.getPayload() instanceof byte[] payload)
+                || !isReplicated(accessor.getDestination())) {
+            return message;
+        }
+
+        BrokerMessage copy = new BrokerMessage();
+        copy.setOriginNode(nodeId);
+        copy.setDestination(accessor.getDestination());
+        MimeType contentType = accessor.getContentType();
+        copy.setContentType(contentType != null ? contentType.toString() : null);
+        copy.setPayload(payload);
+        // Backpressure: hàng đợi đầy thì bỏ bản sao, client ở node khác sẽ đồng bộ lại khi reconnect
+        if (!outgoing.offer(copy)) {
+            droppedCounter.increment();
+            log.warn("Broker relay queue full, dropped message to {}", copy.getDestination());
+        }
+        return message;
+    }
+
+    /**
+     * Gửi thông báo nội bộ tới các node khác; node nhận phát lại thành ClusterEvent(topic, payload).
+     * Hàng đợi đầy thì bỏ như message /topic, bên nhận tự đồng bộ ở lần dựng lại định kỳ.
+     */
+    public void publishInternal(String topic, String payload) {
+        BrokerMessage copy = new BrokerMessage();
+        copy.setOriginNode(nodeId);
+        copy.setDestination(INTERNAL_PREFIX + topic);
+        copy.setContentType(MimeTypeUtils.TEXT_PLAIN_VALUE);
+        copy.setPayload(payload.getBytes(StandardCharsets.UTF_8));
+        if (!outgoing.offer(copy)) {
+            droppedCounter.increment();
+            log.warn("Broker relay queue full, dropped internal message to {}", copy.getDestination());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.broker.shared-db.poll-interval-ms:200}")
+    public void poll() {
+        if (!worker.isShutdown()) {
+            worker.submit(this::sync);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.broker.shared-db.retention-ms:300000}")
+    public void purge() {
+        brokerMessageRepository.deleteCreatedBefore(LocalDateTime.now().minus(Duration.ofMillis(retentionMs)));
+    }
+
+    void sync() {
+        if (!syncing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flushOutgoing();
+            receive();
+        } catch (Exception ex) {
+            log.error("Broker relay sync failed: {}", ex.getMessage());
+        } finally {
+            syncing.set(false);
+        }
+    }
+
+    private void flushOutgoing() {
+        List<BrokerMessage> batch = new ArrayList<>();
+        while (outgoing.drainTo(batch, batchSize) > 0) {
+            brokerMessageRepository.saveAll(batch);
+            batch.clear();
+        }
+    }
+
+    private void receive() {
+        long now = System.currentTimeMillis();
+        pendingIds.values().removeIf(deadline -> deadline < now);
+        List<Long> retry = pendingIds.isEmpty() ? List.of(-1L) : List.copyOf(pendingIds.keySet());
+
+        List<BrokerMessage> rows = brokerMessageRepository.findNew(lastSeenId, retry, PageRequest.of(0, batchSize));
+        for (BrokerMessage row : rows) {
+            long id = row.getBrokerMessageId();
+            pendingIds.remove(id);
+            if (id > lastSeenId) {
+                // Khoảng trống nhỏ = insert chưa commit lúc đọc; khoảng lớn = identity cache của SQL Server nhảy số
+                if (id - lastSeenId <= batchSize) {
+                    for (long gap = lastSeenId + 1; gap < id; gap++) {
+                        pendingIds.put(gap, now + gapTimeoutMs);
+                    }
+                }
+                lastSeenId = id;
+            }
+            if (!nodeId.equals(row.getOriginNode())) {
+                deliver(row);
+            }
+        }
+    }
+
+    private void deliver(BrokerMessage row) {
+        if (row.getDestination().startsWith(INTERNAL_PREFIX)) {
+            String topic = row.getDestination().substring(INTERNAL_PREFIX.length());
+            try {
+                applicationEventPublisher.publishEvent(new ClusterEvent(topic, new String(row.getPayload(), StandardCharsets.UTF_8)));
+            } catch (Exception ex) {
+                log.warn("Cluster event {} failed: {}", topic, ex.getMessage());
+            }
+            relayedCounter.increment();
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(row.getDestination());
+        if (row.getContentType() != null) {
+            accessor.setContentType(MimeTypeUtils.parseMimeType(row.getContentType()));
+        }
+        accessor.setHeader(RELAYED_HEADER, row.getOriginNode());
+        accessor.setLeaveMutable(true);
+        brokerChannel.send(MessageBuilder.createMessage(row.getPayload(), accessor.getMessageHeaders()));
+        relayedCounter.increment();
+    }
+
+    private boolean isReplicated(String destination) {
+        if (destination == null) {
+            return false;
+        }
+        for (String prefix : destinations) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.backend.service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tập jti của các token đã logout, mỗi jti chỉ được giữ tới khi token tự hết hạn
+ * nên kích thước luôn bị chặn bởi số token còn sống. Dữ liệu nằm trong bộ nhớ của node.
+ */
+@Component
+@Slf4j
+public class TokenRevocationList {
+
+    // jti -> thời điểm hết hạn (epoch ms)
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    public void revoke(String tokenId, Instant expiresAt) {
+        if (tokenId != null && expiresAt.isAfter(Instant.now())) {
+            revoked.put(tokenId, expiresAt.toEpochMilli());
+        }
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return tokenId != null && revoked.containsKey(tokenId);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation-purge-ms:300000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int before = revoked.size();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+        int removed = before - revoked.size();
+        if (removed > 0) {
+            log.debug("Purged {} expired revoked tokens", removed);
+        }
+    }
+}
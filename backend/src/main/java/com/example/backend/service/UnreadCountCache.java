@@ -0,0 +1,165 @@
+package com.example.backend.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntUnaryOperator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.dto.MessageDTO;
+import com.example.backend.event.AfterCommit;
+import com.example.backend.repository.ConversationRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bộ đếm tin chưa đọc theo (userId, conversationId) kèm tổng theo user.
+ *
+ * Một user được nạp lười từ các cột tóm tắt của Conversations ở lần đọc đầu tiên và
+ * được nạp lại sau unread-cache.ttl-ms (giới hạn sai lệch khi chạy nhiều node).
+ * Thay đổi chỉ áp vào cache sau khi transaction commit, dưới lock của stripe chứa user,
+ * rồi đẩy giá trị mới lên /topic/users/{id}/unread để client không phải poll.
+ * User chưa được nạp (hoặc đã hết hạn) thì nạp từ DB ngay lúc đó: thay đổi đã commit nên
+ * số liệu đọc được đã bao gồm nó, client vẫn nhận được giá trị mới.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UnreadCountCache {
+
+    private static final int STRIPES = 64;
+
+    private final ConversationRepository conversationRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${unread-cache.ttl-ms:600000}")
+    private long ttlMs;
+
+    private final Map<Long, UserCounts> users = new ConcurrentHashMap<>();
+    // ReentrantLock thay vì synchronized để không ghim carrier thread của virtual thread khi nạp từ DB
+    private final ReentrantLock[] stripes = newStripes();
+
+    private static final class UserCounts {
+        final Map<Long, Integer> perConversation = new HashMap<>();
+        final long loadedAt = System.currentTimeMillis();
+        long total;
+    }
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    public int get(Long userId, Long conversationId) {
+        ReentrantLock lock = stripeOf(userId);
+        lock.lock();
+        try {
+            return load(userId).perConversation.getOrDefault(conversationId, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long total(Long userId) {
+        ReentrantLock lock = stripeOf(userId);
+        lock.lock();
+        try {
+            return load(userId).total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // recipientUserId nhận thêm một tin nhắn mới
+    public void messageCreated(Long conversationId, Long recipientUserId) {
+        AfterCommit.run(() -> apply(recipientUserId, conversationId, count -> count + 1));
+    }
+
+    // Một tin nhắn gửi tới recipientUserId vừa được đánh dấu đã đọc
+    public void messageRead(Long conversationId, Long recipientUserId) {
+        AfterCommit.run(() -> apply(recipientUserId, conversationId, count -> Math.max(0, count - 1)));
+    }
+
+    // userId đã đọc hết tin nhắn trong cuộc trò chuyện
+    public void conversationRead(Long conversationId, Long userId) {
+        AfterCommit.run(() -> apply(userId, conversationId, count -> 0));
+    }
+
+    // Bỏ số liệu đã cache (ví dụ sau khi xóa tin nhắn); lần đọc sau nạp lại từ DB
+    public void invalidate(Long userId) {
+        AfterCommit.run(() -> users.remove(userId));
+    }
+
+    @Scheduled(fixedDelayString = "${unread-cache.ttl-ms:600000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        users.entrySet().removeIf(entry -> now - entry.getValue().loadedAt > ttlMs);
+    }
+
+    private void apply(Long userId, Long conversationId, IntUnaryOperator change) {
+        MessageDTO.UnreadCount update;
+        ReentrantLock lock = stripeOf(userId);
+        lock.lock();
+        try {
+            UserCounts counts = users.get(userId);
+            int current;
+            if (counts == null || isExpired(counts)) {
+                // Chạy sau commit nên số liệu nạp từ DB đã gồm thay đổi này, không áp thêm lần nữa
+                counts = load(userId);
+                current = counts.perConversation.getOrDefault(conversationId, 0);
+            } else {
+                int previous = counts.perConversation.getOrDefault(conversationId, 0);
+                current = change.applyAsInt(previous);
+                counts.perConversation.put(conversationId, current);
+                counts.total += current - previous;
+            }
+            update = new MessageDTO.UnreadCount(conversationId, current, counts.total);
+        } finally {
+            lock.unlock();
+        }
+        push(userId, update);
+    }
+
+    // Gọi khi đang giữ lock của stripe
+    private UserCounts load(Long userId) {
+        UserCounts counts = users.get(userId);
+        if (counts != null && !isExpired(counts)) {
+            return counts;
+        }
+        UserCounts loaded = new UserCounts();
+        for (Object[] row : conversationRepository.findUnreadCountsByUserId(userId)) {
+            int unread = ((Number) row[1]).intValue();
+            loaded.perConversation.put((Long) row[0], unread);
+            loaded.total += unread;
+        }
+        users.put(userId, loaded);
+        log.debug("Loaded unread counts for user {}: {} conversations, {} unread",
+                userId, loaded.perConversation.size(), loaded.total);
+        return loaded;
+    }
+
+    private boolean isExpired(UserCounts counts) {
+        return System.currentTimeMillis() - counts.loadedAt > ttlMs;
+    }
+
+    private ReentrantLock stripeOf(Long userId) {
+        return stripes[Math.floorMod(userId.hashCode(), STRIPES)];
+    }
+
+    private void push(Long userId, MessageDTO.UnreadCount update) {
+        try {
+            messagingTemplate.convertAndSend("/topic/users/" + userId + "/unread", update);
+        } catch (Exception ex) {
+            log.warn("Failed to push unread count to user {}: {}", userId, ex.getMessage());
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.example.backend.service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -38,7 +39,10 @@ public class UserService {
     private final RoleRepository roleRepository;
     private final DoctorRepository doctorRepository;
     private final PatientRepository patientRepository;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final PasswordEncoder passwordEncoder;
+    private final PeopleSearchIndex searchIndex;
+    private final BlockIdAllocator idAllocator;
+    private final BatchLoader batchLoader;
 
     /**
      * Lấy tất cả user với thông tin role
@@ -106,8 +110,13 @@ public class UserService {
     @Transactional(readOnly = true)
     public List<UserWithPatientInfoDTO> getAllUsersWithPatientInfo() {
         List<User> users = userRepository.findAllWithRoleInfo();
+        // Thông tin bệnh nhân / bác sĩ của cả danh sách: mỗi loại một truy vấn IN theo UserID
+        Map<Long, Patient> patients = batchLoader.loadAll(BatchLoader.PATIENT_BY_USER,
+                BatchLoader.ids(users, user -> hasRole(user, "PATIENT") ? user.getId() : null));
+        Map<Long, Doctor> doctors = batchLoader.loadAll(BatchLoader.DOCTOR_BY_USER,
+                BatchLoader.ids(users, user -> hasRole(user, "DOCTOR") ? user.getId() : null));
         return users.stream()
-                .map(this::convertToUserWithPatientInfoDTO)
+                .map(user -> convertToUserWithPatientInfoDTO(user, patients.get(user.getId()), doctors.get(user.getId())))
                 .toList();
     }
 
@@ -128,7 +137,11 @@ public class UserService {
      */
     @Transactional(readOnly = true)
     public List<User> getUsersByNameWithRoleInfo(String keyword) {
-        return userRepository.findByNameContainingWithRoleInfo(keyword);
+        // Tra index trong bộ nhớ (bỏ dấu, trigram) rồi nạp entity bằng truy vấn IN theo lô;
+        // index chưa sẵn sàng thì dùng truy vấn LIKE
+        return searchIndex.search(PeopleSearchIndex.Kind.USER, keyword)
+                .map(ids -> RankedIds.loadInRankOrder(ids, userRepository::findByIdInWithRoleInfo, User::getId))
+                .orElseGet(() -> userRepository.findByNameContainingWithRoleInfo(keyword));
     }
 
     /**
@@ -334,7 +347,7 @@ public class UserService {
     public void createDoctorRecordAsync(Long userId) {
         try {
             Doctor doctor = new Doctor();
-            doctor.setDoctorId(userId);
+            doctor.setDoctorId(idAllocator.next(BlockIdAllocator.Sequence.DOCTOR));
             doctor.setBio("Bác sĩ chuyên khoa");
             doctor.setSpecialty("Nội khoa");
             // Status is managed by User entity, not Doctor entity
@@ -358,7 +371,7 @@ public class UserService {
             if (user == null) return;
             
             Patient patient = new Patient();
-            patient.setPatientId(userId);
+            patient.setPatientId(idAllocator.next(BlockIdAllocator.Sequence.PATIENT));
             patient.setUser(user);
             patient.setHealthInsuranceNumber(null);
             patient.setMedicalHistory(null);
@@ -375,7 +388,7 @@ public class UserService {
      * @param user User entity
      * @return UserWithPatientInfoDTO
      */
-    private UserWithPatientInfoDTO convertToUserWithPatientInfoDTO(User user) {
+    private UserWithPatientInfoDTO convertToUserWithPatientInfoDTO(User user, Patient patient, Doctor doctor) {
         UserWithPatientInfoDTO dto = new UserWithPatientInfoDTO();
         
         // Copy thông tin cơ bản từ User
@@ -401,38 +414,20 @@ public class UserService {
         }
         
         // Nếu user là Patient, lấy thông tin bệnh nhân
-        if (user.getRole() != null && "PATIENT".equals(user.getRole().getName())) {
-            try {
-                Optional<Patient> patientOpt = patientRepository.findByPatientId(user.getId());
-                if (patientOpt.isPresent()) {
-                    Patient patient = patientOpt.get();
-                    dto.setHealthInsuranceNumber(patient.getHealthInsuranceNumber());
-                    dto.setMedicalHistory(patient.getMedicalHistory());
-                    dto.setPatientCreatedAt(patient.getCreatedAt());
-                    dto.setPatientStatus(patient.getStatus());
-                }
-            } catch (Exception e) {
-                // Nếu không tìm thấy thông tin patient, để null
-                System.err.println("Không tìm thấy thông tin patient cho user ID: " + user.getId());
-            }
+        if (patient != null && hasRole(user, "PATIENT")) {
+            dto.setHealthInsuranceNumber(patient.getHealthInsuranceNumber());
+            dto.setMedicalHistory(patient.getMedicalHistory());
+            dto.setPatientCreatedAt(patient.getCreatedAt());
+            dto.setPatientStatus(patient.getStatus());
         }
         
         // Nếu user là Doctor, lấy thông tin bác sĩ
-        if (user.getRole() != null && "DOCTOR".equals(user.getRole().getName())) {
-            try {
-                Optional<Doctor> doctorOpt = doctorRepository.findByDoctorId(user.getId());
-                if (doctorOpt.isPresent()) {
-                    Doctor doctor = doctorOpt.get();
-                    dto.setBio(doctor.getBio());
-                    dto.setSpecialty(doctor.getSpecialty());
-                    dto.setDepartmentId(doctor.getDepartment() != null ? doctor.getDepartment().getId() : null);
-                    dto.setDepartmentName(doctor.getDepartment() != null ? doctor.getDepartment().getDepartmentName() : null);
-                    dto.setDoctorStatus(doctor.getStatus());
-                }
-            } catch (Exception e) {
-                // Nếu không tìm thấy thông tin doctor, để null
-                System.err.println("Không tìm thấy thông tin doctor cho user ID: " + user.getId());
-            }
+        if (doctor != null && hasRole(user, "DOCTOR")) {
+            dto.setBio(doctor.getBio());
+            dto.setSpecialty(doctor.getSpecialty());
+            dto.setDepartmentId(doctor.getDepartment() != null ? doctor.getDepartment().getId() : null);
+            dto.setDepartmentName(doctor.getDepartment() != null ? doctor.getDepartment().getDepartmentName() : null);
+            dto.setDoctorStatus(doctor.getStatus());
         }
         
         // Nếu user là Admin, lấy thông tin quản trị viên
@@ -446,6 +441,10 @@ public class UserService {
         return dto;
     }
 
+    private static boolean hasRole(User user, String roleName) {
+        return user.getRole() != null && roleName.equals(user.getRole().getName());
+    }
+
     /**
      * Upload ảnh đại diện cho user
      * @param userId ID của user
@@ -504,27 +503,6 @@ public class UserService {
         }
     }
     
-    /**
-     * Lấy user hiện tại từ token (simplified implementation)
-     * @param token JWT token
-     * @return User object
-     */
-    public User getCurrentUserFromToken(String token) {
-        try {
-            // For Google users, get the most recent Google user
-            List<User> googleUsers = userRepository.findByPasswordHash("oauth_google_user");
-            if (!googleUsers.isEmpty()) {
-                // Return the most recent Google user (highest ID)
-                return googleUsers.stream()
-                    .max((u1, u2) -> Long.compare(u1.getId(), u2.getId()))
-                    .orElse(null);
-            }
-            return null;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to get current user from token", e);
-        }
-    }
-
     /**
      * So sánh password thô với password đã hash
      * @param rawPassword password thô
@@ -1,7 +1,10 @@
 package com.example.backend.service;
 
-import vn.payos.model.webhooks.WebhookData;
+import com.example.backend.event.DomainEvent;
+import com.example.backend.event.DomainEventPublisher;
 import com.example.backend.model.Payment;
+import com.example.backend.model.PaymentLinkHistory;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
 import com.example.backend.repository.PaymentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,27 +12,76 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class WebhookService {
-    
+
     private final PaymentRepository paymentRepository;
-    
+    private final PaymentLinkHistoryRepository paymentLinkHistoryRepository;
+    private final DomainEventPublisher eventPublisher;
+
+    // Trạng thái link PayOS khiến payment chuyển CANCELLED; mã lỗi khác của webhook chuyển FAILED
+    private static final Set<String> CANCELLED_CODES = Set.of("CANCELLED", "EXPIRED");
+
+    /**
+     * Áp một webhook PayOS (đã xác thực) hoặc kết quả đối soát, lấy từ PayOSWebhookQueue, vào payment.
+     * Idempotent: payment đã PAID thì không đổi nữa, nên áp lại cùng webhook không phát PaymentPaid lần hai.
+     */
     @Transactional
-    public void processPayOSWebhook(WebhookData webhookData) {
+    public void applyPayOSWebhook(Long payOSOrderCode, String status, String description) {
         try {
-            log.info("Processing PayOS webhook: {}", webhookData);
-            
-            String orderCode = String.valueOf(webhookData.getOrderCode());
-            String status = webhookData.getCode();
-            String description = webhookData.getDesc();
-            
+            log.info("Processing PayOS webhook: orderCode={}, code={}", payOSOrderCode, status);
+
+            String orderCode = String.valueOf(payOSOrderCode);
+
             // Tìm payment theo order code
-            Payment payment = paymentRepository.findByPayOSCode(orderCode)
+            Optional<Payment> paymentOpt = paymentRepository.findByPayOSCode(orderCode);
+            PaymentLinkHistory supersededLink = null;
+            if (paymentOpt.isEmpty()) {
+                // Link cũ đã được thay bằng link mới (PayOSCode đổi) nhưng PayOS vẫn có thể nhận thanh toán trên nó
+                supersededLink = paymentLinkHistoryRepository.findById(orderCode).orElse(null);
+                if (supersededLink != null && !"00".equals(status)) {
+                    // Payment đang dùng link mới: link cũ hết hạn/bị hủy thì chỉ đóng lịch sử, không hủy payment
+                    if (CANCELLED_CODES.contains(status)) {
+                        paymentLinkHistoryRepository.close(orderCode, status, LocalDateTime.now());
+                    }
+                    log.info("PayOS {} for superseded order code {} of payment {} recorded",
+                        status, orderCode, supersededLink.getPaymentId());
+                    return;
+                }
+                if (supersededLink != null) {
+                    paymentOpt = paymentRepository.findById(supersededLink.getPaymentId());
+                }
+            }
+            if (paymentOpt.isEmpty() && CANCELLED_CODES.contains(status)) {
+                // Link không còn gắn với payment nào: không còn gì để hủy
+                log.info("PayOS link {} for replaced order code {} ignored", status, orderCode);
+                return;
+            }
+            Payment payment = paymentOpt
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy payment với order code: " + orderCode));
-            
+            if (supersededLink != null) {
+                boolean firstPaid = paymentLinkHistoryRepository.close(orderCode, "PAID", LocalDateTime.now()) == 1;
+                if (payment.getStatus() == Payment.PaymentStatus.PAID) {
+                    // Đã thanh toán trên link khác: người dùng trả hai lần, cần hoàn tiền thủ công (replay thì bỏ qua)
+                    if (firstPaid) {
+                        log.warn("Payment {} already PAID but superseded order code {} was paid too, refund needed",
+                            payment.getPaymentId(), orderCode);
+                    }
+                    return;
+                }
+                log.info("Payment {} paid on superseded order code {}", payment.getPaymentId(), orderCode);
+            }
+
+            if (payment.getStatus() == Payment.PaymentStatus.PAID) {
+                log.info("Payment for order code {} already PAID, webhook {} ignored", orderCode, status);
+                return;
+            }
+
             // Cập nhật trạng thái payment
             Payment.PaymentStatus paymentStatus;
             if ("00".equals(status)) {
@@ -37,25 +89,32 @@ public class WebhookService {
                 payment.setPaidAt(LocalDateTime.now());
                 payment.setPaymentMethod("PayOS");
                 log.info("Payment completed successfully for order code: {}", orderCode);
+            } else if (CANCELLED_CODES.contains(status)) {
+                // Link bị hủy hoặc hết hạn (đối soát với PayOS), người dùng có thể tạo link mới
+                paymentStatus = Payment.PaymentStatus.CANCELLED;
+                payment.setFailureReason(description);
+                log.warn("Payment link {} for order code: {}", status, orderCode);
             } else {
                 paymentStatus = Payment.PaymentStatus.FAILED;
                 payment.setFailureReason(description);
                 log.warn("Payment failed for order code: {} with reason: {}", orderCode, description);
             }
-            
+
             payment.setStatus(paymentStatus);
             paymentRepository.save(payment);
-            
-            // Có thể thêm logic khác như gửi email thông báo, cập nhật appointment status, etc.
+
             if (paymentStatus == Payment.PaymentStatus.PAID) {
                 // Cập nhật appointment status nếu cần
+                Long appointmentId = null;
                 if (payment.getAppointment() != null) {
                     payment.getAppointment().setStatus("Confirmed");
-                    log.info("Appointment status updated to Confirmed for appointment ID: {}", 
-                        payment.getAppointment().getAppointmentId());
+                    appointmentId = payment.getAppointment().getAppointmentId();
+                    log.info("Appointment status updated to Confirmed for appointment ID: {}", appointmentId);
                 }
+                // Thông báo + email do PaymentEventListener xử lý sau khi commit
+                eventPublisher.publish(new DomainEvent.PaymentPaid(payment.getPaymentId(), appointmentId));
             }
-            
+
         } catch (Exception e) {
             log.error("Error processing PayOS webhook: ", e);
             throw new RuntimeException("Lỗi khi xử lý webhook: " + e.getMessage());
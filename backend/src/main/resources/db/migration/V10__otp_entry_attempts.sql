@@ -0,0 +1,9 @@
+/* ===========================================================
+   Số lần nhập OTP lưu cùng entry để giới hạn nhập sai tính
+   chung cho mọi node khi otp.store = db
+   =========================================================== */
+IF OBJECT_ID(N'dbo.OtpEntries', N'U') IS NOT NULL
+   AND COL_LENGTH(N'dbo.OtpEntries', N'Attempts') IS NULL
+    ALTER TABLE dbo.OtpEntries ADD Attempts INT NOT NULL
+        CONSTRAINT DF_OtpEntries_Attempts DEFAULT 0;
+GO
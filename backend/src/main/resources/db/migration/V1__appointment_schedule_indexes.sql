@@ -0,0 +1,20 @@
+/* ===========================================================
+   Chỉ mục cho kiểm tra trùng khung giờ theo bác sĩ
+   - AppointmentRepository.existsOverlap / findDoctorAppointmentsInRange
+   - DoctorScheduleRepository.existsOverlap / findByDoctor_DoctorIdAndWorkDate
+   Bảng có thể chưa tồn tại trên DB mới (Hibernate tạo sau Flyway),
+   khi đó index được tạo từ @Table(indexes = ...) của entity.
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Appointments', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Appointments_Doctor_Start_End'
+                     AND object_id = OBJECT_ID(N'dbo.Appointments'))
+    CREATE INDEX IX_Appointments_Doctor_Start_End ON dbo.Appointments (DoctorID, StartTime, EndTime);
+GO
+
+IF OBJECT_ID(N'dbo.DoctorSchedules', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_DoctorSchedules_Doctor_WorkDate'
+                     AND object_id = OBJECT_ID(N'dbo.DoctorSchedules'))
+    CREATE INDEX IX_DoctorSchedules_Doctor_WorkDate ON dbo.DoctorSchedules (DoctorID, WorkDate);
+GO
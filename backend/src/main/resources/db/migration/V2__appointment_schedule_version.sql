@@ -0,0 +1,15 @@
+/* ===========================================================
+   Cột Version cho optimistic locking (@Version) trên Appointment
+   và DoctorSchedule. Dữ liệu cũ bắt đầu từ version 0.
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Appointments', N'U') IS NOT NULL
+   AND COL_LENGTH(N'dbo.Appointments', N'Version') IS NULL
+    ALTER TABLE dbo.Appointments ADD Version BIGINT NOT NULL
+        CONSTRAINT DF_Appointments_Version DEFAULT 0;
+GO
+
+IF OBJECT_ID(N'dbo.DoctorSchedules', N'U') IS NOT NULL
+   AND COL_LENGTH(N'dbo.DoctorSchedules', N'Version') IS NULL
+    ALTER TABLE dbo.DoctorSchedules ADD Version BIGINT NOT NULL
+        CONSTRAINT DF_DoctorSchedules_Version DEFAULT 0;
+GO
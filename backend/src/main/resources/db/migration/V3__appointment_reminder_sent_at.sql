@@ -0,0 +1,15 @@
+/* ===========================================================
+   Đánh dấu đã gửi nhắc lịch (ReminderScheduler) + index cho
+   truy vấn theo cửa sổ thời gian sắp tới
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Appointments', N'U') IS NOT NULL
+   AND COL_LENGTH(N'dbo.Appointments', N'ReminderSentAt') IS NULL
+    ALTER TABLE dbo.Appointments ADD ReminderSentAt DATETIME2(6) NULL;
+GO
+
+IF OBJECT_ID(N'dbo.Appointments', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Appointments_Start_ReminderSentAt'
+                     AND object_id = OBJECT_ID(N'dbo.Appointments'))
+    CREATE INDEX IX_Appointments_Start_ReminderSentAt ON dbo.Appointments (StartTime, ReminderSentAt);
+GO
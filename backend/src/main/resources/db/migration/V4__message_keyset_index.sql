@@ -0,0 +1,10 @@
+/* ===========================================================
+   Index cho keyset pagination lịch sử tin nhắn
+   (ConversationID, SentAt, MessageID)
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Messages', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Messages_Conversation_SentAt_Id'
+                     AND object_id = OBJECT_ID(N'dbo.Messages'))
+    CREATE INDEX IX_Messages_Conversation_SentAt_Id ON dbo.Messages (ConversationID, SentAt, MessageID);
+GO
@@ -0,0 +1,54 @@
+/* ===========================================================
+   Tóm tắt cuộc trò chuyện cho hộp thư: tin nhắn cuối, tổng số
+   tin nhắn và số tin chưa đọc của từng bên
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Conversations', N'U') IS NOT NULL
+   AND COL_LENGTH(N'dbo.Conversations', N'LastMessageId') IS NULL
+    ALTER TABLE dbo.Conversations ADD
+        LastMessageId BIGINT NULL,
+        LastMessageAt DATETIME2(6) NULL,
+        LastMessagePreview NVARCHAR(200) NULL,
+        MessageCount BIGINT NOT NULL CONSTRAINT DF_Conversations_MessageCount DEFAULT 0,
+        PatientUnreadCount INT NOT NULL CONSTRAINT DF_Conversations_PatientUnreadCount DEFAULT 0,
+        DoctorUnreadCount INT NOT NULL CONSTRAINT DF_Conversations_DoctorUnreadCount DEFAULT 0;
+GO
+
+-- Tính lại từ dữ liệu Messages hiện có
+IF OBJECT_ID(N'dbo.Conversations', N'U') IS NOT NULL
+   AND OBJECT_ID(N'dbo.Messages', N'U') IS NOT NULL
+    UPDATE c SET
+        MessageCount = ISNULL(stats.MessageCount, 0),
+        PatientUnreadCount = ISNULL(stats.PatientUnread, 0),
+        DoctorUnreadCount = ISNULL(stats.DoctorUnread, 0),
+        LastMessageId = lastMsg.MessageId,
+        LastMessageAt = lastMsg.SentAt,
+        LastMessagePreview = LEFT(ISNULL(lastMsg.Content, N''), 200)
+    FROM dbo.Conversations c
+    OUTER APPLY (
+        SELECT COUNT(*) AS MessageCount,
+               SUM(CASE WHEN m.IsRead = 0 AND m.SenderID <> c.UserIdOfPatient THEN 1 ELSE 0 END) AS PatientUnread,
+               SUM(CASE WHEN m.IsRead = 0 AND m.SenderID <> c.UserIdOfDoctor THEN 1 ELSE 0 END) AS DoctorUnread
+        FROM dbo.Messages m
+        WHERE m.ConversationID = c.ConversationId
+    ) stats
+    OUTER APPLY (
+        SELECT TOP 1 m.MessageId, m.SentAt, m.Content
+        FROM dbo.Messages m
+        WHERE m.ConversationID = c.ConversationId
+        ORDER BY m.SentAt DESC, m.MessageId DESC
+    ) lastMsg;
+GO
+
+IF OBJECT_ID(N'dbo.Conversations', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Conversations_Doctor_LastMessageAt'
+                     AND object_id = OBJECT_ID(N'dbo.Conversations'))
+    CREATE INDEX IX_Conversations_Doctor_LastMessageAt ON dbo.Conversations (UserIdOfDoctor, LastMessageAt);
+GO
+
+IF OBJECT_ID(N'dbo.Conversations', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Conversations_Patient_LastMessageAt'
+                     AND object_id = OBJECT_ID(N'dbo.Conversations'))
+    CREATE INDEX IX_Conversations_Patient_LastMessageAt ON dbo.Conversations (UserIdOfPatient, LastMessageAt);
+GO
@@ -0,0 +1,59 @@
+/* ===========================================================
+   Tổng hợp đánh giá của bác sĩ: tổng điểm, số đánh giá, phân bố
+   1-5 sao và điểm trung bình, được ReviewService cập nhật trong
+   cùng transaction với đánh giá
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Doctors', N'U') IS NOT NULL
+   AND COL_LENGTH(N'dbo.Doctors', N'RatingSum') IS NULL
+    ALTER TABLE dbo.Doctors ADD
+        RatingSum BIGINT NOT NULL CONSTRAINT DF_Doctors_RatingSum DEFAULT 0,
+        RatingCount BIGINT NOT NULL CONSTRAINT DF_Doctors_RatingCount DEFAULT 0,
+        Rating1Count INT NOT NULL CONSTRAINT DF_Doctors_Rating1Count DEFAULT 0,
+        Rating2Count INT NOT NULL CONSTRAINT DF_Doctors_Rating2Count DEFAULT 0,
+        Rating3Count INT NOT NULL CONSTRAINT DF_Doctors_Rating3Count DEFAULT 0,
+        Rating4Count INT NOT NULL CONSTRAINT DF_Doctors_Rating4Count DEFAULT 0,
+        Rating5Count INT NOT NULL CONSTRAINT DF_Doctors_Rating5Count DEFAULT 0,
+        AverageRating FLOAT NOT NULL CONSTRAINT DF_Doctors_AverageRating DEFAULT 0;
+GO
+
+-- Tính lại từ các đánh giá ACTIVE hiện có
+IF OBJECT_ID(N'dbo.Doctors', N'U') IS NOT NULL
+   AND OBJECT_ID(N'dbo.Reviews', N'U') IS NOT NULL
+    UPDATE d SET
+        RatingSum = ISNULL(stats.RatingSum, 0),
+        RatingCount = ISNULL(stats.RatingCount, 0),
+        Rating1Count = ISNULL(stats.Rating1, 0),
+        Rating2Count = ISNULL(stats.Rating2, 0),
+        Rating3Count = ISNULL(stats.Rating3, 0),
+        Rating4Count = ISNULL(stats.Rating4, 0),
+        Rating5Count = ISNULL(stats.Rating5, 0),
+        AverageRating = CASE WHEN ISNULL(stats.RatingCount, 0) > 0
+                             THEN CAST(stats.RatingSum AS FLOAT) / stats.RatingCount ELSE 0 END
+    FROM dbo.Doctors d
+    OUTER APPLY (
+        SELECT SUM(CAST(r.rating AS BIGINT)) AS RatingSum,
+               COUNT_BIG(*) AS RatingCount,
+               SUM(CASE WHEN r.rating = 1 THEN 1 ELSE 0 END) AS Rating1,
+               SUM(CASE WHEN r.rating = 2 THEN 1 ELSE 0 END) AS Rating2,
+               SUM(CASE WHEN r.rating = 3 THEN 1 ELSE 0 END) AS Rating3,
+               SUM(CASE WHEN r.rating = 4 THEN 1 ELSE 0 END) AS Rating4,
+               SUM(CASE WHEN r.rating = 5 THEN 1 ELSE 0 END) AS Rating5
+        FROM dbo.Reviews r
+        WHERE r.DoctorID = d.DoctorID AND r.status = N'ACTIVE' AND r.rating BETWEEN 1 AND 5
+    ) stats;
+GO
+
+-- Xếp hạng theo điểm trong từng khoa đọc thẳng theo index, không cần sắp xếp
+IF OBJECT_ID(N'dbo.Doctors', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Doctors_Department_Rating'
+                     AND object_id = OBJECT_ID(N'dbo.Doctors'))
+    CREATE INDEX IX_Doctors_Department_Rating ON dbo.Doctors (DepartmentID, AverageRating DESC, RatingCount DESC);
+GO
+
+IF OBJECT_ID(N'dbo.Doctors', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Doctors_Rating'
+                     AND object_id = OBJECT_ID(N'dbo.Doctors'))
+    CREATE INDEX IX_Doctors_Rating ON dbo.Doctors (AverageRating DESC, RatingCount DESC);
+GO
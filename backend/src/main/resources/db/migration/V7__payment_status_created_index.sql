@@ -0,0 +1,10 @@
+/* ===========================================================
+   Index cho đối soát payment PENDING với PayOS: keyset pagination
+   theo (Status, CreatedAt, PaymentID)
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Payments', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'IX_Payments_Status_CreatedAt'
+                     AND object_id = OBJECT_ID(N'dbo.Payments'))
+    CREATE INDEX IX_Payments_Status_CreatedAt ON dbo.Payments (Status, CreatedAt, PaymentID) INCLUDE (PayOSCode);
+GO
@@ -0,0 +1,20 @@
+/* ===========================================================
+   Unique index cho Payments.PayOSCode: webhook PayOS tìm payment
+   theo order code bằng một lần seek, và hai payment không thể
+   mang cùng order code. Lọc NULL vì payment chưa có link (hoặc
+   đã hủy link) không có PayOSCode.
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Payments', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'UX_Payments_PayOSCode'
+                     AND object_id = OBJECT_ID(N'dbo.Payments'))
+BEGIN
+    IF EXISTS (SELECT PayOSCode FROM dbo.Payments
+               WHERE PayOSCode IS NOT NULL
+               GROUP BY PayOSCode HAVING COUNT(*) > 1)
+        -- PayOS không cấp trùng order code, nên trùng ở đây là dữ liệu sai cần xử lý tay
+        RAISERROR (N'Payments.PayOSCode có giá trị trùng, cần xử lý trước khi tạo UX_Payments_PayOSCode', 16, 1);
+    ELSE
+        CREATE UNIQUE INDEX UX_Payments_PayOSCode ON dbo.Payments (PayOSCode) WHERE PayOSCode IS NOT NULL;
+END
+GO
@@ -0,0 +1,29 @@
+/* ===========================================================
+   Hạn link PayOS lưu cùng payment (expiredAt gửi cho PayOS),
+   để mọi node quyết định dùng lại link theo cùng một giá trị
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Payments', N'U') IS NOT NULL
+   AND COL_LENGTH(N'dbo.Payments', N'LinkExpiresAt') IS NULL
+    ALTER TABLE dbo.Payments ADD LinkExpiresAt DATETIME2(6) NULL;
+GO
+
+/* ===========================================================
+   Mỗi lịch hẹn chỉ có một payment PENDING: hai request tạo
+   payment đồng thời (kể cả trên hai node) thì INSERT thứ hai
+   trùng khóa và PaymentService dùng lại payment đã có
+   =========================================================== */
+IF OBJECT_ID(N'dbo.Payments', N'U') IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes
+                   WHERE name = N'UX_Payments_AppointmentID_Pending'
+                     AND object_id = OBJECT_ID(N'dbo.Payments'))
+BEGIN
+    IF EXISTS (SELECT AppointmentID FROM dbo.Payments
+               WHERE Status = N'PENDING' AND AppointmentID IS NOT NULL
+               GROUP BY AppointmentID HAVING COUNT(*) > 1)
+        -- Cần chọn payment giữ lại (và hủy các payment còn lại) bằng tay trước khi tạo index
+        RAISERROR (N'Payments có nhiều payment PENDING cho cùng lịch hẹn, cần xử lý trước khi tạo UX_Payments_AppointmentID_Pending', 16, 1);
+    ELSE
+        CREATE UNIQUE INDEX UX_Payments_AppointmentID_Pending ON dbo.Payments (AppointmentID)
+            WHERE Status = N'PENDING' AND AppointmentID IS NOT NULL;
+END
+GO
@@ -0,0 +1,72 @@
+package com.example.backend.controller;
+
+import com.example.backend.config.SecurityConfig;
+import com.example.backend.dto.ExportDTO;
+import com.example.backend.service.BulkExportService;
+import com.example.backend.service.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests for access control on ExportController through SecurityConfig and the JWT filter.
+ */
+@WebMvcTest(ExportController.class)
+@Import(SecurityConfig.class)
+class ExportControllerSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockitoBean
+    private BulkExportService bulkExportService;
+    @MockitoBean
+    private JwtService jwtService;
+
+    @BeforeEach
+    void setUp() {
+        when(jwtService.verify(anyString())).thenReturn(Optional.empty());
+        when(jwtService.verify("admin-token"))
+                .thenReturn(Optional.of(new JwtService.TokenInfo(1L, "Admin", "jti-1", Instant.now().plusSeconds(60))));
+        when(jwtService.verify("patient-token"))
+                .thenReturn(Optional.of(new JwtService.TokenInfo(2L, "Patient", "jti-2", Instant.now().plusSeconds(60))));
+    }
+
+    @Test
+    void testExport_WithoutToken_Unauthorized() throws Exception {
+        mockMvc.perform(get("/api/exports/users"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/exports/users").header(HttpHeaders.AUTHORIZATION, "Bearer forged"))
+                .andExpect(status().isUnauthorized());
+        verifyNoInteractions(bulkExportService);
+        System.out.println("✅ Test passed: Export - Anonymous request rejected with 401");
+    }
+
+    @Test
+    void testExport_NonAdmin_Forbidden() throws Exception {
+        mockMvc.perform(get("/api/exports/users").header(HttpHeaders.AUTHORIZATION, "Bearer patient-token"))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(bulkExportService);
+        System.out.println("✅ Test passed: Export - Non-admin request rejected with 403");
+    }
+
+    @Test
+    void testExport_Admin_Streams() throws Exception {
+        mockMvc.perform(get("/api/exports/users").header(HttpHeaders.AUTHORIZATION, "Bearer admin-token"))
+                .andExpect(status().isOk());
+        verify(bulkExportService).export(eq(ExportDTO.Dataset.fromPath("users")), eq(ExportDTO.Format.CSV), any());
+        System.out.println("✅ Test passed: Export - Admin request streamed");
+    }
+}
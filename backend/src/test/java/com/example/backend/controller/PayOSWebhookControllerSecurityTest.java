@@ -0,0 +1,76 @@
+package com.example.backend.controller;
+
+import com.example.backend.config.SecurityConfig;
+import com.example.backend.service.JwtService;
+import com.example.backend.service.PayOSWebhookQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import vn.payos.PayOS;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests for access control on the PayOS webhook replay endpoints through SecurityConfig and the JWT filter.
+ */
+@WebMvcTest(PayOSWebhookController.class)
+@Import(SecurityConfig.class)
+class PayOSWebhookControllerSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockitoBean
+    private PayOSWebhookQueue webhookQueue;
+    @MockitoBean
+    private PayOS payOS;
+    @MockitoBean
+    private JwtService jwtService;
+
+    @BeforeEach
+    void setUp() {
+        when(jwtService.verify(anyString())).thenReturn(Optional.empty());
+        when(jwtService.verify("admin-token"))
+                .thenReturn(Optional.of(new JwtService.TokenInfo(1L, "Admin", "jti-1", Instant.now().plusSeconds(60))));
+        when(jwtService.verify("patient-token"))
+                .thenReturn(Optional.of(new JwtService.TokenInfo(2L, "Patient", "jti-2", Instant.now().plusSeconds(60))));
+    }
+
+    @Test
+    void testReplay_WithoutToken_Unauthorized() throws Exception {
+        mockMvc.perform(post("/api/payments/webhook/events/1/replay"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/api/payments/webhook/events/replay-failed"))
+                .andExpect(status().isUnauthorized());
+        verifyNoInteractions(webhookQueue);
+        System.out.println("✅ Test passed: Webhook replay - Anonymous request rejected with 401");
+    }
+
+    @Test
+    void testReplay_NonAdmin_Forbidden() throws Exception {
+        mockMvc.perform(post("/api/payments/webhook/events/replay-failed")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer patient-token"))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(webhookQueue);
+        System.out.println("✅ Test passed: Webhook replay - Non-admin request rejected with 403");
+    }
+
+    @Test
+    void testReplay_Admin_Requeues() throws Exception {
+        mockMvc.perform(post("/api/payments/webhook/events/1/replay")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer admin-token"))
+                .andExpect(status().isAccepted());
+        verify(webhookQueue).replay(1L);
+        System.out.println("✅ Test passed: Webhook replay - Admin request requeued the event");
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.backend.event;
+
+import com.example.backend.model.OutboxEvent;
+import com.example.backend.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DomainEventDispatcher: outbox rows are decoded, handed to the listeners
+ * inside one transaction and retried with backoff when a listener fails.
+ */
+class DomainEventDispatcherTest {
+
+    private OutboxEventRepository outboxEventRepository;
+    private ApplicationEventPublisher applicationEventPublisher;
+    private SimpleMeterRegistry meterRegistry;
+    private ObjectMapper objectMapper;
+    private DomainEventDispatcher dispatcher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        outboxEventRepository = mock(OutboxEventRepository.class);
+        applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        meterRegistry = new SimpleMeterRegistry();
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+
+        dispatcher = new DomainEventDispatcher(outboxEventRepository, applicationEventPublisher,
+                transactionTemplate, objectMapper, meterRegistry);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "retryBaseDelayMs", 1000L);
+        dispatcher.init();
+    }
+
+    private OutboxEvent outboxEvent(long id, DomainEvent event) throws Exception {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setEventId(id);
+        outboxEvent.setEventType(event.getClass().getSimpleName());
+        outboxEvent.setAggregateId(event.aggregateId());
+        outboxEvent.setPayload(objectMapper.writeValueAsString(event));
+        outboxEvent.setStatus(OutboxEvent.OutboxEventStatus.PROCESSING);
+        outboxEvent.setClaimToken("token");
+        outboxEvent.setCreatedAt(LocalDateTime.now().minusSeconds(1));
+        return outboxEvent;
+    }
+
+    @Test
+    void testProcess_PublishesDecodedEventAndMarksProcessed() throws Exception {
+        // Given
+        OutboxEvent outboxEvent = outboxEvent(1, new DomainEvent.PaymentPaid(10L, 20L));
+
+        // When
+        dispatcher.process(outboxEvent);
+
+        // Then
+        verify(applicationEventPublisher).publishEvent(new DomainEvent.PaymentPaid(10L, 20L));
+        verify(outboxEventRepository).markProcessed(eq(1L), any(LocalDateTime.class));
+        verify(outboxEventRepository, never()).save(any());
+        assertEquals(1.0, meterRegistry.counter("domain.events.processed").count());
+        System.out.println("✅ Test passed: Domain event dispatcher - PaymentPaid delivered and marked processed");
+    }
+
+    @Test
+    void testProcess_ListenerFailureIsRetriedWithBackoff() throws Exception {
+        // Given
+        OutboxEvent outboxEvent = outboxEvent(2, new DomainEvent.AppointmentBooked(5L));
+        doThrow(new IllegalStateException("SMTP down")).when(applicationEventPublisher).publishEvent(any(Object.class));
+
+        // When
+        dispatcher.process(outboxEvent);
+
+        // Then
+        assertEquals(OutboxEvent.OutboxEventStatus.PENDING, outboxEvent.getStatus());
+        assertEquals(1, outboxEvent.getAttempts());
+        assertNull(outboxEvent.getClaimToken());
+        assertTrue(outboxEvent.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertEquals("SMTP down", outboxEvent.getLastError());
+        verify(outboxEventRepository).save(outboxEvent);
+        assertEquals(1.0, meterRegistry.counter("domain.events.retried").count());
+        System.out.println("✅ Test passed: Domain event dispatcher - Failed listener scheduled for retry");
+    }
+
+    @Test
+    void testProcess_GivesUpAfterMaxAttempts() throws Exception {
+        // Given
+        OutboxEvent outboxEvent = outboxEvent(3, new DomainEvent.AppointmentCancelled(5L));
+        outboxEvent.setAttempts(2);
+        doThrow(new IllegalStateException("boom")).when(applicationEventPublisher).publishEvent(any(Object.class));
+
+        // When
+        dispatcher.process(outboxEvent);
+
+        // Then
+        assertEquals(OutboxEvent.OutboxEventStatus.FAILED, outboxEvent.getStatus());
+        assertEquals(3, outboxEvent.getAttempts());
+        assertEquals(1.0, meterRegistry.counter("domain.events.failed").count());
+        System.out.println("✅ Test passed: Domain event dispatcher - Event marked FAILED after max attempts");
+    }
+}
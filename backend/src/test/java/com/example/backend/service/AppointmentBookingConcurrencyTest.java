@@ -0,0 +1,239 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.AppointmentDTO;
+import com.example.backend.event.DomainEventPublisher;
+import com.example.backend.exception.ConflictException;
+import com.example.backend.mapper.AppointmentMapper;
+import com.example.backend.model.Appointment;
+import com.example.backend.model.Department;
+import com.example.backend.model.Doctor;
+import com.example.backend.model.Patient;
+import com.example.backend.model.Role;
+import com.example.backend.model.User;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.DepartmentRepository;
+import com.example.backend.repository.DoctorRepository;
+import com.example.backend.repository.DoctorScheduleRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.RoleRepository;
+import com.example.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the conditional UPDATE behind AppointmentService.bookAppointment and the DB re-check
+ * of earliest slots, run against the H2 test database with committed transactions.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AppointmentBookingConcurrencyTest {
+
+    private static final int THREADS = 16;
+    // Doctor/Patient ID do BlockIdAllocator cấp ở production; ở đây tự gán, không trùng giữa các test
+    private static final AtomicLong IDS = new AtomicLong(10_000);
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private DoctorRepository doctorRepository;
+    @Autowired
+    private DoctorScheduleRepository doctorScheduleRepository;
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private DoctorAvailabilityIndex availabilityIndex;
+    private AppointmentService appointmentService;
+    private Role role;
+    private Doctor doctor;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        availabilityIndex = mock(DoctorAvailabilityIndex.class);
+        appointmentService = new AppointmentService(
+                appointmentRepository,
+                patientRepository,
+                doctorRepository,
+                doctorScheduleRepository,
+                new AppointmentMapper(),
+                mock(DomainEventPublisher.class),
+                transactionTemplate,
+                availabilityIndex);
+
+        role = transactionTemplate.execute(status -> {
+            Role r = new Role();
+            r.setName("ROLE_" + UUID.randomUUID());
+            return roleRepository.save(r);
+        });
+        doctor = transactionTemplate.execute(status -> {
+            Department department = new Department();
+            department.setDepartmentName("Nội tổng quát");
+            Doctor d = new Doctor();
+            d.setDoctorId(IDS.incrementAndGet());
+            d.setUser(user("doctor"));
+            d.setDepartment(departmentRepository.save(department));
+            d.setStatus("ACTIVE");
+            return doctorRepository.save(d);
+        });
+    }
+
+    private User user(String prefix) {
+        User u = new User();
+        u.setEmail(prefix + "-" + UUID.randomUUID() + "@test.com");
+        u.setPasswordHash("hash-value");
+        u.setFirstName("Test");
+        u.setLastName(prefix);
+        u.setRole(role);
+        return userRepository.save(u);
+    }
+
+    private Long newPatient() {
+        return transactionTemplate.execute(status -> {
+            Patient p = new Patient();
+            p.setPatientId(IDS.incrementAndGet());
+            p.setUser(user("patient"));
+            return patientRepository.save(p).getPatientId();
+        });
+    }
+
+    private Long newOpenSlot() {
+        return transactionTemplate.execute(status -> {
+            Appointment a = new Appointment();
+            a.setDoctor(doctor);
+            a.setStartTime(LocalDateTime.of(2030, 1, 7, 9, 0));
+            a.setEndTime(LocalDateTime.of(2030, 1, 7, 9, 30));
+            a.setStatus("Available");
+            return appointmentRepository.save(a).getAppointmentId();
+        });
+    }
+
+    @Test
+    void testClaimAvailableSlot_SecondClaimMatchesNoRow() {
+        // Given
+        Long slotId = newOpenSlot();
+        Long first = newPatient();
+        Long second = newPatient();
+
+        // When
+        int firstClaim = transactionTemplate.execute(status -> appointmentRepository.claimAvailableSlot(
+                slotId, patientRepository.findById(first).orElseThrow(), "Khám tổng quát"));
+        int secondClaim = transactionTemplate.execute(status -> appointmentRepository.claimAvailableSlot(
+                slotId, patientRepository.findById(second).orElseThrow(), null));
+
+        // Then: UPDATE thứ hai không còn khớp điều kiện patient IS NULL AND status = 'Available'
+        assertEquals(1, firstClaim);
+        assertEquals(0, secondClaim);
+        Appointment saved = transactionTemplate.execute(status -> {
+            Appointment a = appointmentRepository.findById(slotId).orElseThrow();
+            a.getPatient().getPatientId();
+            return a;
+        });
+        assertEquals(first, saved.getPatient().getPatientId());
+        assertEquals("Scheduled", saved.getStatus());
+        assertEquals("Khám tổng quát", saved.getNotes());
+        assertEquals(1L, saved.getVersion());
+        System.out.println("✅ Test passed: Booking - Conditional UPDATE claims an open slot only once");
+    }
+
+    @Test
+    void testBookAppointment_ConcurrentPatients_ExactlyOneWinner() throws Exception {
+        // Given
+        Long slotId = newOpenSlot();
+        List<Long> patients = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            patients.add(newPatient());
+        }
+
+        // When: mọi patient cùng đặt một slot, mỗi lời gọi trong transaction riêng
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(THREADS)) {
+            for (Long patientId : patients) {
+                results.add(pool.submit(() -> {
+                    startGate.await();
+                    try {
+                        appointmentService.bookAppointment(slotId, patientId, null);
+                        return patientId;
+                    } catch (IllegalStateException | ConflictException ex) {
+                        return null;
+                    }
+                }));
+            }
+            startGate.countDown();
+
+            // Then
+            List<Long> winners = new ArrayList<>();
+            for (Future<Long> result : results) {
+                Long winner = result.get(30, TimeUnit.SECONDS);
+                if (winner != null) {
+                    winners.add(winner);
+                }
+            }
+            assertEquals(1, winners.size(), "Winners: " + winners);
+            Long owner = transactionTemplate.execute(status ->
+                    appointmentRepository.findById(slotId).orElseThrow().getPatient().getPatientId());
+            assertEquals(winners.get(0), owner);
+        }
+        System.out.println("✅ Test passed: Booking - " + THREADS + " concurrent bookings, exactly one winner");
+    }
+
+    @Test
+    void testFindEarliestSlots_StaleIndexEntryRecheckedAgainstDb() {
+        // Given: slot đã được đặt ở node khác nhưng index của node này vẫn coi là trống
+        Long booked = newOpenSlot();
+        Long open = newOpenSlot();
+        Long patientId = newPatient();
+        transactionTemplate.execute(status -> appointmentRepository.claimAvailableSlot(
+                booked, patientRepository.findById(patientId).orElseThrow(), null));
+        when(availabilityIndex.findEarliest(any(), any(), any(), any(), anyInt()))
+                .thenReturn(Optional.of(List.of(booked, open)));
+        Long departmentId = doctor.getDepartment().getId();
+        LocalDate day = LocalDate.of(2030, 1, 7);
+
+        // When
+        List<AppointmentDTO.Response> slots = transactionTemplate.execute(status ->
+                appointmentService.findEarliestSlots(departmentId, null, day, day, 10));
+
+        // Then: slot đã đặt bị gỡ khỏi index, kết quả lấy từ DB
+        assertEquals(List.of(open), slots.stream().map(AppointmentDTO.Response::getAppointmentId).toList());
+        verify(availabilityIndex).remove(booked);
+        verify(availabilityIndex, never()).remove(open);
+        System.out.println("✅ Test passed: Earliest slots - Stale index entry re-checked against the DB");
+    }
+}
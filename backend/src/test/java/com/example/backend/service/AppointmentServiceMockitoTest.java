@@ -1,6 +1,8 @@
 package com.example.backend.service;
 
 import com.example.backend.dto.AppointmentDTO;
+import com.example.backend.event.DomainEvent;
+import com.example.backend.event.DomainEventPublisher;
 import com.example.backend.exception.NotFoundException;
 import com.example.backend.mapper.AppointmentMapper;
 import com.example.backend.model.*;
@@ -11,12 +13,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,7 +42,11 @@ class AppointmentServiceMockitoTest {
     @Mock
     private AppointmentMapper appointmentMapper;
     @Mock
-    private EmailService emailService;
+    private DomainEventPublisher eventPublisher;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private DoctorAvailabilityIndex availabilityIndex;
 
     @InjectMocks
     private AppointmentService appointmentService;
@@ -53,6 +61,9 @@ class AppointmentServiceMockitoTest {
     @BeforeEach
     void setUp() {
         setupTestData();
+        // Chạy callback trực tiếp như một transaction thành công
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
     }
 
     private void setupTestData() {
@@ -145,7 +156,6 @@ class AppointmentServiceMockitoTest {
         when(patientRepository.findById(1L)).thenReturn(Optional.of(testPatient));
         when(doctorRepository.findById(1L)).thenReturn(Optional.of(testDoctor));
         when(doctorScheduleRepository.findById(1L)).thenReturn(Optional.of(testSchedule));
-        when(appointmentRepository.findByDoctor_DoctorId(1L)).thenReturn(Collections.emptyList());
         when(appointmentMapper.createDTOToEntity(any(), any(), any(), any())).thenReturn(testAppointment);
         when(appointmentRepository.save(any(Appointment.class))).thenReturn(testAppointment);
         when(appointmentMapper.entityToResponseDTO(any(Appointment.class))).thenReturn(testResponseDTO);
@@ -164,7 +174,8 @@ class AppointmentServiceMockitoTest {
         verify(patientRepository).findById(1L);
         verify(doctorRepository).findById(1L);
         verify(doctorScheduleRepository).findById(1L);
-        verify(appointmentRepository).findByDoctor_DoctorId(1L);
+        verify(appointmentRepository, never()).findByDoctor_DoctorId(anyLong());
+        verify(appointmentRepository).existsOverlap(1L, testCreateDTO.getStartTime(), testCreateDTO.getEndTime());
         verify(appointmentMapper).createDTOToEntity(any(), any(), any(), any());
         verify(appointmentRepository).save(any(Appointment.class));
         verify(appointmentMapper).entityToResponseDTO(any(Appointment.class));
@@ -238,15 +249,11 @@ class AppointmentServiceMockitoTest {
     @Test
     void testCreateAppointment_TimeOverlap() {
         // Given
-        Appointment existingAppointment = new Appointment();
-        existingAppointment.setAppointmentId(2L);
-        existingAppointment.setStartTime(LocalDateTime.of(2024, 12, 25, 9, 15));
-        existingAppointment.setEndTime(LocalDateTime.of(2024, 12, 25, 9, 45));
-
         when(patientRepository.findById(1L)).thenReturn(Optional.of(testPatient));
         when(doctorRepository.findById(1L)).thenReturn(Optional.of(testDoctor));
         when(doctorScheduleRepository.findById(1L)).thenReturn(Optional.of(testSchedule));
-        when(appointmentRepository.findByDoctor_DoctorId(1L)).thenReturn(List.of(existingAppointment));
+        when(appointmentRepository.existsOverlap(1L, testCreateDTO.getStartTime(), testCreateDTO.getEndTime()))
+                .thenReturn(true);
 
         // When & Then
         IllegalStateException exception = assertThrows(IllegalStateException.class,
@@ -254,6 +261,7 @@ class AppointmentServiceMockitoTest {
             "Should throw IllegalStateException when time overlaps");
 
         assertTrue(exception.getMessage().contains("Khung giờ bị trùng với appointment đã tồn tại"));
+        verify(appointmentRepository, never()).save(any(Appointment.class));
         System.out.println("✅ Test passed: Create appointment - Time overlap exception thrown correctly");
     }
 
@@ -355,7 +363,7 @@ class AppointmentServiceMockitoTest {
         availableAppointment.setPatient(null);
         availableAppointment.setStatus("Available");
 
-        when(appointmentRepository.findByDoctor_DoctorId(1L)).thenReturn(List.of(availableAppointment));
+        when(appointmentRepository.findOpenSlotsByDoctor(1L)).thenReturn(List.of(availableAppointment));
         when(appointmentMapper.entityToResponseDTO(any(Appointment.class))).thenReturn(testResponseDTO);
 
         // When
@@ -367,7 +375,8 @@ class AppointmentServiceMockitoTest {
         System.out.println("✅ Test passed: Get available slots by doctor - Found " + result.size() + " available slots");
 
         // Verify interactions
-        verify(appointmentRepository).findByDoctor_DoctorId(1L);
+        verify(appointmentRepository).findOpenSlotsByDoctor(1L);
+        verify(appointmentRepository, never()).findByDoctor_DoctorId(anyLong());
         verify(appointmentMapper).entityToResponseDTO(any(Appointment.class));
     }
 
@@ -378,9 +387,9 @@ class AppointmentServiceMockitoTest {
         availableAppointment.setPatient(null);
         availableAppointment.setStatus("Available");
 
-        when(appointmentRepository.findById(1L)).thenReturn(Optional.of(availableAppointment));
+        when(appointmentRepository.findById(1L)).thenReturn(Optional.of(availableAppointment), Optional.of(testAppointment));
         when(patientRepository.findById(1L)).thenReturn(Optional.of(testPatient));
-        when(appointmentRepository.save(any(Appointment.class))).thenReturn(testAppointment);
+        when(appointmentRepository.claimAvailableSlot(1L, testPatient, "Booking notes")).thenReturn(1);
         when(appointmentMapper.entityToResponseDTO(any(Appointment.class))).thenReturn(testResponseDTO);
 
         // When
@@ -392,13 +401,60 @@ class AppointmentServiceMockitoTest {
         System.out.println("✅ Test passed: Book appointment - Successfully booked appointment ID: " + result.getAppointmentId());
 
         // Verify interactions
-        verify(appointmentRepository).findById(1L);
+        verify(appointmentRepository, times(2)).findById(1L);
         verify(patientRepository).findById(1L);
-        verify(appointmentRepository).save(any(Appointment.class));
-        verify(emailService).sendSimpleEmail(anyString(), anyString(), anyString());
+        verify(appointmentRepository).claimAvailableSlot(1L, testPatient, "Booking notes");
+        verify(appointmentRepository, never()).save(any(Appointment.class));
+        verify(eventPublisher).publish(new DomainEvent.AppointmentBooked(1L));
         verify(appointmentMapper).entityToResponseDTO(any(Appointment.class));
     }
 
+    @Test
+    void testBookAppointment_LostRace() {
+        // Given - slot còn trống lúc đọc nhưng đã bị người khác đặt lúc ghi
+        Appointment availableAppointment = new Appointment();
+        availableAppointment.setPatient(null);
+        availableAppointment.setStatus("Available");
+
+        when(appointmentRepository.findById(1L)).thenReturn(Optional.of(availableAppointment));
+        when(patientRepository.findById(1L)).thenReturn(Optional.of(testPatient));
+        when(appointmentRepository.claimAvailableSlot(1L, testPatient, null)).thenReturn(0);
+
+        // When & Then
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+            () -> appointmentService.bookAppointment(1L, 1L, "  "),
+            "Should throw IllegalStateException when another patient wins the slot");
+
+        assertTrue(exception.getMessage().contains("Khung giờ này đã được đặt"));
+        verify(eventPublisher, never()).publish(any());
+        System.out.println("✅ Test passed: Book appointment - Lost race rejected correctly");
+    }
+
+    @Test
+    void testBookAppointment_RetriesOnLockFailure() {
+        // Given
+        Appointment availableAppointment = new Appointment();
+        availableAppointment.setPatient(null);
+        availableAppointment.setStatus("Available");
+
+        when(appointmentRepository.findById(1L)).thenReturn(Optional.of(availableAppointment),
+                Optional.of(availableAppointment), Optional.of(testAppointment));
+        when(patientRepository.findById(1L)).thenReturn(Optional.of(testPatient));
+        when(appointmentRepository.claimAvailableSlot(1L, testPatient, null))
+                .thenThrow(new CannotAcquireLockException("deadlock"))
+                .thenReturn(1);
+        when(appointmentMapper.entityToResponseDTO(any(Appointment.class))).thenReturn(testResponseDTO);
+
+        // When
+        AppointmentDTO.Response result = appointmentService.bookAppointment(1L, 1L, null);
+
+        // Then
+        assertEquals(1L, result.getAppointmentId());
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(appointmentRepository, times(2)).claimAvailableSlot(1L, testPatient, null);
+        System.out.println("✅ Test passed: Book appointment - Retried after lock failure");
+    }
+
     @Test
     void testBookAppointment_AppointmentNotFound() {
         // Given
@@ -450,7 +506,7 @@ class AppointmentServiceMockitoTest {
         verify(appointmentRepository).findById(1L);
         verify(appointmentMapper).applyUpdateToEntity(any(Appointment.class), any(AppointmentDTO.Update.class));
         verify(appointmentRepository).save(any(Appointment.class));
-        verify(emailService).sendSimpleEmail(anyString(), anyString(), anyString());
+        verify(eventPublisher).publish(new DomainEvent.AppointmentUpdated(1L));
         verify(appointmentMapper).entityToResponseDTO(any(Appointment.class));
     }
 
@@ -502,7 +558,7 @@ class AppointmentServiceMockitoTest {
         verify(appointmentRepository).findById(1L);
         verify(appointmentRepository).save(any(Appointment.class));
         verify(doctorScheduleRepository).save(any(DoctorSchedule.class));
-        verify(emailService).sendSimpleEmail(anyString(), anyString(), anyString());
+        verify(eventPublisher).publish(new DomainEvent.AppointmentCancelled(1L));
         verify(appointmentMapper).entityToResponseDTO(any(Appointment.class));
     }
 }
@@ -0,0 +1,121 @@
+package com.example.backend.service;
+
+import com.example.backend.model.Patient;
+import com.example.backend.model.User;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.DoctorRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for BatchLoader batching, chunking and request-scoped memoization.
+ */
+class BatchLoaderTest {
+
+    private UserRepository userRepository;
+    private PatientRepository patientRepository;
+    private BatchLoader batchLoader;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        patientRepository = mock(PatientRepository.class);
+        batchLoader = new BatchLoader(userRepository, patientRepository,
+                mock(DoctorRepository.class), mock(AppointmentRepository.class));
+
+        // Repository trả về các user có ID chẵn trong danh sách được hỏi
+        when(userRepository.findByIdInWithRoleInfo(anyCollection())).thenAnswer(inv -> {
+            Collection<Long> ids = inv.getArgument(0);
+            return ids.stream().filter(id -> id % 2 == 0).map(BatchLoaderTest::user).toList();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setFirstName("User " + id);
+        return user;
+    }
+
+    @Test
+    void testLoadAll_OneQueryPerChunkRegardlessOfSize() {
+        // When: 2500 khóa, có trùng lặp và null
+        List<Long> ids = new ArrayList<>(LongStream.rangeClosed(1, 2500).boxed().toList());
+        ids.add(2L);
+        ids.add(null);
+        Map<Long, User> users = batchLoader.loadAll(BatchLoader.USER, ids);
+
+        // Then: 3 truy vấn IN (1000 + 1000 + 500), khóa không tồn tại bị bỏ qua
+        verify(userRepository, times(3)).findByIdInWithRoleInfo(anyCollection());
+        assertEquals(1250, users.size());
+        assertEquals("User 2500", users.get(2500L).getFirstName());
+        assertFalse(users.containsKey(1L));
+        System.out.println("✅ Test passed: Batch loader - 2500 keys resolved with 3 IN queries");
+    }
+
+    @Test
+    void testLoadAll_MemoizedForRequestIncludingMissingKeys() {
+        // Given
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        // When: mapper thứ nhất và thứ hai cùng request hỏi các khóa chồng lấn
+        batchLoader.loadAll(BatchLoader.USER, List.of(1L, 2L, 4L));
+        Map<Long, User> second = batchLoader.loadAll(BatchLoader.USER, List.of(2L, 1L, 6L));
+
+        // Then: lần hai chỉ hỏi khóa mới (6), khóa 1 không tồn tại cũng được nhớ
+        verify(userRepository).findByIdInWithRoleInfo(List.of(1L, 2L, 4L));
+        verify(userRepository).findByIdInWithRoleInfo(List.of(6L));
+        verifyNoMoreInteractions(userRepository);
+        assertEquals(2, second.size());
+        assertSame(second.get(2L), batchLoader.load(BatchLoader.USER, 2L));
+        System.out.println("✅ Test passed: Batch loader - Results memoized for the request");
+    }
+
+    @Test
+    void testLoadAll_OutsideRequestNotMemoized() {
+        batchLoader.loadAll(BatchLoader.USER, List.of(2L));
+        batchLoader.loadAll(BatchLoader.USER, List.of(2L));
+
+        verify(userRepository, times(2)).findByIdInWithRoleInfo(anyCollection());
+        System.out.println("✅ Test passed: Batch loader - No shared memo outside a request");
+    }
+
+    @Test
+    void testLoadAll_PatientsKeyedByUserId() {
+        // Given
+        Patient patient = new Patient();
+        patient.setPatientId(900L);
+        patient.setUser(user(12L));
+        when(patientRepository.findByUserIdIn(anyCollection())).thenReturn(List.of(patient));
+
+        // When
+        Map<Long, Patient> patients = batchLoader.loadAll(BatchLoader.PATIENT_BY_USER,
+                BatchLoader.ids(List.of(user(12L), user(13L)), User::getId));
+
+        // Then
+        assertEquals(Map.of(12L, patient), patients);
+        verify(patientRepository).findByUserIdIn(List.of(12L, 13L));
+        System.out.println("✅ Test passed: Batch loader - Patients resolved by user ID");
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.backend.service;
+
+import com.example.backend.model.IdSequence;
+import com.example.backend.repository.IdSequenceRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrency tests for BlockIdAllocator, run against the H2 test database.
+ *
+ * Two allocators stand in for two nodes sharing the IdSequences table; every ID handed out
+ * across all threads must be unique.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BlockIdAllocatorConcurrencyTest {
+
+    private static final int THREADS = 32;
+    private static final int IDS_PER_THREAD = 2_000;
+
+    @Autowired
+    private IdSequenceRepository idSequenceRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        // Mỗi test bắt đầu với dãy chưa khởi tạo (DB H2 dùng chung giữa các test class)
+        transactionTemplate.executeWithoutResult(status -> idSequenceRepository.deleteAllInBatch());
+    }
+
+    private BlockIdAllocator newNode(int blockSize) {
+        BlockIdAllocator allocator = new BlockIdAllocator(idSequenceRepository, transactionManager);
+        ReflectionTestUtils.setField(allocator, "entityManager", entityManager);
+        ReflectionTestUtils.setField(allocator, "blockSize", blockSize);
+        return allocator;
+    }
+
+    private long existingMaxId(String query) {
+        Long maxId = transactionTemplate.execute(status -> entityManager.createQuery(query, Long.class).getSingleResult());
+        return maxId != null ? maxId : 0L;
+    }
+
+    private long nextValue(BlockIdAllocator.Sequence sequence) {
+        return idSequenceRepository.findById(sequence.name()).map(IdSequence::getNextValue).orElseThrow();
+    }
+
+    @Test
+    void testNext_StartsAfterExistingIdsAndReservesPerBlock() {
+        // Given
+        long existingDoctorMax = existingMaxId("SELECT MAX(d.doctorId) FROM Doctor d");
+        long existingPatientMax = existingMaxId("SELECT MAX(p.patientId) FROM Patient p");
+        BlockIdAllocator allocator = newNode(10);
+
+        // When
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            ids.add(allocator.next(BlockIdAllocator.Sequence.DOCTOR));
+        }
+
+        // Then: ID liên tục sau MAX(id) hiện có, 25 ID chỉ cần giữ 3 khối
+        assertEquals(existingDoctorMax + 1, ids.get(0));
+        assertEquals(existingDoctorMax + 25, ids.get(24));
+        assertEquals(existingDoctorMax + 1 + 30, nextValue(BlockIdAllocator.Sequence.DOCTOR));
+        assertEquals(existingPatientMax + 1, allocator.next(BlockIdAllocator.Sequence.PATIENT), "Mỗi dãy có khối riêng");
+        System.out.println("✅ Test passed: ID allocator - Seeded from MAX(id), one reservation per block");
+    }
+
+    @Test
+    void testNext_TwoNodesManyThreads_NoDuplicates() throws Exception {
+        long existingMax = existingMaxId("SELECT MAX(p.patientId) FROM Patient p");
+        BlockIdAllocator[] nodes = {newNode(50), newNode(50)};
+        Set<Long> issued = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                BlockIdAllocator node = nodes[t % nodes.length];
+                results.add(pool.submit(() -> {
+                    startGate.await();
+                    int duplicates = 0;
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        if (!issued.add(node.next(BlockIdAllocator.Sequence.PATIENT))) {
+                            duplicates++;
+                        }
+                    }
+                    return duplicates;
+                }));
+            }
+            long startedAt = System.nanoTime();
+            startGate.countDown();
+
+            int duplicates = 0;
+            for (Future<Integer> result : results) {
+                duplicates += result.get(60, TimeUnit.SECONDS);
+            }
+            double elapsedSeconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+
+            // Then: hai node cùng khởi tạo dãy và cùng giữ khối trên một dòng IdSequences
+            int total = THREADS * IDS_PER_THREAD;
+            long reservations = (nextValue(BlockIdAllocator.Sequence.PATIENT) - existingMax - 1) / 50;
+            assertEquals(0, duplicates, "Không được cấp trùng ID");
+            assertEquals(total, issued.size());
+            assertTrue(issued.stream().allMatch(id -> id > existingMax));
+            assertTrue(reservations <= total / 50 + nodes.length,
+                    "Mỗi khối chỉ được giữ một lần, số lần chạm DB ~ số ID / block-size");
+            System.out.printf("✅ Test passed: %d IDs from %d threads on 2 nodes, %d reservations, %.0f IDs/s%n",
+                    total, THREADS, reservations, total / elapsedSeconds);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
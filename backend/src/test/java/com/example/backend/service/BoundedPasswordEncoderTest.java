@@ -0,0 +1,105 @@
+package com.example.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BoundedPasswordEncoder.
+ */
+class BoundedPasswordEncoderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BoundedPasswordEncoder encoder;
+
+    private BoundedPasswordEncoder newEncoder(int strength, int poolSize, int queueCapacity, long timeoutMs) {
+        BoundedPasswordEncoder created = new BoundedPasswordEncoder(meterRegistry);
+        ReflectionTestUtils.setField(created, "strength", strength);
+        ReflectionTestUtils.setField(created, "poolSize", poolSize);
+        ReflectionTestUtils.setField(created, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(created, "timeoutMs", timeoutMs);
+        created.init();
+        return created;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (encoder != null) {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void testEncodeAndMatches_RecordsLatency() {
+        // Given
+        encoder = newEncoder(4, 2, 8, 5000);
+
+        // When
+        String hash = encoder.encode("secret123");
+
+        // Then
+        assertTrue(encoder.matches("secret123", hash));
+        assertFalse(encoder.matches("wrong", hash));
+        assertEquals(1, meterRegistry.timer("password.hash.latency", "operation", "encode").count());
+        assertEquals(2, meterRegistry.timer("password.hash.latency", "operation", "matches").count());
+        System.out.println("✅ Test passed: Password hashing - Encode/matches run on the pool with metrics");
+    }
+
+    @Test
+    void testUpgradeEncoding_WhenCostFactorChanges() {
+        // Given
+        encoder = newEncoder(5, 1, 8, 5000);
+        String oldCost = new BCryptPasswordEncoder(4).encode("secret123");
+        String sameCost = new BCryptPasswordEncoder(5).encode("secret123");
+
+        // Then
+        assertTrue(encoder.upgradeEncoding(oldCost));
+        assertFalse(encoder.upgradeEncoding(sameCost));
+        assertFalse(encoder.upgradeEncoding("oauth_google_user"));
+        assertFalse(encoder.upgradeEncoding(null));
+        System.out.println("✅ Test passed: Password hashing - Rehash requested only when cost differs");
+    }
+
+    @Test
+    void testBurst_RejectedWhenQueueFull() throws Exception {
+        // Given: 1 thread, hàng đợi 1, cost cao để mỗi phép băm đủ lâu
+        encoder = newEncoder(12, 1, 1, 30_000);
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        List<Future<?>> results = new ArrayList<>();
+
+        // When
+        try {
+            for (int i = 0; i < 6; i++) {
+                results.add(callers.submit(() -> encoder.encode("secret123")));
+            }
+            int rejected = 0;
+            for (Future<?> result : results) {
+                try {
+                    result.get(60, TimeUnit.SECONDS);
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    assertInstanceOf(RejectedExecutionException.class, ex.getCause());
+                    rejected++;
+                }
+            }
+
+            // Then
+            assertTrue(rejected >= 1, "Đợt 6 request vào pool 1 thread + hàng đợi 1 phải có request bị từ chối");
+            assertEquals(rejected, (int) meterRegistry.counter("password.hash.rejected").count());
+            System.out.printf("✅ Test passed: Password hashing - %d of 6 burst requests rejected%n", rejected);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.ExportDTO;
+import com.example.backend.model.Payment;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.MedicalRecordRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.PaymentRepository;
+import com.example.backend.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests and benchmark for BulkExportService.
+ */
+class BulkExportServiceTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2025, 3, 1, 8, 30);
+
+    private PaymentRepository paymentRepository;
+    private AppointmentRepository appointmentRepository;
+    private EntityManager entityManager;
+    private BulkExportService bulkExportService;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository = mock(PaymentRepository.class);
+        appointmentRepository = mock(AppointmentRepository.class);
+        entityManager = mock(EntityManager.class);
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        bulkExportService = new BulkExportService(mock(UserRepository.class), mock(PatientRepository.class),
+                appointmentRepository, paymentRepository, mock(MedicalRecordRepository.class), objectMapper);
+        ReflectionTestUtils.setField(bulkExportService, "entityManager", entityManager);
+        ReflectionTestUtils.setField(bulkExportService, "flushEveryRows", 2);
+    }
+
+    private static ExportDTO.PaymentRow payment(long id, String description) {
+        return new ExportDTO.PaymentRow(id, 100 + id, "ORD" + id, new BigDecimal("150000.00"), "VND",
+                Payment.PaymentStatus.PAID, "PAYOS", description, CREATED, null, null);
+    }
+
+    @Test
+    void testExportCsv_EscapesFieldsAndClosesCursor() throws Exception {
+        // Given
+        AtomicBoolean closed = new AtomicBoolean();
+        when(paymentRepository.streamExportRows()).thenReturn(Stream.of(
+                payment(1, "Khám tổng quát"),
+                payment(2, "Phí \"đặc biệt\", tái khám"),
+                payment(3, "=HYPERLINK(\"x\")")).onClose(() -> closed.set(true)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long rows = bulkExportService.export(ExportDTO.Dataset.PAYMENTS, ExportDTO.Format.CSV, out);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(3, rows);
+        assertEquals("\uFEFFpaymentId,appointmentId,payOSCode,amount,currency,status,paymentMethod,description,"
+                + "createdAt,paidAt,failureReason", lines[0]);
+        assertEquals("1,101,ORD1,150000.00,VND,PAID,PAYOS,Khám tổng quát,2025-03-01T08:30,,", lines[1]);
+        assertTrue(lines[2].contains(",\"Phí \"\"đặc biệt\"\", tái khám\","), lines[2]);
+        assertTrue(lines[3].contains(",\"'=HYPERLINK(\"\"x\"\")\","), "Công thức bị vô hiệu hóa: " + lines[3]);
+        assertTrue(closed.get(), "Con trỏ phải được đóng sau khi xuất");
+        verify(entityManager, times(1)).clear();
+        System.out.println("✅ Test passed: Bulk export - CSV quoting, formula guard and cursor close");
+    }
+
+    @Test
+    void testExportNdjson_OneObjectPerLine() throws Exception {
+        // Given
+        when(appointmentRepository.streamExportRows()).thenReturn(Stream.of(
+                new ExportDTO.AppointmentRow(1L, null, 7L, CREATED, CREATED.plusMinutes(30), "Available", null, null),
+                new ExportDTO.AppointmentRow(2L, 3L, 7L, CREATED.plusHours(1), CREATED.plusHours(1).plusMinutes(30),
+                        "Scheduled", new BigDecimal("200000"), "Đau đầu\nsốt")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        bulkExportService.export(ExportDTO.Dataset.APPOINTMENTS, ExportDTO.Format.NDJSON, out);
+
+        // Then
+        String body = out.toString(StandardCharsets.UTF_8);
+        String[] lines = body.split("\n");
+        assertTrue(body.endsWith("\n"));
+        assertEquals(2, lines.length);
+        ObjectMapper reader = new ObjectMapper();
+        JsonNode first = reader.readTree(lines[0]);
+        JsonNode second = reader.readTree(lines[1]);
+        assertTrue(first.get("patientId").isNull());
+        assertEquals("2025-03-01T08:30:00", first.get("startTime").asText());
+        assertEquals(3L, second.get("patientId").asLong());
+        assertEquals("Đau đầu\nsốt", second.get("notes").asText());
+        System.out.println("✅ Test passed: Bulk export - NDJSON one object per line");
+    }
+
+    @Test
+    void testExportNdjson_EmptyDatasetWritesNothing() throws Exception {
+        when(paymentRepository.streamExportRows()).thenReturn(Stream.empty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(0, bulkExportService.export(ExportDTO.Dataset.PAYMENTS, ExportDTO.Format.NDJSON, out));
+        assertEquals(0, out.size());
+        System.out.println("✅ Test passed: Bulk export - Empty dataset");
+    }
+
+    @Test
+    void testBenchmark_StreamsLargeExportWithoutMaterializing() throws Exception {
+        // 500.000 dòng sinh dần, không có danh sách nào giữ toàn bộ dữ liệu
+        int total = 500_000;
+        ReflectionTestUtils.setField(bulkExportService, "flushEveryRows", 1000);
+        when(paymentRepository.streamExportRows()).thenReturn(
+                LongStream.rangeClosed(1, total).mapToObj(id -> payment(id, "Thanh toán lịch hẹn " + id)));
+        long[] bytes = new long[1];
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes[0] += len;
+            }
+        };
+
+        long start = System.nanoTime();
+        long rows = bulkExportService.export(ExportDTO.Dataset.PAYMENTS, ExportDTO.Format.CSV, counting);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(total, rows);
+        verify(entityManager, times(total / 1000)).clear();
+        System.out.printf("✅ Test passed: Bulk export benchmark %d rows, %.1f MB CSV, %.0f rows/s%n",
+                rows, bytes[0] / 1e6, rows / seconds);
+    }
+}
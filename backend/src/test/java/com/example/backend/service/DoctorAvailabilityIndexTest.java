@@ -0,0 +1,191 @@
+package com.example.backend.service;
+
+import com.example.backend.event.ClusterEvent;
+import com.example.backend.repository.AppointmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests and benchmark for DoctorAvailabilityIndex.
+ */
+class DoctorAvailabilityIndexTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2025, 1, 6);
+    private static final String[] SPECIALTIES = {"Tim mạch", "Nhi khoa", "Da liễu", "Thần kinh", "Răng hàm mặt"};
+
+    private AppointmentRepository appointmentRepository;
+    private SharedDbBrokerRelay brokerRelay;
+    private DoctorAvailabilityIndex index;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        appointmentRepository = mock(AppointmentRepository.class);
+        brokerRelay = mock(SharedDbBrokerRelay.class);
+        ObjectProvider<SharedDbBrokerRelay> relayProvider = mock(ObjectProvider.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<SharedDbBrokerRelay>>getArgument(0).accept(brokerRelay);
+            return null;
+        }).when(relayProvider).ifAvailable(any());
+        index = new DoctorAvailabilityIndex(appointmentRepository, relayProvider);
+        ReflectionTestUtils.setField(index, "enabled", true);
+    }
+
+    private static DoctorAvailabilityIndex.Row slot(long appointmentId, long doctorId, LocalDate date, int hour, int minute,
+                                                    long departmentId, String specialty) {
+        LocalDateTime start = date.atTime(hour, minute);
+        return new DoctorAvailabilityIndex.Row(appointmentId, doctorId, start, start.plusMinutes(30),
+                departmentId, specialty, "ACTIVE");
+    }
+
+    @Test
+    void testFindEarliest_MergesDoctorsInStartOrder() {
+        // Given: 2 bác sĩ tim mạch khoa 1, 1 bác sĩ nhi khoa khoa 2
+        index.load(MONDAY, MONDAY.plusDays(6), List.of(
+                slot(1, 10, MONDAY, 9, 0, 1, "Tim mạch"),
+                slot(2, 10, MONDAY, 14, 0, 1, "Tim mạch"),
+                slot(3, 20, MONDAY, 8, 30, 1, "Tim mạch"),
+                slot(4, 20, MONDAY.plusDays(1), 7, 0, 1, "Tim mạch"),
+                slot(5, 30, MONDAY, 7, 0, 2, "Nhi khoa")));
+
+        // When
+        List<Long> cardiology = index.findEarliest(null, " tim MẠCH ", MONDAY.atStartOfDay(), MONDAY.plusDays(6), 3).orElseThrow();
+        List<Long> department = index.findEarliest(1L, null, MONDAY.atTime(9, 0), MONDAY.plusDays(6), 10).orElseThrow();
+
+        // Then
+        assertEquals(List.of(3L, 1L, 2L), cardiology);
+        assertEquals(List.of(1L, 2L, 4L), department, "Slot trước giờ bắt đầu tìm bị bỏ qua");
+        assertEquals(List.of(5L), index.findEarliest(2L, "Nhi khoa", MONDAY.atStartOfDay(), MONDAY, 10).orElseThrow());
+        System.out.println("✅ Test passed: Availability index - Earliest slots merged across doctors");
+    }
+
+    @Test
+    void testRemoveAndReloadDay_UpdateIndexIncrementally() {
+        // Given
+        index.load(MONDAY, MONDAY.plusDays(6), List.of(
+                slot(1, 10, MONDAY, 9, 0, 1, "Tim mạch"),
+                slot(2, 10, MONDAY, 9, 2, 1, "Tim mạch"),
+                slot(3, 10, MONDAY, 10, 0, 1, "Tim mạch")));
+
+        // When: đặt slot 1 (cùng ô 5 phút với slot 2)
+        index.remove(1L);
+
+        // Then
+        assertEquals(List.of(2L, 3L), index.findEarliest(1L, null, MONDAY.atStartOfDay(), MONDAY, 10).orElseThrow());
+        verify(brokerRelay).publishInternal(DoctorAvailabilityIndex.SLOT_TOPIC, "1");
+
+        // When: nạp lại ngày sau khi hủy/đổi lịch
+        index.apply(10L, MONDAY, List.of(slot(7, 10, MONDAY, 8, 0, 1, "Tim mạch")));
+
+        // Then
+        assertEquals(List.of(7L), index.findEarliest(1L, null, MONDAY.atStartOfDay(), MONDAY, 10).orElseThrow());
+        System.out.println("✅ Test passed: Availability index - Booking and day reloads applied incrementally");
+    }
+
+    @Test
+    void testClusterEvents_ApplyChangesMadeOnAnotherNode() throws InterruptedException {
+        // Given
+        index.load(MONDAY, MONDAY.plusDays(6), List.of(
+                slot(1, 10, MONDAY, 9, 0, 1, "Tim mạch"),
+                slot(2, 20, MONDAY, 10, 0, 1, "Tim mạch")));
+        LocalDateTime eight = MONDAY.atTime(8, 0);
+        when(appointmentRepository.findOpenSlotRowsByDoctor(20L, MONDAY.atStartOfDay(), MONDAY.plusDays(1).atStartOfDay()))
+                .thenReturn(List.<Object[]>of(new Object[] {9L, 20L, eight, eight.plusMinutes(30), 1L, "Tim mạch", "ACTIVE"}));
+
+        // When: node khác đặt slot 1 và đổi lịch của bác sĩ 20 trong ngày
+        index.onClusterEvent(new ClusterEvent(DoctorAvailabilityIndex.SLOT_TOPIC, "1"));
+        index.onClusterEvent(new ClusterEvent(DoctorAvailabilityIndex.DAY_TOPIC, "20/" + MONDAY));
+
+        // Then
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!List.of(9L).equals(index.findEarliest(1L, null, MONDAY.atStartOfDay(), MONDAY, 10).orElseThrow())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(9L), index.findEarliest(1L, null, MONDAY.atStartOfDay(), MONDAY, 10).orElseThrow());
+        verify(brokerRelay, never()).publishInternal(any(), any());
+        System.out.println("✅ Test passed: Availability index - Cluster events remove and reload slots");
+    }
+
+    @Test
+    void testUpdateDoctor_InactiveOrMovedDoctorExcluded() {
+        // Given
+        index.load(MONDAY, MONDAY, List.of(
+                slot(1, 10, MONDAY, 9, 0, 1, "Tim mạch"),
+                slot(2, 20, MONDAY, 10, 0, 1, "Tim mạch")));
+
+        // When
+        index.updateDoctor(10L, 1L, "Tim mạch", "INACTIVE");
+        index.updateDoctor(20L, 3L, "Tim mạch", "ACTIVE");
+
+        // Then
+        assertEquals(List.of(), index.findEarliest(1L, null, MONDAY.atStartOfDay(), MONDAY, 10).orElseThrow());
+        assertEquals(List.of(2L), index.findEarliest(3L, "Tim mạch", MONDAY.atStartOfDay(), MONDAY, 10).orElseThrow());
+        System.out.println("✅ Test passed: Availability index - Doctor changes respected");
+    }
+
+    @Test
+    void testFindEarliest_NotReadyOrOutsideHorizonFallsBack() {
+        assertTrue(index.findEarliest(1L, null, MONDAY.atStartOfDay(), MONDAY, 10).isEmpty(), "Chưa dựng index thì dùng DB");
+        index.load(MONDAY, MONDAY.plusDays(6), List.of());
+        assertTrue(index.findEarliest(1L, null, MONDAY.atStartOfDay(), MONDAY.plusDays(30), 10).isEmpty());
+        assertTrue(index.findEarliest(1L, null, MONDAY.minusDays(1).atStartOfDay(), MONDAY, 10).isEmpty());
+        System.out.println("✅ Test passed: Availability index - Falls back outside the indexed window");
+    }
+
+    @Test
+    void testBenchmark_EarliestSlotsAcrossSpecialty() {
+        // 500 bác sĩ, 60 ngày, mỗi ngày 7h-17h slot 30 phút, khoảng 1/3 còn trống
+        int doctors = 500;
+        int days = 60;
+        Random random = new Random(42);
+        List<DoctorAvailabilityIndex.Row> rows = new ArrayList<>();
+        long appointmentId = 1;
+        for (long doctorId = 1; doctorId <= doctors; doctorId++) {
+            String specialty = SPECIALTIES[(int) (doctorId % SPECIALTIES.length)];
+            long departmentId = doctorId % 10;
+            for (int day = 0; day < days; day++) {
+                for (int halfHour = 14; halfHour < 34; halfHour++) {
+                    if (random.nextInt(3) == 0) {
+                        rows.add(slot(appointmentId, doctorId, MONDAY.plusDays(day), halfHour / 2, (halfHour % 2) * 30,
+                                departmentId, specialty));
+                    }
+                    appointmentId++;
+                }
+            }
+        }
+
+        long buildStart = System.nanoTime();
+        index.load(MONDAY, MONDAY.plusDays(days - 1L), rows);
+        double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+        int rounds = 2000;
+        long found = 0;
+        long queryStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            LocalDateTime from = MONDAY.plusDays(r % 30).atTime(7 + r % 10, 0);
+            found += index.findEarliest(null, SPECIALTIES[r % SPECIALTIES.length], from, MONDAY.plusDays(days - 1L), 10)
+                    .orElseThrow().size();
+            found += index.findEarliest((long) (r % 10), null, from, MONDAY.plusDays(days - 1L), 10)
+                    .orElseThrow().size();
+        }
+        double msPerQuery = (System.nanoTime() - queryStart) / 1e6 / (rounds * 2);
+
+        assertEquals(rounds * 2 * 10L, found);
+        System.out.printf("✅ Test passed: Availability benchmark %d open slots - build %.0f ms, %.4f ms/query (top 10)%n",
+                rows.size(), buildMs, msPerQuery);
+    }
+}
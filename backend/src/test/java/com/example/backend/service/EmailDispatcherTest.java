@@ -0,0 +1,276 @@
+package com.example.backend.service;
+
+import com.example.backend.model.EmailJob;
+import com.example.backend.repository.EmailJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for EmailDispatcher sending through JavaMailSenderImpl to an in-process SMTP stub.
+ */
+class EmailDispatcherTest {
+
+    private EmailJobRepository emailJobRepository;
+    private SmtpStub smtp;
+    private SimpleMeterRegistry meterRegistry;
+    private EmailDispatcher emailDispatcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        emailJobRepository = mock(EmailJobRepository.class);
+        smtp = new SmtpStub();
+        meterRegistry = new SimpleMeterRegistry();
+
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtp.port());
+        mailSender.getJavaMailProperties().put("mail.smtp.from", "clinic@test.com");
+        mailSender.getJavaMailProperties().put("mail.smtp.connectiontimeout", "5000");
+        mailSender.getJavaMailProperties().put("mail.smtp.timeout", "5000");
+
+        emailDispatcher = new EmailDispatcher(emailJobRepository, mailSender, meterRegistry);
+        ReflectionTestUtils.setField(emailDispatcher, "maxConcurrentSessions", 2);
+        ReflectionTestUtils.setField(emailDispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(emailDispatcher, "retryBaseDelayMs", 1000L);
+        ReflectionTestUtils.invokeMethod(emailDispatcher, "init");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtp.close();
+    }
+
+    private EmailJob job(long id, String to) {
+        EmailJob job = new EmailJob();
+        job.setEmailJobId(id);
+        job.setRecipient(to);
+        job.setSubject("Subject " + id);
+        job.setBody("Body " + id);
+        job.setStatus(EmailJob.EmailJobStatus.SENDING);
+        job.setCreatedAt(LocalDateTime.now().minusSeconds(5));
+        job.setClaimToken("token");
+        return job;
+    }
+
+    @Test
+    void testSendSession_AllMessagesInOneSmtpSession() {
+        // Given
+        List<EmailJob> jobs = List.of(job(1, "a@test.com"), job(2, "b@test.com"), job(3, "c@test.com"));
+
+        // When
+        emailDispatcher.sendSession(jobs);
+
+        // Then
+        assertEquals(1, smtp.connections.get(), "3 email phải đi chung một phiên SMTP");
+        assertEquals(List.of("a@test.com", "b@test.com", "c@test.com"), smtp.delivered);
+        jobs.forEach(job -> {
+            assertEquals(EmailJob.EmailJobStatus.SENT, job.getStatus());
+            assertNotNull(job.getSentAt());
+            assertNull(job.getClaimToken());
+        });
+        assertEquals(3.0, meterRegistry.counter("email.outbox.sent").count());
+        assertEquals(3, meterRegistry.timer("email.outbox.latency").count());
+        verify(emailJobRepository).saveAll(jobs);
+        System.out.println("✅ Test passed: Email dispatcher - Sent 3 jobs in one SMTP session");
+    }
+
+    @Test
+    void testSendSession_PartialFailureIsRetriedWithBackoff() {
+        // Given
+        List<EmailJob> jobs = List.of(job(1, "a@test.com"), job(2, "bad@test.com"));
+        smtp.rejectedRecipients.add("bad@test.com");
+
+        // When
+        emailDispatcher.sendSession(jobs);
+
+        // Then
+        assertEquals(EmailJob.EmailJobStatus.SENT, jobs.get(0).getStatus());
+        EmailJob failed = jobs.get(1);
+        assertEquals(EmailJob.EmailJobStatus.PENDING, failed.getStatus());
+        assertEquals(1, failed.getAttempts());
+        assertTrue(failed.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertNotNull(failed.getLastError());
+        assertEquals(List.of("a@test.com"), smtp.delivered);
+        assertEquals(1.0, meterRegistry.counter("email.outbox.retried").count());
+        System.out.println("✅ Test passed: Email dispatcher - Failed message scheduled for retry");
+    }
+
+    @Test
+    void testSendSession_IdenticalMessagesFailIndependently() {
+        // Given: hai job giống hệt nhau, SMTP chỉ từ chối message đầu tiên của phiên
+        EmailJob first = job(1, "same@test.com");
+        EmailJob second = job(2, "same@test.com");
+        second.setSubject(first.getSubject());
+        second.setBody(first.getBody());
+        smtp.rejectedTransaction = 0;
+
+        // When
+        emailDispatcher.sendSession(List.of(first, second));
+
+        // Then: lỗi được gán theo emailJobId, không lan sang job có cùng nội dung
+        assertEquals(EmailJob.EmailJobStatus.PENDING, first.getStatus());
+        assertEquals(1, first.getAttempts());
+        assertEquals(EmailJob.EmailJobStatus.SENT, second.getStatus());
+        assertEquals(List.of("same@test.com"), smtp.delivered);
+        System.out.println("✅ Test passed: Email dispatcher - Identical messages tracked by job id");
+    }
+
+    @Test
+    void testSendSession_GivesUpAfterMaxAttempts() {
+        // Given
+        EmailJob job = job(1, "bad@test.com");
+        job.setAttempts(2);
+        smtp.rejectedRecipients.add("bad@test.com");
+
+        // When
+        emailDispatcher.sendSession(List.of(job));
+
+        // Then
+        assertEquals(EmailJob.EmailJobStatus.FAILED, job.getStatus());
+        assertEquals(3, job.getAttempts());
+        assertEquals(1.0, meterRegistry.counter("email.outbox.failed").count());
+        verify(emailJobRepository).saveAll(any());
+        System.out.println("✅ Test passed: Email dispatcher - Job marked FAILED after max attempts");
+    }
+
+    @Test
+    void testSendSession_ServerDownRetriesWholeSession() throws IOException {
+        // Given
+        List<EmailJob> jobs = List.of(job(1, "a@test.com"), job(2, "b@test.com"));
+        smtp.close();
+
+        // When
+        emailDispatcher.sendSession(jobs);
+
+        // Then
+        jobs.forEach(job -> {
+            assertEquals(EmailJob.EmailJobStatus.PENDING, job.getStatus());
+            assertEquals(1, job.getAttempts());
+        });
+        System.out.println("✅ Test passed: Email dispatcher - Connection failure retried for every job");
+    }
+
+    /**
+     * SMTP server tối giản chạy trong process: mỗi kết nối là một phiên, ghi lại người nhận
+     * của các message đã nhận DATA và trả 550 cho người nhận hoặc giao dịch bị chọn từ chối.
+     */
+    static final class SmtpStub implements AutoCloseable {
+        final AtomicInteger connections = new AtomicInteger();
+        final List<String> delivered = new CopyOnWriteArrayList<>();
+        final Set<String> rejectedRecipients = ConcurrentHashMap.newKeySet();
+        // Thứ tự giao dịch (MAIL FROM) trong phiên bị từ chối ở RCPT TO; -1 = không từ chối
+        volatile int rejectedTransaction = -1;
+        private final ServerSocket server;
+
+        SmtpStub() throws IOException {
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread.ofVirtual().start(this::acceptLoop);
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+
+        private void acceptLoop() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    connections.incrementAndGet();
+                    Thread.ofVirtual().start(() -> session(socket));
+                } catch (IOException ex) {
+                    return;
+                }
+            }
+        }
+
+        private void session(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+                reply(out, "220 stub ESMTP");
+                int transaction = -1;
+                String recipient = null;
+                boolean rejected = false;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase();
+                    if (command.startsWith("EHLO")) {
+                        reply(out, "250-stub");
+                        reply(out, "250 8BITMIME");
+                    } else if (command.startsWith("HELO") || command.startsWith("NOOP")) {
+                        reply(out, "250 OK");
+                    } else if (command.startsWith("MAIL FROM")) {
+                        transaction++;
+                        recipient = null;
+                        rejected = false;
+                        reply(out, "250 OK");
+                    } else if (command.startsWith("RCPT TO")) {
+                        String to = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                        if (rejectedRecipients.contains(to) || transaction == rejectedTransaction) {
+                            rejected = true;
+                            reply(out, "550 mailbox unavailable");
+                        } else {
+                            recipient = to;
+                            reply(out, "250 OK");
+                        }
+                    } else if (command.startsWith("DATA")) {
+                        if (recipient == null || rejected) {
+                            reply(out, "554 no valid recipients");
+                            continue;
+                        }
+                        reply(out, "354 end with .");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // bỏ qua nội dung
+                        }
+                        delivered.add(recipient);
+                        reply(out, "250 queued");
+                    } else if (command.startsWith("RSET")) {
+                        recipient = null;
+                        rejected = false;
+                        reply(out, "250 OK");
+                    } else if (command.startsWith("QUIT")) {
+                        reply(out, "221 bye");
+                        return;
+                    } else {
+                        reply(out, "502 not implemented");
+                    }
+                }
+            } catch (IOException ex) {
+                // client đóng kết nối
+            }
+        }
+
+        private static void reply(PrintWriter out, String line) {
+            out.print(line + "\r\n");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.backend.service;
+
+import com.example.backend.exception.TooManyRequestsException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for EmailOtpService backed by InMemoryOtpStore and OtpRateLimiter.
+ */
+class EmailOtpServiceTest {
+
+    private static final Pattern OTP_PATTERN = Pattern.compile("OTP của bạn là: (\\d{6})");
+
+    private JavaMailSender mailSender;
+    private InMemoryOtpStore otpStore;
+    private BCryptPasswordEncoder passwordEncoder;
+    private EmailOtpService emailOtpService;
+
+    @BeforeEach
+    void setUp() {
+        mailSender = mock(JavaMailSender.class);
+        otpStore = new InMemoryOtpStore();
+        ReflectionTestUtils.setField(otpStore, "maxEntries", 3);
+        OtpRateLimiter rateLimiter = new OtpRateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "windowMs", 600_000L);
+        ReflectionTestUtils.setField(rateLimiter, "maxKeys", 100);
+        passwordEncoder = new BCryptPasswordEncoder(4);
+
+        emailOtpService = new EmailOtpService(mailSender, otpStore, rateLimiter,
+                new ObjectMapper().registerModule(new JavaTimeModule()), passwordEncoder);
+        ReflectionTestUtils.setField(emailOtpService, "fromEmail", "clinic@test.com");
+        ReflectionTestUtils.setField(emailOtpService, "otpTtlMs", 300_000L);
+        ReflectionTestUtils.setField(emailOtpService, "registrationTtlMs", 1_800_000L);
+        ReflectionTestUtils.setField(emailOtpService, "sendsPerEmail", 3);
+        ReflectionTestUtils.setField(emailOtpService, "sendsPerIp", 5);
+        ReflectionTestUtils.setField(emailOtpService, "maxVerifyAttempts", 3);
+    }
+
+    private String lastSentOtp() {
+        ArgumentCaptor<SimpleMailMessage> captor = ArgumentCaptor.forClass(SimpleMailMessage.class);
+        verify(mailSender, atLeastOnce()).send(captor.capture());
+        Matcher matcher = OTP_PATTERN.matcher(captor.getValue().getText());
+        assertTrue(matcher.find());
+        return matcher.group(1);
+    }
+
+    @Test
+    void testResendOtp_OnlyLatestCodeIsValid() {
+        // Given
+        emailOtpService.sendOtp("User@Test.com", "10.0.0.1");
+        String first = lastSentOtp();
+        emailOtpService.sendOtp("user@test.com", "10.0.0.1");
+        String second = lastSentOtp();
+
+        // Then
+        if (!first.equals(second)) {
+            assertFalse(emailOtpService.verifyOtp("user@test.com", first));
+        }
+        assertTrue(emailOtpService.verifyOtp("USER@test.com", second));
+        System.out.println("✅ Test passed: OTP - Resent code replaces the previous one");
+    }
+
+    @Test
+    void testSendOtp_RateLimitedPerEmailAndPerIp() {
+        // Given: 3 lần gửi cho một email
+        for (int i = 0; i < 3; i++) {
+            assertTrue(emailOtpService.sendOtp("a@test.com", "10.0.0.2"));
+        }
+
+        // Then
+        assertThrows(TooManyRequestsException.class, () -> emailOtpService.sendOtp("a@test.com", "10.0.0.3"));
+        assertTrue(emailOtpService.sendOtp("b@test.com", "10.0.0.2"));
+        assertTrue(emailOtpService.sendOtp("c@test.com", "10.0.0.2"));
+        assertThrows(TooManyRequestsException.class, () -> emailOtpService.sendOtp("d@test.com", "10.0.0.2"));
+        System.out.println("✅ Test passed: OTP - Sends limited per email and per IP");
+    }
+
+    @Test
+    void testSendOtp_RejectedIpDoesNotUseEmailQuota() {
+        // Given: IP 10.0.0.9 đã dùng hết 5 lượt
+        for (int i = 0; i < 5; i++) {
+            emailOtpService.sendOtp("spam" + i + "@test.com", "10.0.0.9");
+        }
+
+        // When: IP đó tiếp tục yêu cầu OTP cho email của người khác
+        for (int i = 0; i < 3; i++) {
+            assertThrows(TooManyRequestsException.class, () -> emailOtpService.sendOtp("victim@test.com", "10.0.0.9"));
+        }
+
+        // Then: chủ email vẫn còn đủ 3 lượt từ IP của mình
+        for (int i = 0; i < 3; i++) {
+            assertTrue(emailOtpService.sendOtp("victim@test.com", "10.0.0.10"));
+        }
+        System.out.println("✅ Test passed: OTP - IP checked first, rejected IP does not consume email quota");
+    }
+
+    @Test
+    void testRateLimiter_FullMapEvictsOldestInsteadOfRejecting() throws InterruptedException {
+        // Given: limiter chỉ giữ 3 key
+        OtpRateLimiter limiter = new OtpRateLimiter();
+        ReflectionTestUtils.setField(limiter, "windowMs", 600_000L);
+        ReflectionTestUtils.setField(limiter, "maxKeys", 3);
+        for (String key : new String[] {"k1", "k2", "k3"}) {
+            assertTrue(limiter.tryAcquire(key, 1));
+            Thread.sleep(2);
+        }
+        assertFalse(limiter.tryAcquire("k3", 1));
+
+        // When: key mới khi map đã đầy
+        assertTrue(limiter.tryAcquire("k4", 1));
+
+        // Then: cửa sổ cũ nhất bị bỏ, cửa sổ mới hơn vẫn giữ bộ đếm
+        Map<?, ?> windows = (Map<?, ?>) ReflectionTestUtils.getField(limiter, "windows");
+        assertTrue(windows.size() <= 3);
+        assertFalse(windows.containsKey("k1"));
+        assertFalse(limiter.tryAcquire("k3", 1));
+        System.out.println("✅ Test passed: OTP limiter - Full map evicts oldest windows, new keys still accepted");
+    }
+
+    @Test
+    void testVerifyOtp_LockedAfterTooManyWrongAttempts() {
+        // Given
+        emailOtpService.sendOtp("user@test.com", null);
+        String otp = lastSentOtp();
+        String wrong = otp.equals("111111") ? "222222" : "111111";
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            assertFalse(emailOtpService.verifyOtp("user@test.com", wrong));
+        }
+
+        // Then
+        assertFalse(emailOtpService.verifyOtp("user@test.com", otp), "Hết lượt thử thì mã đúng cũng bị từ chối");
+        System.out.println("✅ Test passed: OTP - Verification locked after too many wrong attempts");
+    }
+
+    @Test
+    void testPendingRegistration_StoredWithHashedPasswordAndConsumedOnce() {
+        // Given
+        PatientService.PatientRegisterRequest request = new PatientService.PatientRegisterRequest();
+        request.setEmail("new@test.com");
+        request.setPassword("secret123");
+        request.setFirstName("An");
+        request.setDob(LocalDate.of(2000, 1, 2));
+
+        // When
+        emailOtpService.savePendingRegistration(request, "10.0.0.4");
+
+        // Then
+        assertTrue(emailOtpService.hasPendingRegistration("new@test.com"));
+        PatientService.PatientRegisterRequest pending = emailOtpService.consumePendingRegistration("NEW@test.com");
+        assertNotNull(pending);
+        assertNull(pending.getPassword());
+        assertTrue(passwordEncoder.matches("secret123", pending.getPasswordHash()));
+        assertEquals(LocalDate.of(2000, 1, 2), pending.getDob());
+        assertNull(emailOtpService.consumePendingRegistration("new@test.com"));
+        System.out.println("✅ Test passed: OTP - Pending registration stored hashed and consumed once");
+    }
+
+    @Test
+    void testInMemoryStore_ExpiresAndCapsEntries() throws InterruptedException {
+        // Given
+        otpStore.put("ns", "expired", "v", Duration.ofMillis(1));
+        Thread.sleep(5);
+
+        // Then
+        assertTrue(otpStore.get("ns", "expired").isEmpty());
+
+        // When: vượt giới hạn 3 entry
+        for (int i = 0; i < 5; i++) {
+            otpStore.put("ns", "k" + i, "v" + i, Duration.ofMinutes(5));
+        }
+        otpStore.evictExpired();
+
+        // Then
+        assertEquals(3, otpStore.size("ns"));
+        assertTrue(otpStore.get("ns", "k0").isEmpty());
+        assertEquals("v4", otpStore.get("ns", "k4").orElseThrow());
+        System.out.println("✅ Test passed: OTP store - Expired entries hidden, capacity capped");
+    }
+}
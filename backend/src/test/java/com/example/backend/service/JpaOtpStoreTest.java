@@ -0,0 +1,116 @@
+package com.example.backend.service;
+
+import com.example.backend.repository.OtpEntryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the shared OTP attempt counter of JpaOtpStore (otp.store = db), run against the H2 test database.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaOtpStoreTest {
+
+    private static final Pattern OTP_PATTERN = Pattern.compile("OTP của bạn là: (\\d{6})");
+
+    @Autowired
+    private OtpEntryRepository otpEntryRepository;
+
+    private JavaMailSender mailSender;
+    private JpaOtpStore otpStore;
+
+    @BeforeEach
+    void setUp() {
+        otpEntryRepository.deleteAllInBatch();
+        mailSender = mock(JavaMailSender.class);
+        otpStore = new JpaOtpStore(otpEntryRepository);
+    }
+
+    // Mỗi node có OtpRateLimiter riêng trong bộ nhớ, chỉ OtpStore là dùng chung
+    private EmailOtpService node() {
+        OtpRateLimiter rateLimiter = new OtpRateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "windowMs", 600_000L);
+        ReflectionTestUtils.setField(rateLimiter, "maxKeys", 100);
+        EmailOtpService service = new EmailOtpService(mailSender, new JpaOtpStore(otpEntryRepository), rateLimiter,
+                new ObjectMapper(), new BCryptPasswordEncoder(4));
+        ReflectionTestUtils.setField(service, "fromEmail", "clinic@test.com");
+        ReflectionTestUtils.setField(service, "otpTtlMs", 300_000L);
+        ReflectionTestUtils.setField(service, "sendsPerEmail", 3);
+        ReflectionTestUtils.setField(service, "sendsPerIp", 5);
+        ReflectionTestUtils.setField(service, "maxVerifyAttempts", 3);
+        return service;
+    }
+
+    private String lastSentOtp() {
+        ArgumentCaptor<SimpleMailMessage> captor = ArgumentCaptor.forClass(SimpleMailMessage.class);
+        verify(mailSender, atLeastOnce()).send(captor.capture());
+        Matcher matcher = OTP_PATTERN.matcher(captor.getValue().getText());
+        assertTrue(matcher.find());
+        return matcher.group(1);
+    }
+
+    @Test
+    void testVerifyOtp_WrongAttemptLimitSharedAcrossNodes() {
+        // Given: hai node dùng chung bảng OtpEntries
+        EmailOtpService nodeA = node();
+        EmailOtpService nodeB = node();
+        nodeA.sendOtp("user@test.com", null);
+        String otp = lastSentOtp();
+        String wrong = otp.equals("111111") ? "222222" : "111111";
+
+        // When: nhập sai luân phiên trên hai node, tổng cộng 3 lần
+        assertFalse(nodeA.verifyOtp("user@test.com", wrong));
+        assertFalse(nodeB.verifyOtp("user@test.com", wrong));
+        assertFalse(nodeA.verifyOtp("user@test.com", wrong));
+
+        // Then: hết lượt ở cả hai node, không phải 3 lượt mỗi node
+        assertFalse(nodeB.verifyOtp("user@test.com", otp), "Hết lượt thử thì mã đúng cũng bị từ chối");
+        assertFalse(nodeA.verifyOtp("user@test.com", otp));
+
+        // OTP mới đếm lại từ đầu
+        nodeB.sendOtp("user@test.com", null);
+        assertTrue(nodeA.verifyOtp("user@test.com", lastSentOtp()));
+        System.out.println("✅ Test passed: OTP db store - Wrong attempt limit shared across nodes");
+    }
+
+    @Test
+    void testTryAttempt_CorrectCodeResetsAndExpiredEntryRejected() {
+        // Given
+        otpStore.put("otp", "a@test.com", "hash", Duration.ofMinutes(5));
+        assertTrue(otpStore.tryAttempt("otp", "a@test.com", 2));
+        assertTrue(otpStore.tryAttempt("otp", "a@test.com", 2));
+        assertFalse(otpStore.tryAttempt("otp", "a@test.com", 2));
+
+        // When: nhập đúng thì đặt lại lượt thử
+        otpStore.resetAttempts("otp", "a@test.com");
+
+        // Then
+        assertTrue(otpStore.tryAttempt("otp", "a@test.com", 2));
+        assertEquals("hash", otpStore.get("otp", "a@test.com").orElseThrow());
+        otpStore.put("otp", "b@test.com", "hash", Duration.ofMillis(-1));
+        assertFalse(otpStore.tryAttempt("otp", "b@test.com", 2), "Entry hết hạn không được tính lượt");
+        assertFalse(otpStore.tryAttempt("otp", "missing@test.com", 2));
+        System.out.println("✅ Test passed: OTP db store - Attempts reset on success, expired entries rejected");
+    }
+}
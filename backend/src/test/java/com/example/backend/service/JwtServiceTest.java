@@ -0,0 +1,104 @@
+package com.example.backend.service;
+
+import com.example.backend.model.Role;
+import com.example.backend.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JwtService: issuing, verifying and revoking session tokens.
+ */
+class JwtServiceTest {
+
+    private static final String SECRET = "c2VjcmV0LWtleS1mb3ItdGVzdHMtb25seS0zMi1ieXRlcy1sb25nIQ==";
+
+    private TokenRevocationList revocationList;
+    private JwtService jwtService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        revocationList = new TokenRevocationList();
+        jwtService = newService(SECRET, 60_000L);
+
+        Role role = new Role();
+        role.setName("Doctor");
+        user = new User();
+        user.setId(42L);
+        user.setRole(role);
+    }
+
+    private JwtService newService(String secret, long expirationMs) {
+        JwtService service = new JwtService(revocationList);
+        ReflectionTestUtils.setField(service, "secret", secret);
+        ReflectionTestUtils.setField(service, "expirationMs", expirationMs);
+        ReflectionTestUtils.setField(service, "issuer", "clinic-backend");
+        service.init();
+        return service;
+    }
+
+    @Test
+    void testIssueAndVerify_ReturnsUserIdAndRole() {
+        // When
+        String token = jwtService.issueToken(user);
+        Optional<JwtService.TokenInfo> info = jwtService.verify(token);
+
+        // Then
+        assertTrue(info.isPresent());
+        assertEquals(42L, info.get().userId());
+        assertEquals("Doctor", info.get().role());
+        assertNotNull(info.get().tokenId());
+        assertTrue(info.get().expiresAt().isAfter(Instant.now()));
+        System.out.println("✅ Test passed: JWT - Issued token verifies with user id and role");
+    }
+
+    @Test
+    void testVerify_RejectsTamperedExpiredAndForeignTokens() {
+        // Given
+        String token = jwtService.issueToken(user);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        String expired = newService(SECRET, -1_000L).issueToken(user);
+        String foreign = newService("", 60_000L).issueToken(user);
+
+        // Then
+        assertTrue(jwtService.verify(tampered).isEmpty());
+        assertTrue(jwtService.verify(expired).isEmpty());
+        assertTrue(jwtService.verify(foreign).isEmpty());
+        assertTrue(jwtService.verify("not-a-jwt").isEmpty());
+        assertTrue(jwtService.verify(null).isEmpty());
+        System.out.println("✅ Test passed: JWT - Tampered, expired and foreign tokens rejected");
+    }
+
+    @Test
+    void testRevoke_TokenRejectedUntilPurged() {
+        // Given
+        String token = jwtService.issueToken(user);
+
+        // When
+        assertTrue(jwtService.revoke(token));
+
+        // Then
+        assertTrue(jwtService.verify(token).isEmpty());
+        assertEquals(1, revocationList.size());
+        revocationList.purgeExpired();
+        assertEquals(1, revocationList.size(), "Token chưa hết hạn thì vẫn phải nằm trong danh sách thu hồi");
+        assertTrue(jwtService.verify(jwtService.issueToken(user)).isPresent());
+        System.out.println("✅ Test passed: JWT - Revoked token rejected, other tokens unaffected");
+    }
+
+    @Test
+    void testExtractBearer() {
+        assertEquals("abc", JwtService.extractBearer("Bearer abc"));
+        assertEquals("abc", JwtService.extractBearer("bearer abc "));
+        assertNull(JwtService.extractBearer("Basic abc"));
+        assertNull(JwtService.extractBearer("Bearer "));
+        assertNull(JwtService.extractBearer(null));
+        System.out.println("✅ Test passed: JWT - Bearer token extracted from Authorization header");
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoginRateLimiter.
+ */
+class LoginRateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private LoginRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = newLimiter(100);
+    }
+
+    // Token gần như không được nạp lại trong thời gian chạy test
+    private LoginRateLimiter newLimiter(int maxKeys) {
+        LoginRateLimiter created = new LoginRateLimiter(meterRegistry);
+        ReflectionTestUtils.setField(created, "accountCapacity", 2);
+        ReflectionTestUtils.setField(created, "accountRefillPerMinute", 0.001);
+        ReflectionTestUtils.setField(created, "ipCapacity", 3);
+        ReflectionTestUtils.setField(created, "ipRefillPerMinute", 0.001);
+        ReflectionTestUtils.setField(created, "maxKeys", maxKeys);
+        created.init();
+        return created;
+    }
+
+    @Test
+    void testTryAcquire_TokenBucketPerAccountAndIp() {
+        assertTrue(limiter.tryAcquire("a@test.com", "10.0.0.1"));
+        assertTrue(limiter.tryAcquire("A@test.com", "10.0.0.2"));
+        assertFalse(limiter.tryAcquire("a@test.com", "10.0.0.3"), "Tài khoản đã hết token");
+        assertTrue(limiter.tryAcquire("b@test.com", "10.0.0.1"));
+        assertTrue(limiter.tryAcquire("c@test.com", "10.0.0.1"));
+        assertFalse(limiter.tryAcquire("d@test.com", "10.0.0.1"), "IP đã hết token");
+        assertEquals(1.0, meterRegistry.counter("auth.login.rejected", "limit", "account").count());
+        assertEquals(1.0, meterRegistry.counter("auth.login.rejected", "limit", "ip").count());
+        System.out.println("✅ Test passed: Login admission - Token buckets enforced per account and per IP");
+    }
+
+    @Test
+    void testTryAcquire_AccountRejectionDoesNotConsumeIpToken() {
+        // Given: tài khoản a@ đã hết token
+        assertTrue(limiter.tryAcquire("a@test.com", "10.0.0.5"));
+        assertTrue(limiter.tryAcquire("a@test.com", "10.0.0.5"));
+
+        // When: IP dùng chung tiếp tục thử tài khoản bị khóa
+        for (int i = 0; i < 5; i++) {
+            assertFalse(limiter.tryAcquire("a@test.com", "10.0.0.5"));
+        }
+
+        // Then: IP vẫn còn token thứ 3 cho người dùng khác
+        assertTrue(limiter.tryAcquire("b@test.com", "10.0.0.5"));
+        assertFalse(limiter.tryAcquire("c@test.com", "10.0.0.5"));
+        System.out.println("✅ Test passed: Login admission - Rejected attempts do not drain the IP bucket");
+    }
+
+    @Test
+    void testTryAcquire_FullMapEvictsLeastRecentlyUsed() throws InterruptedException {
+        // Given: chỉ giữ 4 bucket, mỗi lần đăng nhập tạo 2 (ip + account)
+        limiter = newLimiter(4);
+        assertTrue(limiter.tryAcquire("old@test.com", "10.0.0.1"));
+        Thread.sleep(2);
+        assertTrue(limiter.tryAcquire("recent@test.com", "10.0.0.2"));
+        assertTrue(limiter.tryAcquire("recent@test.com", "10.0.0.2"));
+        assertFalse(limiter.tryAcquire("recent@test.com", "10.0.0.2"));
+
+        // When: key mới khi map đã đầy
+        Thread.sleep(2);
+        assertTrue(limiter.tryAcquire("new@test.com", "10.0.0.3"), "Key mới không bị từ chối khi map đầy");
+
+        // Then: bucket lâu không dùng bị bỏ, bucket vừa dùng vẫn giữ trạng thái
+        Map<?, ?> buckets = (Map<?, ?>) ReflectionTestUtils.getField(limiter, "buckets");
+        assertFalse(buckets.containsKey("account:old@test.com"));
+        assertTrue(buckets.containsKey("account:recent@test.com"));
+        assertTrue(buckets.size() <= 4);
+        System.out.println("✅ Test passed: Login admission - Full map evicts least recently used buckets");
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.MessageDTO;
+import com.example.backend.mapper.ConversationMapper;
+import com.example.backend.mapper.MessageMapper;
+import com.example.backend.model.Message;
+import com.example.backend.repository.ConversationRepository;
+import com.example.backend.repository.DoctorRepository;
+import com.example.backend.repository.MessageRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Keyset pagination of message history: walks a conversation page by page through the
+ * cursors and checks no message is skipped or repeated, including rows sharing a sentAt.
+ */
+class MessageServiceCursorTest {
+
+    private static final Long CONVERSATION_ID = 1L;
+    private static final Comparator<Message> KEY_ORDER =
+            Comparator.comparing(Message::getSentAt).thenComparing(Message::getMessageId);
+
+    private final List<Message> store = new ArrayList<>();
+    private MessageRepository messageRepository;
+    private MessageService messageService;
+
+    @BeforeEach
+    void setUp() {
+        LocalDateTime base = LocalDateTime.of(2024, 12, 25, 9, 0);
+        for (long id = 1; id <= 25; id++) {
+            Message message = new Message();
+            message.setMessageId(id);
+            // Cứ 3 tin nhắn dùng chung một sentAt để kiểm tra tie-break theo messageId
+            message.setSentAt(base.plusSeconds(id / 3));
+            message.setContent("m" + id);
+            store.add(message);
+        }
+
+        messageRepository = mock(MessageRepository.class);
+        when(messageRepository.findLatestByConversationId(eq(CONVERSATION_ID), any(Pageable.class)))
+                .thenAnswer(inv -> store.stream()
+                        .sorted(KEY_ORDER.reversed())
+                        .limit(inv.<Pageable>getArgument(1).getPageSize())
+                        .toList());
+        when(messageRepository.findByConversationIdBefore(eq(CONVERSATION_ID), any(), anyLong(), any(Pageable.class)))
+                .thenAnswer(inv -> {
+                    Message cursor = key(inv.getArgument(1), inv.getArgument(2));
+                    return store.stream()
+                            .filter(m -> KEY_ORDER.compare(m, cursor) < 0)
+                            .sorted(KEY_ORDER.reversed())
+                            .limit(inv.<Pageable>getArgument(3).getPageSize())
+                            .toList();
+                });
+        when(messageRepository.findByConversationIdAfter(eq(CONVERSATION_ID), any(), anyLong(), any(Pageable.class)))
+                .thenAnswer(inv -> {
+                    Message cursor = key(inv.getArgument(1), inv.getArgument(2));
+                    return store.stream()
+                            .filter(m -> KEY_ORDER.compare(m, cursor) > 0)
+                            .sorted(KEY_ORDER)
+                            .limit(inv.<Pageable>getArgument(3).getPageSize())
+                            .toList();
+                });
+
+        messageService = new MessageService(messageRepository, mock(ConversationRepository.class),
+                mock(UserRepository.class), new MessageMapper(), mock(SimpMessagingTemplate.class), mock(UnreadCountCache.class));
+    }
+
+    private static Message key(LocalDateTime sentAt, Long messageId) {
+        Message message = new Message();
+        message.setSentAt(sentAt);
+        message.setMessageId(messageId);
+        return message;
+    }
+
+    @Test
+    void testGetMessagesPage_WalkBackwardsThenForwards() {
+        // Lùi từ trang mới nhất về tin đầu tiên
+        List<Long> seen = new ArrayList<>();
+        MessageDTO.CursorPage page = messageService.getMessagesPage(CONVERSATION_ID, null, null, 10);
+        String firstNewerCursor = page.getNewerCursor();
+        while (true) {
+            List<Long> ids = page.getMessages().stream().map(MessageDTO.Response::getMessageId).toList();
+            assertEquals(ids.stream().sorted().toList(), ids, "Mỗi trang phải theo thứ tự cũ -> mới");
+            seen.addAll(0, ids);
+            if (!page.isHasMore()) {
+                break;
+            }
+            page = messageService.getMessagesPage(CONVERSATION_ID, page.getOlderCursor(), null, 10);
+        }
+        assertEquals(25, seen.size());
+        assertEquals(25, seen.stream().distinct().count());
+        assertEquals(1L, seen.get(0));
+
+        // Không có tin mới hơn trang đầu tiên
+        MessageDTO.CursorPage newer = messageService.getMessagesPage(CONVERSATION_ID, null, firstNewerCursor, 10);
+        assertTrue(newer.getMessages().isEmpty());
+        assertFalse(newer.isHasMore());
+        System.out.println("✅ Test passed: Message cursor - Walked 25 messages in pages of 10 without gaps");
+    }
+
+    @Test
+    void testGetRecentMessages_ReadsOnlyRequestedRows() {
+        List<MessageDTO.Response> recent = messageService.getRecentMessages(CONVERSATION_ID, 5);
+
+        assertEquals(List.of(25L, 24L, 23L, 22L, 21L),
+                recent.stream().map(MessageDTO.Response::getMessageId).toList());
+        verify(messageRepository).findLatestByConversationId(eq(CONVERSATION_ID),
+                argThat(pageable -> pageable.getPageSize() == 5));
+        System.out.println("✅ Test passed: Message cursor - Recent messages limited in the query");
+    }
+
+    @Test
+    void testLimitOutOfRange_Rejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.getMessagesPage(CONVERSATION_ID, null, null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.getMessagesPage(CONVERSATION_ID, null, null, 101));
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.getRecentMessages(CONVERSATION_ID, 500));
+
+        // latest-messages của ConversationService dùng cùng giới hạn 1-100
+        ConversationService conversationService = new ConversationService(mock(ConversationRepository.class),
+                mock(PatientRepository.class), mock(DoctorRepository.class), messageRepository, mock(ConversationMapper.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> conversationService.getConversationWithLatestMessages(CONVERSATION_ID, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> conversationService.getConversationWithLatestMessages(CONVERSATION_ID, 10_000));
+        verify(messageRepository, never()).findLatestByConversationId(anyLong(), any(Pageable.class));
+        System.out.println("✅ Test passed: Message cursor - Out-of-range limit rejected instead of clamped");
+    }
+
+    @Test
+    void testGetMessagesPage_InvalidCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.getMessagesPage(CONVERSATION_ID, "not-a-cursor", null, 10));
+        System.out.println("✅ Test passed: Message cursor - Invalid cursor rejected");
+    }
+}
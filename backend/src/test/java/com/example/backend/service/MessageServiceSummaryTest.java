@@ -0,0 +1,110 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.MessageDTO;
+import com.example.backend.mapper.MessageMapper;
+import com.example.backend.model.Conversation;
+import com.example.backend.model.Message;
+import com.example.backend.model.User;
+import com.example.backend.repository.ConversationRepository;
+import com.example.backend.repository.MessageRepository;
+import com.example.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The conversation summary columns are maintained incrementally by MessageService.
+ */
+class MessageServiceSummaryTest {
+
+    private MessageRepository messageRepository;
+    private ConversationRepository conversationRepository;
+    private UserRepository userRepository;
+    private UnreadCountCache unreadCountCache;
+    private MessageService messageService;
+    private Conversation conversation;
+    private User doctorUser;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository = mock(MessageRepository.class);
+        conversationRepository = mock(ConversationRepository.class);
+        userRepository = mock(UserRepository.class);
+        unreadCountCache = mock(UnreadCountCache.class);
+
+        User patientUser = new User();
+        patientUser.setId(10L);
+        doctorUser = new User();
+        doctorUser.setId(20L);
+        doctorUser.setFirstName("John");
+        doctorUser.setLastName("Doe");
+
+        conversation = new Conversation();
+        conversation.setConversationId(1L);
+        conversation.setPatientUser(patientUser);
+        conversation.setDoctorUser(doctorUser);
+
+        messageService = new MessageService(messageRepository, conversationRepository, userRepository,
+                new MessageMapper(), mock(SimpMessagingTemplate.class), unreadCountCache);
+    }
+
+    @Test
+    void testCreateMessage_UpdatesSummaryWithPreview() {
+        // Given
+        when(conversationRepository.findById(1L)).thenReturn(Optional.of(conversation));
+        when(userRepository.findById(20L)).thenReturn(Optional.of(doctorUser));
+        when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
+            Message message = inv.getArgument(0);
+            message.setMessageId(99L);
+            return message;
+        });
+        String longContent = "x".repeat(300);
+
+        // When
+        messageService.createMessage(new MessageDTO.Create(1L, 20L, longContent, null));
+
+        // Then
+        verify(conversationRepository).recordMessage(eq(1L), eq(99L), any(LocalDateTime.class),
+                argThat(preview -> preview.length() == 200), eq(20L));
+        verify(unreadCountCache).messageCreated(1L, 10L);
+        System.out.println("✅ Test passed: Conversation summary - New message recorded with truncated preview");
+    }
+
+    @Test
+    void testMarkMessageAsRead_DecrementsOnlyOnTransition() {
+        // Given
+        Message message = new Message();
+        message.setMessageId(5L);
+        message.setConversation(conversation);
+        message.setSender(doctorUser);
+        when(messageRepository.findById(5L)).thenReturn(Optional.of(message));
+        when(messageRepository.markMessageAsRead(5L)).thenReturn(1, 0);
+
+        // When - đọc hai lần
+        messageService.markMessageAsRead(5L);
+        messageService.markMessageAsRead(5L);
+
+        // Then - chỉ giảm một lần
+        verify(conversationRepository, times(1)).decrementUnread(1L, 20L);
+        verify(unreadCountCache, times(1)).messageRead(1L, 10L);
+        System.out.println("✅ Test passed: Conversation summary - Unread counter decremented once");
+    }
+
+    @Test
+    void testMarkMessagesAsRead_ResetsReaderCounter() {
+        // When
+        messageService.markMessagesAsRead(1L, 10L);
+
+        // Then
+        verify(messageRepository).markMessagesAsReadByConversationAndUser(1L, 10L);
+        verify(conversationRepository).resetUnread(1L, 10L);
+        verify(unreadCountCache).conversationRead(1L, 10L);
+        System.out.println("✅ Test passed: Conversation summary - Reader unread counter reset");
+    }
+}
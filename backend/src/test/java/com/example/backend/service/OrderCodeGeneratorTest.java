@@ -0,0 +1,120 @@
+package com.example.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OrderCodeGenerator.
+ */
+class OrderCodeGeneratorTest {
+
+    static OrderCodeGenerator generator(long nodeId) {
+        return generator(nodeId, new MockEnvironment());
+    }
+
+    private static OrderCodeGenerator generator(long nodeId, MockEnvironment environment) {
+        OrderCodeGenerator generator = new OrderCodeGenerator(environment);
+        ReflectionTestUtils.setField(generator, "configuredNodeId", nodeId);
+        generator.init();
+        return generator;
+    }
+
+    @Test
+    void testNext_UniqueAcrossThreadsAndNodes() throws Exception {
+        // Given: hai node, mỗi node 8 thread cùng sinh mã
+        List<OrderCodeGenerator> nodes = List.of(generator(1), generator(2));
+        Set<Long> codes = ConcurrentHashMap.newKeySet();
+        int perThread = 5_000;
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                OrderCodeGenerator node = nodes.get(i % 2);
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        long code = node.next();
+                        assertTrue(code > 0 && code <= OrderCodeGenerator.MAX_ORDER_CODE, "Mã ngoài 53 bit: " + code);
+                        codes.add(code);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        // Then: không mã nào trùng, kể cả khi một mili giây cần hơn 128 mã
+        assertEquals(16 * perThread, codes.size());
+        System.out.println("✅ Test passed: Order code - " + codes.size() + " unique codes across 2 nodes");
+    }
+
+    @Test
+    void testNext_MonotonicAndCarriesNodeId() {
+        OrderCodeGenerator generator = generator(5);
+
+        long previous = 0;
+        for (int i = 0; i < 10_000; i++) {
+            long code = generator.next();
+            assertTrue(code > previous, "Mã không tăng: " + previous + " -> " + code);
+            assertEquals(5, (code >>> OrderCodeGenerator.SEQUENCE_BITS) & OrderCodeGenerator.MAX_NODE_ID);
+            previous = code;
+        }
+        System.out.println("✅ Test passed: Order code - Monotonic per node, node id embedded");
+    }
+
+    @Test
+    void testNext_ClockRollbackDoesNotReissueCodes() {
+        OrderCodeGenerator generator = generator(3);
+        long first = generator.next();
+
+        // Given: mốc đã cấp nằm 10 giây sau đồng hồ hiện tại (như sau khi đồng hồ lùi)
+        long nowState = (System.currentTimeMillis() - OrderCodeGenerator.EPOCH_MS) << OrderCodeGenerator.SEQUENCE_BITS;
+        long issuedState = nowState + (10_000L << OrderCodeGenerator.SEQUENCE_BITS);
+        ((AtomicLong) ReflectionTestUtils.getField(generator, "last")).set(issuedState);
+
+        // When
+        long afterRollback = generator.next();
+
+        // Then: tiếp tục từ mốc đã cấp thay vì quay về thời gian thật
+        assertTrue(afterRollback > first);
+        long timestamp = afterRollback >>> (OrderCodeGenerator.NODE_BITS + OrderCodeGenerator.SEQUENCE_BITS);
+        long sequence = afterRollback & ((1L << OrderCodeGenerator.SEQUENCE_BITS) - 1);
+        assertEquals(issuedState + 1, (timestamp << OrderCodeGenerator.SEQUENCE_BITS) | sequence);
+        System.out.println("✅ Test passed: Order code - Clock rollback keeps codes increasing");
+    }
+
+    @Test
+    void testInit_RejectsNodeIdOutOfRange() {
+        assertThrows(IllegalStateException.class, () -> generator(OrderCodeGenerator.MAX_NODE_ID + 1));
+        System.out.println("✅ Test passed: Order code - Node id out of range rejected");
+    }
+
+    @Test
+    void testInit_MissingNodeIdFailsOutsideDevAndTest() {
+        // Production: thiếu node-id thì không khởi động thay vì đoán theo hostname
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> generator(-1));
+        assertTrue(error.getMessage().contains("payos.order-code.node-id"));
+
+        // dev/test: lấy theo hostname, vẫn nằm trong 5 bit node
+        MockEnvironment test = new MockEnvironment();
+        test.setActiveProfiles("test");
+        OrderCodeGenerator fallback = generator(-1, test);
+        long nodeId = (long) ReflectionTestUtils.getField(fallback, "nodeId");
+        assertTrue(nodeId >= 0 && nodeId <= OrderCodeGenerator.MAX_NODE_ID);
+        assertEquals(nodeId, (fallback.next() >>> OrderCodeGenerator.SEQUENCE_BITS) & OrderCodeGenerator.MAX_NODE_ID);
+        System.out.println("✅ Test passed: Order code - Missing node id fails fast outside dev/test");
+    }
+}
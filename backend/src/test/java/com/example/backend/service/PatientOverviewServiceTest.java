@@ -0,0 +1,175 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.AppointmentDTO;
+import com.example.backend.dto.MedicalRecordDto;
+import com.example.backend.dto.PatientDTO;
+import com.example.backend.dto.PaymentDTO;
+import com.example.backend.dto.PrescriptionDto;
+import com.example.backend.exception.NotFoundException;
+import com.example.backend.repository.PatientRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PatientOverviewService fan-out, timeouts, the concurrent branch limit and partial results.
+ */
+@ExtendWith(MockitoExtension.class)
+class PatientOverviewServiceTest {
+
+    private static final long BRANCH_DELAY_MS = 300;
+
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private AppointmentService appointmentService;
+    @Mock
+    private MedicalRecordService medicalRecordService;
+    @Mock
+    private PrescriptionService prescriptionService;
+    @Mock
+    private PaymentService paymentService;
+    @Mock
+    private ConversationService conversationService;
+
+    @InjectMocks
+    private PatientOverviewService patientOverviewService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(patientOverviewService, "branchTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(patientOverviewService, "maxConcurrentBranches", 5);
+        ReflectionTestUtils.setField(patientOverviewService, "connectionPoolSize", 10);
+        patientOverviewService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        patientOverviewService.shutdown();
+    }
+
+    private static <T> T slow(T value, long delayMs) throws InterruptedException {
+        Thread.sleep(delayMs);
+        return value;
+    }
+
+    private void stubRecordBranches(long delayMs) throws Exception {
+        when(patientRepository.existsById(5L)).thenReturn(true);
+        when(appointmentService.getByPatient(5L)).thenAnswer(inv -> slow(List.of(new AppointmentDTO.Response()), delayMs));
+        when(medicalRecordService.getMedicalRecordsByPatientId(5L)).thenAnswer(inv -> slow(List.of(new MedicalRecordDto()), delayMs));
+        when(prescriptionService.getPrescriptionsByPatientId(5L)).thenAnswer(inv -> slow(List.of(new PrescriptionDto()), delayMs));
+    }
+
+    @Test
+    void testGetOverview_BranchesRunInParallel() throws Exception {
+        // Given: mỗi nhánh mất 300 ms
+        stubRecordBranches(BRANCH_DELAY_MS);
+        when(paymentService.getPaymentsByPatientId(5L)).thenAnswer(inv -> slow(List.of(new PaymentDTO.Response()), BRANCH_DELAY_MS));
+        when(conversationService.getConversationsByPatient(null, 5L)).thenAnswer(inv -> slow(List.of(), BRANCH_DELAY_MS));
+
+        // When
+        long startedAt = System.nanoTime();
+        PatientDTO.Overview overview = patientOverviewService.getOverview(5L);
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+        // Then: thời gian ~ nhánh chậm nhất, không phải tổng 5 nhánh
+        assertEquals(5L, overview.getPatientId());
+        assertEquals(1, overview.getAppointments().size());
+        assertEquals(1, overview.getMedicalRecords().size());
+        assertEquals(1, overview.getPrescriptions().size());
+        assertEquals(1, overview.getPayments().size());
+        assertEquals(List.of(), overview.getConversations());
+        assertTrue(overview.getIncomplete().isEmpty());
+        assertTrue(elapsedMs < BRANCH_DELAY_MS * 3, "Tổng tuần tự sẽ là " + BRANCH_DELAY_MS * 5 + " ms, thực tế " + elapsedMs);
+        System.out.printf("✅ Test passed: Patient overview - 5 branches of %d ms answered in %d ms%n", BRANCH_DELAY_MS, elapsedMs);
+    }
+
+    @Test
+    void testGetOverview_SlowAndFailingBranchesReturnPartialResult() throws Exception {
+        // Given: thanh toán treo lâu hơn hạn, hội thoại lỗi
+        ReflectionTestUtils.setField(patientOverviewService, "branchTimeoutMs", 200L);
+        stubRecordBranches(0);
+        when(paymentService.getPaymentsByPatientId(5L)).thenAnswer(inv -> slow(List.of(), 10_000));
+        when(conversationService.getConversationsByPatient(null, 5L)).thenThrow(new IllegalStateException("DB down"));
+
+        // When
+        long startedAt = System.nanoTime();
+        PatientDTO.Overview overview = patientOverviewService.getOverview(5L);
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+        // Then
+        assertEquals(1, overview.getAppointments().size());
+        assertEquals(1, overview.getMedicalRecords().size());
+        assertEquals(1, overview.getPrescriptions().size());
+        assertNull(overview.getPayments());
+        assertNull(overview.getConversations());
+        assertEquals(Map.of(PatientOverviewService.PAYMENTS, "Quá thời gian chờ",
+                PatientOverviewService.CONVERSATIONS, "Không tải được dữ liệu"), overview.getIncomplete());
+        assertTrue(elapsedMs < 2_000, "Nhánh chậm bị cắt theo hạn, thực tế " + elapsedMs + " ms");
+        System.out.println("✅ Test passed: Patient overview - Slow and failing branches reported as incomplete");
+    }
+
+    @Test
+    void testGetOverview_BranchWithoutSlotReportedAsIncomplete() throws Exception {
+        // Given: chỉ một suất chạy, mọi nhánh treo lâu hơn hạn; nhánh nào được chạy trước là ngẫu nhiên
+        ReflectionTestUtils.setField(patientOverviewService, "branchTimeoutMs", 300L);
+        ReflectionTestUtils.setField(patientOverviewService, "maxConcurrentBranches", 1);
+        patientOverviewService.init();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Answer<List<?>> hold = inv -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                return slow(List.of(), 10_000);
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        when(patientRepository.existsById(5L)).thenReturn(true);
+        lenient().doAnswer(hold).when(appointmentService).getByPatient(5L);
+        lenient().doAnswer(hold).when(medicalRecordService).getMedicalRecordsByPatientId(5L);
+        lenient().doAnswer(hold).when(prescriptionService).getPrescriptionsByPatientId(5L);
+        lenient().doAnswer(hold).when(paymentService).getPaymentsByPatientId(5L);
+        lenient().doAnswer(hold).when(conversationService).getConversationsByPatient(null, 5L);
+
+        // When
+        PatientDTO.Overview overview = patientOverviewService.getOverview(5L);
+
+        // Then: một nhánh chạy và quá hạn, bốn nhánh không được chạy
+        assertEquals(1, maxRunning.get());
+        assertEquals(5, overview.getIncomplete().size());
+        assertEquals(1, overview.getIncomplete().values().stream().filter("Quá thời gian chờ"::equals).count());
+        assertEquals(4, overview.getIncomplete().values().stream().filter("Hệ thống đang bận"::equals).count());
+        System.out.println("✅ Test passed: Patient overview - Branches without a slot reported as incomplete");
+    }
+
+    @Test
+    void testInit_LimitMustLeaveConnectionsForOtherRequests() {
+        ReflectionTestUtils.setField(patientOverviewService, "maxConcurrentBranches", 10);
+        assertThrows(IllegalStateException.class, () -> patientOverviewService.init());
+        System.out.println("✅ Test passed: Patient overview - Branch limit must be below the pool size");
+    }
+
+    @Test
+    void testGetOverview_UnknownPatientThrowsBeforeFanOut() {
+        when(patientRepository.existsById(99L)).thenReturn(false);
+
+        assertThrows(NotFoundException.class, () -> patientOverviewService.getOverview(99L));
+        verify(appointmentService, never()).getByPatient(any());
+        System.out.println("✅ Test passed: Patient overview - Unknown patient rejected");
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.PaymentDTO;
+import com.example.backend.mapper.PaymentMapper;
+import com.example.backend.model.Appointment;
+import com.example.backend.model.Payment;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
+import com.example.backend.repository.PaymentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.payos.PayOS;
+import vn.payos.exception.APIException;
+import vn.payos.exception.BadRequestException;
+import vn.payos.exception.ConnectionException;
+import vn.payos.exception.ConnectionTimeoutException;
+import vn.payos.exception.InternalServerException;
+import vn.payos.exception.TooManyRequestsException;
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkRequest;
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkResponse;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.SocketException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PayOSService call guards and the phased PaymentService.createPayment,
+ * run against a local PayOS stub instead of the real API.
+ */
+class PayOSServiceTest {
+
+    private StubPayOS stub;
+    private PayOSService payOSService;
+
+    /**
+     * Stub cục bộ của PayOS payment-requests API: có thể chậm, lỗi hoặc chặn tới khi được mở.
+     */
+    private static final class StubPayOS implements PayOSGateway {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicBoolean transactionOpenDuringCall = new AtomicBoolean();
+        final AtomicBoolean transactionOpen = new AtomicBoolean();
+        volatile long delayMs;
+        volatile RuntimeException error;
+        volatile CountDownLatch gate;
+        volatile CreatePaymentLinkRequest lastRequest;
+
+        @Override
+        public CreatePaymentLinkResponse createPaymentLink(CreatePaymentLinkRequest request) throws Exception {
+            int call = calls.incrementAndGet();
+            lastRequest = request;
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                if (transactionOpen.get()) {
+                    transactionOpenDuringCall.set(true);
+                }
+                if (gate != null) {
+                    gate.await();
+                }
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+                if (error != null) {
+                    throw error;
+                }
+                CreatePaymentLinkResponse response = mock(CreatePaymentLinkResponse.class);
+                when(response.getPaymentLinkId()).thenReturn("link-" + call);
+                when(response.getCheckoutUrl()).thenReturn("https://pay.payos.vn/web/link-" + call);
+                return response;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getPaymentStatus(long orderCode) {
+            return "PENDING";
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubPayOS();
+        payOSService = new PayOSService(mock(PayOS.class), stub, OrderCodeGeneratorTest.generator(1));
+        ReflectionTestUtils.setField(payOSService, "linkExpiryMs", 900_000L);
+        ReflectionTestUtils.setField(payOSService, "callTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(payOSService, "maxConcurrentCalls", 2);
+        ReflectionTestUtils.setField(payOSService, "bulkheadMaxWaitMs", 50L);
+        ReflectionTestUtils.setField(payOSService, "failureThreshold", 3);
+        ReflectionTestUtils.setField(payOSService, "openMs", 200L);
+        payOSService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        payOSService.shutdown();
+    }
+
+    private static PayOSService.LinkRequest linkRequest() {
+        return new PayOSService.LinkRequest(55L, 7L, new BigDecimal("150000"), "Thanh toán lịch hẹn khám bệnh", null, null);
+    }
+
+    @Test
+    void testCreatePayment_PayOSCalledOutsideTransaction() {
+        // Given: transaction manager giả lập đánh dấu lúc có transaction đang mở
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(inv -> {
+            stub.transactionOpen.set(true);
+            return mock(TransactionStatus.class);
+        });
+        doAnswer(inv -> {
+            stub.transactionOpen.set(false);
+            return null;
+        }).when(transactionManager).commit(any());
+
+        Appointment appointment = new Appointment();
+        appointment.setAppointmentId(7L);
+        appointment.setFee(new BigDecimal("150000"));
+        AppointmentRepository appointmentRepository = mock(AppointmentRepository.class);
+        when(appointmentRepository.findById(7L)).thenReturn(Optional.of(appointment));
+
+        List<Payment> saved = new ArrayList<>();
+        PaymentRepository paymentRepository = mock(PaymentRepository.class);
+        when(paymentRepository.findByAppointment_AppointmentId(7L)).thenReturn(List.of());
+        when(paymentRepository.save(any(Payment.class))).thenAnswer(inv -> {
+            Payment payment = inv.getArgument(0);
+            payment.setPaymentId(55L);
+            saved.add(payment);
+            return payment;
+        });
+        when(paymentRepository.findById(55L)).thenAnswer(inv -> Optional.of(saved.get(0)));
+
+        PaymentMapper paymentMapper = mock(PaymentMapper.class);
+        when(paymentMapper.toResponseDTO(any(Payment.class))).thenReturn(new PaymentDTO.Response());
+        PaymentService paymentService = new PaymentService(paymentRepository, appointmentRepository, payOSService,
+                paymentMapper, new TransactionTemplate(transactionManager), new PaymentLinkSingleFlight(),
+                mock(PaymentLinkHistoryRepository.class));
+
+        PaymentDTO.Create create = new PaymentDTO.Create();
+        create.setAppointmentId(7L);
+
+        // When
+        paymentService.createPayment(create);
+
+        // Then: hai transaction ngắn, PayOS được gọi giữa hai transaction
+        assertEquals(1, stub.calls.get());
+        assertFalse(stub.transactionOpenDuringCall.get(), "Không được gọi PayOS khi đang giữ transaction");
+        verify(transactionManager, times(2)).getTransaction(any());
+        verify(transactionManager, times(2)).commit(any());
+        Payment payment = saved.get(0);
+        assertEquals(Payment.PaymentStatus.PENDING, payment.getStatus());
+        assertEquals("link-1", payment.getPayOSPaymentId());
+        assertEquals("https://pay.payos.vn/web/link-1", payment.getPayOSLink());
+        assertNotNull(payment.getPayOSCode());
+        // Hạn link gửi cho PayOS và lưu vào payment là cùng một thời điểm
+        long expiredAt = stub.lastRequest.getExpiredAt();
+        assertEquals(expiredAt, payment.getLinkExpiresAt().atZone(ZoneId.systemDefault()).toEpochSecond());
+        long expectedAt = Instant.now().plusMillis(900_000L).getEpochSecond();
+        assertTrue(Math.abs(expectedAt - expiredAt) <= 5, "expiredAt = " + expiredAt);
+        System.out.println("✅ Test passed: Create payment - PayOS called between two short transactions");
+    }
+
+    @Test
+    void testCreatePaymentLink_TimesOut() {
+        // Given
+        stub.delayMs = 5_000;
+        ReflectionTestUtils.setField(payOSService, "callTimeoutMs", 100L);
+
+        // When
+        long start = System.nanoTime();
+        RuntimeException error = assertThrows(RuntimeException.class, () -> payOSService.createPaymentLink(linkRequest()));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then
+        assertTrue(error.getMessage().contains("không phản hồi"), error.getMessage());
+        assertTrue(elapsedMs < 1_000, "Phải trả lỗi ngay khi hết hạn, mất " + elapsedMs + " ms");
+        System.out.println("✅ Test passed: PayOS call - Timeout after " + elapsedMs + " ms");
+    }
+
+    @Test
+    void testCircuitBreaker_OpensAfterFailuresAndRecovers() throws Exception {
+        // Given: PayOS lỗi liên tiếp đủ ngưỡng
+        stub.error = new InternalServerException("Bad Gateway", 502, null, null);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> payOSService.createPaymentLink(linkRequest()));
+        }
+        assertEquals(PayOSService.CircuitBreaker.State.OPEN, payOSService.circuitState());
+
+        // When: breaker mở thì từ chối ngay, không gọi PayOS
+        assertThrows(RejectedExecutionException.class, () -> payOSService.createPaymentLink(linkRequest()));
+        assertEquals(3, stub.calls.get());
+
+        // Then: hết thời gian mở, lời gọi thử thành công đóng breaker
+        stub.error = null;
+        Thread.sleep(250);
+        PayOSService.CreatedLink link = payOSService.createPaymentLink(linkRequest());
+        assertEquals("link-4", link.paymentLinkId());
+        assertEquals(PayOSService.CircuitBreaker.State.CLOSED, payOSService.circuitState());
+        System.out.println("✅ Test passed: PayOS call - Circuit breaker opens and recovers");
+    }
+
+    @Test
+    void testCircuitBreaker_IgnoresBusinessErrors() {
+        // Given: PayOS trả lời 400 và lỗi nghiệp vụ (orderCode đã tồn tại) nhiều lần liên tiếp
+        stub.error = new BadRequestException("Bad Request", 400, "20", "Invalid parameters");
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> payOSService.createPaymentLink(linkRequest()));
+        }
+        stub.error = new APIException("Đơn thanh toán đã tồn tại", 200, "231", "Đơn thanh toán đã tồn tại");
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> payOSService.createPaymentLink(linkRequest()));
+        }
+
+        // Then: breaker vẫn đóng, lời gọi tiếp theo vẫn tới PayOS
+        assertEquals(PayOSService.CircuitBreaker.State.CLOSED, payOSService.circuitState());
+        stub.error = null;
+        assertEquals("link-7", payOSService.createPaymentLink(linkRequest()).paymentLinkId());
+        System.out.println("✅ Test passed: PayOS call - 4xx and business errors do not open the breaker");
+    }
+
+    @Test
+    void testIsOutage_OnlyTimeoutsIoAndServerErrors() {
+        assertTrue(PayOSService.isOutage(new ConnectionException("reset", new SocketException("Connection reset"))));
+        assertTrue(PayOSService.isOutage(new ConnectionTimeoutException("timeout")));
+        assertTrue(PayOSService.isOutage(new RuntimeException(new IOException("broken pipe"))));
+        assertTrue(PayOSService.isOutage(new InternalServerException("Service Unavailable", 503, null, null)));
+        assertTrue(PayOSService.isOutage(new RuntimeException("PayOS không phản hồi", new TimeoutException())));
+        assertFalse(PayOSService.isOutage(new TooManyRequestsException("Too Many Requests", 429, null, null)));
+        assertFalse(PayOSService.isOutage(new BadRequestException("Bad Request", 400, null, null)));
+        assertFalse(PayOSService.isOutage(new IllegalArgumentException("amount phải lớn hơn 0")));
+        System.out.println("✅ Test passed: PayOS call - Only timeouts, IO errors and 5xx count as outages");
+    }
+
+    @Test
+    void testBulkhead_RejectsCallsBeyondLimit() throws Exception {
+        // Given: hai lời gọi đang bị PayOS giữ lại
+        stub.gate = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<PayOSService.CreatedLink> first = callers.submit(() -> payOSService.createPaymentLink(linkRequest()));
+            Future<PayOSService.CreatedLink> second = callers.submit(() -> payOSService.createPaymentLink(linkRequest()));
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (stub.inFlight.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            // When / Then: lời gọi thứ ba bị từ chối thay vì xếp hàng
+            assertThrows(RejectedExecutionException.class, () -> payOSService.createPaymentLink(linkRequest()));
+
+            stub.gate.countDown();
+            assertNotNull(first.get(2, TimeUnit.SECONDS));
+            assertNotNull(second.get(2, TimeUnit.SECONDS));
+            assertEquals(2, stub.maxInFlight.get());
+            assertEquals(PayOSService.CircuitBreaker.State.CLOSED, payOSService.circuitState());
+        } finally {
+            callers.shutdownNow();
+        }
+        System.out.println("✅ Test passed: PayOS call - Bulkhead rejects excess concurrent calls");
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.backend.service;
+
+import com.example.backend.event.OutboxSupport;
+import com.example.backend.model.PayOSWebhookEvent;
+import com.example.backend.repository.PayOSWebhookEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for per-OrderCode ordering and the claim-token guarded failure update of PayOSWebhookEvents,
+ * run against the H2 test database.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PayOSWebhookOrderingTest {
+
+    private static final AtomicLong ORDER_CODES = new AtomicLong(5_000);
+
+    @Autowired
+    private PayOSWebhookEventRepository webhookEventRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        webhookEventRepository.deleteAllInBatch();
+    }
+
+    // markProcessed chạy trong transaction áp webhook của PayOSWebhookQueue
+    private void markProcessed(PayOSWebhookEvent event) {
+        transactionTemplate.executeWithoutResult(status ->
+                webhookEventRepository.markProcessed(event.getEventId(), LocalDateTime.now()));
+    }
+
+    private PayOSWebhookEvent save(long orderCode, String code) {
+        PayOSWebhookEvent event = new PayOSWebhookEvent();
+        event.setOrderCode(orderCode);
+        event.setCode(code);
+        event.setPayload("{}");
+        return webhookEventRepository.saveAndFlush(event);
+    }
+
+    private List<Long> due() {
+        return webhookEventRepository.findDueIds(LocalDateTime.now().plusSeconds(1), PageRequest.of(0, 100));
+    }
+
+    @Test
+    void testFindDueIds_FailedPredecessorBlocksLaterEvents() {
+        // Given: event đầu của orderCode đã FAILED, event sau còn PENDING; orderCode khác không liên quan
+        long orderCode = ORDER_CODES.incrementAndGet();
+        PayOSWebhookEvent cancelled = save(orderCode, "CANCELLED");
+        PayOSWebhookEvent paid = save(orderCode, "00");
+        PayOSWebhookEvent other = save(ORDER_CODES.incrementAndGet(), "00");
+        List<PayOSWebhookEvent> claimed = OutboxSupport.claimDue(webhookEventRepository, LocalDateTime.now().plusSeconds(1), 100, 60_000L);
+        assertEquals(List.of(cancelled.getEventId(), other.getEventId()),
+                claimed.stream().map(PayOSWebhookEvent::getEventId).toList());
+        webhookEventRepository.recordFailure(cancelled.getEventId(), claimed.get(0).getClaimToken(),
+                PayOSWebhookEvent.WebhookEventStatus.FAILED, 10, LocalDateTime.now(), "lỗi");
+        markProcessed(other);
+
+        // When / Then: event sau không tới hạn khi event trước FAILED
+        assertEquals(List.of(), due());
+
+        // Replay event FAILED thì thứ tự được giữ: event trước rồi mới tới event sau
+        assertEquals(1, webhookEventRepository.requeueFailed(LocalDateTime.now()));
+        assertEquals(List.of(cancelled.getEventId()), due());
+        markProcessed(cancelled);
+        assertEquals(List.of(paid.getEventId()), due());
+        System.out.println("✅ Test passed: PayOS webhook ordering - FAILED event blocks later events of the same order code");
+    }
+
+    @Test
+    void testRecordFailure_IgnoredAfterLeaseLost() {
+        // Given: node A nhận event, lease hết hạn và node B nhận lại
+        PayOSWebhookEvent event = save(ORDER_CODES.incrementAndGet(), "00");
+        String tokenA = OutboxSupport.claimDue(webhookEventRepository, LocalDateTime.now().plusSeconds(1), 100, 0L)
+                .get(0).getClaimToken();
+        String tokenB = OutboxSupport.claimDue(webhookEventRepository, LocalDateTime.now().plusSeconds(2), 100, 60_000L)
+                .get(0).getClaimToken();
+        assertNotEquals(tokenA, tokenB);
+
+        // When: node A ghi lỗi muộn
+        int updated = webhookEventRepository.recordFailure(event.getEventId(), tokenA,
+                PayOSWebhookEvent.WebhookEventStatus.PENDING, 1, LocalDateTime.now(), "timeout");
+
+        // Then: không đè lên event node B đang xử lý
+        assertEquals(0, updated);
+        PayOSWebhookEvent stored = webhookEventRepository.findById(event.getEventId()).orElseThrow();
+        assertEquals(PayOSWebhookEvent.WebhookEventStatus.PROCESSING, stored.getStatus());
+        assertEquals(tokenB, stored.getClaimToken());
+        assertEquals(0, stored.getAttempts());
+        System.out.println("✅ Test passed: PayOS webhook ordering - Late failure from a lost lease ignored");
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.backend.service;
+
+import com.example.backend.event.DomainEvent;
+import com.example.backend.event.DomainEventPublisher;
+import com.example.backend.model.PayOSWebhookEvent;
+import com.example.backend.model.Payment;
+import com.example.backend.model.PaymentLinkHistory;
+import com.example.backend.repository.PayOSWebhookEventRepository;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
+import com.example.backend.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.payos.model.webhooks.WebhookData;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PayOSWebhookQueue: deduplicated ingestion, asynchronous apply with retry,
+ * and idempotent WebhookService.applyPayOSWebhook.
+ */
+class PayOSWebhookQueueTest {
+
+    private PayOSWebhookEventRepository webhookEventRepository;
+    private WebhookService webhookService;
+    private SimpleMeterRegistry meterRegistry;
+    private PayOSWebhookQueue webhookQueue;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        webhookEventRepository = mock(PayOSWebhookEventRepository.class);
+        webhookService = mock(WebhookService.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        meterRegistry = new SimpleMeterRegistry();
+
+        webhookQueue = new PayOSWebhookQueue(webhookEventRepository, webhookService, transactionTemplate, meterRegistry);
+        ReflectionTestUtils.setField(webhookQueue, "workerCount", 4);
+        ReflectionTestUtils.setField(webhookQueue, "batchSize", 100);
+        ReflectionTestUtils.setField(webhookQueue, "maxAttempts", 3);
+        ReflectionTestUtils.setField(webhookQueue, "retryBaseDelayMs", 1000L);
+        ReflectionTestUtils.setField(webhookQueue, "leaseMs", 60_000L);
+        webhookQueue.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        webhookQueue.shutdown();
+    }
+
+    private static PayOSWebhookEvent event(long id, long orderCode, String code) {
+        PayOSWebhookEvent event = new PayOSWebhookEvent();
+        event.setEventId(id);
+        event.setOrderCode(orderCode);
+        event.setCode(code);
+        event.setPayload("{}");
+        event.setStatus(PayOSWebhookEvent.WebhookEventStatus.PROCESSING);
+        event.setClaimToken("token");
+        event.setReceivedAt(LocalDateTime.now().minusSeconds(1));
+        return event;
+    }
+
+    @Test
+    void testIngest_DuplicateWebhookIgnored() {
+        // Given: lần gửi thứ hai vi phạm ràng buộc unique (OrderCode, Code)
+        WebhookData webhookData = mock(WebhookData.class);
+        doReturn(1001L).when(webhookData).getOrderCode();
+        when(webhookData.getCode()).thenReturn("00");
+        when(webhookData.getDesc()).thenReturn("success");
+        when(webhookEventRepository.saveAndFlush(any(PayOSWebhookEvent.class)))
+                .thenAnswer(inv -> inv.getArgument(0))
+                .thenThrow(new DataIntegrityViolationException("UX_PayOSWebhookEvents_OrderCode_Code"));
+
+        // When
+        boolean first = webhookQueue.ingest(webhookData, "{\"code\":\"00\"}");
+        boolean second = webhookQueue.ingest(webhookData, "{\"code\":\"00\"}");
+
+        // Then: chỉ ghi nhận, chưa áp vào payment trong lúc nhận
+        assertTrue(first);
+        assertFalse(second);
+        verifyNoInteractions(webhookService);
+        assertEquals(1.0, meterRegistry.counter("payos.webhooks.received").count());
+        assertEquals(1.0, meterRegistry.counter("payos.webhooks.duplicates").count());
+        System.out.println("✅ Test passed: PayOS webhook queue - Duplicate delivery ignored");
+    }
+
+    @Test
+    void testDispatch_AppliesClaimedEventsAndMarksProcessed() {
+        // Given: ba payment khác nhau tới hạn trong cùng một lượt
+        List<PayOSWebhookEvent> events = List.of(event(1, 1001, "00"), event(2, 1002, "00"), event(3, 1003, "01"));
+        when(webhookEventRepository.findDueIds(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(1L, 2L, 3L))
+                .thenReturn(List.of());
+        when(webhookEventRepository.findClaimed(anyString())).thenReturn(events);
+        when(webhookEventRepository.countByStatus(PayOSWebhookEvent.WebhookEventStatus.PENDING)).thenReturn(0L);
+
+        // When
+        webhookQueue.dispatch();
+
+        // Then
+        verify(webhookEventRepository).claim(eq(List.of(1L, 2L, 3L)), anyString(), any(LocalDateTime.class));
+        verify(webhookService).applyPayOSWebhook(1001L, "00", null);
+        verify(webhookService).applyPayOSWebhook(1002L, "00", null);
+        verify(webhookService).applyPayOSWebhook(1003L, "01", null);
+        verify(webhookEventRepository, times(3)).markProcessed(anyLong(), any(LocalDateTime.class));
+        assertEquals(3.0, meterRegistry.counter("payos.webhooks.processed").count());
+        assertEquals(3, meterRegistry.timer("payos.webhooks.latency").count());
+        System.out.println("✅ Test passed: PayOS webhook queue - Claimed events applied by worker pool");
+    }
+
+    @Test
+    void testProcess_FailureRetriedThenFailed() {
+        // Given: payment chưa thấy (vd. link chưa được gắn)
+        PayOSWebhookEvent event = event(1, 1001, "00");
+        doThrow(new RuntimeException("Không tìm thấy payment với order code: 1001"))
+                .when(webhookService).applyPayOSWebhook(anyLong(), anyString(), any());
+        when(webhookEventRepository.recordFailure(anyLong(), anyString(), any(), anyInt(), any(), any())).thenReturn(1);
+
+        // When / Then: lần đầu hẹn thử lại, ghi bằng UPDATE theo EventID và ClaimToken đang giữ
+        webhookQueue.process(event);
+        assertEquals(PayOSWebhookEvent.WebhookEventStatus.PENDING, event.getStatus());
+        assertEquals(1, event.getAttempts());
+        assertNull(event.getClaimToken());
+        assertTrue(event.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        verify(webhookEventRepository).recordFailure(eq(1L), eq("token"), eq(PayOSWebhookEvent.WebhookEventStatus.PENDING),
+                eq(1), eq(event.getNextAttemptAt()), contains("1001"));
+
+        // Hết số lần thử thì chuyển FAILED để replay
+        event.setClaimToken("token-2");
+        webhookQueue.process(event);
+        event.setClaimToken("token-3");
+        webhookQueue.process(event);
+        assertEquals(PayOSWebhookEvent.WebhookEventStatus.FAILED, event.getStatus());
+        verify(webhookEventRepository).recordFailure(eq(1L), eq("token-3"), eq(PayOSWebhookEvent.WebhookEventStatus.FAILED),
+                eq(3), any(), any());
+        verify(webhookEventRepository, never()).save(any());
+        verify(webhookEventRepository, never()).markProcessed(anyLong(), any());
+        assertEquals(1.0, meterRegistry.counter("payos.webhooks.failed").count());
+        System.out.println("✅ Test passed: PayOS webhook queue - Failed event retried then parked");
+    }
+
+    @Test
+    void testApplyPayOSWebhook_IdempotentForPaidPayment() {
+        // Given
+        Payment payment = new Payment();
+        payment.setPaymentId(55L);
+        payment.setStatus(Payment.PaymentStatus.PENDING);
+        PaymentRepository paymentRepository = mock(PaymentRepository.class);
+        when(paymentRepository.findByPayOSCode("1001")).thenReturn(Optional.of(payment));
+        DomainEventPublisher eventPublisher = mock(DomainEventPublisher.class);
+        WebhookService service = new WebhookService(paymentRepository, mock(PaymentLinkHistoryRepository.class), eventPublisher);
+
+        // When: cùng webhook được áp hai lần (replay), rồi một webhook lỗi tới muộn
+        service.applyPayOSWebhook(1001L, "00", "success");
+        service.applyPayOSWebhook(1001L, "00", "success");
+        service.applyPayOSWebhook(1001L, "01", "cancelled");
+
+        // Then
+        assertEquals(Payment.PaymentStatus.PAID, payment.getStatus());
+        verify(paymentRepository, times(1)).save(payment);
+        verify(eventPublisher, times(1)).publish(new DomainEvent.PaymentPaid(55L, null));
+        System.out.println("✅ Test passed: PayOS webhook - Applying twice has no extra effect");
+    }
+
+    @Test
+    void testApplyPayOSWebhook_CancelledLinkOfReplacedOrderCodeIgnored() {
+        // Given: payment đã chuyển sang link mới, không còn payment nào mang orderCode cũ
+        PaymentRepository paymentRepository = mock(PaymentRepository.class);
+        when(paymentRepository.findByPayOSCode(anyString())).thenReturn(Optional.empty());
+        WebhookService service = new WebhookService(paymentRepository, mock(PaymentLinkHistoryRepository.class),
+                mock(DomainEventPublisher.class));
+
+        // When: link cũ hết hạn hoặc bị hủy thì bỏ qua, không thử lại
+        assertDoesNotThrow(() -> service.applyPayOSWebhook(1001L, "EXPIRED", "Đối soát: link thanh toán EXPIRED"));
+        assertDoesNotThrow(() -> service.applyPayOSWebhook(1001L, "CANCELLED", "Đối soát: link thanh toán CANCELLED"));
+
+        // Then: thanh toán thành công trên orderCode lạ vẫn lỗi để được thử lại và xử lý tay
+        assertThrows(RuntimeException.class, () -> service.applyPayOSWebhook(1001L, "00", "success"));
+        verify(paymentRepository, never()).save(any());
+        System.out.println("✅ Test passed: PayOS webhook - Cancellation of a replaced order code ignored");
+    }
+
+    @Test
+    void testApplyPayOSWebhook_PaidOnSupersededOrderCodeResolvesToPayment() {
+        // Given: payment 55 đã chuyển từ link 1001 sang link 1002, PayOS vẫn nhận thanh toán trên link 1001
+        Payment payment = new Payment();
+        payment.setPaymentId(55L);
+        payment.setPayOSCode("1002");
+        payment.setStatus(Payment.PaymentStatus.PENDING);
+        PaymentRepository paymentRepository = mock(PaymentRepository.class);
+        when(paymentRepository.findByPayOSCode("1001")).thenReturn(Optional.empty());
+        when(paymentRepository.findById(55L)).thenReturn(Optional.of(payment));
+        PaymentLinkHistoryRepository historyRepository = mock(PaymentLinkHistoryRepository.class);
+        when(historyRepository.findById("1001")).thenReturn(Optional.of(
+                new PaymentLinkHistory("1001", 55L, "link-1", LocalDateTime.now().minusMinutes(20), null, null)));
+        when(historyRepository.close(eq("1001"), anyString(), any())).thenReturn(1, 0);
+        DomainEventPublisher eventPublisher = mock(DomainEventPublisher.class);
+        WebhookService service = new WebhookService(paymentRepository, historyRepository, eventPublisher);
+
+        // When: link cũ hết hạn thì payment không bị hủy vì đang dùng link mới
+        service.applyPayOSWebhook(1001L, "EXPIRED", "Đối soát: link thanh toán EXPIRED");
+        assertEquals(Payment.PaymentStatus.PENDING, payment.getStatus());
+
+        // Then: "00" cho orderCode cũ áp vào payment, replay không có tác dụng thêm
+        assertDoesNotThrow(() -> service.applyPayOSWebhook(1001L, "00", "success"));
+        assertDoesNotThrow(() -> service.applyPayOSWebhook(1001L, "00", "success"));
+        assertEquals(Payment.PaymentStatus.PAID, payment.getStatus());
+        assertEquals("PayOS", payment.getPaymentMethod());
+        verify(paymentRepository, times(1)).save(payment);
+        verify(historyRepository).close(eq("1001"), eq("EXPIRED"), any());
+        verify(historyRepository, times(2)).close(eq("1001"), eq("PAID"), any());
+        verify(eventPublisher, times(1)).publish(new DomainEvent.PaymentPaid(55L, null));
+        System.out.println("✅ Test passed: PayOS webhook - Payment on a superseded order code applied to its payment");
+    }
+}
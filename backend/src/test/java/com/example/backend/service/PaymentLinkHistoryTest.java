@@ -0,0 +1,87 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.PaymentDTO;
+import com.example.backend.model.PaymentLinkHistory;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the superseded PayOS link queries of PaymentLinkHistoryRepository, run against the H2 test database.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PaymentLinkHistoryTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 8, 0);
+    private static final LocalDateTime START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @Autowired
+    private PaymentLinkHistoryRepository paymentLinkHistoryRepository;
+
+    @BeforeEach
+    void setUp() {
+        paymentLinkHistoryRepository.deleteAllInBatch();
+    }
+
+    private void supersede(String orderCode, long paymentId, LocalDateTime replacedAt) {
+        paymentLinkHistoryRepository.saveAndFlush(new PaymentLinkHistory(orderCode, paymentId, "link-" + orderCode,
+                replacedAt, null, null));
+    }
+
+    private List<String> open(LocalDateTime afterReplacedAt, String afterOrderCode) {
+        return paymentLinkHistoryRepository.findOpenSuperseded(T0.plusHours(1), afterReplacedAt, afterOrderCode,
+                        PageRequest.of(0, 2)).stream()
+                .map(PaymentDTO.ReconcileCandidate::payOSCode)
+                .toList();
+    }
+
+    @Test
+    void testFindOpenSuperseded_KeysetSkipsClosedAndRecentLinks() {
+        // Given: hai link thay cùng lúc, một link đã đóng, một link vừa thay (chưa đủ tuổi)
+        supersede("3001", 1L, T0);
+        supersede("3002", 2L, T0);
+        supersede("3003", 3L, T0.plusMinutes(5));
+        supersede("3004", 4L, T0.plusMinutes(6));
+        supersede("3005", 5L, T0.plusHours(2));
+        assertEquals(1, paymentLinkHistoryRepository.close("3003", "EXPIRED", T0.plusMinutes(30)));
+
+        // When / Then: trang theo (ReplacedAt, OrderCode), bỏ link đã đóng và link chưa đủ tuổi
+        assertEquals(List.of("3001", "3002"), open(START, ""));
+        assertEquals(List.of("3004"), open(T0, "3002"));
+        assertEquals(List.of(), open(T0.plusMinutes(6), "3004"));
+        System.out.println("✅ Test passed: Payment link history - Keyset skips closed and recent links");
+    }
+
+    @Test
+    void testClose_FirstFinalStatusWins() {
+        // Given
+        supersede("3101", 1L, T0);
+
+        // When: đối soát và webhook cùng báo trạng thái cuối
+        int first = paymentLinkHistoryRepository.close("3101", "PAID", T0.plusMinutes(1));
+        int second = paymentLinkHistoryRepository.close("3101", "EXPIRED", T0.plusMinutes(2));
+
+        // Then
+        assertEquals(1, first);
+        assertEquals(0, second);
+        PaymentLinkHistory stored = paymentLinkHistoryRepository.findById("3101").orElseThrow();
+        assertEquals("PAID", stored.getFinalStatus());
+        assertEquals(1L, stored.getPaymentId());
+        System.out.println("✅ Test passed: Payment link history - First final status wins");
+    }
+}
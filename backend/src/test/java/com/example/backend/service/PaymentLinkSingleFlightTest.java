@@ -0,0 +1,198 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.PaymentDTO;
+import com.example.backend.mapper.PaymentMapper;
+import com.example.backend.model.Appointment;
+import com.example.backend.model.Payment;
+import com.example.backend.model.PaymentLinkHistory;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
+import com.example.backend.repository.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PaymentLinkSingleFlight and link reuse by LinkExpiresAt in PaymentService.
+ */
+class PaymentLinkSingleFlightTest {
+
+    private PaymentLinkSingleFlight paymentLinkSingleFlight;
+    private Appointment appointment;
+    private Payment payment;
+    private AppointmentRepository appointmentRepository;
+    private PaymentRepository paymentRepository;
+    private PaymentLinkHistoryRepository paymentLinkHistoryRepository;
+    private PayOSService payOSService;
+    private PaymentService paymentService;
+    private PaymentDTO.Create create;
+
+    @BeforeEach
+    void setUp() {
+        paymentLinkSingleFlight = new PaymentLinkSingleFlight();
+
+        // Payment PENDING của lịch hẹn 7
+        appointment = new Appointment();
+        appointment.setAppointmentId(7L);
+        appointment.setFee(new BigDecimal("150000"));
+        payment = new Payment();
+        payment.setPaymentId(55L);
+        payment.setAppointment(appointment);
+        payment.setAmount(appointment.getFee());
+        payment.setStatus(Payment.PaymentStatus.PENDING);
+
+        appointmentRepository = mock(AppointmentRepository.class);
+        when(appointmentRepository.findById(7L)).thenReturn(Optional.of(appointment));
+        paymentRepository = mock(PaymentRepository.class);
+        when(paymentRepository.findByAppointment_AppointmentId(7L)).thenReturn(List.of(payment));
+        when(paymentRepository.findById(55L)).thenReturn(Optional.of(payment));
+        when(paymentRepository.save(any(Payment.class))).thenAnswer(inv -> inv.getArgument(0));
+        AtomicInteger links = new AtomicInteger();
+        payOSService = mock(PayOSService.class);
+        when(payOSService.createPaymentLink(any())).thenAnswer(inv -> {
+            int n = links.incrementAndGet();
+            return new PayOSService.CreatedLink("link-" + n, String.valueOf(1000 + n),
+                    "https://pay.payos.vn/web/link-" + n, LocalDateTime.now().plusMinutes(15));
+        });
+        PaymentMapper paymentMapper = mock(PaymentMapper.class);
+        when(paymentMapper.toResponseDTO(any(Payment.class))).thenReturn(new PaymentDTO.Response());
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        paymentLinkHistoryRepository = mock(PaymentLinkHistoryRepository.class);
+        paymentService = new PaymentService(paymentRepository, appointmentRepository, payOSService,
+                paymentMapper, new TransactionTemplate(transactionManager), paymentLinkSingleFlight, paymentLinkHistoryRepository);
+
+        create = new PaymentDTO.Create();
+        create.setAppointmentId(7L);
+    }
+
+    @Test
+    void testCreatePayment_ReusesUnexpiredLink() {
+        // When: tải lại trang thanh toán ba lần
+        paymentService.createPayment(create);
+        paymentService.createPayment(create);
+        paymentService.createPayment(create);
+
+        // Then: chỉ một lời gọi PayOS, link và hạn link được lưu vào payment
+        verify(payOSService, times(1)).createPaymentLink(any());
+        assertEquals("1001", payment.getPayOSCode());
+        assertNotNull(payment.getLinkExpiresAt());
+
+        // Hủy payment thì tạo lại payment PENDING với link mới
+        paymentService.updatePaymentStatus(55L, Payment.PaymentStatus.CANCELLED);
+        paymentService.createPayment(create);
+        verify(payOSService, times(2)).createPaymentLink(any());
+        assertEquals("1002", payment.getPayOSCode());
+        verify(paymentLinkHistoryRepository).save(argThat(history -> history.getOrderCode().equals("1001")
+                && history.getPaymentId() == 55L && history.getClosedAt() == null));
+        System.out.println("✅ Test passed: Payment link - Unexpired link reused across retries");
+    }
+
+    @Test
+    void testCreatePayment_ExpiringLinkReplaced() {
+        // Given: link đang gắn với payment chỉ còn một phút
+        payment.setPayOSCode("999");
+        payment.setPayOSLink("https://pay.payos.vn/web/old");
+        payment.setLinkExpiresAt(LocalDateTime.now().plusMinutes(1));
+
+        // When
+        paymentService.createPayment(create);
+
+        // Then
+        verify(payOSService).createPaymentLink(any());
+        assertEquals("1001", payment.getPayOSCode());
+        assertTrue(payment.getLinkExpiresAt().isAfter(LocalDateTime.now().plusMinutes(10)));
+        // Link cũ vẫn có thể được thanh toán trên PayOS: orderCode cũ còn trỏ về payment
+        ArgumentCaptor<PaymentLinkHistory> history = ArgumentCaptor.forClass(PaymentLinkHistory.class);
+        verify(paymentLinkHistoryRepository).save(history.capture());
+        assertEquals("999", history.getValue().getOrderCode());
+        assertEquals(55L, history.getValue().getPaymentId());
+        System.out.println("✅ Test passed: Payment link - Link about to expire replaced");
+    }
+
+    @Test
+    void testCreatePayment_ConcurrentInsertReusesExistingPayment() {
+        // Given: chưa có payment, node khác INSERT trước nên INSERT của node này trùng UX_Payments_AppointmentID_Pending
+        when(paymentRepository.findByAppointment_AppointmentId(7L)).thenReturn(List.of(), List.of(payment));
+        when(paymentRepository.save(any(Payment.class)))
+                .thenThrow(new DataIntegrityViolationException("UX_Payments_AppointmentID_Pending"))
+                .thenAnswer(inv -> inv.getArgument(0));
+
+        // When
+        paymentService.createPayment(create);
+
+        // Then: giai đoạn 1 chạy lại và gắn link vào payment đã có
+        verify(paymentRepository, times(2)).findByAppointment_AppointmentId(7L);
+        verify(payOSService, times(1)).createPaymentLink(any());
+        assertEquals("1001", payment.getPayOSCode());
+        System.out.println("✅ Test passed: Payment link - Concurrent insert reused the existing payment");
+    }
+
+    @Test
+    void testCreateOnce_ConcurrentRequestsShareOneCreation() throws Exception {
+        // Given: lần tạo đầu tiên bị giữ lại cho tới khi mọi request đã tới
+        int requests = 8;
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        PaymentDTO.Response created = new PaymentDTO.Response();
+        ExecutorService callers = Executors.newFixedThreadPool(requests);
+        try {
+            List<Future<PaymentDTO.Response>> results = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                results.add(callers.submit(() -> paymentLinkSingleFlight.createOnce(7L, () -> {
+                    creations.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return created;
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            // Then
+            for (Future<PaymentDTO.Response> result : results) {
+                assertSame(created, result.get(2, TimeUnit.SECONDS));
+            }
+            assertEquals(1, creations.get());
+        } finally {
+            callers.shutdownNow();
+        }
+        System.out.println("✅ Test passed: Payment link - Concurrent requests share one creation");
+    }
+
+    @Test
+    void testCreateOnce_FailureNotCached() {
+        RuntimeException failure = new RuntimeException("Lỗi khi tạo thanh toán: PayOS 502");
+        assertSame(failure, assertThrows(RuntimeException.class,
+                () -> paymentLinkSingleFlight.createOnce(7L, () -> { throw failure; })));
+
+        // Lần sau chạy lại bình thường
+        PaymentDTO.Response response = new PaymentDTO.Response();
+        assertSame(response, paymentLinkSingleFlight.createOnce(7L, () -> response));
+        System.out.println("✅ Test passed: Payment link - Failed creation retried on next request");
+    }
+}
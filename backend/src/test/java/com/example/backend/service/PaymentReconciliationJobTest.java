@@ -0,0 +1,274 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.PaymentDTO;
+import com.example.backend.model.JobCheckpoint;
+import com.example.backend.repository.JobCheckpointRepository;
+import com.example.backend.repository.PaymentLinkHistoryRepository;
+import com.example.backend.repository.PaymentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import vn.payos.PayOS;
+import vn.payos.exception.BadRequestException;
+import vn.payos.exception.InternalServerException;
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkRequest;
+import vn.payos.model.v2.paymentRequests.CreatePaymentLinkResponse;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PaymentReconciliationJob paging, resume and PayOS back-off,
+ * run against a local PayOS stand-in.
+ */
+class PaymentReconciliationJobTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 8, 0);
+
+    private final Map<Long, String> payOSStatuses = new ConcurrentHashMap<>();
+    private final Map<Long, RuntimeException> payOSErrors = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private volatile boolean payOSDown;
+    private PaymentRepository paymentRepository;
+    private JobCheckpointRepository jobCheckpointRepository;
+    private PaymentLinkHistoryRepository paymentLinkHistoryRepository;
+    private PayOSWebhookQueue webhookQueue;
+    private PayOSService payOSService;
+    private PaymentReconciliationJob job;
+
+    // PayOS cục bộ: trạng thái link theo orderCode
+    private final PayOSGateway payOSStandIn = new PayOSGateway() {
+        @Override
+        public CreatePaymentLinkResponse createPaymentLink(CreatePaymentLinkRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPaymentStatus(long orderCode) {
+            lookups.incrementAndGet();
+            if (payOSDown) {
+                throw new InternalServerException("Service Unavailable", 503, null, null);
+            }
+            RuntimeException error = payOSErrors.get(orderCode);
+            if (error != null) {
+                throw error;
+            }
+            return payOSStatuses.getOrDefault(orderCode, "PENDING");
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository = mock(PaymentRepository.class);
+        jobCheckpointRepository = mock(JobCheckpointRepository.class);
+        webhookQueue = mock(PayOSWebhookQueue.class);
+        paymentLinkHistoryRepository = mock(PaymentLinkHistoryRepository.class);
+
+        payOSService = new PayOSService(mock(PayOS.class), payOSStandIn, OrderCodeGeneratorTest.generator(1));
+        ReflectionTestUtils.setField(payOSService, "callTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(payOSService, "maxConcurrentCalls", 10);
+        ReflectionTestUtils.setField(payOSService, "bulkheadMaxWaitMs", 100L);
+        ReflectionTestUtils.setField(payOSService, "failureThreshold", 1);
+        ReflectionTestUtils.setField(payOSService, "openMs", 60_000L);
+        payOSService.init();
+
+        job = new PaymentReconciliationJob(paymentRepository, jobCheckpointRepository, payOSService, webhookQueue,
+                paymentLinkHistoryRepository);
+        ReflectionTestUtils.setField(job, "minAgeMs", 900_000L);
+        ReflectionTestUtils.setField(job, "batchSize", 3);
+        ReflectionTestUtils.setField(job, "pagesPerRun", 10);
+        ReflectionTestUtils.setField(job, "concurrency", 1);
+        ReflectionTestUtils.setField(job, "requestsPerSecond", 1000);
+        ReflectionTestUtils.setField(job, "leaseMs", 60_000L);
+        job.init();
+
+        when(jobCheckpointRepository.existsById(PaymentReconciliationJob.JOB_NAME)).thenReturn(true);
+        when(jobCheckpointRepository.acquireLease(eq(PaymentReconciliationJob.JOB_NAME), anyString(), any(), any())).thenReturn(1);
+        when(jobCheckpointRepository.saveProgress(anyString(), anyString(), any(), anyLong(), any(), any())).thenReturn(1);
+        when(jobCheckpointRepository.renewLease(anyString(), anyString(), any(), any())).thenReturn(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        job.shutdown();
+        payOSService.shutdown();
+    }
+
+    private void checkpointAt(LocalDateTime createdAt, Long paymentId) {
+        JobCheckpoint checkpoint = new JobCheckpoint(PaymentReconciliationJob.JOB_NAME);
+        checkpoint.setCursorCreatedAt(createdAt);
+        checkpoint.setCursorId(paymentId);
+        when(jobCheckpointRepository.findById(PaymentReconciliationJob.JOB_NAME)).thenReturn(Optional.of(checkpoint));
+    }
+
+    private static PaymentDTO.ReconcileCandidate candidate(long paymentId, long orderCode) {
+        return new PaymentDTO.ReconcileCandidate(paymentId, String.valueOf(orderCode), T0.plusMinutes(paymentId));
+    }
+
+    @Test
+    void testRun_ResumesFromCheckpointAndQueuesFinalStatuses() {
+        // Given: lần chạy trước dừng sau payment 10
+        checkpointAt(T0.plusMinutes(10), 10L);
+        payOSStatuses.put(1011L, "PAID");
+        payOSStatuses.put(1012L, "EXPIRED");
+        when(paymentRepository.findReconcileCandidates(any(), eq(T0.plusMinutes(10)), eq(10L), any()))
+                .thenReturn(List.of(candidate(11, 1011), candidate(12, 1012), candidate(13, 1013)));
+        when(paymentRepository.findReconcileCandidates(any(), eq(T0.plusMinutes(13)), eq(13L), any()))
+                .thenReturn(List.of());
+
+        // When
+        PaymentReconciliationJob.Result result = job.run();
+
+        // Then: trạng thái cuối đi qua hàng đợi webhook, link còn PENDING giữ nguyên
+        verify(webhookQueue).enqueue(eq(1011L), eq("00"), anyString(), anyString());
+        verify(webhookQueue).enqueue(eq(1012L), eq("EXPIRED"), anyString(), anyString());
+        verify(webhookQueue, never()).enqueue(eq(1013L), anyString(), anyString(), anyString());
+        verify(jobCheckpointRepository).saveProgress(eq(PaymentReconciliationJob.JOB_NAME), anyString(),
+                eq(T0.plusMinutes(13)), eq(13L), any(), any());
+        verify(jobCheckpointRepository).markCompleted(eq(PaymentReconciliationJob.JOB_NAME), anyString(), any());
+        verify(jobCheckpointRepository).releaseLease(eq(PaymentReconciliationJob.JOB_NAME), anyString());
+        assertEquals(new PaymentReconciliationJob.Result(3, 1, 1, 1, 0, true), result);
+        System.out.println("✅ Test passed: Payment reconciliation - Resumed from checkpoint, final statuses queued");
+    }
+
+    @Test
+    void testRun_SkipsWhenAnotherNodeHoldsLease() {
+        when(jobCheckpointRepository.acquireLease(anyString(), anyString(), any(), any())).thenReturn(0);
+
+        assertNull(job.run());
+
+        verifyNoInteractions(paymentRepository);
+        assertEquals(0, lookups.get());
+        System.out.println("✅ Test passed: Payment reconciliation - Single runner across nodes");
+    }
+
+    @Test
+    void testRun_KeepsCursorWhenPayOSRejects() {
+        // Given: PayOS lỗi, breaker mở sau lỗi đầu tiên
+        checkpointAt(null, null);
+        payOSDown = true;
+        when(paymentRepository.findReconcileCandidates(any(), any(), anyLong(), any()))
+                .thenReturn(List.of(candidate(1, 1001), candidate(2, 1002), candidate(3, 1003)));
+
+        // When
+        PaymentReconciliationJob.Result result = job.run();
+
+        // Then: một lời gọi thật, phần còn lại bị breaker chặn; cursor không tiến để lượt sau hỏi lại
+        assertEquals(1, lookups.get());
+        assertFalse(result.finished());
+        assertEquals(1, result.errors());
+        verify(jobCheckpointRepository, never()).saveProgress(anyString(), anyString(), any(), anyLong(), any(), any());
+        verifyNoInteractions(webhookQueue);
+        System.out.println("✅ Test passed: Payment reconciliation - Cursor kept while PayOS is unavailable");
+    }
+
+    @Test
+    void testRun_KeepsCursorOnTransientLookupError() {
+        // Given: breaker chưa mở, một lookup trong trang gặp 502
+        ReflectionTestUtils.setField(payOSService, "failureThreshold", 10);
+        payOSService.init();
+        checkpointAt(null, null);
+        payOSStatuses.put(1001L, "PAID");
+        payOSErrors.put(1002L, new InternalServerException("Bad Gateway", 502, null, null));
+        when(paymentRepository.findReconcileCandidates(any(), any(), anyLong(), any()))
+                .thenReturn(List.of(candidate(1, 1001), candidate(2, 1002), candidate(3, 1003)));
+
+        // When
+        PaymentReconciliationJob.Result result = job.run();
+
+        // Then: kết quả đã có vẫn được ghi, nhưng cursor không vượt qua trang có lỗi tạm thời
+        verify(webhookQueue).enqueue(eq(1001L), eq("00"), anyString(), anyString());
+        assertEquals(1, result.errors());
+        assertFalse(result.finished());
+        verify(jobCheckpointRepository, never()).saveProgress(anyString(), anyString(), any(), anyLong(), any(), any());
+        System.out.println("✅ Test passed: Payment reconciliation - Cursor kept after a transient lookup error");
+    }
+
+    @Test
+    void testRun_AdvancesPastRejectedOrderCode() {
+        // Given: PayOS trả 4xx cho một orderCode (lỗi không tự hết khi hỏi lại)
+        checkpointAt(null, null);
+        payOSErrors.put(1002L, new BadRequestException("Đơn thanh toán không tồn tại", 400, "101", null));
+        when(paymentRepository.findReconcileCandidates(any(), any(), eq(0L), any()))
+                .thenReturn(List.of(candidate(1, 1001), candidate(2, 1002), candidate(3, 1003)));
+        when(paymentRepository.findReconcileCandidates(any(), eq(T0.plusMinutes(3)), eq(3L), any()))
+                .thenReturn(List.of());
+
+        // When
+        PaymentReconciliationJob.Result result = job.run();
+
+        // Then: lỗi được đếm, trang vẫn được vượt qua và breaker không mở
+        assertEquals(new PaymentReconciliationJob.Result(2, 0, 0, 2, 1, true), result);
+        verify(jobCheckpointRepository).saveProgress(eq(PaymentReconciliationJob.JOB_NAME), anyString(),
+                eq(T0.plusMinutes(3)), eq(3L), any(), any());
+        assertEquals(PayOSService.CircuitBreaker.State.CLOSED, payOSService.circuitState());
+        System.out.println("✅ Test passed: Payment reconciliation - Cursor advanced past a rejected order code");
+    }
+
+    @Test
+    void testRun_PollsSupersededLinksUntilFinal() {
+        // Given: hết payment PENDING; link cũ 2001 được trả tiền, 2002 hết hạn, 2003 PayOS báo không tồn tại
+        checkpointAt(null, null);
+        when(paymentRepository.findReconcileCandidates(any(), any(), anyLong(), any())).thenReturn(List.of());
+        payOSStatuses.put(2001L, "PAID");
+        payOSStatuses.put(2002L, "EXPIRED");
+        payOSErrors.put(2003L, new BadRequestException("Đơn thanh toán không tồn tại", 400, "101", null));
+        when(paymentLinkHistoryRepository.findOpenSuperseded(any(), any(), eq(""), any()))
+                .thenReturn(List.of(candidate(21, 2001), candidate(22, 2002), candidate(23, 2003)));
+        when(paymentLinkHistoryRepository.findOpenSuperseded(any(), eq(T0.plusMinutes(23)), eq("2003"), any()))
+                .thenReturn(List.of());
+
+        // When
+        PaymentReconciliationJob.Result result = job.run();
+
+        // Then: thanh toán trên link cũ đi qua hàng đợi webhook như link hiện tại
+        verify(webhookQueue).enqueue(eq(2001L), eq("00"), anyString(), anyString());
+        verify(webhookQueue).enqueue(eq(2002L), eq("EXPIRED"), anyString(), anyString());
+        verify(paymentLinkHistoryRepository).close(eq("2003"), eq("LOOKUP_FAILED"), any());
+        verify(paymentLinkHistoryRepository, never()).close(eq("2001"), anyString(), any());
+        verify(jobCheckpointRepository).renewLease(eq(PaymentReconciliationJob.JOB_NAME), anyString(), any(), any());
+        assertEquals(new PaymentReconciliationJob.Result(2, 1, 1, 0, 1, true), result);
+        System.out.println("✅ Test passed: Payment reconciliation - Superseded links polled until final");
+    }
+
+    @Test
+    void testRun_SkipsSupersededLinksWhilePaused() {
+        // Given: trang payment hiện tại gặp PayOS lỗi
+        checkpointAt(null, null);
+        payOSDown = true;
+        when(paymentRepository.findReconcileCandidates(any(), any(), anyLong(), any()))
+                .thenReturn(List.of(candidate(1, 1001)));
+
+        // When
+        job.run();
+
+        // Then: không hỏi tiếp link cũ trong lượt này
+        verifyNoInteractions(paymentLinkHistoryRepository);
+        System.out.println("✅ Test passed: Payment reconciliation - Superseded links skipped while PayOS is unavailable");
+    }
+
+    @Test
+    void testRatePacer_SpacesCalls() throws Exception {
+        PaymentReconciliationJob.RatePacer pacer = new PaymentReconciliationJob.RatePacer(50);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            pacer.acquire();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 11 lời gọi ở 50/giây cần ít nhất 10 khoảng 20 ms
+        assertTrue(elapsedMs >= 190, "Mất " + elapsedMs + " ms");
+        System.out.println("✅ Test passed: Payment reconciliation - Rate pacer spaced 11 calls over " + elapsedMs + " ms");
+    }
+}
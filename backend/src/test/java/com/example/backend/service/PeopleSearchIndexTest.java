@@ -0,0 +1,293 @@
+package com.example.backend.service;
+
+import com.example.backend.event.ClusterEvent;
+import com.example.backend.model.User;
+import com.example.backend.repository.DoctorRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.RoleRepository;
+import com.example.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PeopleSearchIndex.
+ *
+ * The benchmark compares the index with a full scan doing what the LIKE query of
+ * UserRepository.findByNameContainingWithRoleInfo does (lower-case substring of first name, last name
+ * and full name over every row). It is opt-in: run with -Dsearch.benchmark.users=1000000 (tag "benchmark").
+ */
+class PeopleSearchIndexTest {
+
+    private static final String[] LAST_NAMES = {"Nguyễn", "Trần", "Lê", "Phạm", "Hoàng", "Huỳnh", "Phan", "Vũ", "Võ", "Đặng", "Bùi", "Đỗ"};
+    private static final String[] MIDDLE_NAMES = {"Văn", "Thị", "Hữu", "Đức", "Minh", "Thanh", "Quốc", "Ngọc"};
+    private static final String[] GIVEN_NAMES = {"An", "Bình", "Cường", "Dũng", "Hà", "Hải", "Hương", "Khánh", "Lan", "Long", "Mai", "Nam", "Phúc", "Quân", "Sơn", "Tâm", "Thảo", "Trang", "Tuấn", "Vy"};
+    private static final String[] SPECIALTIES = {"Tim mạch", "Nhi khoa", "Da liễu", "Thần kinh", "Răng hàm mặt"};
+
+    private UserRepository userRepository;
+    private SharedDbBrokerRelay brokerRelay;
+    private PeopleSearchIndex index;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        brokerRelay = mock(SharedDbBrokerRelay.class);
+        ObjectProvider<SharedDbBrokerRelay> relayProvider = mock(ObjectProvider.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<SharedDbBrokerRelay>>getArgument(0).accept(brokerRelay);
+            return null;
+        }).when(relayProvider).ifAvailable(any());
+        index = new PeopleSearchIndex(userRepository, relayProvider);
+        ReflectionTestUtils.setField(index, "enabled", true);
+    }
+
+    // Chờ việc nạp lại chạy trên virtual thread của index
+    private void awaitSearch(PeopleSearchIndex.Kind kind, String keyword, List<Long> expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!expected.equals(index.search(kind, keyword).orElseThrow()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, index.search(kind, keyword).orElseThrow());
+    }
+
+    private static PeopleSearchIndex.Row user(long id, String firstName, String lastName, String email) {
+        return new PeopleSearchIndex.Row(id, firstName, lastName, email, "0900" + id, true, null, false, null, id);
+    }
+
+    private static PeopleSearchIndex.Row doctor(long id, long doctorId, String firstName, String lastName,
+                                                String specialty, boolean active) {
+        return new PeopleSearchIndex.Row(id, firstName, lastName, "bs" + id + "@clinic.vn", null, true,
+                doctorId, active, specialty, null);
+    }
+
+    @Test
+    void testFold_RemovesVietnameseDiacritics() {
+        assertEquals("nguyen duc anh", PeopleSearchIndex.fold("Nguyễn Đức Ánh"));
+        assertEquals("tran thi ha", PeopleSearchIndex.fold("  TRẦN Thị Hà "));
+        assertEquals("", PeopleSearchIndex.fold(null));
+        System.out.println("✅ Test passed: Search index - Vietnamese accents folded");
+    }
+
+    @Test
+    void testSearch_MatchesWithoutDiacriticsAndRanksNameMatchesFirst() {
+        // Given
+        index.load(List.of(
+                user(1, "Văn Nguyên", "Trần", "tran@test.com"),
+                user(2, "Nguyễn", "Văn An", "an@test.com"),
+                user(3, "Lan", "Phạm", "nguyen.lan@test.com"),
+                user(4, "Hà", "Lê", "ha@test.com")));
+
+        // When
+        List<Long> ids = index.search(PeopleSearchIndex.Kind.USER, "nguyen").orElseThrow();
+
+        // Then: họ tên bắt đầu bằng từ khóa trước, khớp email sau cùng
+        assertEquals(List.of(2L, 1L, 3L), ids);
+        assertEquals(List.of(2L, 1L), index.search(PeopleSearchIndex.Kind.USER, "Nguyễn Văn").orElseThrow());
+        // "ha" khớp chuỗi con như LIKE: đầu họ tên trước, "Phạm" xếp sau
+        assertEquals(List.of(4L, 3L), index.search(PeopleSearchIndex.Kind.USER, "ha").orElseThrow());
+        assertEquals(List.of(), index.search(PeopleSearchIndex.Kind.USER, "xyz").orElseThrow());
+        System.out.println("✅ Test passed: Search index - Accent-insensitive matches ranked by name");
+    }
+
+    @Test
+    void testSearch_DoctorFilterSpecialtyAndUpdates() {
+        // Given
+        index.load(List.of(
+                doctor(1, 10, "Minh", "Hoàng", "Tim mạch", true),
+                doctor(2, 20, "Minh", "Phan", "Nhi khoa", false),
+                user(3, "Minh", "Vũ", "minh@test.com")));
+
+        // Then
+        assertEquals(List.of(10L), index.search(PeopleSearchIndex.Kind.DOCTOR, "minh").orElseThrow());
+        assertEquals(List.of(10L), index.search(PeopleSearchIndex.Kind.DOCTOR, "tim mach").orElseThrow());
+        assertEquals(List.of(3L), index.search(PeopleSearchIndex.Kind.PATIENT, "minh").orElseThrow());
+
+        // When: đổi tên, xóa user
+        index.apply(1L, doctor(1, 10, "Khánh", "Hoàng", "Tim mạch", true));
+        index.apply(3L, null);
+
+        // Then
+        assertEquals(List.of(), index.search(PeopleSearchIndex.Kind.DOCTOR, "minh").orElseThrow());
+        assertEquals(List.of(10L), index.search(PeopleSearchIndex.Kind.DOCTOR, "khanh").orElseThrow());
+        assertEquals(List.of(), index.search(PeopleSearchIndex.Kind.USER, "vu").orElseThrow());
+        System.out.println("✅ Test passed: Search index - Doctor filter, specialty search and updates");
+    }
+
+    @Test
+    void testSearch_ShortKeywordMatchesAnywhereInWord() {
+        // Given
+        index.load(List.of(
+                user(1, "Huỳnh", "Lê", "a@test.com"),
+                user(2, "Uyên", "Trần", "b@test.com"),
+                user(3, "Nam", "Võ", "c@test.com")));
+
+        // Then: từ khóa 1-2 ký tự khớp cả giữa từ như LIKE '%kw%', không chỉ đầu từ
+        assertEquals(List.of(2L, 1L), index.search(PeopleSearchIndex.Kind.USER, "uy").orElseThrow());
+        assertEquals(List.of(1L), index.search(PeopleSearchIndex.Kind.USER, "nh").orElseThrow());
+        assertEquals(List.of(3L, 1L, 2L), index.search(PeopleSearchIndex.Kind.USER, "n").orElseThrow());
+        System.out.println("✅ Test passed: Search index - Short keywords match substrings");
+    }
+
+    @Test
+    void testSearch_ReturnsEveryMatch() {
+        // Given
+        List<PeopleSearchIndex.Row> rows = new ArrayList<>();
+        for (long id = 1; id <= 250; id++) {
+            rows.add(user(id, "Minh", "Trần", "minh" + id + "@test.com"));
+        }
+        index.load(rows);
+
+        // Then: không cắt bớt kết quả, giống truy vấn LIKE
+        assertEquals(250, index.search(PeopleSearchIndex.Kind.USER, "minh").orElseThrow().size());
+        System.out.println("✅ Test passed: Search index - All matches returned without a cap");
+    }
+
+    @Test
+    void testSearch_MoreMatchesThanSqlServerParameterLimitLoadedInChunks() {
+        // Given: 2500 user khớp "an", vượt giới hạn 2100 tham số của SQL Server
+        List<PeopleSearchIndex.Row> rows = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            rows.add(user(id, "An", "Trần", "an" + id + "@test.com"));
+        }
+        index.load(rows);
+        List<Integer> chunkSizes = new ArrayList<>();
+        when(userRepository.findByIdInWithRoleInfo(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            chunkSizes.add(ids.size());
+            return ids.stream().map(id -> {
+                User u = new User();
+                u.setId(id);
+                return u;
+            }).toList();
+        });
+        UserService userService = new UserService(userRepository, mock(RoleRepository.class),
+                mock(DoctorRepository.class), mock(PatientRepository.class), mock(PasswordEncoder.class),
+                index, mock(BlockIdAllocator.class), mock(BatchLoader.class));
+
+        // When
+        List<User> users = userService.getUsersByNameWithRoleInfo("an");
+
+        // Then: đủ 2500 user theo thứ tự xếp hạng, mỗi truy vấn IN không quá 1000 ID
+        assertEquals(index.search(PeopleSearchIndex.Kind.USER, "an").orElseThrow(),
+                users.stream().map(User::getId).toList());
+        assertEquals(List.of(1000, 1000, 500), chunkSizes);
+        System.out.println("✅ Test passed: Search index - 2500 matches loaded in IN chunks under the parameter limit");
+    }
+
+    @Test
+    void testReindexUser_NotifiesOtherNodes() {
+        // When: không có transaction nên chạy ngay
+        index.reindexUser(7L);
+        index.removeUser(8L);
+
+        // Then
+        verify(brokerRelay).publishInternal(PeopleSearchIndex.CLUSTER_TOPIC, "7");
+        verify(brokerRelay).publishInternal(PeopleSearchIndex.CLUSTER_TOPIC, "8");
+        System.out.println("✅ Test passed: Search index - Local changes published to other nodes");
+    }
+
+    @Test
+    void testClusterEvent_ReloadsUserChangedOnAnotherNode() throws InterruptedException {
+        // Given: node này còn tên cũ, node khác vừa đổi tên user 5 và xóa user 6
+        index.load(List.of(user(5, "Minh", "Vũ", "vu@test.com"), user(6, "Lan", "Đỗ", "do@test.com")));
+        when(userRepository.findSearchRowsByUserId(5L)).thenReturn(List.<Object[]>of(new Object[] {
+                5L, "Khánh", "Vũ", "vu@test.com", "09005", User.UserStatus.ACTIVE, null, null, null, 5L}));
+        when(userRepository.findSearchRowsByUserId(6L)).thenReturn(List.of());
+
+        // When
+        index.onClusterEvent(new ClusterEvent(PeopleSearchIndex.CLUSTER_TOPIC, "5"));
+        index.onClusterEvent(new ClusterEvent(PeopleSearchIndex.CLUSTER_TOPIC, "6"));
+        index.onClusterEvent(new ClusterEvent("other/topic", "5"));
+
+        // Then
+        awaitSearch(PeopleSearchIndex.Kind.USER, "khanh", List.of(5L));
+        awaitSearch(PeopleSearchIndex.Kind.USER, "lan", List.of());
+        assertEquals(List.of(), index.search(PeopleSearchIndex.Kind.USER, "minh").orElseThrow());
+        verify(brokerRelay, never()).publishInternal(any(), any());
+        System.out.println("✅ Test passed: Search index - Cluster event reloads users changed on another node");
+    }
+
+    @Test
+    void testSearch_NotReadyOrBlankFallsBack() {
+        assertTrue(index.search(PeopleSearchIndex.Kind.USER, "an").isEmpty(), "Chưa dựng index thì để service dùng LIKE");
+        index.load(List.of());
+        assertTrue(index.search(PeopleSearchIndex.Kind.USER, "  ").isEmpty());
+        System.out.println("✅ Test passed: Search index - Falls back when not ready or keyword blank");
+    }
+
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "search.benchmark.users", matches = "\\d+")
+    void testBenchmark_BuildAndQueryLatency() {
+        int users = Integer.getInteger("search.benchmark.users");
+        Random random = new Random(42);
+        List<PeopleSearchIndex.Row> rows = new ArrayList<>(users);
+        for (long id = 1; id <= users; id++) {
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String firstName = MIDDLE_NAMES[random.nextInt(MIDDLE_NAMES.length)] + " "
+                    + GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)];
+            boolean isDoctor = random.nextInt(50) == 0;
+            rows.add(new PeopleSearchIndex.Row(id, firstName, lastName, "user" + id + "@mail.vn",
+                    "09" + (10_000_000 + id), true, isDoctor ? id : null, isDoctor,
+                    isDoctor ? SPECIALTIES[random.nextInt(SPECIALTIES.length)] : null, isDoctor ? null : id));
+        }
+
+        long buildStart = System.nanoTime();
+        index.load(rows);
+        double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+        String[] queries = {"Thảo", "hoang tuan", "Đức Phúc", "0910001234", "user4242", "trang", "an"};
+        int rounds = 20;
+
+        // Baseline: điều kiện WHERE của findByNameContainingWithRoleInfo chạy trên mọi dòng
+        long likeMatches = 0;
+        long likeStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String query : queries) {
+                String keyword = query.toLowerCase(Locale.ROOT);
+                for (PeopleSearchIndex.Row row : rows) {
+                    String fullName = (row.firstName() + " " + row.lastName()).toLowerCase(Locale.ROOT);
+                    if (row.firstName().toLowerCase(Locale.ROOT).contains(keyword)
+                            || row.lastName().toLowerCase(Locale.ROOT).contains(keyword)
+                            || fullName.contains(keyword)) {
+                        likeMatches++;
+                    }
+                }
+            }
+        }
+        double likeMsPerQuery = (System.nanoTime() - likeStart) / 1e6 / (rounds * queries.length);
+
+        long indexMatches = 0;
+        long indexStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String query : queries) {
+                indexMatches += index.search(PeopleSearchIndex.Kind.USER, query).orElseThrow().size();
+            }
+        }
+        double indexMsPerQuery = (System.nanoTime() - indexStart) / 1e6 / (rounds * queries.length);
+
+        assertTrue(indexMatches > 0);
+        assertFalse(index.search(PeopleSearchIndex.Kind.USER, "hoang tuan").orElseThrow().isEmpty(),
+                "Từ khóa không dấu phải tìm được tên có dấu");
+        // Số kết quả khác nhau: LIKE phân biệt dấu và chỉ xét họ tên, index bỏ dấu và xét cả email/số điện thoại
+        System.out.printf("✅ Test passed: Search benchmark %d users - build %.0f ms, LIKE scan %.2f ms/query (%d hits), index %.3f ms/query (%d hits)%n",
+                users, buildMs, likeMsPerQuery, likeMatches / rounds, indexMsPerQuery, indexMatches / rounds);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RankedIds.
+ */
+class RankedIdsTest {
+
+    @Test
+    void testInRankOrder_KeepsRankedIdOrder() {
+        List<String> ordered = RankedIds.inRankOrder(List.of(3L, 1L, 4L, 2L),
+                List.of("1", "2", "3"), Long::valueOf);
+        assertEquals(List.of("3", "1", "2"), ordered, "ID không còn entity thì bỏ qua");
+        System.out.println("✅ Test passed: Ranked ids - Hydrated entities follow rank order");
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.backend.service;
+
+import com.example.backend.model.Appointment;
+import com.example.backend.model.Department;
+import com.example.backend.model.Doctor;
+import com.example.backend.model.Patient;
+import com.example.backend.model.Role;
+import com.example.backend.model.User;
+import com.example.backend.repository.AppointmentRepository;
+import com.example.backend.repository.DepartmentRepository;
+import com.example.backend.repository.DoctorRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.RoleRepository;
+import com.example.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for ReminderScheduler's time window and ReminderSentAt marker,
+ * run against the H2 test database.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReminderSchedulerTest {
+
+    private static final AtomicLong IDS = new AtomicLong(20_000);
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private DoctorRepository doctorRepository;
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private EmailService emailService;
+    private ReminderScheduler reminderScheduler;
+    private Role role;
+    private Doctor doctor;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        emailService = mock(EmailService.class);
+        reminderScheduler = new ReminderScheduler(appointmentRepository, emailService);
+        ReflectionTestUtils.setField(reminderScheduler, "windowMinutes", 30);
+        ReflectionTestUtils.setField(reminderScheduler, "batchSize", 2);
+        ReflectionTestUtils.setField(reminderScheduler, "shardCount", 1);
+        ReflectionTestUtils.setField(reminderScheduler, "shardIndex", 0);
+
+        role = transactionTemplate.execute(status -> {
+            Role r = new Role();
+            r.setName("ROLE_" + UUID.randomUUID());
+            return roleRepository.save(r);
+        });
+        doctor = transactionTemplate.execute(status -> {
+            Department department = new Department();
+            department.setDepartmentName("Nội tổng quát");
+            Doctor d = new Doctor();
+            d.setDoctorId(IDS.incrementAndGet());
+            d.setUser(user("doctor"));
+            d.setDepartment(departmentRepository.save(department));
+            return doctorRepository.save(d);
+        });
+    }
+
+    private User user(String prefix) {
+        User u = new User();
+        u.setEmail(prefix + "-" + UUID.randomUUID() + "@test.com");
+        u.setPasswordHash("hash-value");
+        u.setFirstName("Test");
+        u.setLastName(prefix);
+        u.setRole(role);
+        return userRepository.save(u);
+    }
+
+    // Appointment đã có bệnh nhân, bắt đầu sau minutesFromNow phút
+    private Appointment booked(long minutesFromNow) {
+        return transactionTemplate.execute(status -> {
+            Patient p = new Patient();
+            p.setPatientId(IDS.incrementAndGet());
+            p.setUser(user("patient"));
+            Appointment a = new Appointment();
+            a.setDoctor(doctor);
+            a.setPatient(patientRepository.save(p));
+            a.setStartTime(LocalDateTime.now().plusMinutes(minutesFromNow));
+            a.setEndTime(a.getStartTime().plusMinutes(30));
+            Appointment saved = appointmentRepository.save(a);
+            saved.getPatient().getUser().getEmail();
+            return saved;
+        });
+    }
+
+    private static String emailOf(Appointment appointment) {
+        return appointment.getPatient().getUser().getEmail();
+    }
+
+    private LocalDateTime reminderSentAt(Appointment appointment) {
+        return appointmentRepository.findById(appointment.getAppointmentId()).orElseThrow().getReminderSentAt();
+    }
+
+    @Test
+    void testSendUpcomingReminders_OnlyWithinWindowAndOnlyOnce() {
+        // Given: cửa sổ 30 phút, batch 2 để đi qua nhiều trang
+        Appointment past = booked(-5);
+        Appointment soon1 = booked(5);
+        Appointment soon2 = booked(10);
+        Appointment soon3 = booked(20);
+        Appointment later = booked(45);
+
+        // When: chạy hai lượt liên tiếp
+        reminderScheduler.sendUpcomingReminders();
+        reminderScheduler.sendUpcomingReminders();
+
+        // Then: mỗi lịch trong cửa sổ được nhắc đúng một lần, lịch ngoài cửa sổ không bị đụng tới
+        for (Appointment due : new Appointment[] {soon1, soon2, soon3}) {
+            verify(emailService, times(1)).sendSimpleEmail(eq(emailOf(due)), anyString(), anyString());
+            assertNotNull(reminderSentAt(due));
+        }
+        for (Appointment notDue : new Appointment[] {past, later}) {
+            verify(emailService, never()).sendSimpleEmail(eq(emailOf(notDue)), anyString(), anyString());
+            assertNull(reminderSentAt(notDue));
+        }
+        System.out.println("✅ Test passed: Reminder - Only appointments inside the window reminded, once each");
+    }
+
+    @Test
+    void testSendUpcomingReminders_FailedSendReleasesMarker() {
+        // Given
+        Appointment due = booked(10);
+        doThrow(new RuntimeException("SMTP down"))
+                .when(emailService).sendSimpleEmail(eq(emailOf(due)), anyString(), anyString());
+
+        // When
+        reminderScheduler.sendUpcomingReminders();
+
+        // Then: trả lại để lượt sau gửi lại
+        assertNull(reminderSentAt(due));
+        System.out.println("✅ Test passed: Reminder - Failed send cleared ReminderSentAt for retry");
+    }
+
+    @Test
+    void testEntitySave_DoesNotOverwriteReminderMarker() {
+        // Given: bản appointment đọc trước khi lượt nhắc chạy
+        Appointment due = booked(10);
+        Appointment stale = appointmentRepository.findById(due.getAppointmentId()).orElseThrow();
+        reminderScheduler.sendUpcomingReminders();
+        LocalDateTime sentAt = reminderSentAt(due);
+        assertNotNull(sentAt);
+
+        // When: update lưu cả entity đọc từ trước
+        stale.setNotes("Đổi ghi chú");
+        appointmentRepository.save(stale);
+
+        // Then
+        Appointment reloaded = appointmentRepository.findById(due.getAppointmentId()).orElseThrow();
+        assertEquals("Đổi ghi chú", reloaded.getNotes());
+        assertEquals(sentAt, reloaded.getReminderSentAt());
+        System.out.println("✅ Test passed: Reminder - Entity save kept ReminderSentAt written by the bulk UPDATE");
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.ReviewDTO;
+import com.example.backend.mapper.ReviewMapper;
+import com.example.backend.model.Doctor;
+import com.example.backend.model.Patient;
+import com.example.backend.model.Review;
+import com.example.backend.repository.DoctorRepository;
+import com.example.backend.repository.PatientRepository;
+import com.example.backend.repository.ReviewRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the doctor rating aggregate maintained by ReviewService.
+ */
+@ExtendWith(MockitoExtension.class)
+class ReviewServiceMockitoTest {
+
+    @Mock
+    private ReviewRepository reviewRepository;
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private DoctorRepository doctorRepository;
+    @Spy
+    private ReviewMapper reviewMapper = new ReviewMapper();
+
+    @InjectMocks
+    private ReviewService reviewService;
+
+    private Doctor doctor;
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        doctor = new Doctor();
+        doctor.setDoctorId(7L);
+        patient = new Patient();
+        patient.setPatientId(3L);
+    }
+
+    private Review review(int rating, String status) {
+        Review review = new Review();
+        review.setReviewId(1L);
+        review.setDoctor(doctor);
+        review.setPatient(patient);
+        review.setRating(rating);
+        review.setStatus(status);
+        return review;
+    }
+
+    @Test
+    void testCreate_AddsRatingToAggregate() {
+        // Given
+        when(patientRepository.findById(3L)).thenReturn(Optional.of(patient));
+        when(doctorRepository.findById(7L)).thenReturn(Optional.of(doctor));
+        when(reviewRepository.findByPatient_PatientIdAndDoctor_DoctorId(3L, 7L)).thenReturn(List.of());
+        when(reviewRepository.save(any(Review.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        // When
+        reviewService.create(new ReviewDTO.Create(3L, 7L, 4, "Tốt"));
+
+        // Then
+        verify(doctorRepository).adjustRating(7L, 4L, 1L, 0, 0, 0, 1, 0);
+        System.out.println("✅ Test passed: Rating aggregate - Create adds one 4-star rating");
+    }
+
+    @Test
+    void testUpdate_MovesRatingBetweenHistogramBuckets() {
+        // Given
+        when(reviewRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(review(2, "ACTIVE")));
+        when(reviewRepository.save(any(Review.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        // When
+        reviewService.update(1L, new ReviewDTO.Update(5, null, null));
+
+        // Then
+        verify(doctorRepository).adjustRating(7L, 3L, 0L, 0, -1, 0, 0, 1);
+        System.out.println("✅ Test passed: Rating aggregate - Update moves 2 stars to 5 stars");
+    }
+
+    @Test
+    void testUpdate_CommentOnlyLeavesAggregateUntouched() {
+        // Given
+        when(reviewRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(review(3, "ACTIVE")));
+        when(reviewRepository.save(any(Review.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        // When
+        reviewService.update(1L, new ReviewDTO.Update(null, "Sửa bình luận", null));
+
+        // Then
+        verify(doctorRepository, never()).adjustRating(anyLong(), anyLong(), anyLong(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+        System.out.println("✅ Test passed: Rating aggregate - Comment edit skips the aggregate");
+    }
+
+    @Test
+    void testDeactivateAndDelete_RemoveOnlyActiveRatings() {
+        // Given
+        Review active = review(5, "ACTIVE");
+        when(reviewRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(active));
+        when(reviewRepository.save(any(Review.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        // When: ẩn rồi xóa cùng một review
+        reviewService.deactivateReview(1L);
+        reviewService.delete(1L);
+
+        // Then: chỉ trừ một lần, lúc ẩn
+        verify(doctorRepository, times(1)).adjustRating(7L, -5L, -1L, 0, 0, 0, 0, -1);
+        verify(reviewRepository).delete(active);
+        System.out.println("✅ Test passed: Rating aggregate - Deactivated review not subtracted twice");
+    }
+
+    @Test
+    void testAverageAndCount_ReadFromDoctorAggregate() {
+        // Given
+        doctor.setRatingCount(4);
+        doctor.setAverageRating(4.25);
+        when(doctorRepository.findById(7L)).thenReturn(Optional.of(doctor));
+        when(doctorRepository.findById(8L)).thenReturn(Optional.empty());
+
+        // Then
+        assertEquals(4.25, reviewService.getAverageRatingByDoctor(7L));
+        assertEquals(4L, reviewService.getReviewCountByDoctor(7L));
+        assertNull(reviewService.getAverageRatingByDoctor(8L));
+        assertEquals(0L, reviewService.getReviewCountByDoctor(8L));
+        verify(reviewRepository, never()).getAverageRatingByDoctor(anyLong());
+        System.out.println("✅ Test passed: Rating aggregate - Average/count read without AVG over reviews");
+    }
+}
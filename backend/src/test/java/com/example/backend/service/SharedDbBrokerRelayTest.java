@@ -0,0 +1,191 @@
+package com.example.backend.service;
+
+import com.example.backend.event.ClusterEvent;
+import com.example.backend.model.BrokerMessage;
+import com.example.backend.repository.BrokerMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two relay nodes sharing an in-memory BrokerMessages table: a /topic message published on
+ * one node must reach the local broker of the other node exactly once and never loop back.
+ */
+class SharedDbBrokerRelayTest {
+
+    private final List<BrokerMessage> table = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private BrokerMessageRepository repository;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repository = mock(BrokerMessageRepository.class);
+        when(repository.findMaxId()).thenAnswer(inv -> sequence.get());
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            List<BrokerMessage> batch = inv.getArgument(0);
+            batch.forEach(row -> {
+                row.setBrokerMessageId(sequence.incrementAndGet());
+                table.add(row);
+            });
+            return batch;
+        });
+        when(repository.findNew(anyLong(), anyCollection(), any(Pageable.class))).thenAnswer(inv -> {
+            long afterId = inv.getArgument(0);
+            Collection<Long> pending = inv.getArgument(1);
+            return table.stream()
+                    .filter(row -> row.getBrokerMessageId() > afterId || pending.contains(row.getBrokerMessageId()))
+                    .limit(inv.<Pageable>getArgument(2).getPageSize())
+                    .toList();
+        });
+    }
+
+    private SharedDbBrokerRelay node(MessageChannel localBroker) {
+        return node(localBroker, mock(ApplicationEventPublisher.class));
+    }
+
+    private SharedDbBrokerRelay node(MessageChannel localBroker, ApplicationEventPublisher eventPublisher) {
+        SharedDbBrokerRelay relay = new SharedDbBrokerRelay(repository, localBroker, eventPublisher, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(relay, "destinations", List.of("/topic/conversations/", "/topic/users/"));
+        ReflectionTestUtils.setField(relay, "batchSize", 100);
+        ReflectionTestUtils.setField(relay, "queueCapacity", 10);
+        ReflectionTestUtils.setField(relay, "gapTimeoutMs", 5000L);
+        relay.init();
+        return relay;
+    }
+
+    private static Message<byte[]> stompMessage(String destination, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    @Test
+    void testRelay_DeliversToOtherNodeOnly() {
+        // Given
+        MessageChannel brokerA = mock(MessageChannel.class);
+        MessageChannel brokerB = mock(MessageChannel.class);
+        SharedDbBrokerRelay nodeA = node(brokerA);
+        SharedDbBrokerRelay nodeB = node(brokerB);
+
+        // When - node A phát một tin nhắn chat, sau đó cả hai node đồng bộ
+        nodeA.preSend(stompMessage("/topic/conversations/1", "{\"messageId\":1}"), brokerA);
+        nodeA.sync();
+        nodeB.sync();
+        nodeA.sync();
+
+        // Then
+        ArgumentCaptor<Message<?>> captor = ArgumentCaptor.forClass(Message.class);
+        verify(brokerB, times(1)).send(captor.capture());
+        SimpMessageHeaderAccessor delivered = SimpMessageHeaderAccessor.wrap(captor.getValue());
+        assertEquals("/topic/conversations/1", delivered.getDestination());
+        assertEquals("{\"messageId\":1}", new String((byte[]) captor.getValue().getPayload(), StandardCharsets.UTF_8));
+        assertNotNull(delivered.getHeader(SharedDbBrokerRelay.RELAYED_HEADER));
+        verify(brokerA, never()).send(any());
+
+        // Message đã chuyển tiếp đi qua brokerChannel của B không được ghi lại lần nữa
+        nodeB.preSend(captor.getValue(), brokerB);
+        nodeB.sync();
+        assertEquals(1, table.size());
+        System.out.println("✅ Test passed: Broker relay - Message relayed to the other node exactly once");
+    }
+
+    @Test
+    void testPublishInternal_DeliveredAsClusterEventOnOtherNode() {
+        // Given
+        MessageChannel brokerA = mock(MessageChannel.class);
+        MessageChannel brokerB = mock(MessageChannel.class);
+        ApplicationEventPublisher eventsA = mock(ApplicationEventPublisher.class);
+        ApplicationEventPublisher eventsB = mock(ApplicationEventPublisher.class);
+        SharedDbBrokerRelay nodeA = node(brokerA, eventsA);
+        SharedDbBrokerRelay nodeB = node(brokerB, eventsB);
+
+        // When
+        nodeA.publishInternal("search-index/users", "42");
+        nodeA.sync();
+        nodeB.sync();
+
+        // Then: chỉ node B nhận, dưới dạng ClusterEvent, không qua simple broker
+        verify(eventsB).publishEvent(new ClusterEvent("search-index/users", "42"));
+        verify(eventsA, never()).publishEvent(any(Object.class));
+        verify(brokerB, never()).send(any());
+        System.out.println("✅ Test passed: Broker relay - Internal message delivered as ClusterEvent on the other node");
+    }
+
+    @Test
+    void testRelay_IgnoresNonReplicatedDestinations() {
+        MessageChannel brokerA = mock(MessageChannel.class);
+        SharedDbBrokerRelay nodeA = node(brokerA);
+
+        nodeA.preSend(stompMessage("/topic/other", "{}"), brokerA);
+        nodeA.sync();
+
+        assertTrue(table.isEmpty());
+        System.out.println("✅ Test passed: Broker relay - Only configured destinations are replicated");
+    }
+
+    @Test
+    void testRelay_RereadsIdsCommittedOutOfOrder() {
+        // Given - node B đã thấy ID 2 trong khi ID 1 chưa commit
+        MessageChannel brokerB = mock(MessageChannel.class);
+        SharedDbBrokerRelay nodeB = node(brokerB);
+        BrokerMessage late = row("/topic/users/7/unread");
+        BrokerMessage early = row("/topic/conversations/1");
+        late.setBrokerMessageId(1L);
+        early.setBrokerMessageId(2L);
+        table.add(early);
+        nodeB.sync();
+
+        // When - ID 1 commit muộn
+        table.add(0, late);
+        nodeB.sync();
+
+        // Then
+        verify(brokerB, times(2)).send(any());
+        System.out.println("✅ Test passed: Broker relay - Late-committed message picked up from the gap list");
+    }
+
+    @Test
+    void testRelay_DropsWhenQueueIsFull() {
+        MessageChannel brokerA = mock(MessageChannel.class);
+        SharedDbBrokerRelay nodeA = node(brokerA);
+
+        for (int i = 0; i < 15; i++) {
+            nodeA.preSend(stompMessage("/topic/conversations/1", "{}"), brokerA);
+        }
+        nodeA.sync();
+
+        assertEquals(10, table.size());
+        System.out.println("✅ Test passed: Broker relay - Bounded queue drops overflow instead of blocking senders");
+    }
+
+    private static BrokerMessage row(String destination) {
+        BrokerMessage row = new BrokerMessage();
+        row.setOriginNode("other-node");
+        row.setDestination(destination);
+        row.setContentType("application/json");
+        row.setPayload("{}".getBytes(StandardCharsets.UTF_8));
+        return row;
+    }
+}
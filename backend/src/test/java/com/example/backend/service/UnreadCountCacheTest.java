@@ -0,0 +1,123 @@
+package com.example.backend.service;
+
+import com.example.backend.dto.MessageDTO;
+import com.example.backend.repository.ConversationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for UnreadCountCache: lazy warm-up, atomic updates under contention and
+ * WebSocket pushes.
+ */
+class UnreadCountCacheTest {
+
+    private ConversationRepository conversationRepository;
+    private SimpMessagingTemplate messagingTemplate;
+    private UnreadCountCache cache;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(ConversationRepository.class);
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        when(conversationRepository.findUnreadCountsByUserId(7L))
+                .thenReturn(List.of(new Object[]{1L, 3}, new Object[]{2L, 0}));
+
+        cache = new UnreadCountCache(conversationRepository, messagingTemplate);
+        ReflectionTestUtils.setField(cache, "ttlMs", 600_000L);
+    }
+
+    @Test
+    void testGet_WarmsOnceFromDatabase() {
+        assertEquals(3, cache.get(7L, 1L));
+        assertEquals(0, cache.get(7L, 2L));
+        assertEquals(3L, cache.total(7L));
+
+        verify(conversationRepository, times(1)).findUnreadCountsByUserId(7L);
+        System.out.println("✅ Test passed: Unread cache - Warmed once, served from memory afterwards");
+    }
+
+    @Test
+    void testUpdates_PushNewValues() {
+        cache.get(7L, 1L);
+
+        cache.messageCreated(2L, 7L);
+        cache.conversationRead(1L, 7L);
+
+        assertEquals(1, cache.get(7L, 2L));
+        assertEquals(0, cache.get(7L, 1L));
+        assertEquals(1L, cache.total(7L));
+        verify(messagingTemplate).convertAndSend("/topic/users/7/unread", new MessageDTO.UnreadCount(2L, 1, 4L));
+        verify(messagingTemplate).convertAndSend("/topic/users/7/unread", new MessageDTO.UnreadCount(1L, 0, 1L));
+        System.out.println("✅ Test passed: Unread cache - Updates applied and pushed to /topic/users/7/unread");
+    }
+
+    @Test
+    void testUpdates_ColdUserLoadedAndPushed() {
+        // Given: DB đã có tin nhắn vừa commit (cuộc trò chuyện 1: 3 -> 4)
+        when(conversationRepository.findUnreadCountsByUserId(7L))
+                .thenReturn(List.of(new Object[]{1L, 4}, new Object[]{2L, 0}));
+
+        // When: cache chưa nạp user 7
+        cache.messageCreated(1L, 7L);
+
+        // Then: nạp từ DB một lần, không cộng thêm lần nữa, vẫn đẩy giá trị mới
+        verify(conversationRepository, times(1)).findUnreadCountsByUserId(7L);
+        verify(messagingTemplate).convertAndSend("/topic/users/7/unread", new MessageDTO.UnreadCount(1L, 4, 4L));
+        assertEquals(4, cache.get(7L, 1L));
+        assertEquals(4L, cache.total(7L));
+        System.out.println("✅ Test passed: Unread cache - Cold user loaded from DB and pushed on increment");
+    }
+
+    @Test
+    void testConcurrentUpdates_TotalStaysConsistent() throws Exception {
+        cache.get(7L, 1L);
+        int threads = 16;
+        int perThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final long conversationId = 10L + (t % 4);
+                results.add(pool.submit(() -> {
+                    startGate.await();
+                    for (int i = 0; i < perThread; i++) {
+                        cache.messageCreated(conversationId, 7L);
+                        if (i % 2 == 0) {
+                            cache.messageRead(conversationId, 7L);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            startGate.countDown();
+            for (Future<?> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long perConversationSum = 3;
+        for (long conversationId = 10; conversationId < 14; conversationId++) {
+            perConversationSum += cache.get(7L, conversationId);
+        }
+        assertEquals(3L + threads * perThread / 2, cache.total(7L));
+        assertEquals(perConversationSum, cache.total(7L));
+        System.out.println("✅ Test passed: Unread cache - Total consistent after " + threads * perThread + " concurrent updates");
+    }
+}